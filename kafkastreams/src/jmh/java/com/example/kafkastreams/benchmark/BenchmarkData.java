@@ -0,0 +1,69 @@
+package com.example.kafkastreams.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Генерация воспроизводимых синтетических данных для бенчмарков (фиксированное зерно генератора).
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Словарь из уникальных случайных слов длиной 3-10 латинских букв.
+     *
+     * @param size   количество слов
+     * @param random генератор случайных чисел
+     * @return список слов
+     */
+    public static List<String> dictionary(int size, Random random) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            words.add(word(random));
+        }
+        return new ArrayList<>(words);
+    }
+
+    /**
+     * Сообщения примерно заданной длины: случайные слова, часть из которых (hitRatio) взята из словаря.
+     *
+     * @param count      количество сообщений
+     * @param length     длина сообщения в символах
+     * @param dictionary словарь цензурных слов
+     * @param hitRatio   доля слов из словаря
+     * @param random     генератор случайных чисел
+     * @return массив сообщений
+     */
+    public static String[] messages(int count, int length, List<String> dictionary, double hitRatio, Random random) {
+        String[] messages = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder message = new StringBuilder(length + 16);
+            while (message.length() < length) {
+                if (message.length() > 0) {
+                    message.append(random.nextInt(8) == 0 ? ", " : " ");
+                }
+                String word = !dictionary.isEmpty() && random.nextDouble() < hitRatio
+                    ? dictionary.get(random.nextInt(dictionary.size()))
+                    : word(random);
+                // Часть слов с заглавной буквы, чтобы проверять приведение регистра
+                message.append(random.nextInt(4) == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            }
+            messages[i] = message.append('!').toString();
+        }
+        return messages;
+    }
+
+    private static String word(Random random) {
+        int length = 3 + random.nextInt(8);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
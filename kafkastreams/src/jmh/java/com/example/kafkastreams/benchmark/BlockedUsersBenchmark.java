@@ -0,0 +1,72 @@
+package com.example.kafkastreams.benchmark;
+
+import com.example.kafkastreams.service.BlockedUsersIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка блокировки {@link BlockedUsersIndex#isBlocked(int, int)} (реализация {@code BlockedUserService.isUserBlocked})
+ * при разном количестве пользователей и плотности списков блокировок.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BlockedUsersBenchmark {
+
+    // Количество заранее сгенерированных пар (получатель, отправитель), по которым идет перебор
+    private static final int PAIRS = 4096;
+
+    @Param({"1000", "100000"})
+    private int users;
+
+    @Param({"1", "16", "256"})
+    private int blocksPerUser;
+
+    private BlockedUsersIndex index;
+    private int[] receivers;
+    private int[] senders;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Map<Integer, Set<Integer>> blockedUsers = new HashMap<>();
+        for (int userId = 1; userId <= users; userId++) {
+            Set<Integer> blocked = new HashSet<>();
+            while (blocked.size() < blocksPerUser) {
+                blocked.add(1 + random.nextInt(users));
+            }
+            blockedUsers.put(userId, blocked);
+        }
+        index = BlockedUsersIndex.of(blockedUsers);
+
+        // Половина проверок попадает в блокировку, половина — случайные пары
+        receivers = new int[PAIRS];
+        senders = new int[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            int receiver = 1 + random.nextInt(users);
+            int[] blocked = index.blockedBy(receiver);
+            receivers[i] = receiver;
+            senders[i] = i % 2 == 0 && blocked.length > 0 ? blocked[random.nextInt(blocked.length)] : 1 + random.nextInt(users);
+        }
+    }
+
+    @Benchmark
+    public boolean isBlocked() {
+        int i = next++ & (PAIRS - 1);
+        return index.isBlocked(receivers[i], senders[i]);
+    }
+}
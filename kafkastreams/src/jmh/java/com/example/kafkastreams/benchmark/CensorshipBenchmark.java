@@ -0,0 +1,71 @@
+package com.example.kafkastreams.benchmark;
+
+import com.example.kafkastreams.service.CensoredWordsMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Цензура одного сообщения: автомат {@link CensoredWordsMatcher}, которым пользуется
+ * {@code CensorshipService.censorMessage}, в сравнении с прежней реализацией (регулярное выражение на каждое слово).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CensorshipBenchmark {
+
+    // Количество заранее сгенерированных сообщений, по которым идет перебор
+    private static final int MESSAGES = 1024;
+
+    @Param({"30", "1000", "5000"})
+    private int dictionarySize;
+
+    @Param({"64", "512", "4096"})
+    private int messageLength;
+
+    // Доля слов сообщения, входящих в словарь
+    @Param({"0.02"})
+    private double hitRatio;
+
+    private List<String> dictionary;
+    private CensoredWordsMatcher matcher;
+    private String[] messages;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        dictionary = BenchmarkData.dictionary(dictionarySize, random);
+        matcher = new CensoredWordsMatcher(dictionary);
+        messages = BenchmarkData.messages(MESSAGES, messageLength, dictionary, hitRatio, random);
+    }
+
+    @Benchmark
+    public String matcher() {
+        return matcher.censor(nextMessage());
+    }
+
+    // Прежняя реализация: компиляция и применение регулярного выражения для каждого слова словаря
+    @Benchmark
+    public String regexPerWord() {
+        String censoredMessage = nextMessage();
+        for (String word : dictionary) {
+            censoredMessage = censoredMessage.replaceAll("(?i)\\b" + Pattern.quote(word) + "\\b", CensoredWordsMatcher.REPLACEMENT);
+        }
+        return censoredMessage;
+    }
+
+    private String nextMessage() {
+        return messages[next++ & (MESSAGES - 1)];
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.kafkastreams.benchmark;
+
+import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.serde.MessageDeserializer;
+import com.example.kafkastreams.serde.MessageSerializer;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация и десериализация {@link Message}: Spring JSON (исходный формат) и компактный бинарный формат.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageSerdeBenchmark {
+
+    private static final String TOPIC = "messages";
+
+    @Param({"48", "512"})
+    private int messageLength;
+
+    private Message message;
+
+    private JsonSerializer<Message> jsonSerializer;
+    private JsonDeserializer<Message> jsonDeserializer;
+    private MessageSerializer binarySerializer;
+    private MessageDeserializer binaryDeserializer;
+
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String text = BenchmarkData.messages(1, messageLength, List.of(), 0, random)[0];
+        message = new Message(21, 39, text, Instant.ofEpochMilli(1_746_974_613_463L));
+
+        jsonSerializer = new JsonSerializer<>();
+        jsonDeserializer = new JsonDeserializer<>(Message.class, false);
+        binarySerializer = new MessageSerializer();
+        binaryDeserializer = new MessageDeserializer();
+
+        jsonBytes = jsonSerializer.serialize(TOPIC, new RecordHeaders(), message);
+        binaryBytes = binarySerializer.serialize(TOPIC, message);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jsonSerializer.close();
+        jsonDeserializer.close();
+    }
+
+    @Benchmark
+    public byte[] jsonSerialize() {
+        // Заголовки нужны, чтобы учитывать и добавление __TypeId__, как при отправке продюсером
+        return jsonSerializer.serialize(TOPIC, new RecordHeaders(), message);
+    }
+
+    @Benchmark
+    public Message jsonDeserialize() {
+        return jsonDeserializer.deserialize(TOPIC, jsonBytes);
+    }
+
+    @Benchmark
+    public byte[] binarySerialize() {
+        return binarySerializer.serialize(TOPIC, message);
+    }
+
+    @Benchmark
+    public Message binaryDeserialize() {
+        return binaryDeserializer.deserialize(TOPIC, binaryBytes);
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.kafkastreams.benchmark;
+
+import com.example.kafkastreams.KafkaStreamsApplication;
+import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.service.BlockedUserService;
+import com.example.kafkastreams.service.CensorshipService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.streams.KafkaStreams;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Сквозной бенчмарк и проверка всего конвейера в одной JVM без Docker и сети:
+ * генератор -> messages -> {@code KafkaStreamsProcessor} -> filtered_messages -> потребитель.
+ *
+ * Запускает встроенный брокер Kafka (KRaft, {@code spring-kafka-test}) и приложение с профилями
+ * {@code generator,processor}; нагрузку создает {@code LoadGeneratorService} ({@code generator.mode=LOAD}).
+ * Потребитель с настройками {@code MessageListener} (бин consumerFactory, своя группа) читает filtered_messages
+ * и считает задержку от временной метки записи, которую ставит продюсер генератора и сохраняет Kafka Streams,
+ * до получения. После прогрева выводятся перцентили сквозной задержки, устойчивая скорость на входе и выходе,
+ * а при {@code verify=true} каждое полученное сообщение проверяется: отправитель не заблокирован получателем
+ * и в тексте не осталось цензурных слов. Если сообщений нет или проверка нашла нарушения, код выхода — 1.
+ *
+ * Параметры с точкой в имени передаются приложению как настройки Spring, например:
+ * <pre>
+ * ./gradlew pipelineBenchmark -PbenchmarkArgs="rate=50000 measure=30 kafka.streams.topology-mode=PROCESSOR"
+ * </pre>
+ */
+public class PipelineEndToEndBenchmark {
+
+    private static final String CONSUMER_GROUP = "pipeline-benchmark";
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        Path workDir = Files.createTempDirectory("pipeline-benchmark");
+
+        EmbeddedKafkaKraftBroker broker = new EmbeddedKafkaKraftBroker(1, options.partitions);
+        broker.afterPropertiesSet();
+        int status;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(KafkaStreamsApplication.class)
+                .profiles(options.profiles.toArray(String[]::new))
+                .run(applicationArgs(options, broker.getBrokersAsString(), workDir))) {
+            status = run(context, options);
+        } finally {
+            broker.destroy();
+        }
+        System.exit(status);
+    }
+
+    // Замер: ожидание запуска Kafka Streams, прогрев, окно замера; возвращает код выхода
+    private static int run(ConfigurableApplicationContext context, Options options) {
+        awaitRunning(context.getBean(StreamsBuilderFactoryBean.class), Duration.ofSeconds(60));
+
+        MeterRegistry registry = context.getBean(MeterRegistry.class);
+        BlockedUserService blockedUserService = context.getBean(BlockedUserService.class);
+        CensorshipService censorshipService = context.getBean(CensorshipService.class);
+        String filteredTopic = context.getEnvironment().getRequiredProperty("kafka.topic.filtered-messages");
+
+        @SuppressWarnings("unchecked")
+        ConsumerFactory<String, Message> consumerFactory = context.getBean("consumerFactory", ConsumerFactory.class);
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, options.isolation);
+
+        System.out.printf("Конвейер: профили=%s, партиций %d, скорость генератора %d сообщений/с, прогрев %d с, замер %d с, чтение %s%n",
+            String.join(",", options.profiles), options.partitions, options.rate, options.warmup, options.measure, options.isolation);
+        options.springProperties.forEach((key, value) -> System.out.printf("  %s=%s%n", key, value));
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long received = 0;
+        long blockedViolations = 0;
+        long censorViolations = 0;
+        double sentBefore = 0;
+        double ackedBefore = 0;
+        try (Consumer<String, Message> consumer = consumerFactory.createConsumer(CONSUMER_GROUP, "benchmark", "", overrides)) {
+            consumer.subscribe(List.of(filteredTopic));
+            long warmupEnd = System.currentTimeMillis() + options.warmup * 1000L;
+            long measureEnd = warmupEnd + options.measure * 1000L;
+            boolean measuring = false;
+            long now;
+            while ((now = System.currentTimeMillis()) < measureEnd) {
+                ConsumerRecords<String, Message> records = consumer.poll(Duration.ofMillis(100));
+                now = System.currentTimeMillis();
+                if (now < warmupEnd) {
+                    continue;
+                }
+                if (!measuring) {
+                    measuring = true;
+                    sentBefore = count(registry, "sent");
+                    ackedBefore = count(registry, "acked");
+                }
+                for (ConsumerRecord<String, Message> record : records) {
+                    // Временная метка записи — время отправки генератором (Kafka Streams переносит ее в выходную запись)
+                    latency.record(now - record.timestamp());
+                    received++;
+                    Message message = record.value();
+                    if (options.verify && message != null) {
+                        if (blockedUserService.isUserBlocked(message.getReceiverId(), message.getUserId())) {
+                            blockedViolations++;
+                        }
+                        // Автомат возвращает тот же объект строки, если заменять нечего
+                        String text = message.getMessage();
+                        if (text != null && censorshipService.censorMessage(text) != text) {
+                            censorViolations++;
+                        }
+                    }
+                }
+            }
+        }
+
+        double sent = count(registry, "sent") - sentBefore;
+        double acked = count(registry, "acked") - ackedBefore;
+        System.out.printf("Вход: отправлено %.0f (%.0f сообщений/с), подтверждено %.0f, ошибок отправки %.0f%n",
+            sent, sent / options.measure, acked, count(registry, "failed"));
+        System.out.printf("Выход: получено %d (%.0f сообщений/с)%n", received, (double) received / options.measure);
+        System.out.printf("Сквозная задержка, мс: mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+            latency.mean(), latency.percentile(50), latency.percentile(90), latency.percentile(99),
+            latency.percentile(99.9), latency.max());
+        if (!options.verify) {
+            return 0;
+        }
+        System.out.printf("Проверка: сообщений от заблокированных отправителей %d, с нецензурированными словами %d%n",
+            blockedViolations, censorViolations);
+        boolean passed = received > 0 && blockedViolations == 0 && censorViolations == 0;
+        System.out.println(passed ? "Проверка пройдена" : "Проверка НЕ пройдена");
+        return passed ? 0 : 1;
+    }
+
+    // Аргументы командной строки приложения: у них приоритет над application.properties
+    private static String[] applicationArgs(Options options, String bootstrapServers, Path workDir) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.kafka.bootstrap-servers", bootstrapServers);
+        properties.put("server.port", String.valueOf(freePort()));
+        properties.put("kafka.topic.partitions", String.valueOf(options.partitions));
+        properties.put("kafka.streams.state-dir", workDir.resolve("state").toString());
+        // Файлы списков копируются во временный каталог: отложенная запись не должна менять ресурсы сборки
+        properties.put("blocked.users.file.path", "file:" + copyResource("blocked_users.json", workDir));
+        properties.put("censored.words.file.path", "file:" + copyResource("censored_words.txt", workDir));
+        properties.put("generator.mode", "LOAD");
+        properties.put("generator.load.rate", String.valueOf(options.rate));
+        // Генератор работает до закрытия контекста
+        properties.put("generator.load.duration-s", "0");
+        // MessageListener пишет каждое сообщение на уровне INFO — в замере это была бы стоимость логирования
+        properties.put("logging.level.root", "WARN");
+        properties.putAll(options.springProperties);
+
+        List<String> args = new ArrayList<>();
+        properties.forEach((key, value) -> args.add("--" + key + "=" + value));
+        return args.toArray(String[]::new);
+    }
+
+    private static Path copyResource(String name, Path workDir) throws IOException {
+        Path target = workDir.resolve(name);
+        try (InputStream in = PipelineEndToEndBenchmark.class.getResourceAsStream("/" + name)) {
+            if (in != null) {
+                Files.copy(in, target);
+            }
+        }
+        return target;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitRunning(StreamsBuilderFactoryBean factoryBean, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            KafkaStreams streams = factoryBean.getKafkaStreams();
+            if (streams != null && streams.state() == KafkaStreams.State.RUNNING) {
+                return;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new IllegalStateException("Kafka Streams не перешел в состояние RUNNING за " + timeout);
+    }
+
+    // Счетчик генератора generator.messages{result}
+    private static double count(MeterRegistry registry, String result) {
+        Counter counter = registry.find("generator.messages").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    /**
+     * Параметры бенчмарка (аргументы key=value; ключи с точкой — настройки приложения).
+     */
+    private static final class Options {
+
+        int rate = 20_000;
+        int warmup = 15;
+        int measure = 30;
+        int partitions = 3;
+        List<String> profiles = List.of("generator", "processor");
+        String isolation = "read_uncommitted";
+        boolean verify = true;
+        Map<String, String> springProperties = new LinkedHashMap<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Ожидался аргумент вида key=value: " + arg);
+                }
+                String key = arg.substring(0, separator);
+                String value = arg.substring(separator + 1);
+                if (key.indexOf('.') >= 0) {
+                    options.springProperties.put(key, value);
+                    continue;
+                }
+                switch (key) {
+                    case "rate" -> options.rate = Integer.parseInt(value);
+                    case "warmup" -> options.warmup = Integer.parseInt(value);
+                    case "measure" -> options.measure = Integer.parseInt(value);
+                    case "partitions" -> options.partitions = Integer.parseInt(value);
+                    // Дополнительные профили к generator,processor (например, throughput)
+                    case "profiles" -> {
+                        List<String> profiles = new ArrayList<>(List.of("generator", "processor"));
+                        profiles.addAll(List.of(value.split(",")));
+                        options.profiles = profiles;
+                    }
+                    case "isolation" -> options.isolation = value;
+                    case "verify" -> options.verify = Boolean.parseBoolean(value);
+                    default -> throw new IllegalArgumentException("Неизвестный параметр: " + key);
+                }
+            }
+            return options;
+        }
+    }
+}
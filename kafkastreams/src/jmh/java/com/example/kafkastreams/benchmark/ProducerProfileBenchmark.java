@@ -0,0 +1,247 @@
+package com.example.kafkastreams.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.kafkastreams.config.ProducerTuning;
+import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.serde.MessageFormat;
+import com.example.kafkastreams.serde.MessageHeaders;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сравнение профилей продюсера сообщений на локальном встроенном брокере Kafka (KRaft, в том же процессе).
+ *
+ * Для каждого профиля отправляет одинаковый набор сообщений так быстро, как позволяет продюсер,
+ * и выводит сообщений/с, байты в сети (метрика продюсера outgoing-byte-total, включая заголовки протокола)
+ * в сумме и на сообщение, средний размер пакета и степень сжатия.
+ *
+ * Профили: {@code default} — application.properties (настройки клиента Kafka), {@code throughput} —
+ * с application-throughput.properties; суффикс {@code :<сжатие>} заменяет compression.type
+ * (например, {@code throughput:zstd}). Пример:
+ * <pre>
+ * ./gradlew producerBenchmark -PbenchmarkArgs="records=2000000 profiles=default,throughput,throughput:zstd"
+ * </pre>
+ */
+public class ProducerProfileBenchmark {
+
+    private static final String TOPIC_PREFIX = "producer-benchmark-";
+
+    // Количество заранее сгенерированных сообщений, по которым идет перебор
+    private static final int DISTINCT_MESSAGES = 4096;
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        // Логи встроенного брокера и клиентов не должны мешать замерам
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        Random random = new Random(options.seed);
+        List<Message> messages = messages(options, random);
+        long payloadBytes = payloadBytes(options.format, messages);
+
+        EmbeddedKafkaKraftBroker broker = new EmbeddedKafkaKraftBroker(1, options.partitions);
+        broker.afterPropertiesSet();
+        try {
+            System.out.printf("Брокер: %s, партиций %d; записей %d (прогрев %d), формат=%s, длина текста=%d, значение в среднем %.0f байт%n",
+                broker.getBrokersAsString(), options.partitions, options.records, options.warmup, options.format,
+                options.messageLength, (double) payloadBytes / messages.size());
+            System.out.printf("%-22s %12s %10s %14s %14s %12s %10s%n",
+                "профиль", "сообщений/с", "МБ/с", "байт в сети", "байт/сообщ.", "пакет, байт", "сжатие");
+            for (String profile : options.profiles) {
+                String topic = TOPIC_PREFIX + profile.replace(':', '-');
+                broker.addTopics(new NewTopic(topic, options.partitions, (short) 1));
+                Result result = run(broker.getBrokersAsString(), topic, tuning(profile), options, messages);
+                System.out.printf("%-22s %12.0f %10.1f %14d %14.1f %12.0f %10.2f%n",
+                    profile, result.recordsPerSecond(), result.wireBytes() / result.seconds() / (1024 * 1024),
+                    result.wireBytes(), (double) result.wireBytes() / options.records,
+                    result.batchSizeAvg(), result.compressionRateAvg());
+                if (result.errors() > 0) {
+                    System.out.printf("  ошибок отправки: %d%n", result.errors());
+                }
+            }
+        } finally {
+            broker.destroy();
+        }
+    }
+
+    // Отправка прогрева и замеряемых записей одним продюсером; байты в сети — разница метрики после прогрева
+    private static Result run(String bootstrapServers, String topic, ProducerTuning tuning, Options options,
+                              List<Message> messages) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, options.format.serializerClass());
+        tuning.applyTo(config);
+
+        AtomicLong errors = new AtomicLong();
+        try (KafkaProducer<String, Message> producer = new KafkaProducer<>(config)) {
+            send(producer, topic, messages, options.warmup, errors);
+            producer.flush();
+            double bytesBefore = metric(producer, "outgoing-byte-total");
+
+            long start = System.nanoTime();
+            send(producer, topic, messages, options.records, errors);
+            producer.flush();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long wireBytes = (long) (metric(producer, "outgoing-byte-total") - bytesBefore);
+            return new Result(options.records / seconds, seconds, wireBytes,
+                metric(producer, "batch-size-avg"), metric(producer, "compression-rate-avg"), errors.get());
+        }
+    }
+
+    private static void send(KafkaProducer<String, Message> producer, String topic, List<Message> messages,
+                             long count, AtomicLong errors) {
+        for (long i = 0; i < count; i++) {
+            Message message = messages.get((int) (i % messages.size()));
+            ProducerRecord<String, Message> record =
+                new ProducerRecord<>(topic, String.valueOf(message.getReceiverId()), message);
+            MessageHeaders.write(record.headers(), message);
+            producer.send(record, (metadata, e) -> {
+                if (e != null) {
+                    errors.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    // Значение метрики продюсера из группы producer-metrics
+    private static double metric(KafkaProducer<?, ?> producer, String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+            if (entry.getKey().name().equals(name) && entry.getKey().group().equals("producer-metrics")) {
+                Object value = entry.getValue().metricValue();
+                return value instanceof Number number ? number.doubleValue() : Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    // Настройки профиля так же, как их читает приложение: application.properties и файл профиля поверх
+    private static ProducerTuning tuning(String profile) throws IOException {
+        String[] parts = profile.split(":", 2);
+        Properties properties = new Properties();
+        load(properties, "/application.properties");
+        if (!parts[0].equals("default")) {
+            load(properties, "/application-" + parts[0] + ".properties");
+        }
+        if (parts.length > 1) {
+            properties.setProperty(ProducerTuning.PREFIX + "compression-type", parts[1]);
+        }
+        return ProducerTuning.from(properties::getProperty);
+    }
+
+    private static void load(Properties properties, String resource) throws IOException {
+        try (InputStream in = ProducerProfileBenchmark.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Не найден файл настроек профиля: " + resource);
+            }
+            properties.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Сообщения из шаблонов messages.txt (реалистичная сжимаемость текста), дополненные до заданной длины
+    private static List<Message> messages(Options options, Random random) throws IOException {
+        List<String> templates = new ArrayList<>();
+        try (InputStream in = ProducerProfileBenchmark.class.getResourceAsStream("/messages.txt")) {
+            if (in != null) {
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines()
+                    .filter(line -> !line.isBlank())
+                    .forEach(templates::add);
+            }
+        }
+        if (templates.isEmpty()) {
+            templates.addAll(List.of(BenchmarkData.messages(100, 64, List.of(), 0, random)));
+        }
+        List<Message> messages = new ArrayList<>(DISTINCT_MESSAGES);
+        for (int i = 0; i < DISTINCT_MESSAGES; i++) {
+            StringBuilder text = new StringBuilder(options.messageLength + 128);
+            while (text.length() < options.messageLength) {
+                if (!text.isEmpty()) {
+                    text.append(' ');
+                }
+                text.append(templates.get(random.nextInt(templates.size())));
+            }
+            text.setLength(options.messageLength);
+            messages.add(new Message(1 + random.nextInt(options.users), 1 + random.nextInt(options.users),
+                text.toString(), Instant.now()));
+        }
+        return messages;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long payloadBytes(MessageFormat format, List<Message> messages) throws Exception {
+        try (Serializer<Message> serializer = (Serializer<Message>) format.serializerClass().getDeclaredConstructor().newInstance()) {
+            long bytes = 0;
+            for (Message message : messages) {
+                bytes += serializer.serialize("payload", new RecordHeaders(), message).length;
+            }
+            return bytes;
+        }
+    }
+
+    private record Result(double recordsPerSecond, double seconds, long wireBytes,
+                          double batchSizeAvg, double compressionRateAvg, long errors) {
+    }
+
+    /**
+     * Параметры бенчмарка (аргументы key=value).
+     */
+    private static final class Options {
+
+        long records = 1_000_000;
+        long warmup = 200_000;
+        int messageLength = 128;
+        int users = 100_000;
+        int partitions = 3;
+        MessageFormat format = MessageFormat.JSON;
+        List<String> profiles = List.of("default", "throughput", "throughput:zstd");
+        long seed = 42;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Ожидался аргумент вида key=value: " + arg);
+                }
+                String key = arg.substring(0, separator);
+                String value = arg.substring(separator + 1);
+                switch (key) {
+                    case "records" -> options.records = Long.parseLong(value);
+                    case "warmup" -> options.warmup = Long.parseLong(value);
+                    case "messageLength" -> options.messageLength = Integer.parseInt(value);
+                    case "users" -> options.users = Integer.parseInt(value);
+                    case "partitions" -> options.partitions = Integer.parseInt(value);
+                    case "format" -> options.format = MessageFormat.valueOf(value.toUpperCase());
+                    case "profiles" -> options.profiles = List.of(value.split(","));
+                    case "seed" -> options.seed = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Неизвестный параметр: " + key);
+                }
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.kafkastreams.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.kafkastreams.model.BlockedUserChange;
+import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.serde.BlockedUserChangeSerde;
+import com.example.kafkastreams.serde.MessageFormat;
+import com.example.kafkastreams.serde.MessageHeaders;
+import com.example.kafkastreams.service.CensoredWordsMatcher;
+import com.example.kafkastreams.stream.MessagePipeline;
+import com.example.kafkastreams.stream.PipelineObserver;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.test.TestRecord;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Сквозной бенчмарк топологии {@link MessagePipeline} на TopologyTestDriver — без брокера, в одном процессе.
+ *
+ * Прогоняет заданное количество синтетических сообщений через цепочку
+ * соединение с блокировками -> filter -> mapValues -> to (или через один процессор при mode=PROCESSOR)
+ * и выводит пропускную способность,
+ * перцентили задержки всей записи и отдельных этапов, а также нагрузку на GC.
+ *
+ * Параметры передаются аргументами вида key=value (см. {@link Options}), например:
+ * <pre>
+ * ./gradlew topologyBenchmark -PbenchmarkArgs="records=2000000 dictionarySize=5000 users=100000 blocksPerUser=16"
+ * </pre>
+ */
+public class TopologyThroughputBenchmark {
+
+    private static final String MESSAGES_TOPIC = "messages";
+    private static final String BLOCKED_USER_CHANGES_TOPIC = "blocked_user_changes";
+    private static final String BLOCKED_USERS_TOPIC = "blocked_users";
+    private static final String FILTERED_MESSAGES_TOPIC = "filtered_messages";
+    private static final String DEAD_LETTER_TOPIC = "messages_dlq";
+
+    // Количество заранее сгенерированных сообщений, по которым идет перебор
+    private static final int DISTINCT_MESSAGES = 4096;
+
+    // Как часто вычитывать выходной топик драйвера, чтобы его очередь не росла
+    private static final int DRAIN_EVERY = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        // Логирование на каждую запись исказило бы замеры
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        Random random = new Random(options.seed);
+        List<String> dictionary = BenchmarkData.dictionary(options.dictionarySize, random);
+        CensoredWordsMatcher matcher = new CensoredWordsMatcher(dictionary);
+        StageTimings timings = new StageTimings();
+
+        StreamsBuilder builder = new StreamsBuilder();
+        new MessagePipeline(MESSAGES_TOPIC, BLOCKED_USER_CHANGES_TOPIC, BLOCKED_USERS_TOPIC, FILTERED_MESSAGES_TOPIC,
+                DEAD_LETTER_TOPIC, matcher::censor, 1, timings)
+            .build(builder, options.mode);
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "topology-benchmark");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, options.format.serdeClass());
+        props.put(JsonDeserializer.TRUSTED_PACKAGES, "com.example.kafkastreams.model");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("topology-benchmark").toString());
+        props.put(StreamsConfig.TOPOLOGY_OPTIMIZATION_CONFIG, StreamsConfig.OPTIMIZE);
+        Topology topology = builder.build(props);
+
+        Serde<Message> messageSerde = newMessageSerde(options.format, props);
+        try (TopologyTestDriver driver = new TopologyTestDriver(topology, props)) {
+            TestInputTopic<String, BlockedUserChange> blockedUsers = driver.createInputTopic(
+                BLOCKED_USER_CHANGES_TOPIC, new StringSerializer(), new BlockedUserChangeSerde().serializer());
+            TestInputTopic<String, Message> messages = driver.createInputTopic(
+                MESSAGES_TOPIC, new StringSerializer(), messageSerde.serializer());
+            TestOutputTopic<String, Message> filtered = driver.createOutputTopic(
+                FILTERED_MESSAGES_TOPIC, new StringDeserializer(), messageSerde.deserializer());
+
+            long pairs = loadBlockedUsers(blockedUsers, options, random);
+
+            String[] texts = BenchmarkData.messages(DISTINCT_MESSAGES, options.messageLength, dictionary, options.hitRatio, random);
+            List<TestRecord<String, Message>> records = new ArrayList<>(DISTINCT_MESSAGES);
+            for (int i = 0; i < DISTINCT_MESSAGES; i++) {
+                int receiverId = 1 + random.nextInt(options.users);
+                Message message = new Message(1 + random.nextInt(options.users), receiverId, texts[i], Instant.now());
+                RecordHeaders headers = new RecordHeaders();
+                if (options.headers) {
+                    MessageHeaders.write(headers, message);
+                }
+                records.add(new TestRecord<>(String.valueOf(receiverId), message, headers));
+            }
+
+            System.out.printf("Топология: вариант=%s, формат=%s, заголовки с ID=%s, словарь=%d слов, блокировки=%d пар для %d пользователей, длина сообщения=%d%n",
+                options.mode, options.format, options.headers, dictionary.size(), pairs, options.users, options.messageLength);
+
+            // Прогрев JIT без замеров
+            run(messages, filtered, records, options.warmup, null);
+            timings.reset();
+
+            LatencyHistogram total = new LatencyHistogram();
+            GcSnapshot gcBefore = GcSnapshot.take();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long passed = run(messages, filtered, records, options.records, total);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+            GcSnapshot gc = GcSnapshot.take().minus(gcBefore);
+
+            System.out.printf("Записей: %d за %.2f с -> %.0f записей/с (пропущено %d, заблокировано %d)%n",
+                options.records, elapsed / 1e9, options.records / (elapsed / 1e9), passed, timings.blocked);
+            System.out.println("Запись целиком:      " + total.summary());
+            System.out.println("Проверка блокировки: " + timings.blockCheck.summary());
+            System.out.println("Цензура:             " + timings.censor.summary());
+            System.out.printf("GC: сборок %d, время %d мс; выделено %.1f МБ (%.0f байт на запись)%n",
+                gc.count, gc.timeMillis, allocated / (1024.0 * 1024.0), allocated < 0 ? Double.NaN : (double) allocated / options.records);
+        }
+    }
+
+    // Прогоняет count записей; при заданной гистограмме замеряет время обработки каждой записи
+    private static long run(TestInputTopic<String, Message> messages, TestOutputTopic<String, Message> filtered,
+                            List<TestRecord<String, Message>> records, long count, LatencyHistogram histogram) {
+        long passed = 0;
+        for (long i = 0; i < count; i++) {
+            int index = (int) (i & (DISTINCT_MESSAGES - 1));
+            long start = System.nanoTime();
+            messages.pipeInput(records.get(index));
+            if (histogram != null) {
+                histogram.record(System.nanoTime() - start);
+            }
+            if ((i + 1) % DRAIN_EVERY == 0) {
+                passed += drain(filtered);
+            }
+        }
+        return passed + drain(filtered);
+    }
+
+    private static long drain(TestOutputTopic<String, Message> filtered) {
+        long drained = 0;
+        while (!filtered.isEmpty()) {
+            filtered.readRecord();
+            drained++;
+        }
+        return drained;
+    }
+
+    private static long loadBlockedUsers(TestInputTopic<String, BlockedUserChange> blockedUsers, Options options, Random random) {
+        long pairs = 0;
+        for (int userId = 1; userId <= options.users; userId++) {
+            Set<Integer> blocked = new HashSet<>();
+            while (blocked.size() < Math.min(options.blocksPerUser, options.users)) {
+                blocked.add(1 + random.nextInt(options.users));
+            }
+            for (int blockedUserId : blocked) {
+                blockedUsers.pipeInput(String.valueOf(userId), new BlockedUserChange(blockedUserId, true));
+            }
+            pairs += blocked.size();
+        }
+        return pairs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Serde<Message> newMessageSerde(MessageFormat format, Properties props) throws Exception {
+        Serde<Message> serde = (Serde<Message>) format.serdeClass().getDeclaredConstructor().newInstance();
+        Map<String, Object> configs = new HashMap<>();
+        props.forEach((key, value) -> configs.put((String) key, value));
+        serde.configure(configs, false);
+        return serde;
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * Гистограммы длительности этапов, заполняемые через {@link PipelineObserver}.
+     */
+    private static final class StageTimings implements PipelineObserver {
+
+        private LatencyHistogram blockCheck = new LatencyHistogram();
+        private LatencyHistogram censor = new LatencyHistogram();
+        private long blocked;
+
+        @Override
+        public void onBlockCheck(int userId, int receiverId, boolean isBlocked, long nanos) {
+            blockCheck.record(nanos);
+            if (isBlocked) {
+                blocked++;
+            }
+        }
+
+        @Override
+        public void onCensor(Message message, String censoredMessage, long nanos) {
+            censor.record(nanos);
+        }
+
+        void reset() {
+            blockCheck = new LatencyHistogram();
+            censor = new LatencyHistogram();
+            blocked = 0;
+        }
+    }
+
+    /**
+     * Суммарные счетчики всех сборщиков мусора.
+     */
+    private record GcSnapshot(long count, long timeMillis) {
+
+        static GcSnapshot take() {
+            long count = 0;
+            long time = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                time += Math.max(0, gc.getCollectionTime());
+            }
+            return new GcSnapshot(count, time);
+        }
+
+        GcSnapshot minus(GcSnapshot other) {
+            return new GcSnapshot(count - other.count, timeMillis - other.timeMillis);
+        }
+    }
+
+    /**
+     * Параметры бенчмарка (аргументы key=value).
+     */
+    private static final class Options {
+
+        long records = 1_000_000;
+        long warmup = 200_000;
+        int dictionarySize = 1000;
+        int messageLength = 128;
+        double hitRatio = 0.02;
+        int users = 10_000;
+        int blocksPerUser = 16;
+        MessageFormat format = MessageFormat.JSON;
+        MessagePipeline.Mode mode = MessagePipeline.Mode.DSL;
+        boolean headers = true;
+        long seed = 42;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Ожидался аргумент вида key=value: " + arg);
+                }
+                String key = arg.substring(0, separator);
+                String value = arg.substring(separator + 1);
+                switch (key) {
+                    case "records" -> options.records = Long.parseLong(value);
+                    case "warmup" -> options.warmup = Long.parseLong(value);
+                    case "dictionarySize" -> options.dictionarySize = Integer.parseInt(value);
+                    case "messageLength" -> options.messageLength = Integer.parseInt(value);
+                    case "hitRatio" -> options.hitRatio = Double.parseDouble(value);
+                    case "users" -> options.users = Integer.parseInt(value);
+                    case "blocksPerUser" -> options.blocksPerUser = Integer.parseInt(value);
+                    case "format" -> options.format = MessageFormat.valueOf(value.toUpperCase());
+                    case "mode" -> options.mode = MessagePipeline.Mode.valueOf(value.toUpperCase());
+                    case "headers" -> options.headers = Boolean.parseBoolean(value);
+                    case "seed" -> options.seed = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Неизвестный параметр: " + key);
+                }
+            }
+            return options;
+        }
+    }
+}
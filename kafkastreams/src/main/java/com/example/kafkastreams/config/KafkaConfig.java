@@ -1,23 +1,33 @@
 package com.example.kafkastreams.config;
 
+import com.example.kafkastreams.model.BlockedUserChange;
 import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.serde.BlockedUserChangeSerde;
+import com.example.kafkastreams.serde.BlockedUsersSerde;
+import com.example.kafkastreams.serde.MessageFormat;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.config.TopicConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
-import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.context.annotation.Profile;
 
 import java.util.HashMap;
 import java.util.Map;
 
+@Slf4j
 @Configuration
 public class KafkaConfig {
 
@@ -33,26 +43,98 @@ public class KafkaConfig {
     @Value("${kafka.topic.filtered-messages}")
     private String filteredMessagesTopic;
 
+    // Название топика изменений отдельных блокировок
+    @Value("${kafka.topic.blocked-user-changes}")
+    private String blockedUserChangesTopic;
+
     // Название топика для заблокированных пользователей
     @Value("${kafka.topic.blocked-users}")
     private String blockedUsersTopic;
 
-    // Создает топик для сообщений (количество партиций = 1, репликаций = 1)
+    // Название компактного топика со словарем цензуры
+    @Value("${kafka.topic.censored-words}")
+    private String censoredWordsTopic;
+
+    // Название топика ошибок
+    @Value("${kafka.topic.dead-letters}")
+    private String deadLetterTopic;
+
+    // Количество партиций топиков. Одинаково для messages и blocked_user_changes,
+    // чтобы сообщения и блокировки одного получателя попадали в одну задачу Kafka Streams (co-partitioning)
+    @Value("${kafka.topic.partitions:1}")
+    private int partitions;
+
+    // Фактор репликации топиков
+    @Value("${kafka.topic.replication-factor:1}")
+    private int replicationFactor;
+
+    // Формат значений Message в топиках: JSON или компактный BINARY
+    @Value("${kafka.serde.message-format:JSON}")
+    private MessageFormat messageFormat;
+
+    // Окружение Spring: из него читаются настройки продюсера kafka.producer.* (профиль throughput)
+    @Autowired
+    private Environment environment;
+
+    // Создает топик для сообщений (ключ — ID получателя)
     @Bean
     public NewTopic messagesTopic() {
-        return new NewTopic(messagesTopic, 1, (short) 1);
+        return TopicBuilder.name(messagesTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
     }
 
     // Создает топик для отфильтрованных сообщений
     @Bean
     public NewTopic filteredMessagesTopic() {
-        return new NewTopic(filteredMessagesTopic, 1, (short) 1);
+        return TopicBuilder.name(filteredMessagesTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    // Создает топик изменений отдельных блокировок (ключ — ID получателя, значение — пара "блокировка/снятие" и ID).
+    // Записи не удаляются по времени: из этого журнала Kafka Streams может заново построить таблицу блокировок.
+    @Bean
+    public NewTopic blockedUserChangesTopic() {
+        return TopicBuilder.name(blockedUserChangesTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .config(TopicConfig.RETENTION_MS_CONFIG, "-1")
+                .build();
     }
 
-    // Создает топик для заблокированных пользователей
+    // Создает топик для заблокированных пользователей (его пишет только топология Kafka Streams).
+    // Топик компактный: ключ — ID получателя, значение — полный список заблокированных им отправителей,
+    // поэтому в топике всегда остается только последнее состояние каждого пользователя.
     @Bean
     public NewTopic blockedUsersTopic() {
-        return new NewTopic(blockedUsersTopic, 1, (short) 1);
+        return TopicBuilder.name(blockedUsersTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .compact()
+                .build();
+    }
+
+    // Создает топик словаря цензуры.
+    // Топик компактный: ключ — слово, значение — слово (null — удаление), поэтому в нем хранится текущий словарь.
+    @Bean
+    public NewTopic censoredWordsTopic() {
+        return TopicBuilder.name(censoredWordsTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .compact()
+                .build();
+    }
+
+    // Создает топик ошибок: записи с исходными ключом и значением и заголовками dlq.* с причиной ошибки
+    @Bean
+    public NewTopic deadLetterTopic() {
+        return TopicBuilder.name(deadLetterTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
     }
 
     // --- Конфигурация продюсера (создает сообщения) для профиля "generator" ---
@@ -65,8 +147,12 @@ public class KafkaConfig {
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
         // Сериализатор ключа (строка)
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        // Сериализатор значения (объект Message в JSON)
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        // Сериализатор значения (объект Message в JSON или компактном бинарном формате)
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, messageFormat.serializerClass());
+        // Пакетирование, сжатие и подтверждения (по умолчанию — как у клиента Kafka, профиль throughput — на пропускную способность)
+        ProducerTuning tuning = ProducerTuning.from(environment::getProperty);
+        tuning.applyTo(configProps);
+        log.info("Настройки продюсера сообщений: {}", tuning);
         return new DefaultKafkaProducerFactory<>(configProps);
     }
 
@@ -77,6 +163,53 @@ public class KafkaConfig {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    // --- Конфигурация продюсера изменений блокировок для профиля "processor" ---
+
+    @Bean
+    @Profile("processor")
+    public ProducerFactory<String, BlockedUserChange> blockedUserChangesProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        // Адрес Kafka брокера
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        // Сериализатор ключа (ID получателя строкой)
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        // Сериализатор значения (изменение одной блокировки)
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, BlockedUserChangeSerde.BlockedUserChangeSerializer.class);
+        // Идемпотентность, чтобы повторы не меняли порядок изменений одного пользователя
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    @Bean
+    @Profile("processor")
+    public KafkaTemplate<String, BlockedUserChange> blockedUserChangesKafkaTemplate() {
+        // Шаблон для публикации изменений блокировок в топик blocked_user_changes
+        return new KafkaTemplate<>(blockedUserChangesProducerFactory());
+    }
+
+    // --- Конфигурация продюсера изменений словаря цензуры для профиля "processor" ---
+
+    @Bean
+    @Profile("processor")
+    public ProducerFactory<String, String> censoredWordsProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        // Адрес Kafka брокера
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        // Сериализаторы ключа и значения — строки (слово)
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        // Идемпотентность, чтобы повторы не меняли порядок изменений одного слова
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    @Bean
+    @Profile("processor")
+    public KafkaTemplate<String, String> censoredWordsKafkaTemplate() {
+        // Шаблон для публикации изменений словаря в топик censored_words
+        return new KafkaTemplate<>(censoredWordsProducerFactory());
+    }
+
     // --- Конфигурация потребителя (чтение сообщений) для профиля "processor" ---
 
     @Bean
@@ -87,8 +220,8 @@ public class KafkaConfig {
         configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
         // Десериализатор ключа (строка)
         configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        // Десериализатор значения (объект Message в JSON)
-        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        // Десериализатор значения (объект Message в JSON или компактном бинарном формате)
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, messageFormat.deserializer().getClass());
         // Группа потребителей
         configProps.put(ConsumerConfig.GROUP_ID_CONFIG, "message-group");
         // Разрешает пакеты при десериализации
@@ -98,7 +231,7 @@ public class KafkaConfig {
         return new DefaultKafkaConsumerFactory<>(
             configProps,
             new StringDeserializer(),
-            new JsonDeserializer<>(Message.class)
+            messageFormat.deserializer()
         );
     }
 
@@ -137,4 +270,52 @@ public class KafkaConfig {
         factory.setConsumerFactory(stringConsumerFactory());
         return factory;
     }
+
+    // Конфигурация потребителя списков блокировок (топик blocked_users) без группы потребителей:
+    // слушатель сам назначает себе все партиции и читает их с начала, offset'ы не фиксируются
+    @Bean
+    @Profile("processor")
+    public ConsumerFactory<String, int[]> blockedUsersConsumerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        // Адрес Kafka
+        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        // Без группы автоматическая фиксация offset'ов невозможна
+        configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        return new DefaultKafkaConsumerFactory<>(configProps, new StringDeserializer(), new BlockedUsersSerde.BlockedUsersDeserializer());
+    }
+
+    // Фабрика для списков блокировок: подтверждения только ручные, поэтому контейнер не фиксирует offset'ы.
+    // Слушатель получает записи пакетом за poll, чтобы перестраивать индекс один раз на пакет
+    @Bean
+    @Profile("processor")
+    public ConcurrentKafkaListenerContainerFactory<String, int[]> blockedUsersListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, int[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(blockedUsersConsumerFactory());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+
+    // Конфигурация потребителя словаря цензуры (топик censored_words) без группы потребителей,
+    // как у списков блокировок: все партиции с начала, offset'ы не фиксируются
+    @Bean
+    @Profile("processor")
+    public ConsumerFactory<String, String> censoredWordsConsumerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        // Адрес Kafka
+        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        // Без группы автоматическая фиксация offset'ов невозможна
+        configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        return new DefaultKafkaConsumerFactory<>(configProps, new StringDeserializer(), new StringDeserializer());
+    }
+
+    // Фабрика для словаря цензуры: подтверждения только ручные, поэтому контейнер не фиксирует offset'ы
+    @Bean
+    @Profile("processor")
+    public ConcurrentKafkaListenerContainerFactory<String, String> censoredWordsListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(censoredWordsConsumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
 }
@@ -1,13 +1,20 @@
 package com.example.kafkastreams.config;
 
-import com.example.kafkastreams.model.Message;
-import com.example.kafkastreams.service.BlockedUserService;
+import com.example.kafkastreams.serde.MessageFormat;
 import com.example.kafkastreams.service.CensorshipService;
+import com.example.kafkastreams.stream.DeadLetterDeserializationHandler;
+import com.example.kafkastreams.stream.DeadLetterProductionHandler;
+import com.example.kafkastreams.stream.DeadLetterPublisher;
+import com.example.kafkastreams.stream.MessagePipeline;
+import com.example.kafkastreams.stream.PipelineMetrics;
+import com.example.kafkastreams.stream.PipelineObserver;
+import com.example.kafkastreams.stream.PipelineTracer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.GlobalKTable;
 import org.apache.kafka.streams.kstream.KStream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,7 +23,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.annotation.EnableKafkaStreams;
 import org.springframework.kafka.config.KafkaStreamsConfiguration;
-import org.springframework.kafka.support.serializer.JsonSerde;
+import org.springframework.kafka.config.StreamsBuilderFactoryBeanConfigurer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 
 import java.util.HashMap;
@@ -36,21 +43,78 @@ public class KafkaStreamsProcessor {
     @Value("${kafka.topic.filtered-messages}")
     private String filteredMessagesTopic;
 
-    // Внедрение сервиса для проверки блокировок пользователей
-    @Autowired
-    private BlockedUserService blockedUserService;
+    // Название топика изменений отдельных блокировок (вход таблицы блокировок)
+    @Value("${kafka.topic.blocked-user-changes}")
+    private String blockedUserChangesTopic;
+
+    // Название компактного топика с блокировками пользователей (выход таблицы блокировок)
+    @Value("${kafka.topic.blocked-users}")
+    private String blockedUsersTopic;
+
+    // Название компактного топика со словарем цензуры
+    @Value("${kafka.topic.censored-words}")
+    private String censoredWordsTopic;
+
+    // Название топика ошибок (записи, которые не удалось прочитать, обработать или записать)
+    @Value("${kafka.topic.dead-letters}")
+    private String deadLetterTopic;
+
+    // Количество попыток цензуры одного сообщения перед отправкой в топик ошибок
+    // (1 — без повторов: ошибка автомата цензуры детерминирована, повтор ее не исправит)
+    @Value("${errors.censor.max-attempts:1}")
+    private int censorMaxAttempts;
+
+    // Максимальное ожидание отправки в топик ошибок из обработчиков Kafka Streams, мс
+    @Value("${errors.dead-letter.max-block-ms:200}")
+    private long deadLetterMaxBlockMs;
+
+    // Адрес этого экземпляра (host:port) для маршрутизации интерактивных запросов к хранилищам состояния
+    @Value("${kafka.streams.application-server:localhost:${server.port}}")
+    private String applicationServer;
 
     // Внедрение сервиса для цензуры текста сообщений
     @Autowired
     private CensorshipService censorshipService;
 
+    // Метрики Micrometer этапов конвейера
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
     // Адрес Kafka брокера
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapAddress;
 
+    // Формат значений Message в топиках: JSON или компактный BINARY
+    @Value("${kafka.serde.message-format:JSON}")
+    private MessageFormat messageFormat;
+
+    // Режим трассировки конвейера: OFF, SAMPLED (1 из N записей) или HITS (только заблокированные и цензурированные)
+    @Value("${tracing.pipeline.mode:OFF}")
+    private PipelineTracer.Mode tracingMode;
+
+    // Для режима SAMPLED: трассируется в среднем одна запись из N
+    @Value("${tracing.pipeline.sample-rate:1000}")
+    private int tracingSampleRate;
+
+    // Максимум записей трассировки в секунду
+    @Value("${tracing.pipeline.max-per-second:10}")
+    private int tracingMaxPerSecond;
+
+    // Вариант топологии: DSL (цепочка filter/mapValues) или PROCESSOR (один шаг Processor API над байтами)
+    @Value("${kafka.streams.topology-mode:DSL}")
+    private MessagePipeline.Mode topologyMode;
+
+    // Количество потоков обработки в одном экземпляре (задачи распределяются по партициям)
+    @Value("${kafka.streams.num-stream-threads:1}")
+    private int numStreamThreads;
+
+    // Каталог локальных хранилищ состояния (пусто — по умолчанию Kafka Streams, <java.io.tmpdir>/kafka-streams)
+    @Value("${kafka.streams.state-dir:}")
+    private String stateDir;
+
     // Конфигурация Kafka Streams
     @Bean(name = "defaultKafkaStreamsConfig")
-    public KafkaStreamsConfiguration kStreamsConfigs() {
+    public KafkaStreamsConfiguration kStreamsConfigs(DeadLetterPublisher deadLetterPublisher) {
         Map<String, Object> props = new HashMap<>();
         // Уникальный идентификатор приложения потоков
         props.put(StreamsConfig.APPLICATION_ID_CONFIG, "kafka-streams-id");
@@ -58,10 +122,20 @@ public class KafkaStreamsProcessor {
         props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
         // сериализация ключа — строка
         props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
-        // сериализация значения — JSON объекта Message
-        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, new JsonSerde<>(Message.class).getClass());
+        // сериализация значения — объект Message в JSON или компактном бинарном формате
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, messageFormat.serdeClass());
         // доверенные пакеты для десериализации
         props.put(JsonDeserializer.TRUSTED_PACKAGES, "com.example.kafkastreams.model");
+        // адрес REST этого экземпляра: по нему другие экземпляры перенаправляют запросы к его партициям хранилищ
+        props.put(StreamsConfig.APPLICATION_SERVER_CONFIG, applicationServer);
+        // количество потоков обработки
+        props.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, numStreamThreads);
+        // каталог хранилищ состояния
+        if (!stateDir.isBlank()) {
+            props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir);
+        }
+        // оптимизация топологии (повторное использование топиков-источников и объединение перераспределений)
+        props.put(StreamsConfig.TOPOLOGY_OPTIMIZATION_CONFIG, StreamsConfig.OPTIMIZE);
         // интервал коммита offset'ов
         props.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, 1000);
         // режим обработки — "точно один раз" (exactly once)
@@ -72,46 +146,57 @@ public class KafkaStreamsProcessor {
         props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 30000);
         // интервал пинга сервера (heartbeat)
         props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, 10000);
+        // записи, которые не удалось прочитать или записать, отправляются в топик ошибок, обработка продолжается
+        props.put(StreamsConfig.DEFAULT_DESERIALIZATION_EXCEPTION_HANDLER_CLASS_CONFIG, DeadLetterDeserializationHandler.class);
+        props.put(StreamsConfig.DEFAULT_PRODUCTION_EXCEPTION_HANDLER_CLASS_CONFIG, DeadLetterProductionHandler.class);
+        props.put(DeadLetterPublisher.CONFIG, deadLetterPublisher);
     
         return new KafkaStreamsConfiguration(props);
     }
 
-    // Создание стрима для обработки сообщений
+    // Kafka Streams запускается не вместе с контекстом, а после загрузки словаря цензуры из топика:
+    // иначе первые сообщения после старта прошли бы цензуру по пустому или неполному словарю
     @Bean
-    public KStream<String, Message> messageProcessorStream(StreamsBuilder builder) {
-        // Создаем поток из входного топика
-        KStream<String, Message> messagesStream = builder.stream(messagesTopic);
-
-        // Фильтрация сообщений по блокировкам и цензура
-        KStream<String, Message> filteredStream = messagesStream
-            .filter((key, message) -> {
+    public StreamsBuilderFactoryBeanConfigurer startAfterDictionaryLoaded() {
+        return factoryBean -> {
+            factoryBean.setAutoStartup(false);
+            censorshipService.dictionaryLoaded().thenRun(() -> {
                 try {
-                    // Проверка, заблокирован ли отправитель для получателя
-                    boolean isBlocked = blockedUserService.isUserBlocked(message.getReceiverId(), message.getUserId());
-                    log.info("Filtering message: key={}, message={}, isBlocked={}", key, message, isBlocked);
-                    // Передача только тех сообщений, которые не заблокированы
-                    return !isBlocked;
-                } catch (Exception e) {
-                    log.error("Error while filtering message: key={}, message={}: {}", key, message, e.getMessage(), e);
-                    return false; // В случае ошибки — сообщение не пропускается
-                }
-            })
-            .mapValues((key, message) -> {
-                try {
-                    // Цензура текста сообщения
-                    String censoredMessage = censorshipService.censorMessage(message.getMessage());
-
-                    log.info("Censoring message: key={}, message={}, censoredMessage={}", key, message, censoredMessage);
-                    // Возврат нового объекта Message с цензурированным текстом
-                    return new Message(message.getUserId(), message.getReceiverId(), censoredMessage, message.getTimestamp());
-                } catch (Exception e) {
-                    log.error("Error while censoring message: key={}, message={}: {}", key, message, e.getMessage(), e);
-                    return message; // В случае ошибки — оставить оригинальное сообщение
+                    factoryBean.start();
+                } catch (RuntimeException e) {
+                    log.error("Не удалось запустить Kafka Streams: {}", e.getMessage(), e);
                 }
             });
+        };
+    }
 
-        // Отправка обработанных сообщений в выходной топик
-        filteredStream.to(filteredMessagesTopic);
-        return filteredStream; // Возврат потока обработки
+    // Отправка в топик ошибок из обработчиков ошибок десериализации и записи Kafka Streams
+    @Bean(destroyMethod = "close")
+    public DeadLetterPublisher deadLetterPublisher() {
+        return new DeadLetterPublisher(deadLetterTopic, bootstrapAddress, deadLetterMaxBlockMs, pipelineMetrics);
+    }
+
+    // Создание стрима для обработки сообщений
+    @Bean
+    public KStream<String, ?> messageProcessorStream(StreamsBuilder builder) {
+        // Топология описана в MessagePipeline, чтобы ее можно было запускать и без Spring (бенчмарки на TopologyTestDriver)
+        MessagePipeline pipeline = new MessagePipeline(
+            messagesTopic,
+            blockedUserChangesTopic,
+            blockedUsersTopic,
+            filteredMessagesTopic,
+            deadLetterTopic,
+            message -> censorshipService.censorMessage(message, pipelineMetrics),
+            censorMaxAttempts,
+            PipelineObserver.of(
+                pipelineMetrics,
+                new PipelineTracer(tracingMode, tracingSampleRate, tracingMaxPerSecond)));
+        return pipeline.build(builder, topologyMode);
+    }
+
+    // Глобальная таблица словаря цензуры (хранилище censored-words-store для интерактивных запросов)
+    @Bean
+    public GlobalKTable<String, String> censoredWordsTable(StreamsBuilder builder) {
+        return MessagePipeline.censoredWordsTable(builder, censoredWordsTopic);
     }
 }
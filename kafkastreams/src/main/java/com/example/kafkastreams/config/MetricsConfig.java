@@ -0,0 +1,52 @@
+package com.example.kafkastreams.config;
+
+import com.example.kafkastreams.service.BlockedUserService;
+import com.example.kafkastreams.service.CensorshipService;
+import com.example.kafkastreams.stream.PipelineMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Метрики процессора сообщений (Micrometer, экспорт через /actuator/prometheus).
+ *
+ * Метрики клиентов Kafka Streams (process-rate, commit-latency, records-lag и т.д.)
+ * регистрирует Spring Boot: KafkaMetricsAutoConfiguration подключает
+ * KafkaStreamsMicrometerListener к фабрике Kafka Streams.
+ */
+@Configuration
+@Profile("processor")
+public class MetricsConfig {
+
+    // Счетчики и таймеры этапов конвейера обработки
+    @Bean
+    public PipelineMetrics pipelineMetrics(MeterRegistry registry) {
+        return new PipelineMetrics(registry);
+    }
+
+    // Текущий размер словаря цензурных слов
+    @Bean
+    public Gauge censoredWordsGauge(MeterRegistry registry, CensorshipService censorshipService) {
+        return Gauge.builder("censorship.dictionary.size", censorshipService, CensorshipService::getDictionarySize)
+            .description("Количество слов в словаре цензуры")
+            .register(registry);
+    }
+
+    // Версия словаря активного автомата цензуры (сумма offset'ов топика censored_words)
+    @Bean
+    public Gauge censoredWordsVersionGauge(MeterRegistry registry, CensorshipService censorshipService) {
+        return Gauge.builder("censorship.dictionary.version", censorshipService, CensorshipService::getDictionaryVersion)
+            .description("Версия словаря, по которой построен активный автомат цензуры")
+            .register(registry);
+    }
+
+    // Текущее количество пар блокировок
+    @Bean
+    public Gauge blockedUsersGauge(MeterRegistry registry, BlockedUserService blockedUserService) {
+        return Gauge.builder("blocked.users.pairs", blockedUserService, service -> service.getBlockedUsersIndex().size())
+            .description("Количество пар (пользователь, заблокированный пользователь)")
+            .register(registry);
+    }
+}
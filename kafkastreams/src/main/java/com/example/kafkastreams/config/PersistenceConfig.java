@@ -0,0 +1,34 @@
+package com.example.kafkastreams.config;
+
+import com.example.kafkastreams.service.WriteBehindPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("processor")
+public class PersistenceConfig {
+
+    // Задержка записи на диск после первого изменения (изменения за это время объединяются)
+    @Value("${persistence.flush-delay-ms:500}")
+    private long flushDelayMs;
+
+    // Количество изменений, при котором запись выполняется без ожидания задержки
+    @Value("${persistence.max-batch:10000}")
+    private int maxBatch;
+
+    // Вести журнал изменений (дописывание строк) вместо перезаписи всего файла
+    @Value("${persistence.changelog.enabled:false}")
+    private boolean changeLogEnabled;
+
+    // Количество записей журнала, после которого пишется полный снимок, а журнал очищается
+    @Value("${persistence.changelog.compact-every:100000}")
+    private int compactEvery;
+
+    // Настройки отложенной записи списков блокировок и цензурных слов
+    @Bean
+    public WriteBehindPersister.Settings persistenceSettings() {
+        return new WriteBehindPersister.Settings(flushDelayMs, maxBatch, changeLogEnabled, compactEvery);
+    }
+}
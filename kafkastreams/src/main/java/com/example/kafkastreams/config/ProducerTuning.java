@@ -0,0 +1,66 @@
+package com.example.kafkastreams.config;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Настройки пакетирования и сжатия продюсера сообщений (свойства {@code kafka.producer.*}).
+ *
+ * Значения по умолчанию совпадают с настройками клиента Kafka. Профиль Spring {@code throughput}
+ * (application-throughput.properties) переключает продюсер на большие пакеты с задержкой linger и сжатием.
+ *
+ * @param lingerMs          ожидание заполнения пакета, мс (linger.ms)
+ * @param batchSize         максимальный размер пакета на партицию, байт (batch.size)
+ * @param compressionType   сжатие пакетов: none, lz4, zstd, snappy, gzip (compression.type)
+ * @param bufferMemory      память под неотправленные пакеты, байт (buffer.memory)
+ * @param maxInFlight       неподтвержденных запросов на соединение (max.in.flight.requests.per.connection, не больше 5 при идемпотентности)
+ * @param acks              подтверждение записи: all, 1, 0 (acks)
+ * @param enableIdempotence идемпотентная запись без дублей при повторах (enable.idempotence)
+ */
+public record ProducerTuning(int lingerMs, int batchSize, String compressionType, long bufferMemory,
+                             int maxInFlight, String acks, boolean enableIdempotence) {
+
+    /**
+     * Префикс свойств.
+     */
+    public static final String PREFIX = "kafka.producer.";
+
+    /**
+     * Читает настройки по именам свойств {@code kafka.producer.*}; отсутствующие берутся по умолчанию клиента Kafka.
+     *
+     * @param properties источник свойств (Environment::getProperty, Properties::getProperty)
+     * @return настройки
+     */
+    public static ProducerTuning from(Function<String, String> properties) {
+        return new ProducerTuning(
+            Integer.parseInt(get(properties, "linger-ms", "0")),
+            Integer.parseInt(get(properties, "batch-size", "16384")),
+            get(properties, "compression-type", "none"),
+            Long.parseLong(get(properties, "buffer-memory", "33554432")),
+            Integer.parseInt(get(properties, "max-in-flight", "5")),
+            get(properties, "acks", "all"),
+            Boolean.parseBoolean(get(properties, "enable-idempotence", "true")));
+    }
+
+    /**
+     * Добавляет настройки в конфигурацию продюсера.
+     *
+     * @param config конфигурация продюсера
+     */
+    public void applyTo(Map<String, Object> config) {
+        config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        config.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+        config.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlight);
+        config.put(ProducerConfig.ACKS_CONFIG, acks);
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, enableIdempotence);
+    }
+
+    private static String get(Function<String, String> properties, String name, String defaultValue) {
+        String value = properties.apply(PREFIX + name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+}
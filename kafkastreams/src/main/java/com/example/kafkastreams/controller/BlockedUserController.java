@@ -1,24 +1,55 @@
 package com.example.kafkastreams.controller;
 
+import com.example.kafkastreams.model.BlockedUserPair;
+import com.example.kafkastreams.model.Page;
+import com.example.kafkastreams.model.UserBlockedUsers;
 import com.example.kafkastreams.service.BlockedUserService;
+import com.example.kafkastreams.service.BlockedUsersIndex;
+import com.example.kafkastreams.service.InteractiveQueryService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.context.annotation.Profile;
 
-import java.util.Map;
-import java.util.Set;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
 @Profile("processor")
 @RequestMapping("/blocked-users")
 public class BlockedUserController {
 
+    // Максимальный размер страницы списка блокировок
+    private static final int MAX_PAGE_SIZE = 10000;
+
+    // Сколько пользователей читается из снимка за один шаг при потоковой выдаче списка
+    private static final int STREAM_CHUNK = 1024;
+
+    // Заголовок ответа устаревших методов
+    private static final String DEPRECATION = "Deprecation";
+
+    // Фабрика потоковой записи JSON
+    private static final JsonFactory JSON = new JsonFactory();
+
     // Сервис для управления списком заблокированных пользователей
     private final BlockedUserService blockedUserService;
 
+    // Интерактивные запросы к хранилищу блокировок Kafka Streams
+    private final InteractiveQueryService interactiveQueryService;
+
     // Конструктор для внедрения зависимостей
-    public BlockedUserController(BlockedUserService blockedUserService) {
+    public BlockedUserController(BlockedUserService blockedUserService, InteractiveQueryService interactiveQueryService) {
         this.blockedUserService = blockedUserService;
+        this.interactiveQueryService = interactiveQueryService;
     }
 
     /**
@@ -49,15 +80,123 @@ public class BlockedUserController {
         return ResponseEntity.ok("User " + blockedUserId + " unblocked for user " + userId);
     }
 
+    /**
+     * Пакетное добавление или удаление блокировок из потока строк.
+     * Тело запроса — NDJSON ({@code {"userId":1,"blockedUserId":20}} в строке, Content-Type: application/x-ndjson)
+     * или CSV ({@code 1,20} в строке, строка заголовка {@code userId,blockedUserId} допускается).
+     * Ответ — NDJSON: строка прогресса после каждого пакета и итоговая строка.
+     * Пример запроса: POST /blocked-users/bulk?operation=add&batchSize=10000 (тело: --data-binary @blocks.csv)
+     *
+     * @param operation   add — добавить блокировки, remove — снять
+     * @param batchSize   количество строк в пакете
+     * @param contentType формат тела запроса
+     * @param body        тело запроса
+     * @param response    ответ, в который пишется прогресс
+     * @throws IOException ошибка чтения запроса или записи ответа
+     */
+    @PostMapping("/bulk")
+    public void bulkBlockedUsers(@RequestParam(defaultValue = "add") String operation,
+                                 @RequestParam(defaultValue = "10000") int batchSize,
+                                 @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+                                 InputStream body,
+                                 HttpServletResponse response) throws IOException {
+        boolean block = switch (operation) {
+            case "add" -> true;
+            case "remove" -> false;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "operation must be add or remove");
+        };
+        boolean json = BulkImport.isJson(contentType);
+        response.setContentType(BulkImport.NDJSON);
+        BulkImport.run(body, response.getOutputStream(), Math.max(1, batchSize),
+            line -> json ? BulkImport.readJson(line, BlockedUserPair.class) : parseCsv(line),
+            pairs -> blockedUserService.applyBlockedUsers(pairs, block));
+    }
+
     /**
      * Получить текущий список всех блокировок.
+     * Ответ (карта пользователь -> список заблокированных) пишется потоково из снимка индекса
+     * по мере обхода, без построения всей карты в памяти.
+     * Индекс — локальная копия топика blocked_users: сразу после изменения или старта экземпляр может отставать.
      * Пример запроса: GET /blocked-users/list
      *
      * @return карта пользователей и списков заблокированных ими пользователей
+     * @deprecated читает состояние этого экземпляра; списки получателей — GET /state/blocked-users/{userId}
      */
+    @Deprecated
     @GetMapping("/list")
-    public ResponseEntity<Map<Integer, Set<Integer>>> listBlockedUsers() {
-        Map<Integer, Set<Integer>> blockedUsers = blockedUserService.getBlockedUsers();
-        return ResponseEntity.ok(blockedUsers);
+    public ResponseEntity<StreamingResponseBody> listBlockedUsers() {
+        BlockedUsersIndex snapshot = blockedUserService.getBlockedUsersIndex();
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = JSON.createGenerator(out)) {
+                json.writeStartObject();
+                int[] users = snapshot.usersAfter(null, STREAM_CHUNK);
+                while (users.length > 0) {
+                    for (int userId : users) {
+                        int[] blocked = snapshot.blockedBy(userId);
+                        json.writeFieldName(Integer.toString(userId));
+                        json.writeArray(blocked, 0, blocked.length);
+                    }
+                    users = snapshot.usersAfter(users[users.length - 1], STREAM_CHUNK);
+                }
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().header(DEPRECATION, "true").contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Получить страницу списка блокировок в порядке возрастания ID пользователя.
+     * Пример запроса: GET /blocked-users/page?limit=100, следующая страница: GET /blocked-users/page?after={nextCursor}&limit=100
+     *
+     * @param after ID последнего пользователя предыдущей страницы (курсор), для первой страницы не передается
+     * @param limit размер страницы (не более 10000)
+     * @return пользователи с блокировками и курсор следующей страницы
+     * @deprecated читает локальную копию топика blocked_users на этом экземпляре (см. {@link #listBlockedUsers()});
+     *             списки получателей — GET /state/blocked-users/{userId}
+     */
+    @Deprecated
+    @GetMapping("/page")
+    public ResponseEntity<Page<UserBlockedUsers>> pageBlockedUsers(@RequestParam(required = false) Integer after,
+                                                                   @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        BlockedUsersIndex snapshot = blockedUserService.getBlockedUsersIndex();
+        int[] users = snapshot.usersAfter(after, pageSize);
+        List<UserBlockedUsers> items = new ArrayList<>(users.length);
+        for (int userId : users) {
+            items.add(new UserBlockedUsers(userId, snapshot.blockedBy(userId)));
+        }
+        String nextCursor = users.length == pageSize ? Integer.toString(users[users.length - 1]) : null;
+        return ResponseEntity.ok().header(DEPRECATION, "true").body(new Page<>(items, nextCursor));
+    }
+
+    /**
+     * Получить список блокировок одного пользователя из хранилища blocked-users-store
+     * (на экземпляре-владельце ключа, как GET /state/blocked-users/{userId}).
+     * Пример запроса: GET /blocked-users/1
+     *
+     * @param userId ID пользователя
+     * @return отсортированный список заблокированных им пользователей (пустой, если блокировок нет)
+     */
+    @GetMapping("/{userId}")
+    public ResponseEntity<UserBlockedUsers> getBlockedUsers(@PathVariable int userId) {
+        return ResponseEntity.ok(interactiveQueryService.blockedUsers(userId));
+    }
+
+    // Строка CSV "userId,blockedUserId"; строка заголовка пропускается
+    private static BlockedUserPair parseCsv(String line) {
+        if (line.regionMatches(true, 0, "userId", 0, 6)) {
+            return null;
+        }
+        int comma = line.indexOf(',');
+        if (comma < 0) {
+            throw new IllegalArgumentException("expected userId,blockedUserId");
+        }
+        try {
+            return new BlockedUserPair(
+                Integer.parseInt(line.substring(0, comma).trim()),
+                Integer.parseInt(line.substring(comma + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid user id: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,162 @@
+package com.example.kafkastreams.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Потоковая пакетная загрузка: тело запроса читается построчно (NDJSON или CSV),
+ * разобранные строки применяются пакетами по batchSize, после каждого пакета в ответ
+ * (NDJSON) сразу пишется строка с прогрессом и отклоненными строками.
+ * Тело запроса целиком в памяти не хранится.
+ */
+final class BulkImport {
+
+    /**
+     * Тип содержимого ответа с прогрессом.
+     */
+    static final String NDJSON = "application/x-ndjson";
+
+    // Сколько отклоненных строк перечислять в отчете по одному пакету
+    private static final int MAX_REPORTED_REJECTS = 100;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Отклоненная строка запроса.
+     *
+     * @param line   номер строки (с 1)
+     * @param reason причина
+     */
+    record Reject(long line, String reason) {
+    }
+
+    /**
+     * Отчет по одному пакету.
+     *
+     * @param batch     номер пакета (с 1)
+     * @param lines     прочитано строк с начала запроса
+     * @param accepted  строк пакета, прошедших разбор
+     * @param published изменений, опубликованных в топик (без повторов внутри пакета; публикуются все, так как
+     *                  локальное состояние может отставать). Применяются они позже, при чтении топика
+     * @param rejected  отклоненных строк пакета
+     * @param rejects   первые отклоненные строки пакета
+     */
+    record BatchReport(int batch, long lines, int accepted, int published, int rejected, List<Reject> rejects) {
+    }
+
+    /**
+     * Итог загрузки (последняя строка ответа).
+     */
+    record Summary(boolean done, long lines, long accepted, long published, long rejected) {
+    }
+
+    private BulkImport() {
+    }
+
+    /**
+     * Формат строк тела запроса по Content-Type: NDJSON для application/x-ndjson и application/json, иначе CSV.
+     *
+     * @param contentType заголовок Content-Type
+     * @return true, если строки — JSON-объекты
+     */
+    static boolean isJson(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        return mediaType.getSubtype().endsWith("ndjson") || mediaType.getSubtype().endsWith("json");
+    }
+
+    /**
+     * Разбор строки NDJSON в объект.
+     *
+     * @param line строка
+     * @param type класс объекта
+     * @return объект
+     */
+    static <T> T readJson(String line, Class<T> type) {
+        try {
+            return MAPPER.readValue(line, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Читает тело запроса и применяет строки пакетами.
+     *
+     * @param body      тело запроса
+     * @param out       поток ответа
+     * @param batchSize размер пакета
+     * @param parser    разбор строки; IllegalArgumentException отклоняет строку, null — пропускает (заголовок CSV)
+     * @param applier   применение пакета, возвращает количество опубликованных изменений
+     * @throws IOException ошибка чтения запроса или записи ответа
+     */
+    static <T> void run(InputStream body, OutputStream out, int batchSize,
+                        Function<String, T> parser, ToIntFunction<List<T>> applier) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        List<T> batch = new ArrayList<>(Math.min(batchSize, 65536));
+        List<Reject> rejects = new ArrayList<>();
+        int rejected = 0;
+        int batchNumber = 0;
+        long lineNumber = 0;
+        long totalAccepted = 0;
+        long totalPublished = 0;
+        long totalRejected = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                T item = parser.apply(line.strip());
+                if (item != null) {
+                    batch.add(item);
+                }
+            } catch (RuntimeException e) {
+                rejected++;
+                if (rejects.size() < MAX_REPORTED_REJECTS) {
+                    rejects.add(new Reject(lineNumber, e.getMessage()));
+                }
+            }
+            if (batch.size() + rejected >= batchSize) {
+                int published = batch.isEmpty() ? 0 : applier.applyAsInt(batch);
+                write(out, new BatchReport(++batchNumber, lineNumber, batch.size(), published, rejected, rejects));
+                totalAccepted += batch.size();
+                totalPublished += published;
+                totalRejected += rejected;
+                batch = new ArrayList<>(batch.size());
+                rejects = new ArrayList<>();
+                rejected = 0;
+            }
+        }
+        if (!batch.isEmpty() || rejected > 0) {
+            int published = batch.isEmpty() ? 0 : applier.applyAsInt(batch);
+            write(out, new BatchReport(++batchNumber, lineNumber, batch.size(), published, rejected, rejects));
+            totalAccepted += batch.size();
+            totalPublished += published;
+            totalRejected += rejected;
+        }
+        write(out, new Summary(true, lineNumber, totalAccepted, totalPublished, totalRejected));
+    }
+
+    // Строка NDJSON отправляется клиенту сразу, не дожидаясь конца загрузки
+    private static void write(OutputStream out, Object report) throws IOException {
+        out.write(MAPPER.writeValueAsBytes(report));
+        out.write('\n');
+        out.flush();
+    }
+}
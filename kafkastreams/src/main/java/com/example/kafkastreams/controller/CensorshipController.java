@@ -1,23 +1,48 @@
 package com.example.kafkastreams.controller;
 
 import com.example.kafkastreams.service.CensorshipService;
+import com.example.kafkastreams.service.InteractiveQueryService;
+import com.example.kafkastreams.model.Page;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.context.annotation.Profile;
 
-import java.util.Set;
+import java.io.IOException;
+import java.io.InputStream;
 
 @RestController
 @Profile("processor")
 @RequestMapping("/censorship")
 public class CensorshipController {
 
+    // Максимальный размер страницы списка слов
+    private static final int MAX_PAGE_SIZE = 10000;
+
+    // Сколько слов читается из хранилища за один шаг при потоковой выдаче списка
+    private static final int STREAM_CHUNK = 1024;
+
+    // Фабрика потоковой записи JSON
+    private static final JsonFactory JSON = new JsonFactory();
+
     // Сервис для управления списком цензурируемых слов
     private final CensorshipService censorshipService;
 
-    // Конструктор для внедрения зависимости
-    public CensorshipController(CensorshipService censorshipService) {
+    // Чтение словаря из глобального хранилища Kafka Streams (одинаково на всех экземплярах)
+    private final InteractiveQueryService interactiveQueryService;
+
+    // Конструктор для внедрения зависимостей
+    public CensorshipController(CensorshipService censorshipService, InteractiveQueryService interactiveQueryService) {
         this.censorshipService = censorshipService;
+        this.interactiveQueryService = interactiveQueryService;
     }
 
     /**
@@ -47,14 +72,90 @@ public class CensorshipController {
     }
 
     /**
-     * Получение текущего списка цензурируемых слов
+     * Пакетное добавление или удаление слов из потока строк.
+     * Тело запроса — NDJSON ({@code {"word":"example"}} в строке, Content-Type: application/x-ndjson)
+     * или текст/CSV (одно слово в строке). Слова публикуются в топик censored_words; автомат цензуры
+     * пересобирается в фоне при чтении топика, частые изменения объединяются в одну пересборку.
+     * Ответ — NDJSON: строка прогресса после каждого пакета и итоговая строка.
+     * Пример запроса: POST /censorship/bulk?operation=add (тело: --data-binary @words.txt)
+     *
+     * @param operation   add — добавить слова, remove — удалить
+     * @param batchSize   количество строк в пакете
+     * @param contentType формат тела запроса
+     * @param body        тело запроса
+     * @param response    ответ, в который пишется прогресс
+     * @throws IOException ошибка чтения запроса или записи ответа
+     */
+    @PostMapping("/bulk")
+    public void bulkCensoredWords(@RequestParam(defaultValue = "add") String operation,
+                                  @RequestParam(defaultValue = "10000") int batchSize,
+                                  @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+                                  InputStream body,
+                                  HttpServletResponse response) throws IOException {
+        boolean add = switch (operation) {
+            case "add" -> true;
+            case "remove" -> false;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "operation must be add or remove");
+        };
+        boolean json = BulkImport.isJson(contentType);
+        response.setContentType(BulkImport.NDJSON);
+        BulkImport.run(body, response.getOutputStream(), Math.max(1, batchSize),
+            line -> json ? readWord(line) : line,
+            words -> censorshipService.applyCensoredWords(words, add));
+    }
+
+    /**
+     * Получение текущего списка цензурируемых слов из глобального хранилища censored-words-store.
+     * Массив слов пишется в ответ потоково, по страницам хранилища.
      * Пример запроса: GET /censorship/list
      *
      * @return множество слов, находящихся в списке цензуры
      */
     @GetMapping("/list")
-    public ResponseEntity<Set<String>> listCensoredWords() {
-        Set<String> words = censorshipService.getCensoredWords();
-        return ResponseEntity.ok(words);
+    public ResponseEntity<StreamingResponseBody> listCensoredWords() {
+        // Первая страница читается до ответа, чтобы недоступность хранилища вернулась статусом 503
+        Page<String> first = interactiveQueryService.censoredWords(null, STREAM_CHUNK);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = JSON.createGenerator(out)) {
+                json.writeStartArray();
+                Page<String> page = first;
+                while (true) {
+                    for (String word : page.getItems()) {
+                        json.writeString(word);
+                    }
+                    if (page.getNextCursor() == null) {
+                        break;
+                    }
+                    page = interactiveQueryService.censoredWords(page.getNextCursor(), STREAM_CHUNK);
+                }
+                json.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Получение страницы списка цензурируемых слов из глобального хранилища censored-words-store
+     * (в порядке байтов UTF-8, для слов без символов вне BMP — в алфавитном порядке кодов).
+     * Пример запроса: GET /censorship/page?limit=100, следующая страница: GET /censorship/page?after={nextCursor}&limit=100
+     *
+     * @param after последнее слово предыдущей страницы (курсор), для первой страницы не передается
+     * @param limit размер страницы (не более 10000)
+     * @return слова страницы и курсор следующей страницы
+     */
+    @GetMapping("/page")
+    public ResponseEntity<Page<String>> pageCensoredWords(@RequestParam(required = false) String after,
+                                                          @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(interactiveQueryService.censoredWords(after, pageSize));
+    }
+
+    // Строка NDJSON {"word":"..."}
+    private static String readWord(String line) {
+        JsonNode word = BulkImport.readJson(line, JsonNode.class).get("word");
+        if (word == null || !word.isTextual() || word.asText().isBlank()) {
+            throw new IllegalArgumentException("expected {\"word\":\"...\"}");
+        }
+        return word.asText();
     }
 }
@@ -0,0 +1,39 @@
+package com.example.kafkastreams.controller;
+
+import com.example.kafkastreams.stream.PipelineMetrics;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+@Component
+@Profile("processor")
+@Endpoint(id = "censorship")
+public class CensorshipMetricsEndpoint {
+
+    // Количество слов в ответе по умолчанию
+    private static final int DEFAULT_LIMIT = 10;
+
+    // Метрики конвейера со счетчиками срабатываний по словам
+    private final PipelineMetrics pipelineMetrics;
+
+    // Конструктор для внедрения зависимости
+    public CensorshipMetricsEndpoint(PipelineMetrics pipelineMetrics) {
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /**
+     * Наиболее часто заменяемые цензурные слова.
+     * Пример запроса: GET /actuator/censorship?limit=20
+     *
+     * @param limit количество слов (по умолчанию 10)
+     * @return слово -> количество замен, по убыванию
+     */
+    @ReadOperation
+    public Map<String, Long> topCensoredWords(@Nullable Integer limit) {
+        return pipelineMetrics.topCensoredWords(limit == null || limit <= 0 ? DEFAULT_LIMIT : limit);
+    }
+}
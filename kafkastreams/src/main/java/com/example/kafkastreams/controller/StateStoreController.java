@@ -0,0 +1,53 @@
+package com.example.kafkastreams.controller;
+
+import com.example.kafkastreams.model.UserBlockedUsers;
+import com.example.kafkastreams.service.InteractiveQueryService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.context.annotation.Profile;
+
+import java.util.Map;
+
+@RestController
+@Profile("processor")
+@RequestMapping("/state")
+public class StateStoreController {
+
+    // Сервис интерактивных запросов к хранилищам состояния Kafka Streams
+    private final InteractiveQueryService interactiveQueryService;
+
+    // Конструктор для внедрения зависимости
+    public StateStoreController(InteractiveQueryService interactiveQueryService) {
+        this.interactiveQueryService = interactiveQueryService;
+    }
+
+    /**
+     * Блокировки получателя из хранилища состояния blocked-users-store.
+     * Запрос выполняется на экземпляре, которому принадлежит партиция ключа; другой экземпляр перенаправит его туда.
+     * Пример запроса: GET /state/blocked-users/1
+     *
+     * @param userId ID получателя
+     * @param local  true — только локальные партиции, без перенаправления (используется между экземплярами)
+     * @return отсортированный список заблокированных им отправителей
+     */
+    @GetMapping("/blocked-users/{userId}")
+    public ResponseEntity<UserBlockedUsers> getBlockedUsers(@PathVariable int userId,
+                                                            @RequestParam(defaultValue = "false") boolean local) {
+        UserBlockedUsers result = local
+            ? interactiveQueryService.localBlockedUsers(userId, null)
+            : interactiveQueryService.blockedUsers(userId);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Проверка слова по глобальному хранилищу словаря censored-words-store (локальная копия на каждом экземпляре).
+     * Пример запроса: GET /state/censored-words/example
+     *
+     * @param word слово
+     * @return слово и признак его наличия в словаре
+     */
+    @GetMapping("/censored-words/{word}")
+    public ResponseEntity<Map<String, Object>> isCensoredWord(@PathVariable String word) {
+        return ResponseEntity.ok(Map.of("word", word, "censored", interactiveQueryService.isCensoredWord(word)));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.kafkastreams.listener;
+
+import com.example.kafkastreams.service.BlockedUserService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.stereotype.Component;
+import org.springframework.context.annotation.Profile;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@Component
+@Profile("processor")
+public class BlockedUsersListener {
+
+    // Сервис блокировок, локальный индекс которого строится из топика
+    private final BlockedUserService blockedUserService;
+
+    // Конструктор для внедрения зависимости
+    public BlockedUsersListener(BlockedUserService blockedUserService) {
+        this.blockedUserService = blockedUserService;
+    }
+
+    /**
+     * Метод прослушивает компактный топик blocked_users, который пишет топология Kafka Streams.
+     * Слушатель работает без группы потребителей: каждый экземпляр назначает себе все партиции,
+     * при каждом старте читает их с начала и приходит к тем же спискам, что и остальные.
+     * Записи приходят пакетом за poll и применяются к индексу одним перестроением (при чтении топика с начала
+     * это одно копирование сегментов на пакет, а не на каждого пользователя).
+     *
+     * @param records записи: ключ — ID получателя, значение — отсортированный список заблокированных или null
+     */
+    @KafkaListener(
+        topicPartitions = @TopicPartition(
+            topic = "${kafka.topic.blocked-users}",
+            partitions = "0-#{${kafka.topic.partitions:1} - 1}",
+            partitionOffsets = @PartitionOffset(partition = "*", initialOffset = "0")),
+        containerFactory = "blockedUsersListenerContainerFactory")
+    public void listenBlockedUsers(List<ConsumerRecord<String, int[]>> records) {
+        // Записи одного ключа идут по порядку в одной партиции: остается последний список
+        Map<Integer, int[]> states = new HashMap<>();
+        for (ConsumerRecord<String, int[]> record : records) {
+            try {
+                states.put(Integer.parseInt(record.key()), record.value());
+            } catch (NumberFormatException e) {
+                log.warn("Пропущена запись блокировок с некорректным ключом: partition={}, offset={}", record.partition(), record.offset());
+            }
+        }
+        blockedUserService.applyBlockedUsersStates(states);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.kafkastreams.listener;
+
+import com.example.kafkastreams.service.CensorshipService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.stereotype.Component;
+import org.springframework.context.annotation.Profile;
+
+@Slf4j
+@Component
+@Profile("processor")
+public class CensoredWordsListener {
+
+    // Сервис цензуры, которому передаются изменения словаря
+    private final CensorshipService censorshipService;
+
+    // Конструктор для внедрения зависимости
+    public CensoredWordsListener(CensorshipService censorshipService) {
+        this.censorshipService = censorshipService;
+    }
+
+    /**
+     * Метод прослушивает компактный топик словаря цензуры.
+     * Слушатель работает без группы потребителей: каждый экземпляр назначает себе все партиции,
+     * при каждом старте читает их с начала и приходит к тому же словарю, что и остальные.
+     *
+     * @param record запись: ключ — слово, значение — слово или null (удаление)
+     */
+    @KafkaListener(
+        topicPartitions = @TopicPartition(
+            topic = "${kafka.topic.censored-words}",
+            partitions = "0-#{${kafka.topic.partitions:1} - 1}",
+            partitionOffsets = @PartitionOffset(partition = "*", initialOffset = "0")),
+        containerFactory = "censoredWordsListenerContainerFactory")
+    public void listenDictionaryChanges(ConsumerRecord<String, String> record) {
+        String word = record.key();
+        if (word == null || word.isBlank()) {
+            log.warn("Пропущена запись словаря без ключа: partition={}, offset={}", record.partition(), record.offset());
+            // Offset все равно учитывается, иначе загрузка словаря при старте не дойдет до конца партиции
+            word = null;
+        }
+        censorshipService.applyDictionaryChange(word, record.value() != null, record.partition(), record.offset());
+    }
+}
@@ -19,8 +19,11 @@ public class MessageListener {
      */
     @KafkaListener(topics = "${kafka.topic.filtered-messages}", groupId = "filtered-group")
     public void listenFilteredMessages(Message message) {
-        // Вывод полученного сообщения в консоль
-        log.info("Received message after filtering: {}", message);
+        // Сообщение целиком выводится только на уровне DEBUG: на INFO форматирование каждого сообщения
+        // через toString() нагружало бы поток слушателя и лог при любой нагрузке
+        if (log.isDebugEnabled()) {
+            log.debug("Received message after filtering: {}", message);
+        }
     }
 
     /**
@@ -32,6 +35,6 @@ public class MessageListener {
      */
     // @KafkaListener(topics = "${kafka.topic.messages}", groupId = "all-messages-group")
     // public void listenAllMessages(Message message) {
-    //     log.info("Received message without filtering: {}", message);
+    //     log.debug("Received message without filtering: {}", message);
     // }
 }
@@ -0,0 +1,21 @@
+package com.example.kafkastreams.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Изменение одной блокировки (значение топика blocked_user_changes, ключ — ID получателя).
+ * Изменения идемпотентны: повторная блокировка или снятие отсутствующей блокировки ничего не меняют.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BlockedUserChange {
+
+    // ID пользователя, которого блокируют или разблокируют
+    private int blockedUserId;
+
+    // true — блокировка, false — снятие блокировки
+    private boolean blocked;
+}
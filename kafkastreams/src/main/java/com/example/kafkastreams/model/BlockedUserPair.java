@@ -0,0 +1,20 @@
+package com.example.kafkastreams.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Пара блокировки для пакетных операций: пользователь и заблокированный им пользователь.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BlockedUserPair {
+
+    // ID пользователя, который блокирует
+    private int userId;
+
+    // ID пользователя, которого блокируют
+    private int blockedUserId;
+}
@@ -0,0 +1,24 @@
+package com.example.kafkastreams.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Страница списка при курсорной пагинации.
+ *
+ * @param <T> тип элементов
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Page<T> {
+
+    // Элементы страницы
+    private List<T> items;
+
+    // Курсор следующей страницы (передается в параметре after) или null, если страница последняя
+    private String nextCursor;
+}
@@ -0,0 +1,20 @@
+package com.example.kafkastreams.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Список блокировок одного пользователя.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserBlockedUsers {
+
+    // ID пользователя
+    private int userId;
+
+    // Отсортированные ID пользователей, заблокированных userId
+    private int[] blockedUserIds;
+}
@@ -0,0 +1,69 @@
+package com.example.kafkastreams.serde;
+
+import com.example.kafkastreams.model.BlockedUserChange;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serde для изменения одной блокировки (значение топика blocked_user_changes).
+ *
+ * Формат: 1 байт операции (1 — блокировка, 0 — снятие) и 4-байтовый ID заблокированного пользователя (big-endian).
+ */
+public class BlockedUserChangeSerde implements Serde<BlockedUserChange> {
+
+    // Размер сериализованного изменения в байтах
+    static final int SIZE = 1 + Integer.BYTES;
+
+    private final BlockedUserChangeSerializer serializer = new BlockedUserChangeSerializer();
+    private final BlockedUserChangeDeserializer deserializer = new BlockedUserChangeDeserializer();
+
+    @Override
+    public Serializer<BlockedUserChange> serializer() {
+        return serializer;
+    }
+
+    @Override
+    public Deserializer<BlockedUserChange> deserializer() {
+        return deserializer;
+    }
+
+    /**
+     * Сериализатор изменения блокировки.
+     */
+    public static class BlockedUserChangeSerializer implements Serializer<BlockedUserChange> {
+
+        @Override
+        public byte[] serialize(String topic, BlockedUserChange change) {
+            if (change == null) {
+                return null;
+            }
+            return ByteBuffer.allocate(SIZE)
+                .put((byte) (change.isBlocked() ? 1 : 0))
+                .putInt(change.getBlockedUserId())
+                .array();
+        }
+    }
+
+    /**
+     * Десериализатор изменения блокировки.
+     */
+    public static class BlockedUserChangeDeserializer implements Deserializer<BlockedUserChange> {
+
+        @Override
+        public BlockedUserChange deserialize(String topic, byte[] data) {
+            if (data == null) {
+                return null;
+            }
+            if (data.length != SIZE || (data[0] != 0 && data[0] != 1)) {
+                throw new SerializationException("Некорректное изменение блокировки: " + data.length + " байт");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            boolean blocked = buffer.get() == 1;
+            return new BlockedUserChange(buffer.getInt(), blocked);
+        }
+    }
+}
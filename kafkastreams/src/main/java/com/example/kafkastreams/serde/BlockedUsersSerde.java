@@ -0,0 +1,70 @@
+package com.example.kafkastreams.serde;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serde для списка заблокированных пользователей одного получателя (значение топика blocked_users).
+ *
+ * Формат: подряд идущие 4-байтовые ID (big-endian) в порядке возрастания.
+ * Значение null (tombstone) означает, что у пользователя больше нет блокировок.
+ */
+public class BlockedUsersSerde implements Serde<int[]> {
+
+    private final BlockedUsersSerializer serializer = new BlockedUsersSerializer();
+    private final BlockedUsersDeserializer deserializer = new BlockedUsersDeserializer();
+
+    @Override
+    public Serializer<int[]> serializer() {
+        return serializer;
+    }
+
+    @Override
+    public Deserializer<int[]> deserializer() {
+        return deserializer;
+    }
+
+    /**
+     * Сериализатор отсортированного массива ID.
+     */
+    public static class BlockedUsersSerializer implements Serializer<int[]> {
+
+        @Override
+        public byte[] serialize(String topic, int[] blockedUserIds) {
+            if (blockedUserIds == null) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(blockedUserIds.length * Integer.BYTES);
+            for (int id : blockedUserIds) {
+                buffer.putInt(id);
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * Десериализатор отсортированного массива ID.
+     */
+    public static class BlockedUsersDeserializer implements Deserializer<int[]> {
+
+        @Override
+        public int[] deserialize(String topic, byte[] data) {
+            if (data == null) {
+                return null;
+            }
+            if (data.length % Integer.BYTES != 0) {
+                throw new SerializationException("Некорректная длина списка блокировок: " + data.length + " байт");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            int[] blockedUserIds = new int[data.length / Integer.BYTES];
+            for (int i = 0; i < blockedUserIds.length; i++) {
+                blockedUserIds[i] = buffer.getInt();
+            }
+            return blockedUserIds;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.kafkastreams.serde;
+
+import com.example.kafkastreams.model.Message;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Десериализатор компактного бинарного формата {@link Message} (см. {@link MessageSerializer}).
+ *
+ * Для обратной совместимости записи в JSON (первый байт '{') передаются в {@link JsonDeserializer},
+ * поэтому потребителей можно переключить на бинарный формат раньше продюсеров.
+ */
+public class MessageDeserializer implements Deserializer<Message> {
+
+    // Десериализатор для записей, созданных до перехода на бинарный формат
+    private final JsonDeserializer<Message> jsonDeserializer = new JsonDeserializer<>(Message.class, false);
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonDeserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public Message deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public Message deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (isJson(data)) {
+            return headers != null ? jsonDeserializer.deserialize(topic, headers, data) : jsonDeserializer.deserialize(topic, data);
+        }
+        checkVersion(data);
+
+        long cursor = readRawVarint(data, 1);
+        int userId = unzigzag((int) cursor);
+        cursor = readRawVarint(data, next(cursor));
+        int receiverId = unzigzag((int) cursor);
+        int position = next(cursor);
+        if (position >= data.length) {
+            throw new SerializationException("Обрезанное значение сообщения");
+        }
+        int flags = data[position++];
+
+        Instant timestamp = null;
+        if ((flags & MessageSerializer.FLAG_TIMESTAMP) != 0) {
+            long raw = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= data.length || shift > 63) {
+                    throw new SerializationException("Некорректная временная метка сообщения");
+                }
+                b = data[position++];
+                raw |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            timestamp = Instant.ofEpochMilli((raw >>> 1) ^ -(raw & 1));
+        }
+        String text = null;
+        if ((flags & MessageSerializer.FLAG_TEXT) != 0) {
+            cursor = readRawVarint(data, position);
+            int length = (int) cursor;
+            position = next(cursor);
+            if (length < 0 || position + length > data.length) {
+                throw new SerializationException("Некорректная длина текста сообщения: " + length);
+            }
+            text = new String(data, position, length, StandardCharsets.UTF_8);
+        }
+        return new Message(userId, receiverId, text, timestamp);
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+
+    /**
+     * Проверяет, записано ли значение в JSON (до перехода на бинарный формат).
+     *
+     * @param data сериализованное значение
+     * @return true для JSON
+     */
+    public static boolean isJson(byte[] data) {
+        return data.length > 0 && data[0] == '{';
+    }
+
+    /**
+     * Читает ID отправителя из бинарного значения без разбора текста сообщения.
+     *
+     * @param data сериализованное значение в бинарном формате
+     * @return ID отправителя
+     */
+    public static int readUserId(byte[] data) {
+        checkVersion(data);
+        return unzigzag((int) readRawVarint(data, 1));
+    }
+
+    /**
+     * Читает ID получателя из бинарного значения без разбора текста сообщения.
+     *
+     * @param data сериализованное значение в бинарном формате
+     * @return ID получателя
+     */
+    public static int readReceiverId(byte[] data) {
+        checkVersion(data);
+        long cursor = readRawVarint(data, 1);
+        return unzigzag((int) readRawVarint(data, next(cursor)));
+    }
+
+    private static void checkVersion(byte[] data) {
+        if (data.length == 0 || data[0] != MessageSerializer.VERSION) {
+            throw new SerializationException("Неподдерживаемая версия формата сообщения: " + (data.length == 0 ? "пусто" : data[0]));
+        }
+    }
+
+    // Читает varint с позиции position; младшие 32 бита результата — значение, старшие — позиция следующего байта
+    private static long readRawVarint(byte[] data, int position) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position >= data.length) {
+                throw new SerializationException("Обрезанное значение сообщения");
+            }
+            byte b = data[position++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (value & 0xFFFFFFFFL) | ((long) position << 32);
+            }
+        }
+        throw new SerializationException("Некорректный varint в сообщении");
+    }
+
+    private static int next(long cursor) {
+        return (int) (cursor >>> 32);
+    }
+
+    private static int unzigzag(int raw) {
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.kafkastreams.serde;
+
+import com.example.kafkastreams.model.Message;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerde;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+/**
+ * Формат значений {@link Message} в топиках messages и filtered_messages.
+ * Выбирается настройкой kafka.serde.message-format.
+ */
+public enum MessageFormat {
+
+    /**
+     * JSON через Jackson (исходный формат, с заголовком типа).
+     */
+    JSON,
+
+    /**
+     * Компактный бинарный формат (см. {@link MessageSerializer}); читает также записи в JSON.
+     */
+    BINARY;
+
+    /**
+     * Класс сериализатора значения для продюсера.
+     *
+     * @return класс сериализатора
+     */
+    public Class<?> serializerClass() {
+        return this == BINARY ? MessageSerializer.class : JsonSerializer.class;
+    }
+
+    /**
+     * Новый экземпляр десериализатора значения для потребителя.
+     *
+     * @return десериализатор
+     */
+    public Deserializer<Message> deserializer() {
+        return this == BINARY ? new MessageDeserializer() : new JsonDeserializer<>(Message.class);
+    }
+
+    /**
+     * Класс Serde значения для Kafka Streams.
+     *
+     * @return класс Serde
+     */
+    public Class<?> serdeClass() {
+        return this == BINARY ? MessageSerde.class : JsonSerde.class;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.kafkastreams.serde;
+
+import com.example.kafkastreams.model.Message;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Заголовки записи с ID отправителя и получателя.
+ *
+ * Генератор дублирует ID из тела сообщения в заголовки (4 байта big-endian), чтобы процессор мог
+ * проверить блокировку до декодирования значения и не декодировать тело заблокированных сообщений.
+ */
+public final class MessageHeaders {
+
+    /**
+     * Заголовок с ID отправителя.
+     */
+    public static final String USER_ID = "userId";
+
+    /**
+     * Заголовок с ID получателя.
+     */
+    public static final String RECEIVER_ID = "receiverId";
+
+    /**
+     * Значение, возвращаемое {@link #readInt(Headers, String)} при отсутствии заголовка.
+     */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    private MessageHeaders() {
+    }
+
+    /**
+     * Добавляет заголовки с ID отправителя и получателя.
+     *
+     * @param headers заголовки записи
+     * @param message сообщение
+     */
+    public static void write(Headers headers, Message message) {
+        headers.remove(USER_ID).add(USER_ID, toBytes(message.getUserId()));
+        headers.remove(RECEIVER_ID).add(RECEIVER_ID, toBytes(message.getReceiverId()));
+    }
+
+    /**
+     * Читает целочисленный заголовок без выделения памяти.
+     *
+     * @param headers заголовки записи
+     * @param key     имя заголовка
+     * @return значение или {@link #ABSENT}, если заголовка нет или он другого размера
+     */
+    public static long readInt(Headers headers, String key) {
+        Header header = headers.lastHeader(key);
+        if (header == null) {
+            return ABSENT;
+        }
+        byte[] value = header.value();
+        if (value == null || value.length != Integer.BYTES) {
+            return ABSENT;
+        }
+        return (value[0] & 0xFF) << 24 | (value[1] & 0xFF) << 16 | (value[2] & 0xFF) << 8 | (value[3] & 0xFF);
+    }
+
+    private static byte[] toBytes(int value) {
+        return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.kafkastreams.serde;
+
+import com.example.kafkastreams.model.Message;
+import org.apache.kafka.common.serialization.Serdes;
+
+/**
+ * Serde компактного бинарного формата {@link Message} для Kafka Streams.
+ * Имеет конструктор без аргументов, чтобы его можно было указать в default.value.serde.
+ */
+public class MessageSerde extends Serdes.WrapperSerde<Message> {
+
+    public MessageSerde() {
+        super(new MessageSerializer(), new MessageDeserializer());
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.kafkastreams.serde;
+
+import com.example.kafkastreams.model.Message;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Компактный бинарный сериализатор {@link Message}.
+ *
+ * Формат версии 1:
+ * <pre>
+ * [версия: 1 байт][userId: zigzag varint][receiverId: zigzag varint][флаги: 1 байт]
+ * [timestamp: zigzag varlong, epoch millis — если установлен флаг TIMESTAMP]
+ * [длина текста: varint][текст: UTF-8 — если установлен флаг TEXT]
+ * </pre>
+ * ID идут сразу после версии, поэтому их можно прочитать без разбора текста
+ * (см. {@link MessageDeserializer#readUserId(byte[])}).
+ *
+ * Размер результата вычисляется заранее, и запись идет сразу в итоговый массив —
+ * без промежуточных буферов, рефлексии и заголовков типа.
+ */
+public class MessageSerializer implements Serializer<Message> {
+
+    /**
+     * Текущая версия формата.
+     */
+    public static final byte VERSION = 1;
+
+    // Флаги присутствия необязательных полей
+    static final int FLAG_TIMESTAMP = 1;
+    static final int FLAG_TEXT = 1 << 1;
+
+    @Override
+    public byte[] serialize(String topic, Message message) {
+        if (message == null) {
+            return null;
+        }
+        int userId = zigzag(message.getUserId());
+        int receiverId = zigzag(message.getReceiverId());
+        String text = message.getMessage();
+        boolean hasTimestamp = message.getTimestamp() != null;
+        long timestamp = hasTimestamp ? zigzag(message.getTimestamp().toEpochMilli()) : 0L;
+        int textBytes = text != null ? utf8Length(text) : 0;
+
+        int size = 1 + varintSize(userId) + varintSize(receiverId) + 1;
+        if (hasTimestamp) {
+            size += varlongSize(timestamp);
+        }
+        if (text != null) {
+            size += varintSize(textBytes) + textBytes;
+        }
+
+        byte[] buffer = new byte[size];
+        int position = 0;
+        buffer[position++] = VERSION;
+        position = writeVarint(buffer, position, userId);
+        position = writeVarint(buffer, position, receiverId);
+        buffer[position++] = (byte) ((hasTimestamp ? FLAG_TIMESTAMP : 0) | (text != null ? FLAG_TEXT : 0));
+        if (hasTimestamp) {
+            position = writeVarlong(buffer, position, timestamp);
+        }
+        if (text != null) {
+            position = writeVarint(buffer, position, textBytes);
+            writeUtf8(buffer, position, text);
+        }
+        return buffer;
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int varlongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static int writeVarlong(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    // Длина строки в UTF-8 (некорректные суррогаты кодируются как '?', как это делает String.getBytes)
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void writeUtf8(byte[] buffer, int position, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = (byte) '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
@@ -1,24 +1,39 @@
 package com.example.kafkastreams.service;
 
+import com.example.kafkastreams.model.BlockedUserChange;
+import com.example.kafkastreams.model.BlockedUserPair;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.Resource;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.context.annotation.Profile;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.File;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.type.MapType;
-import com.fasterxml.jackson.databind.type.CollectionType;
 
+/**
+ * Сервис блокировок пользователей.
+ *
+ * Источник истины — топик изменений blocked_user_changes: REST-операции только публикуют в него изменения
+ * отдельных пар, а списки получателей собирает топология Kafka Streams (единственный писатель) и публикует
+ * в компактный топик blocked_users. Локальный индекс — проекция blocked_users ({@code BlockedUsersListener}),
+ * поэтому все экземпляры приходят к одним и тем же спискам независимо от того, через какой экземпляр шли изменения.
+ *
+ * Файл blocked.users.file.path читается только для начального наполнения пустого топика изменений
+ * и ведется как копия проекции.
+ */
 @Slf4j
 @Service
 @Profile("processor")
@@ -28,34 +43,112 @@ public class BlockedUserService {
     @Value("${blocked.users.file.path:classpath:blocked_users.json}")
     private Resource blockedUsersResource;
 
-    // Структура, хранящая список заблокированных пользователей: пользователь -> множество заблокированных им пользователей
-    private final Map<Integer, Set<Integer>> blockedUsers = new ConcurrentHashMap<>();
+    /**
+     * Снимок индекса блокировок: пользователь -> отсортированный массив заблокированных им пользователей.
+     * Индекс неизменяемый, изменения публикуются заменой volatile-ссылки (copy-on-write),
+     * поэтому проверка блокировки не берет блокировок и не выделяет память.
+     */
+    private volatile BlockedUsersIndex blockedUsers = BlockedUsersIndex.empty();
 
     // Объект для сериализации/десериализации JSON
     private final ObjectMapper mapper = new ObjectMapper();
 
+    // Шаблон для публикации изменений отдельных блокировок в топик blocked_user_changes
+    @Autowired
+    private KafkaTemplate<String, BlockedUserChange> blockedUserChangesKafkaTemplate;
+
+    // Настройки подключения для проверки, пуст ли топик изменений
+    @Autowired
+    private KafkaAdmin kafkaAdmin;
+
+    // Название топика изменений блокировок (ключ — ID получателя, значение — изменение одной пары)
+    @Value("${kafka.topic.blocked-user-changes}")
+    private String blockedUserChangesTopic;
+
+    // Наполнять ли топик изменений из файла, если в него еще ни разу не писали
+    @Value("${blocked.users.seed-if-empty:true}")
+    private boolean seedIfEmpty;
+
+    // Настройки отложенной записи на диск
+    @Autowired
+    private WriteBehindPersister.Settings persistenceSettings;
+
+    // Отложенная запись списка в файл (null, если файл недоступен для записи, например, внутри jar)
+    private WriteBehindPersister persister;
+
+    // Блокировки из файла для начального наполнения (null после наполнения или если оно выключено)
+    private Map<Integer, Set<Integer>> seed;
+
     /**
-     * Инициализация данных о заблокированных пользователях после создания бина.
+     * Чтение файла для начального наполнения после создания бина.
+     * Файл читается до запуска слушателей, пока копия проекции еще не начала его перезаписывать.
      */
     @PostConstruct
     public void initializeBlockedUsers() {
-        loadBlockedUsersFromFile();
-        if (blockedUsers.isEmpty()) {
-            generateAndPersistBlockedUsers();
+        persister = createPersister();
+        if (seedIfEmpty) {
+            seed = loadBlockedUsersFromFile();
+            if (seed.isEmpty()) {
+                seed = generateBlockedUsers();
+            }
+        }
+        if (persister != null) {
+            // Проекция строится из топика заново, журнал относительно старого файла к ней не применим
+            persister.requireSnapshot();
         }
-        log.info("Текущий список заблокированных пользователей: {}", blockedUsers);
     }
 
     /**
-     * Проверка, заблокирован ли пользователь senderId для пользователя userId.
+     * Начальное наполнение топика изменений блокировками из файла.
+     * Выполняется, только если в топик еще ни разу не писали (топики к этому моменту уже созданы),
+     * поэтому перезапуск не возвращает снятые блокировки. Изменения идемпотентны: если несколько экземпляров
+     * стартуют впервые одновременно, они публикуют одни и те же блокировки.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedBlockedUserChanges() {
+        Map<Integer, Set<Integer>> pending = seed;
+        seed = null;
+        if (pending == null) {
+            return;
+        }
+        try {
+            if (!TopicOffsets.neverWritten(kafkaAdmin, blockedUserChangesTopic)) {
+                log.info("Топик {} уже содержит изменения, начальное наполнение из файла пропущено", blockedUserChangesTopic);
+                return;
+            }
+        } catch (IllegalStateException e) {
+            log.error("Начальное наполнение блокировок пропущено (будет повторено при следующем старте): {}", e.getMessage(), e);
+            return;
+        }
+        long pairs = 0;
+        for (Map.Entry<Integer, Set<Integer>> entry : pending.entrySet()) {
+            for (int blockedUserId : entry.getValue()) {
+                publish(entry.getKey(), blockedUserId, true);
+                pairs++;
+            }
+        }
+        log.info("Топик {} наполнен из файла: {} пар для {} пользователей", blockedUserChangesTopic, pairs, pending.size());
+    }
+
+    /**
+     * Запись несохраненных изменений при остановке приложения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (persister != null) {
+            persister.close();
+        }
+    }
+
+    /**
+     * Проверка, заблокирован ли пользователь senderId для пользователя userId (по локальной проекции).
      *
      * @param userId   пользователь, для которого проверяется блокировка
      * @param senderId пользователь, который может быть заблокирован
      * @return true, если senderId заблокирован для userId
      */
     public boolean isUserBlocked(int userId, int senderId) {
-        log.info("Проверяем, не заблокирован ли пользователь {} пользователем {}", senderId, userId);
-        return blockedUsers.containsKey(userId) && blockedUsers.get(userId).contains(senderId);
+        return blockedUsers.isBlocked(userId, senderId);
     }
 
     /**
@@ -64,37 +157,104 @@ public class BlockedUserService {
      * @return структура пользователь -> множество заблокированных пользователей
      */
     public Map<Integer, Set<Integer>> getBlockedUsers() {
-        return Collections.unmodifiableMap(blockedUsers);
+        return Collections.unmodifiableMap(blockedUsers.toMap());
+    }
+
+    /**
+     * Текущий снимок индекса блокировок.
+     *
+     * @return неизменяемый индекс
+     */
+    public BlockedUsersIndex getBlockedUsersIndex() {
+        return blockedUsers;
     }
 
     /**
      * Добавление пользователя в список заблокированных для другого пользователя.
+     * Изменение публикуется в топик и применяется топологией, локальный индекс обновится из blocked_users.
      *
      * @param userId         пользователь, для которого добавляется блокировка
      * @param blockedUserId пользователь, которого блокируют
      */
     public void addBlockedUser(int userId, int blockedUserId) {
-        blockedUsers.computeIfAbsent(userId, k -> new ConcurrentSkipListSet<>()).add(blockedUserId);
-        persistBlockedUsers();
+        publish(userId, blockedUserId, true);
     }
 
     /**
      * Удаление пользователя из списка заблокированных.
+     * Изменение публикуется в топик и применяется топологией, локальный индекс обновится из blocked_users.
      *
      * @param userId         пользователь, для которого удаляется блокировка
      * @param blockedUserId пользователь, блокировка которого удаляется
      */
     public void removeBlockedUser(int userId, int blockedUserId) {
-        if (blockedUsers.containsKey(userId)) {
-            blockedUsers.get(userId).remove(blockedUserId);
-            persistBlockedUsers();
+        publish(userId, blockedUserId, false);
+    }
+
+    /**
+     * Пакетное добавление или удаление блокировок: по одному изменению на каждую пару пакета.
+     * Пары не сверяются с локальным индексом — он может отставать от топика, а изменения идемпотентны.
+     *
+     * @param pairs пары (пользователь, заблокированный пользователь)
+     * @param block true — добавить блокировки, false — снять
+     * @return количество опубликованных изменений (без повторов внутри пакета)
+     */
+    public int applyBlockedUsers(List<BlockedUserPair> pairs, boolean block) {
+        Set<BlockedUserPair> distinct = new LinkedHashSet<>(pairs);
+        for (BlockedUserPair pair : distinct) {
+            publish(pair.getUserId(), pair.getBlockedUserId(), block);
         }
+        return distinct.size();
     }
 
     /**
-     * Генерация случайного списка заблокированных пользователей для каждого пользователя и сохранение их.
+     * Применение списков получателей, прочитанных из топика blocked_users за один poll, к локальной проекции.
+     * Индекс перестраивается один раз на пакет: каждый затронутый сегмент копируется один раз.
+     *
+     * @param states пользователь (получатель сообщений) -> отсортированный список заблокированных им пользователей
+     *               или null (tombstone); для повторяющегося в poll ключа — последний список
      */
-    private void generateAndPersistBlockedUsers() {
+    public synchronized void applyBlockedUsersStates(Map<Integer, int[]> states) {
+        Map<Integer, int[]> changed = new HashMap<>();
+        for (Map.Entry<Integer, int[]> state : states.entrySet()) {
+            int userId = state.getKey();
+            int[] current = blockedUsers.blockedBy(userId);
+            int[] updated = state.getValue() == null ? new int[0] : state.getValue();
+            if (!Arrays.equals(current, updated)) {
+                changed.put(userId, updated);
+                persistDifference(userId, current, updated);
+            }
+        }
+        if (!changed.isEmpty()) {
+            blockedUsers = blockedUsers.withBlockedLists(changed);
+        }
+    }
+
+    /**
+     * Публикация изменения одной блокировки в топик blocked_user_changes.
+     *
+     * @param userId        пользователь (получатель сообщений)
+     * @param blockedUserId заблокированный или разблокированный пользователь
+     * @param blocked       true — блокировка, false — снятие блокировки
+     */
+    private void publish(int userId, int blockedUserId, boolean blocked) {
+        blockedUserChangesKafkaTemplate.send(blockedUserChangesTopic, String.valueOf(userId),
+                new BlockedUserChange(blockedUserId, blocked))
+            .whenComplete((result, e) -> {
+                if (e != null) {
+                    log.error("Ошибка публикации изменения блокировки {} пользователем {}: {}",
+                        blockedUserId, userId, e.getMessage(), e);
+                }
+            });
+    }
+
+    /**
+     * Генерация случайного списка заблокированных пользователей для каждого пользователя.
+     *
+     * @return сгенерированные блокировки
+     */
+    private Map<Integer, Set<Integer>> generateBlockedUsers() {
+        Map<Integer, Set<Integer>> generated = new HashMap<>();
         for (int userId = 1; userId <= 100; userId++) {
             Random random = new Random();
             int numberOfBlockedUsers = random.nextInt(16); // 0 to 15
@@ -107,55 +267,117 @@ public class BlockedUserService {
             }
             Collections.shuffle(possibleBlockedUsers);
             blockedUserIds.addAll(possibleBlockedUsers.subList(0, numberOfBlockedUsers));
-            blockedUsers.put(userId, new ConcurrentSkipListSet<>(blockedUserIds));
+            generated.put(userId, blockedUserIds);
         }
-        persistBlockedUsers();
+        return generated;
     }
 
     /**
-     * Загрузка списка заблокированных пользователей из файла.
+     * Загрузка списка заблокированных пользователей из файла и журнала изменений (если он ведется).
+     *
+     * @return блокировки из файла (пустая карта, если файла нет)
      */
-	private void loadBlockedUsersFromFile() {
+	private Map<Integer, Set<Integer>> loadBlockedUsersFromFile() {
+		Map<Integer, Set<Integer>> loadedBlockedUsers = new HashMap<>();
 		try {
 			if (blockedUsersResource.exists()) {
 				log.info("Файл существует, загружаем из него данные.");
-				// Чтение содержимого файла
-				String content;
-				try (InputStream inputStream = blockedUsersResource.getInputStream()) {
-					content = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-					log.info("Содержимое файла blocked_users.json: {}", content);
-				}
-				
 				// Запрос JavaType
 				JavaType integerType = mapper.getTypeFactory().constructType(Integer.class);
-				JavaType setType = mapper.getTypeFactory().constructCollectionType(ConcurrentSkipListSet.class, integerType);
-				MapType mapType = mapper.getTypeFactory().constructMapType(ConcurrentHashMap.class, integerType, setType);
+				JavaType setType = mapper.getTypeFactory().constructCollectionType(HashSet.class, integerType);
+				MapType mapType = mapper.getTypeFactory().constructMapType(HashMap.class, integerType, setType);
 	
 				// Загрузка данных из файла
-				Map<Integer, Set<Integer>> loadedBlockedUsers = mapper.readValue(blockedUsersResource.getInputStream(), mapType);
-	
-				blockedUsers.putAll(loadedBlockedUsers);
-				log.info("Список заблокированных пользователей успешно загружен из файла: {}", blockedUsers);
+				try (InputStream inputStream = blockedUsersResource.getInputStream()) {
+					loadedBlockedUsers = mapper.readValue(inputStream, mapType);
+				}
 			} else {
 				log.info("Файл со списком заблокированных пользователей не найден, будет сгенерирован новый.");
 			}
 		} catch (IOException e) {
 			log.error("Ошибка при загрузке списка заблокированных пользователей из файла: {}", e.getMessage());
 		}
+
+		int replayed = replayChangeLog(loadedBlockedUsers);
+		loadedBlockedUsers.values().removeIf(Set::isEmpty);
+		log.info("Список заблокированных пользователей для начального наполнения загружен: {} пользователей, "
+			+ "применено изменений из журнала: {}", loadedBlockedUsers.size(), replayed);
+		return loadedBlockedUsers;
 	}
 
     /**
-     * Сохранение текущего состояния списка заблокированных пользователей в файл.
+     * Применение журнала изменений к загруженному снимку.
+     * Строки журнала: "+userId blockedUserId" (блокировка) и "-userId blockedUserId" (снятие блокировки).
+     *
+     * @param blockedUsersMap изменяемая карта блокировок
+     * @return количество примененных строк
      */
-	private synchronized void persistBlockedUsers() {
-		try {
-			// Получение файла из ресурса
-			File file = blockedUsersResource.getFile();
-			// Запись данных в файл
-			mapper.writeValue(file, blockedUsers);
-			log.info("Список заблокированных пользователей успешно сохранен в файл.");
-		} catch (IOException e) {
-			log.error("Ошибка при сохранении списка заблокированных пользователей: {}", e.getMessage(), e);
-		}
-	}
+    private int replayChangeLog(Map<Integer, Set<Integer>> blockedUsersMap) {
+        if (persister == null) {
+            return 0;
+        }
+        try {
+            List<String> records = persister.readChangeLog();
+            for (String record : records) {
+                int separator = record.indexOf(' ');
+                int userId = Integer.parseInt(record.substring(1, separator));
+                int blockedUserId = Integer.parseInt(record.substring(separator + 1));
+                if (record.charAt(0) == '+') {
+                    blockedUsersMap.computeIfAbsent(userId, id -> new HashSet<>()).add(blockedUserId);
+                } else {
+                    Set<Integer> blocked = blockedUsersMap.get(userId);
+                    if (blocked != null) {
+                        blocked.remove(blockedUserId);
+                    }
+                }
+            }
+            return records.size();
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка при чтении журнала изменений блокировок: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Создание отложенной записи в файл ресурса blocked.users.file.path.
+     *
+     * @return объект отложенной записи или null, если ресурс не является файлом
+     */
+    private WriteBehindPersister createPersister() {
+        try {
+            Path path = blockedUsersResource.getFile().toPath();
+            // Снимок читается в фоновом потоке из текущего неизменяемого индекса
+            return new WriteBehindPersister("blocked-users", path,
+                out -> mapper.writeValue(out, blockedUsers.toMap()), persistenceSettings);
+        } catch (IOException e) {
+            log.warn("Файл списка блокировок недоступен для записи, изменения не будут сохраняться: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Отметка изменения списка пользователя для отложенной записи в файл. Вызывающий поток не ждет записи на диск.
+     * В журнал пишутся отдельные пары: "+userId blockedUserId" и "-userId blockedUserId".
+     *
+     * @param userId  пользователь
+     * @param before  отсортированный список до изменения
+     * @param after   отсортированный список после изменения
+     */
+    private void persistDifference(int userId, int[] before, int[] after) {
+        if (persister == null) {
+            return;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < before.length || j < after.length) {
+            if (j == after.length || (i < before.length && before[i] < after[j])) {
+                persister.changed("-" + userId + ' ' + before[i++]);
+            } else if (i == before.length || after[j] < before[i]) {
+                persister.changed("+" + userId + ' ' + after[j++]);
+            } else {
+                i++;
+                j++;
+            }
+        }
+    }
 }
@@ -0,0 +1,418 @@
+package com.example.kafkastreams.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Неизменяемый индекс блокировок на примитивах: пользователь -> отсортированный массив int[] заблокированных им ID.
+ *
+ * Пользователи распределены по сегментам, каждый сегмент — хеш-таблица с открытой адресацией
+ * (ключи в int[], значения в int[][]). Изменение копирует только затронутый сегмент и массив
+ * блокировок одного пользователя, остальные сегменты разделяются с предыдущим снимком.
+ * Проверка {@link #isBlocked(int, int)} не выделяет память, не упаковывает int и не берет блокировок.
+ */
+public final class BlockedUsersIndex {
+
+    // Количество сегментов (степень двойки) и сдвиг для выбора сегмента по старшим битам хеша
+    private static final int SEGMENT_BITS = 8;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_SHIFT = Integer.SIZE - SEGMENT_BITS;
+
+    private static final int[] NO_BLOCKS = new int[0];
+
+    private static final BlockedUsersIndex EMPTY = new BlockedUsersIndex(emptySegments(), 0L);
+
+    // Сегменты снимка; массив и сами сегменты никогда не изменяются после публикации
+    private final Segment[] segments;
+
+    // Общее количество пар (пользователь, заблокированный пользователь)
+    private final long pairCount;
+
+    // Отсортированные ID пользователей снимка для постраничного обхода; вычисляются при первом обращении
+    private volatile int[] sortedUserIds;
+
+    private BlockedUsersIndex(Segment[] segments, long pairCount) {
+        this.segments = segments;
+        this.pairCount = pairCount;
+    }
+
+    /**
+     * Пустой индекс.
+     *
+     * @return индекс без блокировок
+     */
+    public static BlockedUsersIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Строит индекс по карте пользователь -> множество заблокированных пользователей.
+     *
+     * @param blockedUsers исходная карта блокировок
+     * @return новый индекс
+     */
+    public static BlockedUsersIndex of(Map<Integer, ? extends Collection<Integer>> blockedUsers) {
+        // Сначала считаем пользователей по сегментам, чтобы сразу выделить таблицы нужной емкости
+        int[] usersPerSegment = new int[SEGMENT_COUNT];
+        for (Map.Entry<Integer, ? extends Collection<Integer>> entry : blockedUsers.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                usersPerSegment[segmentOf(entry.getKey())]++;
+            }
+        }
+        int[][] keys = new int[SEGMENT_COUNT][];
+        int[][][] values = new int[SEGMENT_COUNT][][];
+        for (int segment = 0; segment < SEGMENT_COUNT; segment++) {
+            int capacity = Segment.capacityFor(usersPerSegment[segment]);
+            keys[segment] = new int[capacity];
+            values[segment] = new int[capacity][];
+        }
+
+        long pairs = 0;
+        for (Map.Entry<Integer, ? extends Collection<Integer>> entry : blockedUsers.entrySet()) {
+            int[] blocked = toSortedArray(entry.getValue());
+            if (blocked.length == 0) {
+                continue;
+            }
+            int segment = segmentOf(entry.getKey());
+            Segment.put(keys[segment], values[segment], entry.getKey(), blocked);
+            pairs += blocked.length;
+        }
+
+        Segment[] segments = new Segment[SEGMENT_COUNT];
+        for (int segment = 0; segment < SEGMENT_COUNT; segment++) {
+            segments[segment] = usersPerSegment[segment] == 0
+                ? Segment.EMPTY
+                : new Segment(keys[segment], values[segment], usersPerSegment[segment]);
+        }
+        return new BlockedUsersIndex(segments, pairs);
+    }
+
+    /**
+     * Проверка, заблокирован ли senderId пользователем userId.
+     *
+     * @param userId   пользователь, для которого проверяется блокировка
+     * @param senderId пользователь, который может быть заблокирован
+     * @return true, если senderId заблокирован для userId
+     */
+    public boolean isBlocked(int userId, int senderId) {
+        int[] blocked = segments[segmentOf(userId)].get(userId);
+        return blocked.length != 0 && Arrays.binarySearch(blocked, senderId) >= 0;
+    }
+
+    /**
+     * Копия отсортированного списка пользователей, заблокированных userId.
+     *
+     * @param userId пользователь
+     * @return отсортированный массив ID (пустой, если блокировок нет)
+     */
+    public int[] blockedBy(int userId) {
+        return segments[segmentOf(userId)].get(userId).clone();
+    }
+
+    /**
+     * Новый индекс с добавленной блокировкой. Если пара уже есть, возвращается текущий индекс.
+     *
+     * @param userId        пользователь, который блокирует
+     * @param blockedUserId пользователь, которого блокируют
+     * @return индекс с блокировкой
+     */
+    public BlockedUsersIndex withBlocked(int userId, int blockedUserId) {
+        int segment = segmentOf(userId);
+        int[] current = segments[segment].get(userId);
+        int position = Arrays.binarySearch(current, blockedUserId);
+        if (position >= 0) {
+            return this;
+        }
+        int insertAt = -position - 1;
+        int[] updated = new int[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertAt);
+        updated[insertAt] = blockedUserId;
+        System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+        return withSegment(segment, segments[segment].with(userId, updated), pairCount + 1);
+    }
+
+    /**
+     * Новый индекс без указанной блокировки. Если пары нет, возвращается текущий индекс.
+     *
+     * @param userId        пользователь, который снимает блокировку
+     * @param blockedUserId пользователь, блокировка которого снимается
+     * @return индекс без блокировки
+     */
+    public BlockedUsersIndex withoutBlocked(int userId, int blockedUserId) {
+        int segment = segmentOf(userId);
+        int[] current = segments[segment].get(userId);
+        int position = Arrays.binarySearch(current, blockedUserId);
+        if (position < 0) {
+            return this;
+        }
+        int[] updated = new int[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, position);
+        System.arraycopy(current, position + 1, updated, position, updated.length - position);
+        return withSegment(segment, segments[segment].with(userId, updated), pairCount - 1);
+    }
+
+    /**
+     * Новый индекс, в котором списки блокировок указанных пользователей заменены целиком
+     * (пустой массив удаляет пользователя). Каждый затронутый сегмент перестраивается один раз,
+     * поэтому пакет из многих изменений не копирует сегмент на каждое изменение.
+     *
+     * @param lists пользователь -> отсортированный массив заблокированных ID без повторов
+     * @return индекс с новыми списками
+     */
+    public BlockedUsersIndex withBlockedLists(Map<Integer, int[]> lists) {
+        if (lists.isEmpty()) {
+            return this;
+        }
+        Map<Integer, Map<Integer, int[]>> bySegment = new HashMap<>();
+        long pairs = pairCount;
+        for (Map.Entry<Integer, int[]> entry : lists.entrySet()) {
+            int segment = segmentOf(entry.getKey());
+            pairs += entry.getValue().length - segments[segment].get(entry.getKey()).length;
+            bySegment.computeIfAbsent(segment, s -> new HashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        Segment[] copy = segments.clone();
+        for (Map.Entry<Integer, Map<Integer, int[]>> entry : bySegment.entrySet()) {
+            copy[entry.getKey()] = copy[entry.getKey()].withAll(entry.getValue());
+        }
+        return new BlockedUsersIndex(copy, pairs);
+    }
+
+    /**
+     * Общее количество пар блокировок.
+     *
+     * @return количество пар
+     */
+    public long size() {
+        return pairCount;
+    }
+
+    /**
+     * Количество пользователей, у которых есть хотя бы одна блокировка.
+     *
+     * @return количество пользователей
+     */
+    public int userCount() {
+        int users = 0;
+        for (Segment segment : segments) {
+            users += segment.size;
+        }
+        return users;
+    }
+
+    /**
+     * Обход всех пользователей с блокировками. Переданный массив нельзя изменять.
+     *
+     * @param consumer получает массив заблокированных ID и ID пользователя
+     */
+    public void forEach(ObjIntConsumer<int[]> consumer) {
+        for (Segment segment : segments) {
+            segment.forEach(consumer);
+        }
+    }
+
+    /**
+     * Страница пользователей с блокировками в порядке возрастания ID (курсорная пагинация).
+     * Курсор — ID последнего пользователя предыдущей страницы, поэтому он остается корректным и в следующих снимках.
+     *
+     * @param afterUserId ID, после которого начинается страница (null — с начала)
+     * @param limit       максимальный размер страницы
+     * @return отсортированные ID пользователей страницы
+     */
+    public int[] usersAfter(Integer afterUserId, int limit) {
+        int[] sorted = sortedUserIds();
+        int from = 0;
+        if (afterUserId != null) {
+            int position = Arrays.binarySearch(sorted, afterUserId);
+            from = position >= 0 ? position + 1 : -position - 1;
+        }
+        int to = (int) Math.min(sorted.length, (long) from + limit);
+        return Arrays.copyOfRange(sorted, from, to);
+    }
+
+    /**
+     * Представление индекса в виде упорядоченной карты (для сериализации и REST-ответов).
+     *
+     * @return карта пользователь -> множество заблокированных пользователей
+     */
+    public Map<Integer, Set<Integer>> toMap() {
+        Map<Integer, Set<Integer>> result = new TreeMap<>();
+        forEach((blocked, userId) -> {
+            Set<Integer> ids = new TreeSet<>();
+            for (int id : blocked) {
+                ids.add(id);
+            }
+            result.put(userId, ids);
+        });
+        return result;
+    }
+
+    private int[] sortedUserIds() {
+        int[] sorted = sortedUserIds;
+        if (sorted == null) {
+            int[] ids = new int[userCount()];
+            int[] count = new int[1];
+            forEach((blocked, userId) -> ids[count[0]++] = userId);
+            Arrays.sort(ids);
+            sortedUserIds = sorted = ids;
+        }
+        return sorted;
+    }
+
+    private BlockedUsersIndex withSegment(int index, Segment segment, long pairs) {
+        Segment[] copy = segments.clone();
+        copy[index] = segment;
+        return new BlockedUsersIndex(copy, pairs);
+    }
+
+    private static Segment[] emptySegments() {
+        Segment[] segments = new Segment[SEGMENT_COUNT];
+        Arrays.fill(segments, Segment.EMPTY);
+        return segments;
+    }
+
+    private static int[] toSortedArray(Collection<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    private static int segmentOf(int userId) {
+        return mix(userId) >>> SEGMENT_SHIFT;
+    }
+
+    // Перемешивание битов ключа (финализатор MurmurHash3), чтобы последовательные ID равномерно ложились в таблицу
+    private static int mix(int key) {
+        int h = key * 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Неизменяемый сегмент: хеш-таблица с открытой адресацией и линейным пробированием.
+     * Пустая ячейка обозначается значением null в массиве values.
+     */
+    private static final class Segment {
+
+        private static final Segment EMPTY = new Segment(new int[2], new int[2][], 0);
+
+        private final int[] keys;
+        private final int[][] values;
+        private final int size;
+
+        private Segment(int[] keys, int[][] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        int[] get(int userId) {
+            int mask = keys.length - 1;
+            int slot = mix(userId) & mask;
+            int[] value;
+            while ((value = values[slot]) != null) {
+                if (keys[slot] == userId) {
+                    return value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return NO_BLOCKS;
+        }
+
+        // Копия сегмента с новым значением для пользователя; пустой массив удаляет пользователя
+        Segment with(int userId, int[] blocked) {
+            boolean present = get(userId).length != 0;
+            int newSize = size + (present ? 0 : 1) - (blocked.length == 0 ? 1 : 0);
+            if (blocked.length == 0 && !present) {
+                return this;
+            }
+            if (blocked.length == 0) {
+                // Удаление при линейном пробировании проще всего сделать перестроением сегмента
+                return rebuild(capacityFor(newSize), userId, null);
+            }
+            if (!present && newSize * 2 > keys.length) {
+                return rebuild(capacityFor(newSize), userId, blocked);
+            }
+            int[] newKeys = keys.clone();
+            int[][] newValues = values.clone();
+            put(newKeys, newValues, userId, blocked);
+            return new Segment(newKeys, newValues, newSize);
+        }
+
+        // Копия сегмента с заменой значений нескольких пользователей за одно перестроение
+        Segment withAll(Map<Integer, int[]> updates) {
+            int newSize = size;
+            for (Map.Entry<Integer, int[]> entry : updates.entrySet()) {
+                boolean present = get(entry.getKey()).length != 0;
+                boolean remains = entry.getValue().length != 0;
+                newSize += (remains ? 1 : 0) - (present ? 1 : 0);
+            }
+            if (newSize == 0) {
+                return EMPTY;
+            }
+            int capacity = capacityFor(newSize);
+            int[] newKeys = new int[capacity];
+            int[][] newValues = new int[capacity][];
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] != null && !updates.containsKey(keys[slot])) {
+                    put(newKeys, newValues, keys[slot], values[slot]);
+                }
+            }
+            for (Map.Entry<Integer, int[]> entry : updates.entrySet()) {
+                if (entry.getValue().length != 0) {
+                    put(newKeys, newValues, entry.getKey(), entry.getValue());
+                }
+            }
+            return new Segment(newKeys, newValues, newSize);
+        }
+
+        void forEach(ObjIntConsumer<int[]> consumer) {
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] != null) {
+                    consumer.accept(values[slot], keys[slot]);
+                }
+            }
+        }
+
+        // Перестраивает сегмент в таблицу заданной емкости, заменяя (или удаляя при blocked == null) значение userId
+        private Segment rebuild(int capacity, int userId, int[] blocked) {
+            int[] newKeys = new int[capacity];
+            int[][] newValues = new int[capacity][];
+            int count = 0;
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] != null && keys[slot] != userId) {
+                    put(newKeys, newValues, keys[slot], values[slot]);
+                    count++;
+                }
+            }
+            if (blocked != null) {
+                put(newKeys, newValues, userId, blocked);
+                count++;
+            }
+            return new Segment(newKeys, newValues, count);
+        }
+
+        private static void put(int[] keys, int[][] values, int userId, int[] blocked) {
+            int mask = keys.length - 1;
+            int slot = mix(userId) & mask;
+            while (values[slot] != null && keys[slot] != userId) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = userId;
+            values[slot] = blocked;
+        }
+
+        // Емкость — степень двойки с заполнением не более 50%
+        private static int capacityFor(int size) {
+            int capacity = 2;
+            while (capacity < size * 2) {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.kafkastreams.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Неизменяемый автомат Ахо-Корасик для поиска цензурных слов.
+ *
+ * Строится один раз для всего словаря и находит все вхождения за один проход по сообщению,
+ * без компиляции регулярных выражений на каждый вызов. Регистр приводится посимвольно
+ * ({@link Character#toLowerCase(char)}), границы слов проверяются так же, как {@code \b}:
+ * символ слова — буква, цифра или '_'.
+ *
+ * Экземпляр потокобезопасен: после построения автомат только читается.
+ */
+public final class CensoredWordsMatcher {
+
+    /**
+     * Строка, которой заменяется каждое найденное слово.
+     */
+    public static final String REPLACEMENT = "***";
+
+    /**
+     * Получатель уведомлений о замененных словах (например, для подсчета частоты срабатываний).
+     */
+    @FunctionalInterface
+    public interface HitListener {
+
+        /**
+         * Вызывается для каждого замененного вхождения.
+         *
+         * @param word слово словаря (в нижнем регистре)
+         */
+        void onHit(String word);
+    }
+
+    /**
+     * Пустой автомат: сообщения возвращаются без изменений.
+     */
+    public static final CensoredWordsMatcher EMPTY = new CensoredWordsMatcher(List.of());
+
+    // Слова словаря (в нижнем регистре), индекс слова хранится в терминальных состояниях
+    private final String[] words;
+
+    // Отображение символа в номер класса алфавита; символы вне словаря имеют класс 0
+    private final int[] alphabet;
+
+    // Количество классов алфавита (включая класс 0 для "прочих" символов)
+    private final int alphabetSize;
+
+    // Полная таблица переходов ДКА: next[state * alphabetSize + charClass]
+    private final int[] next;
+
+    // Индекс слова, заканчивающегося в состоянии, или -1
+    private final int[] terminal;
+
+    // Ближайшее терминальное состояние по цепочке суффиксных ссылок, или -1
+    private final int[] outputLink;
+
+    /**
+     * Строит автомат по набору слов. Пустые и состоящие из пробелов слова пропускаются.
+     *
+     * @param dictionary набор цензурных слов
+     */
+    public CensoredWordsMatcher(Collection<String> dictionary) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String word : dictionary) {
+            if (word != null && !word.isBlank()) {
+                unique.add(foldCase(word));
+            }
+        }
+        this.words = unique.toArray(new String[0]);
+
+        // Алфавит: только символы, встречающиеся в словаре
+        int maxChar = 0;
+        for (String word : words) {
+            for (int i = 0; i < word.length(); i++) {
+                maxChar = Math.max(maxChar, word.charAt(i));
+            }
+        }
+        this.alphabet = new int[words.length == 0 ? 0 : maxChar + 1];
+        int classes = 1;
+        for (String word : words) {
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (alphabet[c] == 0) {
+                    alphabet[c] = classes++;
+                }
+            }
+        }
+        this.alphabetSize = classes;
+
+        // Построение бора
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> terminals = new ArrayList<>();
+        trie.add(newRow(classes));
+        terminals.add(-1);
+        for (int w = 0; w < words.length; w++) {
+            int state = 0;
+            String word = words[w];
+            for (int i = 0; i < word.length(); i++) {
+                int cls = alphabet[word.charAt(i)];
+                int[] row = trie.get(state);
+                if (row[cls] < 0) {
+                    row[cls] = trie.size();
+                    trie.add(newRow(classes));
+                    terminals.add(-1);
+                }
+                state = row[cls];
+            }
+            terminals.set(state, w);
+        }
+
+        int states = trie.size();
+        this.next = new int[states * classes];
+        this.terminal = new int[states];
+        this.outputLink = new int[states];
+        for (int s = 0; s < states; s++) {
+            System.arraycopy(trie.get(s), 0, next, s * classes, classes);
+            terminal[s] = terminals.get(s);
+        }
+
+        // Суффиксные ссылки (обход в ширину) и достраивание переходов до полного ДКА
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        outputLink[0] = -1;
+        for (int cls = 0; cls < classes; cls++) {
+            int child = next[cls];
+            if (child < 0) {
+                next[cls] = 0;
+            } else {
+                fail[child] = 0;
+                outputLink[child] = -1;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int cls = 0; cls < classes; cls++) {
+                int child = next[state * classes + cls];
+                int fallback = next[fail[state] * classes + cls];
+                if (child < 0) {
+                    next[state * classes + cls] = fallback;
+                } else {
+                    fail[child] = fallback;
+                    outputLink[child] = terminal[fallback] >= 0 ? fallback : outputLink[fallback];
+                    queue.add(child);
+                }
+            }
+        }
+        // Символы вне словаря всегда возвращают автомат в корень
+        for (int s = 0; s < states; s++) {
+            next[s * classes] = 0;
+        }
+    }
+
+    /**
+     * Заменяет все цензурные слова в сообщении на {@link #REPLACEMENT}.
+     * Пересекающиеся совпадения разрешаются по правилу "самое левое, затем самое длинное".
+     * Если совпадений нет, возвращается исходный объект строки без выделения памяти.
+     *
+     * @param message исходное сообщение
+     * @return сообщение с цензурированными словами
+     */
+    public String censor(String message) {
+        return censor(message, null);
+    }
+
+    /**
+     * Заменяет все цензурные слова в сообщении и сообщает о каждом замененном слове.
+     *
+     * @param message  исходное сообщение
+     * @param listener получатель уведомлений о замененных словах (может быть null)
+     * @return сообщение с цензурированными словами
+     */
+    public String censor(String message, HitListener listener) {
+        if (message == null || words.length == 0) {
+            return message;
+        }
+
+        // Совпадения упаковываются в long (начало, конец); массив создается только при первом совпадении
+        long[] matches = null;
+        int matchCount = 0;
+
+        int state = 0;
+        int length = message.length();
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(message.charAt(i));
+            int cls = c < alphabet.length ? alphabet[c] : 0;
+            state = next[state * alphabetSize + cls];
+
+            int out = terminal[state] >= 0 ? state : outputLink[state];
+            while (out >= 0) {
+                int end = i + 1;
+                int start = end - words[terminal[out]].length();
+                if (isBoundary(message, start) && isBoundary(message, end)) {
+                    if (matches == null) {
+                        matches = new long[4];
+                    } else if (matchCount == matches.length) {
+                        matches = Arrays.copyOf(matches, matchCount * 2);
+                    }
+                    // Сортировка по ключу дает порядок: начало по возрастанию, затем конец по убыванию
+                    matches[matchCount++] = ((long) start << 32) | (Integer.MAX_VALUE - end);
+                }
+                out = outputLink[out];
+            }
+        }
+
+        if (matchCount == 0) {
+            return message;
+        }
+        return replace(message, matches, matchCount, listener);
+    }
+
+    /**
+     * Количество слов в словаре автомата.
+     *
+     * @return размер словаря
+     */
+    public int size() {
+        return words.length;
+    }
+
+    // Собирает результирующую строку, выбирая непересекающиеся совпадения слева направо
+    private String replace(String message, long[] matches, int matchCount, HitListener listener) {
+        Arrays.sort(matches, 0, matchCount);
+        StringBuilder result = new StringBuilder(message.length());
+        int position = 0;
+        for (int m = 0; m < matchCount; m++) {
+            int start = (int) (matches[m] >>> 32);
+            int end = Integer.MAX_VALUE - (int) matches[m];
+            if (start < position) {
+                continue;
+            }
+            result.append(message, position, start).append(REPLACEMENT);
+            if (listener != null) {
+                listener.onHit(wordAt(message, start, end));
+            }
+            position = end;
+        }
+        result.append(message, position, message.length());
+        return result.toString();
+    }
+
+    // Слово словаря для совпадения [start, end): проход автомата от корня по фрагменту приводит в его терминальное состояние
+    private String wordAt(String message, int start, int end) {
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            char c = Character.toLowerCase(message.charAt(i));
+            state = next[state * alphabetSize + (c < alphabet.length ? alphabet[c] : 0)];
+        }
+        return words[terminal[state]];
+    }
+
+    // Граница слова в позиции index — аналог \b: "словесность" соседних символов различается
+    private static boolean isBoundary(String text, int index) {
+        boolean before = index > 0 && isWordChar(text.charAt(index - 1));
+        boolean after = index < text.length() && isWordChar(text.charAt(index));
+        return before != after;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    // Посимвольное приведение к нижнему регистру (длина строки не меняется, индексы совпадают с исходными)
+    private static String foldCase(String word) {
+        String trimmed = word.trim();
+        char[] chars = new char[trimmed.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(trimmed.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    private static int[] newRow(int classes) {
+        int[] row = new int[classes];
+        Arrays.fill(row, -1);
+        return row;
+    }
+}
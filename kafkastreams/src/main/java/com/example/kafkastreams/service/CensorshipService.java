@@ -1,21 +1,52 @@
 package com.example.kafkastreams.service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.Resource;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.context.annotation.Profile;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Сервис цензуры сообщений.
+ *
+ * Источник истины — компактный топик censored_words: REST-операции только публикуют в него изменения,
+ * а словарь и автомат меняются только при чтении топика ({@code CensoredWordsListener}). Поэтому экземпляры,
+ * прочитавшие топик до одних и тех же offset'ов, имеют одинаковую версию и одинаковый словарь.
+ *
+ * Файл censored.words.file.path (и его журнал изменений) читается только для начального наполнения топика,
+ * в который еще ни разу не писали, и ведется как копия словаря из топика.
+ */
 @Slf4j
 @Service
 @Profile("processor")
@@ -32,15 +63,143 @@ public class CensorshipService {
      * Набор для хранения цензурных слов.
      * Использует потокобезопасную реализацию для возможных параллельных операций.
      */
-    private final Set<String> censoredWords = new ConcurrentSkipListSet<>();
+    private final NavigableSet<String> censoredWords = new ConcurrentSkipListSet<>();
 
     /**
-     * Метод вызывается после создания бина.
-     * Загружает список цензурных слов из файла.
+     * Скомпилированный автомат для текущего словаря.
+     * Пересобирается целиком в фоновом потоке после изменений словаря и публикуется одной записью volatile-ссылки,
+     * поэтому поток обработки сообщений никогда не компилирует шаблоны сам и не ждет пересборки.
+     */
+    private volatile CensoredWordsMatcher matcher = CensoredWordsMatcher.EMPTY;
+
+    // Фоновая пересборка автомата; изменения, пришедшие во время пересборки, объединяются в следующую
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "censorship-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Запланирована ли пересборка автомата
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+    // Следующий offset по каждой партиции топика словаря, до которого изменения применены к множеству слов
+    private final Map<Integer, Long> appliedOffsets = new HashMap<>();
+
+    /**
+     * Версия словаря — сумма следующих offset'ов по партициям топика censored_words.
+     * Offset'ы в Kafka не меняются при компакции, поэтому экземпляры, прочитавшие топик до одной позиции,
+     * имеют одинаковую версию и одинаковый словарь.
+     */
+    private volatile long appliedVersion;
+
+    // Версия словаря, по которому построен активный автомат
+    private volatile long activeVersion;
+
+    // Настройки отложенной записи на диск
+    @Autowired
+    private WriteBehindPersister.Settings persistenceSettings;
+
+    // Шаблон для публикации изменений словаря в компактный топик censored_words
+    @Autowired
+    private KafkaTemplate<String, String> censoredWordsKafkaTemplate;
+
+    // Настройки подключения для проверки, пуст ли топик словаря, и чтения его конечных offset'ов
+    @Autowired
+    private KafkaAdmin kafkaAdmin;
+
+    // Название топика словаря (ключ — слово, значение — слово, tombstone — удаление)
+    @Value("${kafka.topic.censored-words}")
+    private String censoredWordsTopic;
+
+    // Наполнять ли топик словаря из файла, если в него еще ни разу не писали
+    @Value("${censored.words.seed-if-empty:true}")
+    private boolean seedIfEmpty;
+
+    // Максимальное ожидание чтения топика словаря до конца при старте, мс
+    @Value("${censored.words.load-timeout-ms:60000}")
+    private long loadTimeoutMs;
+
+    // Отложенная запись словаря в файл (null, если файл недоступен для записи)
+    private WriteBehindPersister persister;
+
+    // Слова из файла для начального наполнения (null после наполнения или если оно выключено)
+    private NavigableSet<String> seed;
+
+    // Конечные offset'ы топика словаря на момент старта (null, пока не прочитаны или после загрузки)
+    private Map<Integer, Long> loadTargets;
+
+    // Завершается, когда словарь прочитан из топика до конечных offset'ов на момент старта
+    private final CompletableFuture<Void> dictionaryLoaded = new CompletableFuture<>();
+
+    /**
+     * Чтение файла для начального наполнения после создания бина.
+     * Файл читается до запуска слушателей, пока копия словаря еще не начала его перезаписывать.
      */
     @PostConstruct
     public void initializeCensoredWords() {
-        loadCensoredWordsFromFile();
+        persister = createPersister();
+        if (seedIfEmpty) {
+            seed = loadSeed();
+        }
+        if (persister != null) {
+            // Словарь строится из топика заново, журнал относительно старого файла к нему не применим
+            persister.requireSnapshot();
+        }
+    }
+
+    /**
+     * Начальное наполнение топика словарем из файла и ожидание чтения топика до конца.
+     * Наполнение выполняется, только если в топик еще ни разу не писали (топики к этому моменту уже созданы),
+     * поэтому перезапуск не возвращает удаленные слова. Затем запоминаются конечные offset'ы топика:
+     * словарь считается загруженным, когда слушатель применил записи до них.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedCensoredWords() {
+        NavigableSet<String> pending = seed;
+        seed = null;
+        if (pending != null) {
+            try {
+                if (TopicOffsets.neverWritten(kafkaAdmin, censoredWordsTopic)) {
+                    pending.forEach(word -> publish(word, true));
+                    // Конечные offset'ы ниже должны учитывать опубликованные слова
+                    censoredWordsKafkaTemplate.flush();
+                    log.info("Топик {} наполнен из файла: {} слов", censoredWordsTopic, pending.size());
+                } else {
+                    log.info("Топик {} уже содержит словарь, начальное наполнение из файла пропущено", censoredWordsTopic);
+                }
+            } catch (IllegalStateException e) {
+                log.error("Начальное наполнение словаря пропущено (будет повторено при следующем старте): {}", e.getMessage(), e);
+            }
+        }
+        Map<Integer, Long> endOffsets;
+        try {
+            endOffsets = TopicOffsets.endOffsets(kafkaAdmin, censoredWordsTopic);
+        } catch (IllegalStateException e) {
+            log.error("Конец топика словаря не определен, загрузка словаря не ожидается: {}", e.getMessage(), e);
+            dictionaryLoaded.complete(null);
+            return;
+        }
+        synchronized (this) {
+            loadTargets = endOffsets;
+            completeLoadIfCaughtUp();
+        }
+        CompletableFuture.delayedExecutor(loadTimeoutMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (dictionaryLoaded.complete(null)) {
+                log.warn("Топик словаря не прочитан до конца за {} мс, обработка сообщений запускается с неполным словарем", loadTimeoutMs);
+            }
+        });
+    }
+
+    /**
+     * Остановка фоновой пересборки и запись несохраненных изменений при остановке приложения.
+     */
+    @PreDestroy
+    public void shutdown() {
+        dictionaryLoaded.cancel(false);
+        rebuildExecutor.shutdownNow();
+        if (persister != null) {
+            persister.close();
+        }
     }
 
     /**
@@ -50,55 +209,193 @@ public class CensorshipService {
      * @return сообщение с цензурированными словами
      */
     public String censorMessage(String message) {
-        String censoredMessage = message;
-        for (String word : censoredWords) {
-            // Используем паттерн, чтобы правильно экранировать слова, избегая ошибок при специальных символах
-            String regex = "\\b" + java.util.regex.Pattern.quote(word) + "\\b";
-            // Используем регулярное выражение для поиска слова игнорируя регистр
-            censoredMessage = censoredMessage.replaceAll("(?i)" + regex, "***");
-        }
-        return censoredMessage;
+        // Один проход автомата по сообщению вместо регулярного выражения на каждое слово
+        return matcher.censor(message);
     }
 
     /**
-     * Добавляет новое слово в список цензурных слов и сохраняет изменения.
+     * Цензура сообщения с уведомлением о каждом замененном слове.
+     *
+     * @param message  исходное сообщение
+     * @param listener получатель замененных слов (например, счетчики метрик)
+     * @return сообщение с цензурированными словами
+     */
+    public String censorMessage(String message, CensoredWordsMatcher.HitListener listener) {
+        return matcher.censor(message, listener);
+    }
+
+    /**
+     * Добавление слова в словарь цензуры.
+     * Изменение публикуется в топик, словарь обновится при чтении топика.
      *
      * @param word слово для добавления
      */
     public void addCensoredWord(String word) {
-        censoredWords.add(word.toLowerCase());
-        persistCensoredWords();
+        applyCensoredWords(List.of(word), true);
     }
 
     /**
-     * Удаляет слово из списка цензурных слов и сохраняет изменения.
+     * Удаление слова из словаря цензуры.
+     * Изменение публикуется в топик, словарь обновится при чтении топика.
      *
      * @param word слово для удаления
      */
     public void removeCensoredWord(String word) {
-        censoredWords.remove(word.toLowerCase());
-        persistCensoredWords();
+        applyCensoredWords(List.of(word), false);
     }
 
     /**
-     * Возвращает неизменяемое множество всех цензурных слов.
+     * Пакетное добавление или удаление слов: по одному изменению в топик на каждое слово пакета.
+     * Слова не сверяются с локальным словарем — он может отставать от топика, а изменения идемпотентны.
      *
-     * @return множество цензурных слов
+     * @param words слова
+     * @param add   true — добавить слова, false — удалить
+     * @return количество опубликованных изменений (без пустых слов и повторов внутри пакета)
      */
-    public Set<String> getCensoredWords() {
-        return Collections.unmodifiableSet(censoredWords);
+    public int applyCensoredWords(List<String> words, boolean add) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String word : words) {
+            String normalized = normalize(word);
+            if (!normalized.isEmpty()) {
+                distinct.add(normalized);
+            }
+        }
+        distinct.forEach(word -> publish(word, add));
+        return distinct.size();
+    }
+
+    /**
+     * Применение изменения словаря, прочитанного из топика censored_words (на каждом экземпляре).
+     * Единственный путь изменения словаря; записи без слова только продвигают offset.
+     *
+     * @param word      слово (ключ записи) или null
+     * @param present   true — слово добавлено, false — удалено (tombstone)
+     * @param partition партиция записи
+     * @param offset    offset записи
+     */
+    public synchronized void applyDictionaryChange(String word, boolean present, int partition, long offset) {
+        Long previous = appliedOffsets.put(partition, offset + 1);
+        appliedVersion += offset + 1 - (previous == null ? 0 : previous);
+        if (word != null && !word.isBlank()) {
+            boolean changed = present ? censoredWords.add(word) : censoredWords.remove(word);
+            if (changed) {
+                persistChange(present ? '+' : '-', word);
+            }
+        }
+        // Версия меняется с каждой записью, поэтому автомат пересобирается (с объединением), даже если слово уже было
+        scheduleRebuild();
+        completeLoadIfCaughtUp();
+    }
+
+    /**
+     * Загрузка словаря при старте: завершается, когда топик прочитан до конечных offset'ов на момент старта
+     * и автомат собран по ним, или по истечении censored.words.load-timeout-ms.
+     * Kafka Streams запускается после нее, чтобы сообщения не проходили цензуру по неполному словарю.
+     *
+     * @return этап, завершающийся после загрузки словаря
+     */
+    public CompletionStage<Void> dictionaryLoaded() {
+        return dictionaryLoaded.minimalCompletionStage();
+    }
+
+    /**
+     * Версия словаря активного автомата.
+     *
+     * @return сумма offset'ов топика словаря, примененных к активному автомату
+     */
+    public long getDictionaryVersion() {
+        return activeVersion;
+    }
+
+    /**
+     * Количество слов в текущем словаре (без обхода множества).
+     *
+     * @return размер словаря
+     */
+    public int getDictionarySize() {
+        return matcher.size();
+    }
+
+    /**
+     * Возвращает неизменяемое упорядоченное множество всех цензурных слов.
+     *
+     * @return множество цензурных слов в алфавитном порядке
+     */
+    public NavigableSet<String> getCensoredWords() {
+        return Collections.unmodifiableNavigableSet(censoredWords);
+    }
+
+    /**
+     * Планирует фоновую пересборку автомата. Если пересборка уже запланирована, новая не добавляется:
+     * она прочитает словарь вместе с этим изменением.
+     */
+    private void scheduleRebuild() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                rebuildPending.set(false);
+                rebuildMatcher();
+            });
+        }
+    }
+
+    /**
+     * Завершает загрузку словаря, если все партиции прочитаны до конечных offset'ов на момент старта.
+     * Последняя запись партиции компактного топика не удаляется компакцией, поэтому слушатель всегда доходит
+     * до конечного offset'а. Вызывается под монитором объекта.
+     */
+    private void completeLoadIfCaughtUp() {
+        if (loadTargets == null) {
+            return;
+        }
+        for (Map.Entry<Integer, Long> target : loadTargets.entrySet()) {
+            if (appliedOffsets.getOrDefault(target.getKey(), 0L) < target.getValue()) {
+                return;
+            }
+        }
+        loadTargets = null;
+        rebuildMatcher();
+        log.info("Словарь цензуры загружен из топика {}: {} слов, версия {}", censoredWordsTopic, censoredWords.size(), appliedVersion);
+        dictionaryLoaded.complete(null);
+    }
+
+    /**
+     * Пересобирает автомат по текущему словарю и атомарно подменяет ссылку на него.
+     * Версия читается до обхода словаря, поэтому автомат содержит как минимум изменения этой версии.
+     */
+    private void rebuildMatcher() {
+        long version = appliedVersion;
+        CensoredWordsMatcher rebuilt = new CensoredWordsMatcher(censoredWords);
+        matcher = rebuilt;
+        activeVersion = version;
+        log.debug("Автомат цензуры пересобран: {} слов, версия словаря {}", rebuilt.size(), version);
+    }
+
+    /**
+     * Словарь для начального наполнения топика: файл с наложенным журналом изменений.
+     *
+     * @return слова в алфавитном порядке
+     */
+    private NavigableSet<String> loadSeed() {
+        NavigableSet<String> words = new TreeSet<>();
+        loadCensoredWordsFromFile(words);
+        replayChangeLog(words);
+        return words;
     }
 
     /**
      * Загружает список цензурных слов из файла по указанному ресурсу.
      * В случае отсутствия файла — создает новый.
+     *
+     * @param words множество, в которое добавляются слова
      */
-    private void loadCensoredWordsFromFile() {
+    private void loadCensoredWordsFromFile(Set<String> words) {
         try {
             if (censoredWordsResource.exists()) {
                 // Читаем все строки файла и добавляем слова в набор
-                Files.readAllLines(Paths.get(censoredWordsResource.getURI()))
-                    .forEach(word -> censoredWords.add(word.trim().toLowerCase()));
+                Files.readAllLines(Paths.get(censoredWordsResource.getURI())).stream()
+                    .map(CensorshipService::normalize)
+                    .filter(word -> !word.isEmpty())
+                    .forEach(words::add);
                 log.info("Список цензурированных слов успешно загружен из файла.");
             } else {
                 // Создаем новый файл, если он не найден
@@ -112,14 +409,99 @@ public class CensorshipService {
     }
 
     /**
-     * Сохраняет текущий список цензурных слов в файл.
+     * Публикация изменения словаря в топик censored_words: добавленное слово — запись с ключом-словом,
+     * удаленное — tombstone (null), чтобы компакция удалила ключ.
+     *
+     * @param word    слово
+     * @param present true — слово есть в словаре, false — удалено
      */
-    private synchronized void persistCensoredWords() {
+    private void publish(String word, boolean present) {
+        censoredWordsKafkaTemplate.send(censoredWordsTopic, word, present ? word : null)
+            .whenComplete((result, e) -> {
+                if (e != null) {
+                    log.error("Ошибка публикации слова {} в словарь: {}", word, e.getMessage(), e);
+                }
+            });
+    }
+
+    /**
+     * Применяет журнал изменений словаря (строки "+слово" и "-слово"), если он ведется.
+     * Журнал свернется в снимок при первой записи копии словаря из топика.
+     *
+     * @param words множество слов из файла
+     */
+    private void replayChangeLog(Set<String> words) {
+        if (persister == null) {
+            return;
+        }
         try {
-            Files.write(Paths.get(censoredWordsResource.getURI()), new ArrayList<>(censoredWords));
-            log.info("Список цензурированных слов успешно сохранен в файл.");
-        } catch (IOException e) {
-            log.error("Ошибка при сохранении списка цензурированных слов в файл: {}", e.getMessage(), e);
+            List<String> records = persister.readChangeLog();
+            if (records.isEmpty()) {
+                return;
+            }
+            for (String record : records) {
+                String word = record.substring(1);
+                if (record.charAt(0) == '+') {
+                    words.add(word);
+                } else {
+                    words.remove(word);
+                }
+            }
+            log.info("Применено изменений словаря из журнала: {}", records.size());
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка при чтении журнала изменений словаря: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Приведение слова к виду словаря: без пробелов по краям, в нижнем регистре.
+     *
+     * @param word слово
+     * @return нормализованное слово (пустая строка для пустого слова)
+     */
+    private static String normalize(String word) {
+        return word.trim().toLowerCase();
+    }
+
+    /**
+     * Создает отложенную запись словаря в файл ресурса censored.words.file.path.
+     *
+     * @return объект отложенной записи или null, если ресурс не является файлом
+     */
+    private WriteBehindPersister createPersister() {
+        try {
+            Path path = Paths.get(censoredWordsResource.getURI());
+            return new WriteBehindPersister("censored-words", path, this::writeCensoredWords, persistenceSettings);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Файл словаря недоступен для записи, изменения не будут сохраняться: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Отмечает изменение словаря для отложенной записи в файл. Вызывающий поток не ждет записи на диск.
+     *
+     * @param operation '+' — добавление, '-' — удаление
+     * @param word      слово
+     */
+    private void persistChange(char operation, String word) {
+        if (persister != null) {
+            persister.changed(operation + word);
+        }
+    }
+
+    /**
+     * Записывает текущий список цензурных слов (по одному в строке) — снимок для отложенной записи.
+     *
+     * @param out поток файла снимка
+     * @throws IOException ошибка записи
+     */
+    private void writeCensoredWords(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        for (String word : censoredWords) {
+            writer.write(word);
+            writer.write(System.lineSeparator());
         }
+        writer.flush();
     }
 }
@@ -0,0 +1,165 @@
+package com.example.kafkastreams.service;
+
+import com.example.kafkastreams.model.Page;
+import com.example.kafkastreams.model.UserBlockedUsers;
+import com.example.kafkastreams.stream.MessagePipeline;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyQueryMetadata;
+import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.HostInfo;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Интерактивные запросы к хранилищам состояния Kafka Streams.
+ *
+ * Блокировки хранятся в партиционированном хранилище blocked-users-store: запрос по ID получателя
+ * выполняется на экземпляре, которому принадлежит партиция ключа ({@link KafkaStreams#queryMetadataForKey}),
+ * остальные экземпляры перенаправляют его туда по HTTP. Словарь цензуры — глобальное хранилище,
+ * его копия есть на каждом экземпляре, поэтому запросы к нему всегда локальные.
+ */
+@Slf4j
+@Service
+@Profile("processor")
+public class InteractiveQueryService {
+
+    // Фабрика Kafka Streams, через нее получаем работающий экземпляр KafkaStreams
+    private final StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+
+    // HTTP-клиент для перенаправления запросов на экземпляр-владелец ключа
+    private final RestClient restClient;
+
+    // Адрес этого экземпляра (совпадает с application.server Kafka Streams)
+    private final HostInfo self;
+
+    public InteractiveQueryService(StreamsBuilderFactoryBean streamsBuilderFactoryBean,
+                                   RestClient.Builder restClientBuilder,
+                                   @Value("${kafka.streams.application-server:localhost:${server.port}}") String applicationServer) {
+        this.streamsBuilderFactoryBean = streamsBuilderFactoryBean;
+        this.restClient = restClientBuilder.build();
+        this.self = HostInfo.buildFromEndpoint(applicationServer);
+    }
+
+    /**
+     * Список блокировок получателя из хранилища состояния с маршрутизацией к владельцу ключа.
+     *
+     * @param userId ID получателя
+     * @return отсортированный список заблокированных им отправителей
+     */
+    public UserBlockedUsers blockedUsers(int userId) {
+        KafkaStreams streams = kafkaStreams();
+        String key = String.valueOf(userId);
+        KeyQueryMetadata metadata = streams.queryMetadataForKey(
+            MessagePipeline.BLOCKED_USERS_STORE, key, Serdes.String().serializer());
+        if (metadata == null || KeyQueryMetadata.NOT_AVAILABLE.equals(metadata)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Хранилище блокировок недоступно (перебалансировка)");
+        }
+        if (self.equals(metadata.activeHost())) {
+            return localBlockedUsers(userId, metadata.partition());
+        }
+        HostInfo owner = metadata.activeHost();
+        try {
+            return restClient.get()
+                .uri("http://{host}:{port}/state/blocked-users/{userId}?local=true", owner.host(), owner.port(), userId)
+                .retrieve()
+                .body(UserBlockedUsers.class);
+        } catch (RestClientException e) {
+            log.warn("Экземпляр {} недоступен для запроса блокировок пользователя {}: {}", owner, userId, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Экземпляр-владелец ключа недоступен: " + owner);
+        }
+    }
+
+    /**
+     * Список блокировок получателя только из локальных партиций хранилища (без маршрутизации).
+     *
+     * @param userId    ID получателя
+     * @param partition партиция ключа или null, если нужно искать во всех локальных партициях
+     * @return отсортированный список заблокированных им отправителей
+     */
+    public UserBlockedUsers localBlockedUsers(int userId, Integer partition) {
+        StoreQueryParameters<ReadOnlyKeyValueStore<String, int[]>> parameters =
+            StoreQueryParameters.fromNameAndType(MessagePipeline.BLOCKED_USERS_STORE, QueryableStoreTypes.<String, int[]>keyValueStore());
+        if (partition != null) {
+            parameters = parameters.withPartition(partition);
+        }
+        int[] blocked = queryStore(parameters, store -> store.get(String.valueOf(userId)));
+        return new UserBlockedUsers(userId, blocked == null ? new int[0] : blocked);
+    }
+
+    /**
+     * Проверка слова по локальной копии глобального хранилища словаря.
+     *
+     * @param word слово
+     * @return true, если слово есть в словаре цензуры
+     */
+    public boolean isCensoredWord(String word) {
+        return queryStore(censoredWordsStore(), store -> store.get(word.trim().toLowerCase())) != null;
+    }
+
+    /**
+     * Страница словаря цензуры из локальной копии глобального хранилища.
+     * Слова идут в порядке байтов UTF-8 (порядок ключей хранилища), одинаковом на всех экземплярах.
+     *
+     * @param after последнее слово предыдущей страницы (курсор) или null для первой страницы
+     * @param limit размер страницы
+     * @return слова страницы и курсор следующей страницы (null, если страница последняя)
+     */
+    public Page<String> censoredWords(String after, int limit) {
+        return queryStore(censoredWordsStore(), store -> {
+            List<String> items = new ArrayList<>(Math.min(limit, 1024));
+            boolean hasMore = false;
+            // Диапазон с открытой верхней границей включает сам курсор — он пропускается
+            try (KeyValueIterator<String, String> iterator = after == null ? store.all() : store.range(after, null)) {
+                while (iterator.hasNext()) {
+                    String word = iterator.next().key;
+                    if (word.equals(after)) {
+                        continue;
+                    }
+                    if (items.size() == limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    items.add(word);
+                }
+            }
+            return new Page<>(items, hasMore ? items.get(items.size() - 1) : null);
+        });
+    }
+
+    private static StoreQueryParameters<ReadOnlyKeyValueStore<String, String>> censoredWordsStore() {
+        return StoreQueryParameters.fromNameAndType(MessagePipeline.CENSORED_WORDS_STORE, QueryableStoreTypes.<String, String>keyValueStore());
+    }
+
+    // Запрос к хранилищу; хранилище может стать недоступным и между получением и чтением (перебалансировка)
+    private <T, R> R queryStore(StoreQueryParameters<T> parameters, Function<T, R> query) {
+        try {
+            return query.apply(kafkaStreams().store(parameters));
+        } catch (InvalidStateStoreException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Хранилище " + parameters.storeName() + " недоступно: " + e.getMessage());
+        }
+    }
+
+    private KafkaStreams kafkaStreams() {
+        KafkaStreams streams = streamsBuilderFactoryBean.getKafkaStreams();
+        if (streams == null || !streams.state().isRunningOrRebalancing()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Kafka Streams не запущен");
+        }
+        return streams;
+    }
+}
@@ -0,0 +1,424 @@
+package com.example.kafkastreams.service;
+
+import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.serde.MessageHeaders;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.Resource;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный генератор сообщений для проверки пропускной способности процессора
+ * (включается настройкой {@code generator.mode=LOAD} вместо {@link MessageGeneratorService}).
+ *
+ * Поддерживает заданную скорость (сообщений в секунду) несколькими виртуальными потоками: каждый поток
+ * раз в миллисекунду асинхронно отправляет пачку сообщений, накопившихся по расписанию, через один из
+ * нескольких продюсеров (пакетирование — на стороне продюсера). Отправители и получатели выбираются
+ * из {@code users} пользователей по закону Ципфа (перекос задается отдельно), длина текста — по выбранному
+ * распределению, скорость периодически умножается на время всплеска.
+ *
+ * Каждые {@code report-interval-ms} в лог пишутся достигнутая скорость отправки и подтверждения,
+ * число ошибок и перцентили задержки отправки (от send до подтверждения брокером). Те же значения
+ * доступны метриками {@code generator.messages{result}} и {@code generator.send.latency}.
+ */
+@Slf4j
+@Service
+@Profile("generator")
+@ConditionalOnProperty(name = "generator.mode", havingValue = "LOAD")
+public class LoadGeneratorService {
+
+    /**
+     * Распределение длины текста сообщения.
+     */
+    public enum LengthDistribution {
+        /**
+         * Шаблоны из файла как есть.
+         */
+        TEMPLATES,
+        /**
+         * Одинаковая длина {@code length.mean}.
+         */
+        FIXED,
+        /**
+         * Равномерно от {@code length.min} до {@code length.max}.
+         */
+        UNIFORM,
+        /**
+         * Логнормально со средним {@code length.mean} и параметром {@code length.sigma}, в пределах min..max.
+         */
+        LOG_NORMAL
+    }
+
+    // Количество заранее подготовленных текстов, из которых выбираются сообщения
+    private static final int TEXT_POOL_SIZE = 4096;
+
+    // Интервал, с которым поток отправляет накопившуюся по расписанию пачку
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Фабрика продюсеров сообщений (ее настройки используются для отдельных продюсеров генератора)
+    @Autowired
+    private ProducerFactory<String, Message> producerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Название Kafka-топика для отправки сообщений
+    @Value("${kafka.topic.messages}")
+    private String messagesTopic;
+
+    // Ресурс с файлом шаблонов сообщений
+    @Value("${messages.file.path}")
+    private Resource messagesResource;
+
+    // Целевая скорость, сообщений в секунду (без всплесков)
+    @Value("${generator.load.rate:100000}")
+    private double rate;
+
+    // Количество потоков отправки (виртуальных)
+    @Value("${generator.load.threads:4}")
+    private int threads;
+
+    // Количество продюсеров Kafka, между которыми распределяются потоки
+    @Value("${generator.load.producers:2}")
+    private int producers;
+
+    // Количество пользователей (ID от 1 до users)
+    @Value("${generator.load.users:100000}")
+    private int users;
+
+    // Перекос распределения отправителей по Ципфу (0 — равномерно)
+    @Value("${generator.load.sender-skew:1.0}")
+    private double senderSkew;
+
+    // Перекос распределения получателей по Ципфу (0 — равномерно)
+    @Value("${generator.load.receiver-skew:0.8}")
+    private double receiverSkew;
+
+    // Распределение длины текста
+    @Value("${generator.load.length.distribution:TEMPLATES}")
+    private LengthDistribution lengthDistribution;
+
+    @Value("${generator.load.length.min:16}")
+    private int lengthMin;
+
+    @Value("${generator.load.length.max:4096}")
+    private int lengthMax;
+
+    @Value("${generator.load.length.mean:128}")
+    private int lengthMean;
+
+    @Value("${generator.load.length.sigma:0.8}")
+    private double lengthSigma;
+
+    // Всплески: раз в period-ms на duration-ms скорость умножается на multiplier (period-ms=0 — без всплесков)
+    @Value("${generator.load.burst.period-ms:0}")
+    private long burstPeriodMs;
+
+    @Value("${generator.load.burst.duration-ms:1000}")
+    private long burstDurationMs;
+
+    @Value("${generator.load.burst.multiplier:3.0}")
+    private double burstMultiplier;
+
+    // Длительность нагрузки в секундах (0 — до остановки приложения)
+    @Value("${generator.load.duration-s:0}")
+    private long durationSeconds;
+
+    // Интервал отчета о достигнутой скорости и задержке
+    @Value("${generator.load.report-interval-ms:5000}")
+    private long reportIntervalMs;
+
+    private final List<Producer<String, Message>> kafkaProducers = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final LongAdder inFlight = new LongAdder();
+
+    private volatile boolean running;
+    private ScheduledExecutorService reporter;
+    private String[] texts;
+    private ZipfSampler senders;
+    private ZipfSampler receivers;
+    // Множитель перестановки рангов получателей: "горячие" получатели не совпадают с "горячими" отправителями
+    private long receiverStride;
+
+    private Counter sent;
+    private Counter acked;
+    private Counter failed;
+    private Timer sendLatency;
+
+    // Значения счетчиков на момент прошлого отчета
+    private double lastSent;
+    private double lastAcked;
+    private long lastReportNanos;
+
+    /**
+     * Готовит тексты и распределения, создает продюсеры и запускает потоки отправки.
+     * Запускается после старта приложения, когда топики уже созданы.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        texts = buildTexts(loadTemplates(), new SplittableRandom(42));
+        senders = new ZipfSampler(users, senderSkew);
+        receivers = new ZipfSampler(users, receiverSkew);
+        receiverStride = coprimeStride(users);
+
+        sent = generatorCounter("sent");
+        acked = generatorCounter("acked");
+        failed = generatorCounter("failed");
+        sendLatency = Timer.builder("generator.send.latency")
+            .description("Задержка отправки сообщения генератором (до подтверждения брокером)")
+            .publishPercentiles(0.5, 0.99, 0.999)
+            .distributionStatisticExpiry(Duration.ofMillis(reportIntervalMs))
+            .distributionStatisticBufferLength(1)
+            .register(meterRegistry);
+
+        for (int i = 0; i < Math.max(1, producers); i++) {
+            kafkaProducers.add(new KafkaProducer<>(producerFactory.getConfigurationProperties()));
+        }
+        running = true;
+        long startNanos = System.nanoTime();
+        int threadCount = Math.max(1, threads);
+        for (int i = 0; i < threadCount; i++) {
+            Producer<String, Message> producer = kafkaProducers.get(i % kafkaProducers.size());
+            long seed = 31L * i + 17;
+            workers.add(Thread.ofVirtual()
+                .name("load-generator-" + i)
+                .start(() -> run(producer, rate / threadCount, startNanos, new SplittableRandom(seed))));
+        }
+
+        lastReportNanos = startNanos;
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-generator-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Нагрузочный генератор: {} сообщений/с, потоков {}, продюсеров {}, пользователей {}, перекос {}/{}, длина {}, всплески {}",
+            rate, threadCount, kafkaProducers.size(), users, senderSkew, receiverSkew, lengthDistribution,
+            burstPeriodMs > 0 ? burstMultiplier + "x на " + burstDurationMs + " мс каждые " + burstPeriodMs + " мс" : "нет");
+    }
+
+    /**
+     * Останавливает потоки отправки, дожидается отправки буферов продюсеров и пишет итоговый отчет.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Producer<String, Message> producer : kafkaProducers) {
+            producer.close(Duration.ofSeconds(10));
+        }
+        if (reporter != null) {
+            reporter.shutdownNow();
+            report();
+        }
+    }
+
+    // Поток отправки: по расписанию с заданной скоростью, пачками раз в миллисекунду
+    private void run(Producer<String, Message> producer, double workerRate, long startNanos, SplittableRandom random) {
+        long endNanos = durationSeconds > 0 ? startNanos + TimeUnit.SECONDS.toNanos(durationSeconds) : Long.MAX_VALUE;
+        long lastNanos = startNanos;
+        double due = 0;
+        long done = 0;
+        while (running) {
+            long now = System.nanoTime();
+            if (now >= endNanos) {
+                if (running) {
+                    running = false;
+                    log.info("Нагрузочный генератор: заданная длительность {} с истекла", durationSeconds);
+                }
+                break;
+            }
+            due += workerRate * rateMultiplier(now - startNanos) * (now - lastNanos) / 1e9;
+            lastNanos = now;
+            // После паузы (GC, заполненный буфер продюсера) не догоняем больше секунды: иначе получился бы всплеск
+            if (due - done > workerRate) {
+                due = done + workerRate;
+            }
+            long batch = (long) due - done;
+            for (long i = 0; i < batch && running; i++) {
+                send(producer, random);
+            }
+            done += batch;
+            if (batch == 0) {
+                LockSupport.parkNanos(TICK_NANOS);
+            }
+        }
+    }
+
+    // Множитель скорости с учетом всплесков
+    private double rateMultiplier(long elapsedNanos) {
+        if (burstPeriodMs <= 0) {
+            return 1.0;
+        }
+        long phaseMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos) % burstPeriodMs;
+        return phaseMs < burstDurationMs ? burstMultiplier : 1.0;
+    }
+
+    private void send(Producer<String, Message> producer, SplittableRandom random) {
+        int userId = senders.sample(random);
+        int receiverId = (int) ((receivers.sample(random) - 1) * receiverStride % users) + 1;
+        Message message = new Message(userId, receiverId, texts[random.nextInt(texts.length)]);
+
+        // Ключ — ID получателя, ID дублируются в заголовки (как у MessageGeneratorService)
+        ProducerRecord<String, Message> record = new ProducerRecord<>(messagesTopic, String.valueOf(receiverId), message);
+        MessageHeaders.write(record.headers(), message);
+        long start = System.nanoTime();
+        inFlight.increment();
+        try {
+            producer.send(record, (metadata, e) -> {
+                inFlight.decrement();
+                if (e == null) {
+                    acked.increment();
+                    sendLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                } else {
+                    failed.increment();
+                }
+            });
+            sent.increment();
+        } catch (RuntimeException e) {
+            inFlight.decrement();
+            failed.increment();
+        }
+    }
+
+    // Отчет о скорости и задержке за прошедший интервал
+    private synchronized void report() {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportNanos) / 1e9;
+        double sentNow = sent.count();
+        double ackedNow = acked.count();
+        HistogramSnapshot snapshot = sendLatency.takeSnapshot();
+        StringBuilder percentiles = new StringBuilder();
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            percentiles.append(String.format(" p%s=%.2fмс", percentileName(value.percentile()), value.value(TimeUnit.MILLISECONDS)));
+        }
+        log.info("Нагрузка: цель {}/с, отправлено {}/с, подтверждено {}/с, ошибок всего {}, в полете {}; задержка отправки{} max={}мс",
+            Math.round(rate), Math.round((sentNow - lastSent) / seconds), Math.round((ackedNow - lastAcked) / seconds),
+            Math.round(failed.count()), inFlight.sum(), percentiles, String.format("%.2f", snapshot.max(TimeUnit.MILLISECONDS)));
+        lastSent = sentNow;
+        lastAcked = ackedNow;
+        lastReportNanos = now;
+    }
+
+    private Counter generatorCounter(String result) {
+        return Counter.builder("generator.messages")
+            .description("Сообщения нагрузочного генератора")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private List<String> loadTemplates() {
+        List<String> templates = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(messagesResource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    templates.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось загрузить сообщения из файла: " + e.getMessage(), e);
+        }
+        if (templates.isEmpty()) {
+            throw new IllegalStateException("Файл шаблонов сообщений пуст");
+        }
+        return templates;
+    }
+
+    // Тексты заданного распределения длины, составленные из шаблонов
+    private String[] buildTexts(List<String> templates, SplittableRandom random) {
+        String[] pool = new String[TEXT_POOL_SIZE];
+        int min = Math.max(1, lengthMin);
+        int max = Math.max(min, lengthMax);
+        double sigma = Math.max(0, lengthSigma);
+        // Параметр mu логнормального распределения с заданным средним
+        double mu = Math.log(Math.max(1, lengthMean)) - sigma * sigma / 2;
+        for (int i = 0; i < pool.length; i++) {
+            int length = switch (lengthDistribution) {
+                case TEMPLATES -> -1;
+                case FIXED -> Math.max(1, lengthMean);
+                case UNIFORM -> random.nextInt(min, max + 1);
+                case LOG_NORMAL -> (int) Math.min(max, Math.max(min, Math.round(Math.exp(mu + sigma * gaussian(random)))));
+            };
+            if (length < 0) {
+                pool[i] = templates.get(random.nextInt(templates.size()));
+                continue;
+            }
+            StringBuilder text = new StringBuilder(length + 128);
+            while (text.length() < length) {
+                if (!text.isEmpty()) {
+                    text.append(' ');
+                }
+                text.append(templates.get(random.nextInt(templates.size())));
+            }
+            text.setLength(length);
+            pool[i] = text.toString();
+        }
+        return pool;
+    }
+
+    // Стандартное нормальное распределение (Бокс — Мюллер)
+    private static double gaussian(SplittableRandom random) {
+        double u = 1.0 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    // Шаг перестановки рангов 1..n: взаимно простой с n и далекий от 1
+    private static long coprimeStride(int n) {
+        long stride = (long) (n * 0.6180339887) | 1;
+        while (stride > 1 && gcd(stride, n) != 1) {
+            stride += 2;
+        }
+        return Math.max(1, stride % Math.max(1, n));
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // 0.5 -> "50", 0.999 -> "99.9"
+    private static String percentileName(double percentile) {
+        double percent = Math.round(percentile * 1000) / 10.0;
+        return percent == Math.rint(percent) ? Long.toString((long) percent) : Double.toString(percent);
+    }
+}
@@ -1,9 +1,12 @@
 package com.example.kafkastreams.service;
 
 import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.serde.MessageHeaders;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.io.Resource;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -11,8 +14,6 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.PostConstruct;
-
 import javax.annotation.PostConstruct;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -26,6 +27,7 @@ import java.util.Random;
 @Service
 @EnableScheduling
 @Profile("generator")
+@ConditionalOnProperty(name = "generator.mode", havingValue = "SCHEDULED", matchIfMissing = true)
 public class MessageGeneratorService {
 
     /**
@@ -88,7 +90,11 @@ public class MessageGeneratorService {
         String messageFromFile = messageTemplates.get(random.nextInt(messageTemplates.size())); // случайный шаблон
         Message message = new Message(userId, receiverId, messageFromFile);
 
-        kafkaTemplate.send(messagesTopic, message);
+        // Ключ — ID получателя: сообщения получателя попадают в ту же партицию, что и его блокировки.
+        // ID дублируются в заголовки, чтобы процессор проверял блокировку, не декодируя тело сообщения
+        ProducerRecord<String, Message> record = new ProducerRecord<>(messagesTopic, String.valueOf(receiverId), message);
+        MessageHeaders.write(record.headers(), message);
+        kafkaTemplate.send(record);
         log.info("Отправлено сообщение: {}", message);
     }
 }
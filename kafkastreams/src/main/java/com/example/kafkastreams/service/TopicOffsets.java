@@ -0,0 +1,66 @@
+package com.example.kafkastreams.service;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Проверка содержимого топиков через AdminClient (для однократного начального наполнения).
+ */
+final class TopicOffsets {
+
+    // Максимальное ожидание ответа брокера, с
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private TopicOffsets() {
+    }
+
+    /**
+     * Проверяет, что в топик еще ни разу не писали: конечный offset каждой партиции равен нулю.
+     * Топик, из которого записи удалены по времени или компакцией, пустым не считается.
+     *
+     * @param kafkaAdmin настройки подключения к Kafka
+     * @param topic      название топика
+     * @return true, если в топик ничего не записано
+     * @throws IllegalStateException топик не найден или брокер недоступен
+     */
+    static boolean neverWritten(KafkaAdmin kafkaAdmin, String topic) {
+        return endOffsets(kafkaAdmin, topic).values().stream().allMatch(offset -> offset == 0);
+    }
+
+    /**
+     * Конечные offset'ы (offset следующей записи) всех партиций топика.
+     *
+     * @param kafkaAdmin настройки подключения к Kafka
+     * @param topic      название топика
+     * @return партиция -> конечный offset
+     * @throws IllegalStateException топик не найден или брокер недоступен
+     */
+    static Map<Integer, Long> endOffsets(KafkaAdmin kafkaAdmin, String topic) {
+        try (Admin admin = Admin.create(kafkaAdmin.getConfigurationProperties())) {
+            TopicDescription description = admin.describeTopics(List.of(topic)).allTopicNames()
+                .get(TIMEOUT_SECONDS, TimeUnit.SECONDS).get(topic);
+            Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+            description.partitions().forEach(partition ->
+                latest.put(new TopicPartition(topic, partition.partition()), OffsetSpec.latest()));
+            Map<Integer, Long> offsets = new HashMap<>();
+            admin.listOffsets(latest).all().get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .forEach((partition, info) -> offsets.put(partition.partition(), info.offset()));
+            return offsets;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прервана проверка топика " + topic, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Не удалось проверить топик " + topic + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.kafkastreams.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отложенная (write-behind) запись состояния на диск в отдельном потоке.
+ *
+ * Изменения только отмечаются вызовом {@link #changed(String)} и объединяются: запись выполняется
+ * через {@code flushDelayMs} после первого изменения или сразу, когда накопилось {@code maxBatch} изменений.
+ * Снимок пишется во временный файл и атомарно переименовывается, поэтому файл на диске всегда целый.
+ *
+ * В режиме журнала изменений каждая запись дописывает в файл {@code <снимок>.log} только строки изменений,
+ * а полный снимок пишется раз в {@code compactEvery} изменений (после этого журнал удаляется).
+ * Записи журнала должны быть идемпотентными ("установить"/"снять"): при восстановлении журнал
+ * накладывается на снимок, который может уже содержать часть изменений.
+ */
+@Slf4j
+public class WriteBehindPersister implements AutoCloseable {
+
+    /**
+     * Запись полного снимка состояния в поток. Поток закрывать не нужно.
+     */
+    @FunctionalInterface
+    public interface SnapshotWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Настройки отложенной записи.
+     *
+     * @param flushDelayMs     задержка записи после первого изменения, мс
+     * @param maxBatch         количество изменений, при котором запись выполняется без ожидания
+     * @param changeLogEnabled вести ли журнал изменений вместо перезаписи снимка
+     * @param compactEvery     количество записей журнала, после которого пишется снимок
+     */
+    public record Settings(long flushDelayMs, int maxBatch, boolean changeLogEnabled, int compactEvery) {
+    }
+
+    private final String name;
+    private final Path snapshotFile;
+    private final Path changeLogFile;
+    private final SnapshotWriter snapshotWriter;
+    private final Settings settings;
+    private final ScheduledExecutorService executor;
+
+    // Записи журнала, еще не записанные на диск
+    private final ConcurrentLinkedQueue<String> pendingRecords = new ConcurrentLinkedQueue<>();
+
+    // Количество изменений с последней записи
+    private final AtomicInteger pendingChanges = new AtomicInteger();
+
+    // Запланирована ли отложенная запись
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    // Количество записей в журнале на диске (изменяется только под монитором объекта)
+    private long changeLogSize;
+
+    // Нужен полный снимок (например, после ошибки записи журнала)
+    private boolean snapshotRequired;
+
+    public WriteBehindPersister(String name, Path snapshotFile, SnapshotWriter snapshotWriter, Settings settings) {
+        this.name = name;
+        this.snapshotFile = snapshotFile.toAbsolutePath();
+        this.changeLogFile = this.snapshotFile.resolveSibling(this.snapshotFile.getFileName() + ".log");
+        this.snapshotWriter = snapshotWriter;
+        this.settings = settings;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Отмечает изменение состояния. Не выполняет ввод-вывод в вызывающем потоке.
+     *
+     * @param record идемпотентная строка журнала изменений (игнорируется, если журнал выключен)
+     */
+    public void changed(String record) {
+        if (closed) {
+            log.warn("[{}] Изменение после остановки записи не будет сохранено", name);
+            return;
+        }
+        // Строка журнала добавляется до увеличения счетчика, чтобы запись не потеряла ее
+        if (settings.changeLogEnabled()) {
+            pendingRecords.add(record);
+        }
+        int pending = pendingChanges.incrementAndGet();
+        if (pending == settings.maxBatch()) {
+            executor.execute(this::flushQuietly);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flushQuietly, settings.flushDelayMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Читает журнал изменений, накопленный с последнего снимка (для восстановления при старте).
+     *
+     * @return строки журнала по порядку (пустой список, если журнала нет)
+     * @throws IOException ошибка чтения
+     */
+    public synchronized List<String> readChangeLog() throws IOException {
+        if (!Files.exists(changeLogFile)) {
+            return List.of();
+        }
+        List<String> records = Files.readAllLines(changeLogFile, StandardCharsets.UTF_8);
+        changeLogSize = records.size();
+        return records;
+    }
+
+    /**
+     * Следующая запись будет полным снимком, даже если журнал изменений включен.
+     * Нужно, когда состояние строится заново (например, из топика) и строки журнала
+     * не накладываются на снимок, уже лежащий на диске.
+     */
+    public synchronized void requireSnapshot() {
+        snapshotRequired = true;
+    }
+
+    /**
+     * Записывает изменения, накопленные с прошлой записи.
+     *
+     * @throws IOException ошибка записи (изменения будут записаны полным снимком при следующей попытке)
+     */
+    public synchronized void flush() throws IOException {
+        flushScheduled.set(false);
+        int changes = pendingChanges.getAndSet(0);
+        if (changes == 0 && !snapshotRequired) {
+            return;
+        }
+        try {
+            if (settings.changeLogEnabled() && !snapshotRequired) {
+                appendToChangeLog(drainRecords());
+                if (changeLogSize < settings.compactEvery()) {
+                    log.debug("[{}] В журнал записано изменений: {}", name, changes);
+                    return;
+                }
+            }
+            snapshot();
+            log.debug("[{}] Снимок записан, изменений: {}", name, changes);
+        } catch (IOException e) {
+            snapshotRequired = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Немедленно записывает полный снимок и очищает журнал изменений.
+     *
+     * @throws IOException ошибка записи
+     */
+    public synchronized void snapshot() throws IOException {
+        // Строки, попавшие в очередь до чтения состояния, уже отражены в снимке
+        pendingRecords.clear();
+        writeSnapshot();
+        if (settings.changeLogEnabled()) {
+            Files.deleteIfExists(changeLogFile);
+            changeLogSize = 0;
+        }
+        snapshotRequired = false;
+    }
+
+    /**
+     * Останавливает фоновый поток и записывает оставшиеся изменения в вызывающем потоке.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("[{}] Ошибка записи при остановке: {}", name, e.getMessage(), e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            log.error("[{}] Ошибка отложенной записи, повтор через {} мс: {}", name, settings.flushDelayMs(), e.getMessage(), e);
+            if (!closed && flushScheduled.compareAndSet(false, true)) {
+                executor.schedule(this::flushQuietly, settings.flushDelayMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private List<String> drainRecords() {
+        List<String> records = new ArrayList<>();
+        String record;
+        while ((record = pendingRecords.poll()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    private void appendToChangeLog(List<String> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(changeLogFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (String record : records) {
+                writer.write(record);
+                writer.newLine();
+            }
+        }
+        changeLogSize += records.size();
+    }
+
+    // Снимок пишется во временный файл в том же каталоге, сбрасывается на диск и переименовывается поверх старого
+    private void writeSnapshot() throws IOException {
+        Path temp = Files.createTempFile(snapshotFile.getParent(), snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                // Писатель снимка (например, Jackson) может закрыть поток сам — закрытие канала откладываем до force()
+                snapshotWriter.write(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        out.flush();
+                    }
+                });
+                out.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
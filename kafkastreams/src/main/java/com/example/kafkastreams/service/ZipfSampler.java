@@ -0,0 +1,89 @@
+package com.example.kafkastreams.service;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Выборка рангов 1..n по закону Ципфа: P(k) ~ 1 / k^exponent.
+ *
+ * Метод rejection-inversion (W. Hörmann, G. Derflinger): без таблиц размером n и за O(1) в среднем,
+ * поэтому подходит и для миллионов пользователей. При exponent = 0 распределение равномерное.
+ */
+public final class ZipfSampler {
+
+    private final int n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+
+    /**
+     * @param n        количество рангов
+     * @param exponent показатель перекоса (0 — равномерно, около 1 — типичный "горячий" хвост)
+     */
+    public ZipfSampler(int n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n должно быть положительным: " + n);
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("exponent не может быть отрицательным: " + exponent);
+        }
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * @param random источник случайных чисел
+     * @return ранг от 1 до n
+     */
+    public int sample(RandomGenerator random) {
+        if (exponent == 0) {
+            return 1 + random.nextInt(n);
+        }
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > n) {
+                k = n;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    // h(x) = 1 / x^exponent
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    // Первообразная h
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return expm1OverX((1 - exponent) * logX) * logX;
+    }
+
+    // Функция, обратная hIntegral
+    private double hIntegralInverse(double x) {
+        double t = x * (1 - exponent);
+        if (t < -1) {
+            t = -1;
+        }
+        return Math.exp(log1pOverX(t) * x);
+    }
+
+    // log(1 + x) / x с точностью и около нуля
+    private static double log1pOverX(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x с точностью и около нуля
+    private static double expm1OverX(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3.0 * (1 + 0.25 * x));
+    }
+}
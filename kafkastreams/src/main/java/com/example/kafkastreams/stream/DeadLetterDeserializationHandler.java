@@ -0,0 +1,37 @@
+package com.example.kafkastreams.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.streams.errors.DeserializationExceptionHandler;
+import org.apache.kafka.streams.processor.ProcessorContext;
+
+import java.util.Map;
+
+/**
+ * Обработчик ошибок десериализации Kafka Streams: исходные байты записи отправляются в топик ошибок,
+ * обработка продолжается со следующей записи (одна поврежденная запись не останавливает поток
+ * и не приводит к циклу перезапусков).
+ */
+@Slf4j
+public class DeadLetterDeserializationHandler implements DeserializationExceptionHandler {
+
+    private DeadLetterPublisher publisher;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        publisher = (DeadLetterPublisher) configs.get(DeadLetterPublisher.CONFIG);
+    }
+
+    @Override
+    public DeserializationHandlerResponse handle(ProcessorContext context, ConsumerRecord<byte[], byte[]> record,
+                                                 Exception exception) {
+        if (publisher == null) {
+            log.error("Пропущена запись {}-{}@{}: ошибка десериализации, топик ошибок не настроен: {}",
+                record.topic(), record.partition(), record.offset(), exception.getMessage());
+        } else {
+            publisher.publish(DeadLetters.Stage.DESERIALIZATION, record.key(), record.value(), record.headers(),
+                exception, record.topic(), record.partition(), record.offset());
+        }
+        return DeserializationHandlerResponse.CONTINUE;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.kafkastreams.stream;
+
+import com.example.kafkastreams.model.Message;
+import org.apache.kafka.streams.processor.api.FixedKeyProcessor;
+import org.apache.kafka.streams.processor.api.FixedKeyProcessorContext;
+import org.apache.kafka.streams.processor.api.FixedKeyRecord;
+
+/**
+ * Ветка ошибок DSL-варианта: передает исходное сообщение дальше (в топик ошибок)
+ * с заголовками ошибки {@link DeadLetters} и сообщает о ней наблюдателю.
+ */
+class DeadLetterProcessor implements FixedKeyProcessor<String, MessagePipeline.Outcome, Message> {
+
+    // Наблюдатель за этапами обработки
+    private final PipelineObserver observer;
+
+    private FixedKeyProcessorContext<String, Message> context;
+
+    DeadLetterProcessor(PipelineObserver observer) {
+        this.observer = observer;
+    }
+
+    @Override
+    public void init(FixedKeyProcessorContext<String, Message> context) {
+        this.context = context;
+    }
+
+    @Override
+    public void process(FixedKeyRecord<String, MessagePipeline.Outcome> record) {
+        MessagePipeline.Outcome outcome = record.value();
+        observer.onDeadLetter(outcome.stage(), outcome.error());
+        context.forward(record
+            .withValue(outcome.message())
+            .withHeaders(DeadLetters.withError(record.headers(), outcome.stage(), outcome.error(),
+                context.recordMetadata().orElse(null), outcome.attempts())));
+    }
+}
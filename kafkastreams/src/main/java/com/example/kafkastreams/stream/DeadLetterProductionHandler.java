@@ -0,0 +1,48 @@
+package com.example.kafkastreams.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.streams.errors.ProductionExceptionHandler;
+
+import java.util.Map;
+
+/**
+ * Обработчик ошибок записи в выходные топики Kafka Streams: запись отправляется в топик ошибок,
+ * обработка продолжается. Фатальные ошибки продюсера (например, fencing при exactly-once)
+ * Kafka Streams обрабатывает сам, в этот обработчик они не попадают.
+ */
+@Slf4j
+public class DeadLetterProductionHandler implements ProductionExceptionHandler {
+
+    private DeadLetterPublisher publisher;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        publisher = (DeadLetterPublisher) configs.get(DeadLetterPublisher.CONFIG);
+    }
+
+    @Override
+    public ProductionExceptionHandlerResponse handle(ProducerRecord<byte[], byte[]> record, Exception exception) {
+        // Слишком большое значение не поместится и в топик ошибок: отправляются только ключ и заголовки
+        byte[] value = exception instanceof RecordTooLargeException ? null : record.value();
+        publish(record, record.key(), value, exception);
+        return ProductionExceptionHandlerResponse.CONTINUE;
+    }
+
+    @Override
+    public ProductionExceptionHandlerResponse handleSerializationException(ProducerRecord record, Exception exception) {
+        // Значение не сериализовано: в топик ошибок попадают только заголовки с причиной
+        publish(record, null, null, exception);
+        return ProductionExceptionHandlerResponse.CONTINUE;
+    }
+
+    private void publish(ProducerRecord<?, ?> record, byte[] key, byte[] value, Exception exception) {
+        int partition = record.partition() == null ? -1 : record.partition();
+        if (publisher == null) {
+            log.error("Пропущена запись в {}: ошибка записи, топик ошибок не настроен: {}", record.topic(), exception.getMessage());
+            return;
+        }
+        publisher.publish(DeadLetters.Stage.PRODUCTION, key, value, record.headers(), exception, record.topic(), partition, -1);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.kafkastreams.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Отправка в топик ошибок записей, которые Kafka Streams не смог прочитать или записать
+ * (обработчики {@link DeadLetterDeserializationHandler} и {@link DeadLetterProductionHandler}).
+ *
+ * Отправка асинхронная, через отдельный продюсер (вне транзакции Kafka Streams): поток обработки
+ * ждет не дольше {@code max.block.ms}, а если записать не удалось, ошибка только логируется и считается
+ * ({@link PipelineObserver#onDeadLetterFailed}). Обработчики получают общий экземпляр через
+ * конфигурацию Kafka Streams по ключу {@link #CONFIG}.
+ */
+@Slf4j
+public class DeadLetterPublisher implements AutoCloseable {
+
+    /**
+     * Ключ конфигурации Kafka Streams, по которому обработчики ошибок получают экземпляр.
+     */
+    public static final String CONFIG = "dead-letter.publisher";
+
+    private final String topic;
+    private final Producer<byte[], byte[]> producer;
+    private final PipelineObserver observer;
+
+    /**
+     * @param topic            топик ошибок
+     * @param bootstrapServers адрес Kafka
+     * @param maxBlockMs       максимальное ожидание отправки в потоке обработки (метаданные, заполненный буфер)
+     * @param observer         наблюдатель (метрики топика ошибок)
+     */
+    public DeadLetterPublisher(String topic, String bootstrapServers, long maxBlockMs, PipelineObserver observer) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, "dead-letter-publisher");
+        this.topic = topic;
+        this.producer = new KafkaProducer<>(props);
+        this.observer = observer;
+    }
+
+    /**
+     * Асинхронно отправляет запись в топик ошибок.
+     *
+     * @param stage       этап ошибки
+     * @param key         ключ или null
+     * @param value       значение или null
+     * @param headers     исходные заголовки или null
+     * @param error       исключение
+     * @param sourceTopic исходный топик
+     * @param partition   исходная партиция или -1
+     * @param offset      исходный offset или -1
+     */
+    public void publish(DeadLetters.Stage stage, byte[] key, byte[] value, Headers headers, Exception error,
+                        String sourceTopic, int partition, long offset) {
+        observer.onDeadLetter(stage, error);
+        ProducerRecord<byte[], byte[]> record = new ProducerRecord<>(topic, null, key, value,
+            DeadLetters.withError(headers, stage, error, sourceTopic, partition, offset, 1));
+        try {
+            producer.send(record, (metadata, e) -> {
+                if (e != null) {
+                    failed(stage, sourceTopic, partition, offset, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            failed(stage, sourceTopic, partition, offset, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        producer.close(Duration.ofSeconds(5));
+    }
+
+    private void failed(DeadLetters.Stage stage, String sourceTopic, int partition, long offset, Exception e) {
+        observer.onDeadLetterFailed(stage, e);
+        log.error("Не удалось записать в топик ошибок {} запись {}-{}@{} (этап {}): {}",
+            topic, sourceTopic, partition, offset, stage.tag(), e.getMessage());
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.kafkastreams.stream;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.streams.processor.TopicNameExtractor;
+import org.apache.kafka.streams.processor.api.RecordMetadata;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Заголовки и маршрутизация записей, которые не удалось обработать (dead-letter).
+ *
+ * Такая запись отправляется в отдельный топик с исходными ключом и значением, а причина ошибки
+ * записывается в заголовки {@code dlq.*} (строки UTF-8): этап, класс и текст исключения,
+ * исходные топик/партиция/offset, число попыток и время ошибки.
+ */
+public final class DeadLetters {
+
+    /**
+     * Этап, на котором произошла ошибка (значение тега {@code stage} метрик и заголовка {@link #STAGE}).
+     */
+    public enum Stage {
+        DESERIALIZATION("deserialization"),
+        BLOCK_CHECK("block-check"),
+        CENSOR("censor"),
+        PRODUCTION("production");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    // Общий префикс заголовков ошибки
+    private static final String PREFIX = "dlq.";
+
+    public static final String STAGE = PREFIX + "stage";
+    public static final String ERROR_CLASS = PREFIX + "error.class";
+    public static final String ERROR_MESSAGE = PREFIX + "error.message";
+    public static final String SOURCE_TOPIC = PREFIX + "source.topic";
+    public static final String SOURCE_PARTITION = PREFIX + "source.partition";
+    public static final String SOURCE_OFFSET = PREFIX + "source.offset";
+    public static final String ATTEMPTS = PREFIX + "attempts";
+    public static final String FAILED_AT = PREFIX + "failed.at";
+
+    // Текст исключения обрезается, чтобы заголовки не раздували запись
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 1024;
+
+    private DeadLetters() {
+    }
+
+    /**
+     * Копия заголовков записи с описанием ошибки. Заголовки {@code dlq.*} от прошлых ошибок
+     * (например, у записи, повторно отправленной из топика ошибок) заменяются.
+     *
+     * @param source    исходные заголовки (не изменяются)
+     * @param stage     этап
+     * @param error     исключение
+     * @param topic     исходный топик или null
+     * @param partition исходная партиция или -1
+     * @param offset    исходный offset или -1
+     * @param attempts  число выполненных попыток
+     * @return новые заголовки
+     */
+    public static Headers withError(Headers source, Stage stage, Throwable error,
+                                    String topic, int partition, long offset, int attempts) {
+        Headers headers = withoutError(source);
+        add(headers, STAGE, stage.tag());
+        add(headers, ERROR_CLASS, error.getClass().getName());
+        add(headers, ERROR_MESSAGE, truncate(String.valueOf(error.getMessage())));
+        if (topic != null) {
+            add(headers, SOURCE_TOPIC, topic);
+        }
+        add(headers, SOURCE_PARTITION, Integer.toString(partition));
+        add(headers, SOURCE_OFFSET, Long.toString(offset));
+        add(headers, ATTEMPTS, Integer.toString(attempts));
+        add(headers, FAILED_AT, Long.toString(System.currentTimeMillis()));
+        return headers;
+    }
+
+    /**
+     * То же, что {@link #withError(Headers, Stage, Throwable, String, int, long, int)}, с источником
+     * из метаданных текущей записи Processor API.
+     */
+    public static Headers withError(Headers source, Stage stage, Throwable error, RecordMetadata metadata, int attempts) {
+        return metadata == null
+            ? withError(source, stage, error, null, -1, -1, attempts)
+            : withError(source, stage, error, metadata.topic(), metadata.partition(), metadata.offset(), attempts);
+    }
+
+    /**
+     * Копия заголовков без заголовков {@code dlq.*}.
+     *
+     * @param source исходные заголовки (не изменяются)
+     * @return новые заголовки
+     */
+    public static Headers withoutError(Headers source) {
+        RecordHeaders headers = new RecordHeaders();
+        if (source != null) {
+            for (Header header : source) {
+                if (!header.key().startsWith(PREFIX)) {
+                    headers.add(header);
+                }
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * @param headers заголовки записи
+     * @return true, если запись помечена как ошибочная
+     */
+    public static boolean isDeadLetter(Headers headers) {
+        return headers != null && headers.lastHeader(STAGE) != null;
+    }
+
+    /**
+     * Выбор топика по заголовкам записи: помеченные записи — в топик ошибок, остальные — в основной.
+     *
+     * @param topic           основной топик
+     * @param deadLetterTopic топик ошибок
+     * @return функция выбора топика для {@code KStream.to}
+     */
+    public static <K, V> TopicNameExtractor<K, V> router(String topic, String deadLetterTopic) {
+        return (key, value, recordContext) -> isDeadLetter(recordContext.headers()) ? deadLetterTopic : topic;
+    }
+
+    private static void add(Headers headers, String key, String value) {
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String truncate(String value) {
+        return value.length() <= MAX_ERROR_MESSAGE_LENGTH ? value : value.substring(0, MAX_ERROR_MESSAGE_LENGTH);
+    }
+}
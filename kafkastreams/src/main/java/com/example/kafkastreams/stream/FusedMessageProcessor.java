@@ -0,0 +1,162 @@
+package com.example.kafkastreams.stream;
+
+import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.serde.MessageDeserializer;
+import com.example.kafkastreams.serde.MessageHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.streams.errors.StreamsException;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.TimestampedKeyValueStore;
+import org.apache.kafka.streams.state.ValueAndTimestamp;
+
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * Проверка блокировки и цензура одним шагом Processor API над сырыми байтами значения.
+ *
+ * <ul>
+ *     <li>ID отправителя для проверки блокировки берется из заголовков записи ({@link MessageHeaders}),
+ *     без них — из бинарного значения без декодирования текста; JSON-записи без заголовков декодируются целиком;</li>
+ *     <li>заблокированные записи отбрасываются без декодирования тела;</li>
+ *     <li>у пропущенных записей ID из заголовков сверяются с декодированным телом: при расхождении
+ *     решение о блокировке принято по чужим ID, и запись направляется в топик ошибок, а не дальше;</li>
+ *     <li>если цензура ничего не заменила, дальше передается исходная запись с исходными байтами
+ *     и заголовками — без нового {@link Message} и повторной сериализации;</li>
+ *     <li>иначе в декодированном (принадлежащем процессору) объекте заменяется только текст;</li>
+ *     <li>если запись не удалось декодировать или цензурировать, дальше передаются исходные байты
+ *     с заголовками ошибки {@link DeadLetters} — такие записи направляются в топик ошибок.</li>
+ * </ul>
+ * Значение сериализуется и десериализуется Serde по умолчанию (default.value.serde), как и в DSL-варианте.
+ */
+class FusedMessageProcessor implements Processor<String, byte[], String, byte[]> {
+
+    // Функция цензуры текста сообщения (с повторами)
+    private final UnaryOperator<String> censor;
+
+    // Количество попыток цензуры (для заголовка ошибки)
+    private final int censorAttempts;
+
+    // Наблюдатель за этапами обработки
+    private final PipelineObserver observer;
+
+    private ProcessorContext<String, byte[]> context;
+
+    // Таблица блокировок (хранилище KTable, свернутое из топика blocked_user_changes)
+    private TimestampedKeyValueStore<String, int[]> blockedUsers;
+
+    private Deserializer<Message> deserializer;
+    private Serializer<Message> serializer;
+
+    FusedMessageProcessor(UnaryOperator<String> censor, int censorAttempts, PipelineObserver observer) {
+        this.censor = censor;
+        this.censorAttempts = censorAttempts;
+        this.observer = observer;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(ProcessorContext<String, byte[]> context) {
+        this.context = context;
+        this.blockedUsers = context.getStateStore(MessagePipeline.BLOCKED_USERS_STORE);
+        Serde<Message> valueSerde = (Serde<Message>) context.valueSerde();
+        this.deserializer = valueSerde.deserializer();
+        this.serializer = valueSerde.serializer();
+    }
+
+    @Override
+    public void process(Record<String, byte[]> record) {
+        byte[] value = record.value();
+        // Пустые значения (tombstone) и записи без ключа отбрасываются, как и в DSL-варианте с соединением по ключу
+        if (value == null || record.key() == null) {
+            return;
+        }
+        // Заголовки ошибки от прошлой обработки (запись повторно отправлена из топика ошибок) удаляются,
+        // иначе запись снова ушла бы в топик ошибок
+        if (DeadLetters.isDeadLetter(record.headers())) {
+            record = record.withHeaders(DeadLetters.withoutError(record.headers()));
+        }
+        String topic = context.recordMetadata().map(metadata -> metadata.topic()).orElse(null);
+
+        long start = System.nanoTime();
+        Message message = null;
+        int userId;
+        int receiverId;
+        boolean idsFromHeaders = false;
+        try {
+            long userIdHeader = MessageHeaders.readInt(record.headers(), MessageHeaders.USER_ID);
+            long receiverIdHeader = MessageHeaders.readInt(record.headers(), MessageHeaders.RECEIVER_ID);
+            if (userIdHeader != MessageHeaders.ABSENT && receiverIdHeader != MessageHeaders.ABSENT) {
+                userId = (int) userIdHeader;
+                receiverId = (int) receiverIdHeader;
+                idsFromHeaders = true;
+            } else if (MessageDeserializer.isJson(value)) {
+                message = deserializer.deserialize(topic, record.headers(), value);
+                if (message == null) {
+                    return;
+                }
+                userId = message.getUserId();
+                receiverId = message.getReceiverId();
+            } else {
+                userId = MessageDeserializer.readUserId(value);
+                receiverId = MessageDeserializer.readReceiverId(value);
+            }
+        } catch (RuntimeException e) {
+            deadLetter(record, DeadLetters.Stage.DESERIALIZATION, e, 1);
+            return;
+        }
+        ValueAndTimestamp<int[]> blocked = blockedUsers.get(record.key());
+        boolean isBlocked = blocked != null && Arrays.binarySearch(blocked.value(), userId) >= 0;
+        observer.onBlockCheck(userId, receiverId, isBlocked, System.nanoTime() - start);
+        if (isBlocked) {
+            return;
+        }
+
+        if (message == null) {
+            try {
+                message = deserializer.deserialize(topic, record.headers(), value);
+            } catch (RuntimeException e) {
+                deadLetter(record, DeadLetters.Stage.DESERIALIZATION, e, 1);
+                return;
+            }
+        }
+        // Заголовки пишет продюсер, а не сериализатор тела: проверка блокировки по ним верна, только если они совпадают с телом
+        if (idsFromHeaders && (message.getUserId() != userId || message.getReceiverId() != receiverId)) {
+            deadLetter(record, DeadLetters.Stage.BLOCK_CHECK, new IllegalStateException(
+                "ID в заголовках (userId=" + userId + ", receiverId=" + receiverId + ") не совпадают с телом сообщения (userId="
+                    + message.getUserId() + ", receiverId=" + message.getReceiverId() + ")"), 1);
+            return;
+        }
+        byte[] censoredValue = value;
+        try {
+            start = System.nanoTime();
+            String text = message.getMessage();
+            String censoredText = censor.apply(text);
+            observer.onCensor(message, censoredText, System.nanoTime() - start);
+            // Автомат возвращает тот же объект строки, если ничего не заменено: тогда передаются исходные байты
+            if (censoredText != text) {
+                message.setMessage(censoredText);
+                censoredValue = serializer.serialize(topic, record.headers(), message);
+            }
+        } catch (RuntimeException e) {
+            deadLetter(record, DeadLetters.Stage.CENSOR, e, censorAttempts);
+            return;
+        }
+        context.forward(censoredValue == value ? record : record.withValue(censoredValue));
+    }
+
+    // Исходная запись (байты значения не изменяются) передается дальше с заголовками ошибки
+    private void deadLetter(Record<String, byte[]> record, DeadLetters.Stage stage, RuntimeException error, int attempts) {
+        // Исключения Kafka Streams не относятся к записи и обрабатываются самим Kafka Streams
+        if (error instanceof StreamsException) {
+            throw error;
+        }
+        observer.onDeadLetter(stage, error);
+        context.forward(record.withHeaders(DeadLetters.withError(
+            record.headers(), stage, error, context.recordMetadata().orElse(null), attempts)));
+    }
+}
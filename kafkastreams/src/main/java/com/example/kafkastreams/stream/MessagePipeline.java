@@ -0,0 +1,313 @@
+package com.example.kafkastreams.stream;
+
+import com.example.kafkastreams.model.BlockedUserChange;
+import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.serde.BlockedUserChangeSerde;
+import com.example.kafkastreams.serde.BlockedUsersSerde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.errors.StreamsException;
+import org.apache.kafka.streams.kstream.Branched;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.GlobalKTable;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Топология обработки сообщений: соединение с таблицей блокировок -> фильтрация -> цензура -> выходной топик.
+ * Строится в одном из двух вариантов ({@link Mode}): цепочка DSL или один шаг Processor API над байтами.
+ *
+ * Не зависит от Spring, поэтому ту же топологию строит и {@code KafkaStreamsProcessor},
+ * и бенчмарки на TopologyTestDriver.
+ *
+ * На каждую запись ничего не логируется: результаты этапов получает {@link PipelineObserver}
+ * (например, выборочная трассировка {@link PipelineTracer}).
+ *
+ * Ошибки обработки записи не останавливают поток и не пропускают сообщение без цензуры: запись с исходным
+ * значением и заголовками ошибки ({@link DeadLetters}) уходит в топик ошибок. Автомат цензуры детерминирован
+ * и повторный вызов с тем же текстом упадет так же, поэтому по умолчанию повторов нет ({@code censorMaxAttempts} = 1);
+ * больше одной попытки имеет смысл только для функции цензуры с временными сбоями (например, внешнего сервиса),
+ * причем повторы выполняются сразу, без ожидания. Исключения Kafka Streams ({@link StreamsException},
+ * например недоступное хранилище) не перехватываются — их обрабатывает сам Kafka Streams.
+ */
+public class MessagePipeline {
+
+    /**
+     * Вариант топологии.
+     */
+    public enum Mode {
+        /**
+         * DSL: leftJoin с таблицей -> filter -> mapValues (новый Message на каждую запись).
+         */
+        DSL,
+        /**
+         * Processor API: проверка блокировки и цензура одним шагом над байтами ({@link FusedMessageProcessor}).
+         */
+        PROCESSOR
+    }
+
+    // Имя хранилища состояния (RocksDB) с блокировками: ID получателя -> список заблокированных отправителей
+    public static final String BLOCKED_USERS_STORE = "blocked-users-store";
+
+    // Имя глобального хранилища со словарем цензуры: слово -> слово (копия на каждом экземпляре)
+    public static final String CENSORED_WORDS_STORE = "censored-words-store";
+
+    // Пустой список блокировок (начальное значение агрегата)
+    private static final int[] NO_BLOCKS = new int[0];
+
+    // Название входного топика с исходными сообщениями
+    private final String messagesTopic;
+
+    // Название топика изменений отдельных блокировок (вход таблицы блокировок)
+    private final String blockedUserChangesTopic;
+
+    // Название компактного топика с блокировками пользователей (выход таблицы блокировок)
+    private final String blockedUsersTopic;
+
+    // Название выходного топика с отфильтрованными и цензурированными сообщениями
+    private final String filteredMessagesTopic;
+
+    // Название топика ошибок
+    private final String deadLetterTopic;
+
+    // Функция цензуры текста сообщения (с повторами)
+    private final UnaryOperator<String> censor;
+
+    // Количество попыток цензуры одного сообщения
+    private final int censorMaxAttempts;
+
+    // Наблюдатель за этапами обработки
+    private final PipelineObserver observer;
+
+    public MessagePipeline(String messagesTopic, String blockedUserChangesTopic, String blockedUsersTopic,
+                           String filteredMessagesTopic, String deadLetterTopic, UnaryOperator<String> censor,
+                           int censorMaxAttempts, PipelineObserver observer) {
+        this.messagesTopic = messagesTopic;
+        this.blockedUserChangesTopic = blockedUserChangesTopic;
+        this.blockedUsersTopic = blockedUsersTopic;
+        this.filteredMessagesTopic = filteredMessagesTopic;
+        this.deadLetterTopic = deadLetterTopic;
+        this.censorMaxAttempts = Math.max(1, censorMaxAttempts);
+        this.censor = withRetries(censor, this.censorMaxAttempts, observer);
+        this.observer = observer;
+    }
+
+    /**
+     * Результат этапов DSL-варианта: сообщение, прошедшее этап, или ошибка этапа.
+     *
+     * @param message  сообщение (исходное, если этап завершился ошибкой)
+     * @param stage    этап с ошибкой или null
+     * @param error    исключение или null
+     * @param attempts число выполненных попыток этапа с ошибкой
+     */
+    record Outcome(Message message, DeadLetters.Stage stage, RuntimeException error, int attempts) {
+
+        static Outcome passed(Message message) {
+            return new Outcome(message, null, null, 0);
+        }
+
+        static Outcome failed(Message message, DeadLetters.Stage stage, RuntimeException error, int attempts) {
+            // Исключения Kafka Streams не относятся к записи и обрабатываются самим Kafka Streams
+            if (error instanceof StreamsException) {
+                throw error;
+            }
+            return new Outcome(message, stage, error, attempts);
+        }
+
+        boolean isFailed() {
+            return error != null;
+        }
+    }
+
+    /**
+     * Глобальная таблица словаря цензуры из компактного топика censored_words.
+     * Каждый экземпляр хранит весь словарь, поэтому запросы к нему выполняются локально.
+     *
+     * @param builder           построитель топологии Kafka Streams
+     * @param censoredWordsTopic топик словаря (ключ — слово)
+     * @return глобальная таблица словаря
+     */
+    public static GlobalKTable<String, String> censoredWordsTable(StreamsBuilder builder, String censoredWordsTopic) {
+        return builder.globalTable(
+            censoredWordsTopic,
+            Consumed.with(Serdes.String(), Serdes.String()),
+            Materialized.<String, String, KeyValueStore<Bytes, byte[]>>as(CENSORED_WORDS_STORE)
+                .withKeySerde(Serdes.String())
+                .withValueSerde(Serdes.String()));
+    }
+
+    /**
+     * Добавляет топологию выбранного варианта в builder.
+     *
+     * @param builder построитель топологии Kafka Streams
+     * @param mode    вариант топологии
+     * @return поток отфильтрованных и цензурированных сообщений (Message для DSL, байты для PROCESSOR)
+     */
+    public KStream<String, ?> build(StreamsBuilder builder, Mode mode) {
+        return mode == Mode.PROCESSOR ? buildFused(builder) : build(builder);
+    }
+
+    /**
+     * Добавляет топологию на DSL в builder.
+     *
+     * @param builder построитель топологии Kafka Streams
+     * @return поток отфильтрованных и цензурированных сообщений
+     */
+    public KStream<String, Message> build(StreamsBuilder builder) {
+        // Создаем поток из входного топика
+        KStream<String, Message> messagesStream = builder.stream(messagesTopic);
+
+        KTable<String, int[]> blockedUsersTable = blockedUsersTable(builder);
+
+        // Фильтрация сообщений по блокировкам и цензура
+        KStream<String, Outcome> outcomes = messagesStream
+            // Пустые значения (tombstone) не несут сообщения и не могут быть соединены с таблицей
+            .filter((key, message) -> message != null)
+            // Соединение с таблицей блокировок по ключу (ID получателя); заблокированные сообщения превращаются в null.
+            // Записи без ключа в соединении не участвуют — генератор всегда задает ключ
+            .leftJoin(
+                blockedUsersTable,
+                (message, blocked) -> {
+                    try {
+                        long start = System.nanoTime();
+                        // Проверка, заблокирован ли отправитель для получателя
+                        boolean isBlocked = blocked != null && Arrays.binarySearch(blocked, message.getUserId()) >= 0;
+                        observer.onBlockCheck(message.getUserId(), message.getReceiverId(), isBlocked, System.nanoTime() - start);
+                        // Передача только тех сообщений, которые не заблокированы
+                        return isBlocked ? null : Outcome.passed(message);
+                    } catch (RuntimeException e) {
+                        return Outcome.failed(message, DeadLetters.Stage.BLOCK_CHECK, e, 1);
+                    }
+                })
+            .filter((key, outcome) -> outcome != null)
+            .mapValues((key, outcome) -> outcome.isFailed() ? outcome : censorMessage(outcome.message()));
+
+        // Ошибочные записи — в топик ошибок (с заголовками ошибки), остальные — в выходной топик
+        Map<String, KStream<String, Outcome>> branches = outcomes
+            .split(Named.as("outcome-"))
+            .branch((key, outcome) -> outcome.isFailed(), Branched.as("failed"))
+            .defaultBranch(Branched.as("passed"));
+        branches.get("outcome-failed")
+            .processValues(() -> new DeadLetterProcessor(observer))
+            .to(deadLetterTopic);
+        KStream<String, Message> filteredStream = branches.get("outcome-passed").mapValues(Outcome::message);
+
+        // Отправка обработанных сообщений в выходной топик
+        filteredStream.to(filteredMessagesTopic);
+        return filteredStream; // Возврат потока обработки
+    }
+
+    /**
+     * Добавляет в builder топологию на Processor API: значения читаются и пишутся байтами,
+     * проверка блокировки и цензура выполняются одним процессором с доступом к хранилищу блокировок.
+     * Записи с заголовками ошибки процессор передает дальше с исходными байтами, и они уходят в топик ошибок.
+     *
+     * @param builder построитель топологии Kafka Streams
+     * @return поток обработанных сообщений в сериализованном виде (включая записи для топика ошибок)
+     */
+    public KStream<String, byte[]> buildFused(StreamsBuilder builder) {
+        blockedUsersTable(builder);
+        KStream<String, byte[]> filteredStream = builder
+            .stream(messagesTopic, Consumed.with(Serdes.String(), Serdes.ByteArray()))
+            .process(() -> new FusedMessageProcessor(censor, censorMaxAttempts, observer), BLOCKED_USERS_STORE);
+        filteredStream.to(
+            DeadLetters.router(filteredMessagesTopic, deadLetterTopic),
+            Produced.with(Serdes.String(), Serdes.ByteArray()));
+        return filteredStream;
+    }
+
+    // Цензура сообщения для DSL-варианта: новый Message с цензурированным текстом или ошибка этапа
+    private Outcome censorMessage(Message message) {
+        try {
+            long start = System.nanoTime();
+            // Цензура текста сообщения
+            String censoredMessage = censor.apply(message.getMessage());
+            observer.onCensor(message, censoredMessage, System.nanoTime() - start);
+            // Возврат нового объекта Message с цензурированным текстом
+            return Outcome.passed(new Message(message.getUserId(), message.getReceiverId(), censoredMessage, message.getTimestamp()));
+        } catch (RuntimeException e) {
+            return Outcome.failed(message, DeadLetters.Stage.CENSOR, e, censorMaxAttempts);
+        }
+    }
+
+    // Ограниченное число немедленных повторов (только для недетерминированной функции цензуры):
+    // поток обработки не ждет, последняя ошибка передается вызывающему
+    private static UnaryOperator<String> withRetries(UnaryOperator<String> censor, int maxAttempts, PipelineObserver observer) {
+        if (maxAttempts <= 1) {
+            return censor;
+        }
+        return text -> {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return censor.apply(text);
+                } catch (RuntimeException e) {
+                    if (attempt >= maxAttempts || e instanceof StreamsException) {
+                        throw e;
+                    }
+                    observer.onRetry(DeadLetters.Stage.CENSOR, attempt, e);
+                }
+            }
+        };
+    }
+
+    // Таблица блокировок: изменения отдельных пар из blocked_user_changes сворачиваются в отсортированный список
+    // получателя в локальном хранилище RocksDB. Топология — единственный писатель списков, поэтому изменения
+    // с разных экземпляров не перезаписывают друг друга. Итоговые списки публикуются в компактный топик
+    // blocked_users (пустой список — tombstone) для читателей вне Kafka Streams.
+    // Топики messages и blocked_user_changes имеют одинаковое число партиций и ключ — ID получателя,
+    // поэтому каждая задача хранит только блокировки своих получателей
+    private KTable<String, int[]> blockedUsersTable(StreamsBuilder builder) {
+        KTable<String, int[]> table = builder
+            .stream(blockedUserChangesTopic, Consumed.with(Serdes.String(), new BlockedUserChangeSerde()))
+            .groupByKey(Grouped.with(Serdes.String(), new BlockedUserChangeSerde()))
+            .aggregate(
+                () -> NO_BLOCKS,
+                (userId, change, blocked) -> applyChange(blocked, change),
+                Materialized.<String, int[], KeyValueStore<Bytes, byte[]>>as(BLOCKED_USERS_STORE)
+                    .withKeySerde(Serdes.String())
+                    .withValueSerde(new BlockedUsersSerde()));
+        table.toStream().to(blockedUsersTopic, Produced.with(Serdes.String(), new BlockedUsersSerde()));
+        return table;
+    }
+
+    /**
+     * Применяет изменение одной блокировки к отсортированному списку получателя.
+     *
+     * @param blocked отсортированный список заблокированных (не изменяется)
+     * @param change  изменение
+     * @return новый список, тот же список, если изменение ничего не меняет, или null, если список стал пустым
+     *         (ключ удаляется из хранилища, в blocked_users уходит tombstone)
+     */
+    static int[] applyChange(int[] blocked, BlockedUserChange change) {
+        int position = Arrays.binarySearch(blocked, change.getBlockedUserId());
+        int[] updated;
+        if (change.isBlocked()) {
+            if (position >= 0) {
+                return blocked;
+            }
+            int insertAt = -position - 1;
+            updated = new int[blocked.length + 1];
+            System.arraycopy(blocked, 0, updated, 0, insertAt);
+            updated[insertAt] = change.getBlockedUserId();
+            System.arraycopy(blocked, insertAt, updated, insertAt + 1, blocked.length - insertAt);
+        } else {
+            if (position < 0) {
+                return blocked.length == 0 ? null : blocked;
+            }
+            updated = new int[blocked.length - 1];
+            System.arraycopy(blocked, 0, updated, 0, position);
+            System.arraycopy(blocked, position + 1, updated, position, blocked.length - position - 1);
+        }
+        return updated.length == 0 ? null : updated;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.kafkastreams.stream;
+
+import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.service.CensoredWordsMatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики Micrometer для этапов конвейера обработки сообщений.
+ *
+ * <ul>
+ *     <li>{@code pipeline.messages{result=passed|blocked}} — результат проверки блокировки;</li>
+ *     <li>{@code pipeline.messages.censored} — сообщения, в которых была замена;</li>
+ *     <li>{@code pipeline.censored.words} — количество замененных вхождений;</li>
+ *     <li>{@code pipeline.stage.duration{stage=block-check|censor}} — длительность этапов
+ *     (гистограмма и перцентили p50/p95/p99);</li>
+ *     <li>{@code pipeline.retries{stage}} — повторы этапа после ошибки;</li>
+ *     <li>{@code pipeline.dead.letters{stage}} — записи, направленные в топик ошибок;</li>
+ *     <li>{@code pipeline.dead.letters.failed{stage}} — записи, которые не удалось записать и в топик ошибок.</li>
+ * </ul>
+ * Также ведет счетчики срабатываний по каждому слову для топ-N цензурируемых слов.
+ */
+public class PipelineMetrics implements PipelineObserver, CensoredWordsMatcher.HitListener {
+
+    private final Counter passed;
+    private final Counter blocked;
+    private final Counter censoredMessages;
+    private final Counter censoredWords;
+    private final Timer blockCheckDuration;
+    private final Timer censorDuration;
+    private final Map<DeadLetters.Stage, Counter> retries = new EnumMap<>(DeadLetters.Stage.class);
+    private final Map<DeadLetters.Stage, Counter> deadLetters = new EnumMap<>(DeadLetters.Stage.class);
+    private final Map<DeadLetters.Stage, Counter> deadLettersFailed = new EnumMap<>(DeadLetters.Stage.class);
+
+    // Счетчики срабатываний по словам; размер ограничен словарем
+    private final Map<String, LongAdder> wordHits = new ConcurrentHashMap<>();
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.passed = Counter.builder("pipeline.messages")
+            .description("Сообщения после проверки блокировки")
+            .tag("result", "passed")
+            .register(registry);
+        this.blocked = Counter.builder("pipeline.messages")
+            .description("Сообщения после проверки блокировки")
+            .tag("result", "blocked")
+            .register(registry);
+        this.censoredMessages = Counter.builder("pipeline.messages.censored")
+            .description("Сообщения, в которых были заменены цензурные слова")
+            .register(registry);
+        this.censoredWords = Counter.builder("pipeline.censored.words")
+            .description("Количество замененных вхождений цензурных слов")
+            .register(registry);
+        this.blockCheckDuration = stageTimer(registry, "block-check");
+        this.censorDuration = stageTimer(registry, "censor");
+        for (DeadLetters.Stage stage : DeadLetters.Stage.values()) {
+            retries.put(stage, stageCounter(registry, "pipeline.retries", "Повторы этапа после ошибки", stage));
+            deadLetters.put(stage, stageCounter(registry, "pipeline.dead.letters", "Записи, направленные в топик ошибок", stage));
+            deadLettersFailed.put(stage, stageCounter(registry, "pipeline.dead.letters.failed", "Записи, которые не удалось записать в топик ошибок", stage));
+        }
+    }
+
+    @Override
+    public void onBlockCheck(int userId, int receiverId, boolean isBlocked, long nanos) {
+        (isBlocked ? blocked : passed).increment();
+        blockCheckDuration.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onCensor(Message message, String censoredMessage, long nanos) {
+        // Автомат возвращает тот же объект строки, если ничего не заменено
+        if (censoredMessage != message.getMessage()) {
+            censoredMessages.increment();
+        }
+        censorDuration.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onRetry(DeadLetters.Stage stage, int attempt, Exception error) {
+        retries.get(stage).increment();
+    }
+
+    @Override
+    public void onDeadLetter(DeadLetters.Stage stage, Exception error) {
+        deadLetters.get(stage).increment();
+    }
+
+    @Override
+    public void onDeadLetterFailed(DeadLetters.Stage stage, Exception error) {
+        deadLettersFailed.get(stage).increment();
+    }
+
+    @Override
+    public void onHit(String word) {
+        censoredWords.increment();
+        wordHits.computeIfAbsent(word, w -> new LongAdder()).increment();
+    }
+
+    /**
+     * Наиболее часто заменяемые слова.
+     *
+     * @param limit количество слов
+     * @return слово -> количество срабатываний, по убыванию
+     */
+    public Map<String, Long> topCensoredWords(int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        wordHits.entrySet().stream()
+            .map(entry -> Map.entry(entry.getKey(), entry.getValue().sum()))
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+            .limit(limit)
+            .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    private static Counter stageCounter(MeterRegistry registry, String name, String description, DeadLetters.Stage stage) {
+        return Counter.builder(name)
+            .description(description)
+            .tag("stage", stage.tag())
+            .register(registry);
+    }
+
+    private static Timer stageTimer(MeterRegistry registry, String stage) {
+        return Timer.builder("pipeline.stage.duration")
+            .description("Длительность этапа конвейера обработки")
+            .tag("stage", stage)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.kafkastreams.stream;
+
+import com.example.kafkastreams.model.Message;
+
+/**
+ * Наблюдатель за этапами конвейера обработки сообщений (проверка блокировки, цензура).
+ * Получает результат и длительность каждого этапа, а также повторы и записи, отправленные в топик ошибок;
+ * используется для метрик, трассировки и бенчмарков.
+ *
+ * Методы вызываются в потоке Kafka Streams для каждой записи, поэтому реализации должны быть дешевыми.
+ */
+public interface PipelineObserver {
+
+    /**
+     * Наблюдатель, который ничего не делает.
+     */
+    PipelineObserver NOOP = new PipelineObserver() {
+    };
+
+    /**
+     * Объединяет несколько наблюдателей: события передаются каждому по порядку.
+     *
+     * @param observers наблюдатели
+     * @return составной наблюдатель
+     */
+    static PipelineObserver of(PipelineObserver... observers) {
+        PipelineObserver[] copy = observers.clone();
+        return new PipelineObserver() {
+            @Override
+            public void onBlockCheck(int userId, int receiverId, boolean blocked, long nanos) {
+                for (PipelineObserver observer : copy) {
+                    observer.onBlockCheck(userId, receiverId, blocked, nanos);
+                }
+            }
+
+            @Override
+            public void onCensor(Message message, String censoredMessage, long nanos) {
+                for (PipelineObserver observer : copy) {
+                    observer.onCensor(message, censoredMessage, nanos);
+                }
+            }
+
+            @Override
+            public void onRetry(DeadLetters.Stage stage, int attempt, Exception error) {
+                for (PipelineObserver observer : copy) {
+                    observer.onRetry(stage, attempt, error);
+                }
+            }
+
+            @Override
+            public void onDeadLetter(DeadLetters.Stage stage, Exception error) {
+                for (PipelineObserver observer : copy) {
+                    observer.onDeadLetter(stage, error);
+                }
+            }
+
+            @Override
+            public void onDeadLetterFailed(DeadLetters.Stage stage, Exception error) {
+                for (PipelineObserver observer : copy) {
+                    observer.onDeadLetterFailed(stage, error);
+                }
+            }
+        };
+    }
+
+    /**
+     * Вызывается после проверки блокировки. Получает только ID: проверка может выполняться
+     * до декодирования тела сообщения.
+     *
+     * @param userId     ID отправителя
+     * @param receiverId ID получателя
+     * @param blocked    true, если отправитель заблокирован получателем
+     * @param nanos      длительность проверки в наносекундах
+     */
+    default void onBlockCheck(int userId, int receiverId, boolean blocked, long nanos) {
+    }
+
+    /**
+     * Вызывается после цензуры текста сообщения.
+     *
+     * @param message         исходное сообщение
+     * @param censoredMessage текст после цензуры
+     * @param nanos           длительность цензуры в наносекундах
+     */
+    default void onCensor(Message message, String censoredMessage, long nanos) {
+    }
+
+    /**
+     * Вызывается перед повтором этапа после ошибки.
+     *
+     * @param stage   этап
+     * @param attempt номер неудачной попытки (с 1)
+     * @param error   исключение
+     */
+    default void onRetry(DeadLetters.Stage stage, int attempt, Exception error) {
+    }
+
+    /**
+     * Вызывается, когда запись направлена в топик ошибок.
+     *
+     * @param stage этап
+     * @param error исключение
+     */
+    default void onDeadLetter(DeadLetters.Stage stage, Exception error) {
+    }
+
+    /**
+     * Вызывается, когда запись не удалось записать и в топик ошибок (она потеряна).
+     *
+     * @param stage этап исходной ошибки
+     * @param error исключение отправки
+     */
+    default void onDeadLetterFailed(DeadLetters.Stage stage, Exception error) {
+    }
+}
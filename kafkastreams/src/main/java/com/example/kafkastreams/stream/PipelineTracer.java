@@ -0,0 +1,136 @@
+package com.example.kafkastreams.stream;
+
+import com.example.kafkastreams.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Выборочная трассировка конвейера обработки сообщений вместо логирования каждой записи.
+ *
+ * Режимы: {@link Mode#OFF} — ничего не пишется, {@link Mode#SAMPLED} — каждая N-я запись в среднем,
+ * {@link Mode#HITS} — только заблокированные и цензурированные сообщения. Записи, направленные в топик ошибок,
+ * трассируются в режимах SAMPLED и HITS всегда. Дополнительно число записей трассировки ограничено в секунду.
+ * События пишутся в логгер {@value #LOGGER_NAME} структурированными полями (key-value SLF4J),
+ * а не строкой с {@code Message.toString()}.
+ *
+ * При выключенной трассировке (режим OFF или выключенный уровень INFO у логгера) метод возвращается
+ * первой же проверкой: ни форматирования, ни упаковки аргументов не происходит.
+ */
+public class PipelineTracer implements PipelineObserver {
+
+    /**
+     * Имя логгера трассировки (уровень INFO).
+     */
+    public static final String LOGGER_NAME = "pipeline.trace";
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER_NAME);
+
+    /**
+     * Режим трассировки.
+     */
+    public enum Mode {
+        OFF,
+        SAMPLED,
+        HITS
+    }
+
+    private final Mode mode;
+
+    // Трассируется в среднем одна запись из sampleRate (для режима SAMPLED)
+    private final int sampleRate;
+
+    // Максимум записей трассировки в секунду
+    private final int maxPerSecond;
+
+    // Текущая секунда и количество записей трассировки в ней
+    private final AtomicLong windowSecond = new AtomicLong();
+    private final AtomicLong windowCount = new AtomicLong();
+
+    public PipelineTracer(Mode mode, int sampleRate, int maxPerSecond) {
+        this.mode = mode;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    @Override
+    public void onBlockCheck(int userId, int receiverId, boolean blocked, long nanos) {
+        if (!shouldTrace(blocked)) {
+            return;
+        }
+        log.atInfo()
+            .setMessage("pipeline stage")
+            .addKeyValue("stage", "block-check")
+            .addKeyValue("userId", userId)
+            .addKeyValue("receiverId", receiverId)
+            .addKeyValue("blocked", blocked)
+            .addKeyValue("nanos", nanos)
+            .log();
+    }
+
+    @Override
+    public void onCensor(Message message, String censoredMessage, long nanos) {
+        // Автомат возвращает тот же объект строки, если ничего не заменено
+        boolean censored = censoredMessage != message.getMessage();
+        if (!shouldTrace(censored)) {
+            return;
+        }
+        log.atInfo()
+            .setMessage("pipeline stage")
+            .addKeyValue("stage", "censor")
+            .addKeyValue("userId", message.getUserId())
+            .addKeyValue("receiverId", message.getReceiverId())
+            .addKeyValue("censored", censored)
+            .addKeyValue("length", message.getMessage() == null ? 0 : message.getMessage().length())
+            .addKeyValue("nanos", nanos)
+            .log();
+    }
+
+    @Override
+    public void onDeadLetter(DeadLetters.Stage stage, Exception error) {
+        // Ошибки не проходят выборку, но учитываются в ограничении частоты
+        if (mode == Mode.OFF || !log.isWarnEnabled() || !acquire()) {
+            return;
+        }
+        log.atWarn()
+            .setMessage("pipeline dead letter")
+            .addKeyValue("stage", stage.tag())
+            .addKeyValue("error", error.getClass().getName())
+            .addKeyValue("reason", error.getMessage())
+            .log();
+    }
+
+    // Решение о трассировке: режим, выборка, уровень логгера и ограничение частоты
+    private boolean shouldTrace(boolean hit) {
+        switch (mode) {
+            case OFF:
+                return false;
+            case HITS:
+                if (!hit) {
+                    return false;
+                }
+                break;
+            case SAMPLED:
+                if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+                    return false;
+                }
+                break;
+        }
+        return log.isInfoEnabled() && acquire();
+    }
+
+    // Ограничение частоты: не более maxPerSecond записей в текущую секунду
+    private boolean acquire() {
+        if (maxPerSecond <= 0) {
+            return true;
+        }
+        long second = System.currentTimeMillis() / 1000;
+        long current = windowSecond.get();
+        if (current != second && windowSecond.compareAndSet(current, second)) {
+            windowCount.set(0);
+        }
+        return windowCount.incrementAndGet() <= maxPerSecond;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.kafkastreams;
+
+import com.example.kafkastreams.model.Message;
+import com.example.kafkastreams.serde.MessageHeaders;
+import com.example.kafkastreams.serde.MessageSerializer;
+import com.example.kafkastreams.service.BlockedUserService;
+import com.example.kafkastreams.service.CensorshipService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KafkaStreams;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сквозная проверка конвейера на встроенном брокере: сообщения от заблокированных отправителей
+ * не доходят до filtered_messages, в пропущенных не остается цензурных слов.
+ * Блокировки и словарь задаются через сервисы, то есть через топики, как в работе приложения.
+ * Вариант топологии по умолчанию (DSL); {@link ProcessorPipelineIntegrationTest} — тот же сценарий для PROCESSOR.
+ */
+@SpringBootTest(properties = {
+    "kafka.topic.partitions=3",
+    "kafka.serde.message-format=BINARY",
+    "blocked.users.seed-if-empty=false",
+    "censored.words.seed-if-empty=false",
+    "logging.level.root=WARN"
+})
+@ActiveProfiles("processor")
+@EmbeddedKafka(
+    kraft = true,
+    partitions = 3,
+    bootstrapServersProperty = "spring.kafka.bootstrap-servers",
+    brokerProperties = {"transaction.state.log.replication.factor=1", "transaction.state.log.min.isr=1"})
+@DirtiesContext
+class PipelineIntegrationTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    // Получатель 1 заблокировал отправителя 2
+    private static final int RECEIVER = 1;
+    private static final int BLOCKED_SENDER = 2;
+    private static final int SENDER = 3;
+    private static final int OTHER_RECEIVER = 5;
+
+    private static final String CENSORED_WORD = "forbidden";
+
+    private static final int MESSAGES = 50;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+
+    @Autowired
+    private BlockedUserService blockedUserService;
+
+    @Autowired
+    private CensorshipService censorshipService;
+
+    @Autowired
+    private ConsumerFactory<String, Message> consumerFactory;
+
+    @Value("${kafka.topic.messages}")
+    private String messagesTopic;
+
+    @Value("${kafka.topic.filtered-messages}")
+    private String filteredMessagesTopic;
+
+    // Файлы списков и хранилища Kafka Streams — во временном каталоге, ресурсы сборки не перезаписываются
+    @DynamicPropertySource
+    static void workDirectory(DynamicPropertyRegistry registry) throws IOException {
+        Path workDir = Files.createTempDirectory("pipeline-test");
+        registry.add("kafka.streams.state-dir", () -> workDir.resolve("state").toString());
+        registry.add("blocked.users.file.path", () -> "file:" + workDir.resolve("blocked_users.json"));
+        registry.add("censored.words.file.path", () -> "file:" + workDir.resolve("censored_words.txt"));
+    }
+
+    @Test
+    void dropsBlockedSendersAndCensorsWords() {
+        await(() -> {
+            KafkaStreams streams = streamsBuilderFactoryBean.getKafkaStreams();
+            return streams != null && streams.state() == KafkaStreams.State.RUNNING;
+        }, "Kafka Streams не запущен");
+
+        blockedUserService.addBlockedUser(RECEIVER, BLOCKED_SENDER);
+        censorshipService.addCensoredWord(CENSORED_WORD);
+        // Оба изменения применяются только после чтения топиков — так же, как на любом экземпляре
+        await(() -> blockedUserService.isUserBlocked(RECEIVER, BLOCKED_SENDER), "Блокировка не применена");
+        String probe = "a " + CENSORED_WORD;
+        await(() -> censorshipService.censorMessage(probe) != probe, "Слово не добавлено в словарь");
+
+        int expected = 0;
+        try (KafkaProducer<String, Message> producer = new KafkaProducer<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new MessageSerializer())) {
+            for (int i = 0; i < MESSAGES; i++) {
+                send(producer, new Message(BLOCKED_SENDER, RECEIVER, "blocked " + i, Instant.now()), null);
+                // Заголовки указывают незаблокированного отправителя, тело — заблокированного
+                send(producer, new Message(BLOCKED_SENDER, RECEIVER, "forged " + i, Instant.now()),
+                    new Message(SENDER, RECEIVER, null, null));
+                send(producer, new Message(SENDER, RECEIVER, "text " + CENSORED_WORD.toUpperCase(Locale.ROOT) + " " + i, Instant.now()), null);
+                // Отправитель 2 заблокирован только получателем 1
+                send(producer, new Message(BLOCKED_SENDER, OTHER_RECEIVER, "hello " + i, Instant.now()), null);
+                expected += 2;
+            }
+            producer.flush();
+        }
+
+        List<Message> received = receive(expected);
+
+        assertEquals(expected, received.size());
+        for (Message message : received) {
+            assertFalse(message.getUserId() == BLOCKED_SENDER && message.getReceiverId() == RECEIVER,
+                "Сообщение заблокированного отправителя: " + message);
+            assertFalse(message.getMessage().toLowerCase(Locale.ROOT).contains(CENSORED_WORD),
+                "Цензурное слово в сообщении: " + message);
+            if (message.getUserId() == SENDER) {
+                assertTrue(message.getMessage().contains("***"), message.getMessage());
+            }
+        }
+    }
+
+    // headersFrom — сообщение, ID которого пишутся в заголовки (по умолчанию само сообщение)
+    private void send(KafkaProducer<String, Message> producer, Message message, Message headersFrom) {
+        ProducerRecord<String, Message> record = new ProducerRecord<>(messagesTopic, String.valueOf(message.getReceiverId()), message);
+        MessageHeaders.write(record.headers(), headersFrom == null ? message : headersFrom);
+        producer.send(record);
+    }
+
+    // Читает filtered_messages, пока не получено expected сообщений, и еще секунду — на случай лишних
+    private List<Message> receive(int expected) {
+        List<Message> received = new ArrayList<>();
+        try (Consumer<String, Message> consumer = consumerFactory.createConsumer("pipeline-integration-test", "test")) {
+            consumer.subscribe(List.of(filteredMessagesTopic));
+            long deadline = System.nanoTime() + TIMEOUT.toNanos();
+            long quietUntil = Long.MAX_VALUE;
+            while (System.nanoTime() < Math.min(deadline, quietUntil)) {
+                for (ConsumerRecord<String, Message> record : consumer.poll(Duration.ofMillis(100))) {
+                    received.add(record.value());
+                }
+                if (received.size() >= expected && quietUntil == Long.MAX_VALUE) {
+                    quietUntil = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+                }
+            }
+        }
+        return received;
+    }
+
+    private static void await(BooleanSupplier condition, String message) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError(message + " за " + TIMEOUT);
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.kafkastreams;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Сценарий {@link PipelineIntegrationTest} для варианта топологии PROCESSOR: блокировка проверяется
+ * по заголовкам без декодирования тела, а подмененные заголовки отсеиваются сверкой с телом.
+ */
+@TestPropertySource(properties = "kafka.streams.topology-mode=PROCESSOR")
+class ProcessorPipelineIntegrationTest extends PipelineIntegrationTest {
+}
@@ -0,0 +1,107 @@
+package com.example.kafkastreams.serde;
+
+import com.example.kafkastreams.model.Message;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageSerdeTest {
+
+    private final MessageSerializer serializer = new MessageSerializer();
+
+    private final MessageDeserializer deserializer = new MessageDeserializer();
+
+    @Test
+    void roundTripsExtremeIds() {
+        int[] ids = {0, 1, -1, 63, -64, 64, 1 << 20, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        Instant timestamp = Instant.ofEpochMilli(1_700_000_000_123L);
+        for (int userId : ids) {
+            for (int receiverId : ids) {
+                Message message = new Message(userId, receiverId, "text", timestamp);
+                byte[] data = serializer.serialize("messages", message);
+
+                assertEquals(message, deserializer.deserialize("messages", data));
+                // ID читаются без разбора текста
+                assertEquals(userId, MessageDeserializer.readUserId(data));
+                assertEquals(receiverId, MessageDeserializer.readReceiverId(data));
+            }
+        }
+    }
+
+    @Test
+    void roundTripsLongAndNonAsciiTexts() {
+        Random random = new Random(5);
+        StringBuilder text = new StringBuilder();
+        String[] parts = {"hello ", "привет ", "日本語 ", "😀 ", "\u0000", "a"};
+        while (text.length() < 200_000) {
+            text.append(parts[random.nextInt(parts.length)]);
+        }
+        Message message = new Message(-7, 42, text.toString(), Instant.ofEpochMilli(-1_000L));
+
+        byte[] data = serializer.serialize("messages", message);
+
+        assertEquals(message, deserializer.deserialize("messages", data));
+        int textBytes = text.toString().getBytes(StandardCharsets.UTF_8).length;
+        // Длина текста 3-байтовым varint, ID по одному байту, временная метка 2 байта
+        assertEquals(1 + 1 + 1 + 1 + 2 + 3 + textBytes, data.length);
+    }
+
+    @Test
+    void encodesLoneSurrogatesLikeStringGetBytes() {
+        String text = "a\uD83Db\uDE00c\uD83D";
+        Message message = new Message(1, 2, text, null);
+
+        Message decoded = deserializer.deserialize("messages", serializer.serialize("messages", message));
+
+        assertEquals(new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), decoded.getMessage());
+    }
+
+    @Test
+    void keepsMissingOptionalFields() {
+        Message empty = new Message(3, -4, null, null);
+        byte[] data = serializer.serialize("messages", empty);
+
+        assertEquals(4, data.length);
+        assertEquals(empty, deserializer.deserialize("messages", data));
+        Message emptyText = new Message(3, -4, "", null);
+        assertEquals(emptyText, deserializer.deserialize("messages", serializer.serialize("messages", emptyText)));
+        assertNull(serializer.serialize("messages", null));
+        assertNull(deserializer.deserialize("messages", null));
+    }
+
+    @Test
+    void readsJsonWrittenBeforeBinaryFormat() {
+        Message message = new Message(-5, 6, "старое сообщение", Instant.ofEpochMilli(1_700_000_000_123L));
+        try (JsonSerializer<Message> json = new JsonSerializer<>()) {
+            byte[] data = json.serialize("messages", message);
+
+            assertEquals(message, deserializer.deserialize("messages", data));
+        }
+    }
+
+    @Test
+    void rejectsCorruptedValues() {
+        byte[] data = serializer.serialize("messages", new Message(300, 400, "some text", Instant.now()));
+
+        // Любое обрезанное значение — ошибка, а не сообщение с неполными полями
+        for (int length = 1; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(SerializationException.class, () -> deserializer.deserialize("messages", truncated), "length " + length);
+        }
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("messages", new byte[0]));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("messages", new byte[] {2, 0, 0, 0}));
+        assertThrows(SerializationException.class, () -> MessageDeserializer.readUserId(new byte[] {1, (byte) 0x80}));
+        // varint длиннее 5 байт
+        assertThrows(SerializationException.class,
+            () -> deserializer.deserialize("messages", new byte[] {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0}));
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.kafkastreams.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockedUsersIndexTest {
+
+    @Test
+    void addsAndRemovesPairs() {
+        BlockedUsersIndex index = BlockedUsersIndex.empty()
+            .withBlocked(1, 30)
+            .withBlocked(1, 10)
+            .withBlocked(1, 20)
+            .withBlocked(2, 10);
+
+        assertTrue(index.isBlocked(1, 20));
+        assertFalse(index.isBlocked(2, 20));
+        assertFalse(index.isBlocked(3, 10));
+        assertArrayEquals(new int[] {10, 20, 30}, index.blockedBy(1));
+        assertEquals(4, index.size());
+        assertEquals(2, index.userCount());
+
+        BlockedUsersIndex removed = index.withoutBlocked(1, 20).withoutBlocked(2, 10);
+        assertArrayEquals(new int[] {10, 30}, removed.blockedBy(1));
+        assertArrayEquals(new int[0], removed.blockedBy(2));
+        assertEquals(2, removed.size());
+        assertEquals(1, removed.userCount());
+    }
+
+    @Test
+    void returnsSameIndexWhenNothingChanges() {
+        BlockedUsersIndex index = BlockedUsersIndex.empty().withBlocked(1, 2);
+
+        assertSame(index, index.withBlocked(1, 2));
+        assertSame(index, index.withoutBlocked(1, 3));
+        assertSame(index, index.withoutBlocked(5, 2));
+        assertSame(index, index.withBlockedLists(Map.of()));
+    }
+
+    @Test
+    void keepsPreviousSnapshotsUnchanged() {
+        BlockedUsersIndex before = BlockedUsersIndex.empty().withBlocked(1, 2);
+        BlockedUsersIndex after = before.withBlocked(1, 3).withoutBlocked(1, 2);
+
+        assertArrayEquals(new int[] {2}, before.blockedBy(1));
+        assertArrayEquals(new int[] {3}, after.blockedBy(1));
+
+        // blockedBy возвращает копию: изменение массива не меняет индекс
+        before.blockedBy(1)[0] = 42;
+        assertTrue(before.isBlocked(1, 2));
+    }
+
+    @Test
+    void growsAndShrinksSegments() {
+        BlockedUsersIndex index = BlockedUsersIndex.empty();
+        int users = 20_000;
+        for (int userId = -users / 2; userId < users / 2; userId++) {
+            index = index.withBlocked(userId, userId + 1);
+        }
+        assertEquals(users, index.userCount());
+        assertEquals(users, index.size());
+        for (int userId = -users / 2; userId < users / 2; userId++) {
+            assertTrue(index.isBlocked(userId, userId + 1), "user " + userId);
+            assertFalse(index.isBlocked(userId, userId));
+        }
+
+        for (int userId = -users / 2; userId < users / 2; userId += 2) {
+            index = index.withoutBlocked(userId, userId + 1);
+        }
+        assertEquals(users / 2, index.userCount());
+        for (int userId = -users / 2; userId < users / 2; userId++) {
+            assertEquals(userId % 2 != 0, index.isBlocked(userId, userId + 1), "user " + userId);
+        }
+    }
+
+    @Test
+    void matchesReferenceMapUnderRandomChanges() {
+        Random random = new Random(7);
+        Map<Integer, Set<Integer>> reference = new TreeMap<>();
+        BlockedUsersIndex index = BlockedUsersIndex.empty();
+        for (int i = 0; i < 50_000; i++) {
+            int userId = random.nextInt(500);
+            int blockedUserId = random.nextInt(50);
+            if (random.nextInt(3) == 0) {
+                index = index.withoutBlocked(userId, blockedUserId);
+                Set<Integer> blocked = reference.get(userId);
+                if (blocked != null && blocked.remove(blockedUserId) && blocked.isEmpty()) {
+                    reference.remove(userId);
+                }
+            } else {
+                index = index.withBlocked(userId, blockedUserId);
+                reference.computeIfAbsent(userId, id -> new TreeSet<>()).add(blockedUserId);
+            }
+        }
+
+        assertEquals(reference, index.toMap());
+        assertEquals(reference.values().stream().mapToLong(Set::size).sum(), index.size());
+        assertEquals(reference, BlockedUsersIndex.of(reference).toMap());
+    }
+
+    @Test
+    void replacesAndRemovesWholeLists() {
+        BlockedUsersIndex index = BlockedUsersIndex.of(Map.of(1, List.of(3, 2), 2, List.of(5), 3, List.of()));
+        assertEquals(2, index.userCount());
+        assertArrayEquals(new int[] {2, 3}, index.blockedBy(1));
+
+        Map<Integer, int[]> lists = new HashMap<>();
+        lists.put(1, new int[0]);
+        lists.put(2, new int[] {6, 7});
+        lists.put(4, new int[] {1});
+        BlockedUsersIndex updated = index.withBlockedLists(lists);
+
+        assertEquals(Map.of(2, Set.of(6, 7), 4, Set.of(1)), updated.toMap());
+        assertEquals(3, updated.size());
+        assertEquals(2, updated.userCount());
+    }
+
+    @Test
+    void pagesUsersInAscendingOrder() {
+        BlockedUsersIndex index = BlockedUsersIndex.empty();
+        List<Integer> expected = new ArrayList<>();
+        for (int userId = 1000; userId >= -1000; userId -= 7) {
+            index = index.withBlocked(userId, 1);
+            expected.add(0, userId);
+        }
+
+        List<Integer> paged = new ArrayList<>();
+        Integer cursor = null;
+        int[] page;
+        while ((page = index.usersAfter(cursor, 50)).length > 0) {
+            for (int userId : page) {
+                paged.add(userId);
+            }
+            cursor = page[page.length - 1];
+        }
+        assertEquals(expected, paged);
+
+        // Курсор не обязан быть ID из индекса: страница начинается со следующего большего ID
+        assertArrayEquals(new int[] {-995, -988}, index.usersAfter(-1000, 2));
+        assertArrayEquals(new int[] {6, 13}, index.usersAfter(0, 2));
+        assertArrayEquals(new int[0], index.usersAfter(1000, 10));
+    }
+
+    @Test
+    void pagingFollowsChangesBetweenSnapshots() {
+        BlockedUsersIndex index = BlockedUsersIndex.empty().withBlocked(1, 9).withBlocked(3, 9).withBlocked(5, 9);
+        int[] first = index.usersAfter(null, 2);
+        assertArrayEquals(new int[] {1, 3}, first);
+
+        BlockedUsersIndex changed = index.withoutBlocked(3, 9).withBlocked(4, 9);
+        assertArrayEquals(new int[] {4, 5}, changed.usersAfter(first[first.length - 1], 2));
+        assertArrayEquals(new int[] {5}, index.usersAfter(first[first.length - 1], 2));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.kafkastreams.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CensoredWordsMatcherTest {
+
+    @Test
+    void replacesWholeWordsOnly() {
+        CensoredWordsMatcher matcher = new CensoredWordsMatcher(List.of("bad", "class"));
+
+        assertEquals("*** news", matcher.censor("bad news"));
+        assertEquals("really ***.", matcher.censor("really bad."));
+        assertEquals("(***)", matcher.censor("(bad)"));
+        // Внутри слова совпадение не считается: как \b, буквы, цифры и '_' — символы слова
+        assertEquals("badge classic bad_word bad1", matcher.censor("badge classic bad_word bad1"));
+        assertEquals("*** *** ***", matcher.censor("bad class bad"));
+    }
+
+    @Test
+    void foldsCaseOfDictionaryAndMessage() {
+        CensoredWordsMatcher matcher = new CensoredWordsMatcher(List.of("  BaD ", "Плохо"));
+
+        assertEquals(2, matcher.size());
+        assertEquals("*** *** ***", matcher.censor("BAD bad bAd"));
+        assertEquals("это ***!", matcher.censor("это ПЛОХО!"));
+    }
+
+    @Test
+    void prefersLeftmostThenLongestMatch() {
+        CensoredWordsMatcher matcher = new CensoredWordsMatcher(List.of("foo", "foo bar", "bar baz"));
+
+        // "foo bar" и "foo" начинаются в одной позиции — выбирается более длинное;
+        // пересекающееся с ним "bar baz" начинается правее и пропускается
+        assertEquals("*** baz", matcher.censor("foo bar baz"));
+        assertEquals("x *** y", matcher.censor("x bar baz y"));
+        assertEquals("*** ***", matcher.censor("foo foo"));
+    }
+
+    @Test
+    void findsWordsSharingSuffixes() {
+        CensoredWordsMatcher matcher = new CensoredWordsMatcher(List.of("she", "he", "hers"));
+
+        assertEquals("*** *** ***", matcher.censor("she he hers"));
+        assertEquals("ushers", matcher.censor("ushers"));
+    }
+
+    @Test
+    void returnsSameInstanceWhenNothingIsReplaced() {
+        CensoredWordsMatcher matcher = new CensoredWordsMatcher(List.of("bad"));
+        String clean = new String("nothing to see here, badly");
+
+        assertSame(clean, matcher.censor(clean));
+        assertSame(clean, CensoredWordsMatcher.EMPTY.censor(clean));
+        assertNull(matcher.censor(null));
+    }
+
+    @Test
+    void skipsBlankDictionaryEntries() {
+        CensoredWordsMatcher matcher = new CensoredWordsMatcher(List.of("", "   ", "bad", "BAD"));
+
+        assertEquals(1, matcher.size());
+        assertEquals("***", matcher.censor("bad"));
+    }
+
+    @Test
+    void reportsReplacedDictionaryWords() {
+        CensoredWordsMatcher matcher = new CensoredWordsMatcher(List.of("foo", "foo bar", "baz"));
+        List<String> hits = new ArrayList<>();
+
+        String censored = matcher.censor("FOO BAR and Baz, foo", hits::add);
+
+        assertEquals("*** and ***, ***", censored);
+        assertEquals(List.of("foo bar", "baz", "foo"), hits);
+    }
+}
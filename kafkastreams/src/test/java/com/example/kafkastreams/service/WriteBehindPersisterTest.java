@@ -0,0 +1,192 @@
+package com.example.kafkastreams.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindPersisterTest {
+
+    @TempDir
+    Path directory;
+
+    // Состояние, которое пишет снимок, и число записанных снимков
+    private volatile String state = "";
+    private final AtomicInteger snapshots = new AtomicInteger();
+
+    private WriteBehindPersister persister;
+
+    @AfterEach
+    void close() {
+        if (persister != null) {
+            persister.close();
+        }
+    }
+
+    @Test
+    void coalescesChangesWithinFlushDelay() throws Exception {
+        Path file = directory.resolve("state.json");
+        persister = create(file, new WriteBehindPersister.Settings(300, 10_000, false, 100));
+
+        for (int i = 1; i <= 100; i++) {
+            state = "v" + i;
+            persister.changed("+" + i);
+        }
+
+        await(() -> snapshots.get() > 0);
+        Thread.sleep(400);
+        assertEquals(1, snapshots.get());
+        assertEquals("v100", Files.readString(file));
+    }
+
+    @Test
+    void flushesWithoutDelayWhenBatchIsFull() {
+        Path file = directory.resolve("state.json");
+        persister = create(file, new WriteBehindPersister.Settings(60_000, 10, false, 100));
+
+        state = "full";
+        for (int i = 0; i < 10; i++) {
+            persister.changed("+" + i);
+        }
+
+        await(() -> snapshots.get() == 1);
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    void keepsPreviousFileWhenSnapshotFails() throws Exception {
+        Path file = directory.resolve("state.json");
+        Files.writeString(file, "old");
+        persister = new WriteBehindPersister("test", file, out -> {
+            out.write("partial".getBytes(StandardCharsets.UTF_8));
+            throw new IOException("disk full");
+        }, new WriteBehindPersister.Settings(60_000, 10_000, false, 100));
+
+        assertThrows(IOException.class, persister::snapshot);
+
+        // Файл не заменен недописанным снимком, временный файл удален
+        assertEquals("old", Files.readString(file));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void retriesFailedWriteWithoutNewChanges() throws Exception {
+        Path file = directory.resolve("state.json");
+        AtomicInteger failures = new AtomicInteger(1);
+        persister = new WriteBehindPersister("test", file, out -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("disk full");
+            }
+            out.write(state.getBytes(StandardCharsets.UTF_8));
+        }, new WriteBehindPersister.Settings(60_000, 10_000, false, 100));
+
+        state = "a";
+        persister.changed("+a");
+        assertThrows(IOException.class, persister::flush);
+
+        // Новых изменений нет, но неудавшаяся запись повторяется
+        persister.flush();
+        assertEquals("a", Files.readString(file));
+    }
+
+    @Test
+    void appendsChangeLogAndCompactsIntoSnapshot() throws Exception {
+        Path file = directory.resolve("state.json");
+        Path changeLog = directory.resolve("state.json.log");
+        WriteBehindPersister.Settings settings = new WriteBehindPersister.Settings(60_000, 10_000, true, 4);
+        persister = create(file, settings);
+
+        persister.changed("+1 2");
+        persister.changed("-1 3");
+        persister.flush();
+
+        assertEquals(0, snapshots.get());
+        assertEquals(List.of("+1 2", "-1 3"), Files.readAllLines(changeLog));
+
+        // Журнал читается новым экземпляром после перезапуска
+        persister.close();
+        persister = create(file, settings);
+        assertEquals(List.of("+1 2", "-1 3"), persister.readChangeLog());
+
+        state = "compacted";
+        persister.changed("+4 5");
+        persister.changed("+6 7");
+        persister.flush();
+
+        // Журнал дорос до compactEvery строк: записан снимок, журнал удален
+        assertEquals(1, snapshots.get());
+        assertEquals("compacted", Files.readString(file));
+        assertFalse(Files.exists(changeLog));
+        assertEquals(List.of(), persister.readChangeLog());
+    }
+
+    @Test
+    void writesSnapshotInsteadOfChangeLogWhenRequired() throws Exception {
+        Path file = directory.resolve("state.json");
+        persister = create(file, new WriteBehindPersister.Settings(60_000, 10_000, true, 100));
+
+        state = "rebuilt";
+        persister.requireSnapshot();
+        persister.changed("+1 2");
+        persister.flush();
+
+        assertEquals("rebuilt", Files.readString(file));
+        assertFalse(Files.exists(directory.resolve("state.json.log")));
+
+        persister.changed("+3 4");
+        persister.flush();
+        assertEquals(List.of("+3 4"), Files.readAllLines(directory.resolve("state.json.log")));
+    }
+
+    @Test
+    void writesPendingChangesOnClose() throws Exception {
+        Path file = directory.resolve("state.json");
+        persister = create(file, new WriteBehindPersister.Settings(60_000, 10_000, false, 100));
+
+        state = "last";
+        persister.changed("+1");
+        persister.close();
+
+        assertEquals("last", Files.readString(file));
+        // Изменение после остановки не пишется и не роняет вызывающего
+        persister.changed("+2");
+        assertEquals(1, snapshots.get());
+    }
+
+    private WriteBehindPersister create(Path file, WriteBehindPersister.Settings settings) {
+        return new WriteBehindPersister("test", file, out -> {
+            snapshots.incrementAndGet();
+            out.write(state.getBytes(StandardCharsets.UTF_8));
+        }, settings);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Условие не выполнено за 5 с");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+-- Оконная статистика вместо счетчиков за все время: состояние ограничено RETENTION,
+-- EMIT FINAL публикует итог окна один раз после окончания окна и GRACE PERIOD (без изменения на каждое сообщение).
+-- Поток messages_stream создается в ksqldb-queries.sql; COUNT_DISTINCT_HLL — из ksqldb-queries-hll.sql (./gradlew udfJar).
+-- Для скользящих окон вместо TUMBLING (SIZE ...) — HOPPING (SIZE 1 HOUR, ADVANCE BY 10 MINUTES, ...).
+--
+-- messages_per_minute и messages_per_hour — агрегаты с GROUP BY NULL: каждое сообщение перераспределяется через
+-- repartition-топик к одному ключу в одной партиции, и окно считает одна задача. Это не двухфазная схема
+-- WindowedStatisticsTopology (частичные агрегаты окон по партициям и их объединение): оконную таблицу ksqlDB
+-- нельзя сгруппировать еще раз, поэтому вторую фазу по шардам, как в ksqldb-queries.sql, здесь не построить.
+-- Пропускная способность этих таблиц ограничена одной партицией независимо от количества партиций messages.
+
+-- Таблица: Количество сообщений и уникальных получателей за минуту
+CREATE TABLE messages_per_minute AS
+SELECT
+    COUNT(*) AS message_count,
+    COUNT_DISTINCT_HLL(recipient_id) AS unique_recipients
+FROM messages_stream
+WINDOW TUMBLING (SIZE 1 MINUTE, RETENTION 2 HOURS, GRACE PERIOD 10 SECONDS)
+GROUP BY NULL
+EMIT FINAL;
+
+-- Таблица: Количество сообщений и уникальных получателей за час
+CREATE TABLE messages_per_hour AS
+SELECT
+    COUNT(*) AS message_count,
+    COUNT_DISTINCT_HLL(recipient_id) AS unique_recipients
+FROM messages_stream
+WINDOW TUMBLING (SIZE 1 HOUR, RETENTION 2 DAYS, GRACE PERIOD 1 MINUTE)
+GROUP BY NULL
+EMIT FINAL;
+
+-- Таблица: Количество сообщений пользователей за минуту (основа топ-5 активных пользователей окна;
+-- самых активных выбирает приложение: GET /statistics/windows/minute)
+CREATE TABLE user_messages_per_minute AS
+SELECT
+    user_id,
+    COUNT(*) AS message_count
+FROM messages_stream
+WINDOW TUMBLING (SIZE 1 MINUTE, RETENTION 2 HOURS, GRACE PERIOD 10 SECONDS)
+GROUP BY user_id
+EMIT FINAL;
+
+-- Таблица: Количество сообщений пользователей за час
+CREATE TABLE user_messages_per_hour AS
+SELECT
+    user_id,
+    COUNT(*) AS message_count
+FROM messages_stream
+WINDOW TUMBLING (SIZE 1 HOUR, RETENTION 2 DAYS, GRACE PERIOD 1 MINUTE)
+GROUP BY user_id
+EMIT FINAL;
@@ -9,28 +9,61 @@ CREATE STREAM messages_stream (
     VALUE_FORMAT = 'JSON'
 );
 
--- Таблица: Общее количество отправленных сообщений
-CREATE TABLE total_messages AS
+-- Глобальные агрегаты считаются в две фазы: GROUP BY NULL по потоку свел бы каждое сообщение к одному ключу
+-- одной партиции. Первая фаза — частичные агрегаты по шардам (первые shard_digits шестнадцатеричных символов UUID:
+-- 16^shard_digits шардов), распределенные по партициям; вторая — сумма частичных агрегатов: на один ключ приходят
+-- только изменения шардов (с кэшем ksqlDB — объединенные за интервал сброса), а не каждое сообщение.
+--
+-- Это не повторение двухфазной схемы Kafka Streams (UserStatisticsTopology): там частичный агрегат считает задача
+-- своей партиции входного топика, без перераспределения. Здесь GROUP BY по выражению, отличному от ключа, проходит
+-- через repartition-топик: каждое сообщение еще раз пишется в Kafka и читается из нее. Выигрыш только в том, что
+-- агрегат первой фазы распределен по 16^shard_digits ключам, а не собран в одной партиции; параллелизм первой фазы
+-- ограничен количеством шардов (больше shard_digits — больше шардов и больше записей во второй фазе).
+DEFINE shard_digits = '1';
+
+-- Частичные количества сообщений по шардам user_id
+CREATE TABLE total_messages_shards AS
 SELECT
-    COUNT(*) AS total_count
+    SUBSTRING(user_id, 1, ${shard_digits}) AS shard,
+    COUNT(*) AS shard_count
 FROM messages_stream
+GROUP BY SUBSTRING(user_id, 1, ${shard_digits});
+
+-- Таблица: Общее количество отправленных сообщений (сумма шардов; старое значение шарда вычитается)
+CREATE TABLE total_messages AS
+SELECT
+    SUM(shard_count) AS total_count
+FROM total_messages_shards
 GROUP BY NULL; -- Нужно использовать GROUP BY NULL для агрегатов без группировки по столбцам
 
--- Таблица: Количество уникальных получателей сообщений
-CREATE TABLE unique_recipients AS
+-- Частичные количества уникальных получателей по шардам recipient_id: получатель целиком принадлежит
+-- одному шарду, поэтому частичные количества не пересекаются и их сумма точна.
+-- COUNT(DISTINCT) хранит в состоянии шарда множество всех его получателей: объем состояния растет с количеством
+-- получателей (в Kafka Streams — скетч HyperLogLog фиксированного размера). Ограниченное состояние ценой
+-- приблизительной оценки — COUNT_DISTINCT_HLL в ksqldb-queries-hll.sql
+CREATE TABLE unique_recipients_shards AS
 SELECT
-    COUNT(DISTINCT recipient_id) AS unique_count
+    SUBSTRING(recipient_id, 1, ${shard_digits}) AS shard,
+    COUNT(DISTINCT recipient_id) AS shard_count
 FROM messages_stream
+GROUP BY SUBSTRING(recipient_id, 1, ${shard_digits});
+
+-- Таблица: Количество уникальных получателей сообщений (сумма шардов)
+CREATE TABLE unique_recipients AS
+SELECT
+    SUM(shard_count) AS unique_count
+FROM unique_recipients_shards
 GROUP BY NULL; -- Группируем по NULL для агрегата без группировки по другим полям
 
--- Создание таблицы: Топ-5 активных пользователей
+-- Создание таблицы: Количество сообщений каждого пользователя (основа топ-5 активных пользователей).
+-- ksqlDB не поддерживает ROW_NUMBER() OVER, а PARTITION BY user_id дал бы каждому пользователю ранг 1,
+-- поэтому 5 самых активных выбирает приложение: GET /statistics/top-users (профиль streams, счетчики Space-Saving)
 CREATE TABLE top_users AS
 SELECT
     user_id,
     COUNT(*) AS message_count
 FROM messages_stream
-GROUP BY user_id
-HAVING ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY COUNT(*) DESC) <= 5;
+GROUP BY user_id;
 
 -- Таблица: Статистика пользователей
 CREATE TABLE user_statistics AS
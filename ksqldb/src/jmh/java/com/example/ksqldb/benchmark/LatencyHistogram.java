@@ -0,0 +1,113 @@
+package com.example.ksqldb.benchmark;
+
+/**
+ * Компактная гистограмма задержек в наносекундах с логарифмически-линейными корзинами
+ * (32 корзины на каждую степень двойки, относительная погрешность не более ~3%).
+ * Запись не выделяет память; экземпляр не потокобезопасен.
+ *
+ * Такой же класс есть в модуле kafkastreams: модули собираются независимо (отдельные проекты Gradle без общей
+ * библиотеки), поэтому класс скопирован, а не вынесен в общий модуль. Изменения нужно вносить в обе копии.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long max;
+    private long sum;
+
+    /**
+     * Учитывает одно значение.
+     *
+     * @param nanos задержка в наносекундах
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[indexOf(value)]++;
+        total++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Количество учтенных значений.
+     *
+     * @return количество значений
+     */
+    public long count() {
+        return total;
+    }
+
+    /**
+     * Среднее значение.
+     *
+     * @return среднее в наносекундах
+     */
+    public double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    /**
+     * Максимальное значение.
+     *
+     * @return максимум в наносекундах
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * Значение перцентиля (нижняя граница корзины, в которую он попадает).
+     *
+     * @param percentile перцентиль от 0 до 100
+     * @return значение в наносекундах
+     */
+    public long percentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        if (percentile >= 100) {
+            return max;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(lowerBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Краткая сводка: количество, среднее, p50/p90/p99/p99.9 и максимум в микросекундах.
+     *
+     * @return строка со сводкой
+     */
+    public String summary() {
+        return String.format("count=%d mean=%.2fus p50=%.2fus p90=%.2fus p99=%.2fus p99.9=%.2fus max=%.2fus",
+            total, mean() / 1000.0, percentile(50) / 1000.0, percentile(90) / 1000.0,
+            percentile(99) / 1000.0, percentile(99.9) / 1000.0, max / 1000.0);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        return (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) (value >>> (msb - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+    }
+
+    private static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int msb = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return sub << (msb - SUB_BUCKET_BITS);
+    }
+}
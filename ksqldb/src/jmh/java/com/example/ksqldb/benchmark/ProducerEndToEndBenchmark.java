@@ -0,0 +1,286 @@
+package com.example.ksqldb.benchmark;
+
+import com.example.ksqldb.KsqlDbApplication;
+import com.example.ksqldb.service.MessageProducerService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Сквозной бенчмарк и проверка продюсера сообщений в одной JVM без Docker и сети:
+ * {@link MessageProducerService} -> топик messages -> потребитель.
+ *
+ * Запускает встроенный брокер Kafka (KRaft, {@code spring-kafka-test}) и приложение; сообщения отправляет
+ * сам {@link MessageProducerService#sendMessage()} (тот же сериализатор и настройки продюсера, что и в работе)
+ * из нескольких потоков с заданной суммарной скоростью, а плановая отправка приложения отключается.
+ * Потребитель читает топик messages и считает задержку от временной метки записи (время отправки) до получения.
+ * При {@code verify=true} каждое значение разбирается как JSON схемы потока {@code messages_stream}
+ * (user_id, recipient_id, message, timestamp); если сообщений нет или есть некорректные, код выхода — 1.
+ *
+ * С параметром {@code statisticsTopic} потребитель читает и топик статистики пользователей и выводит скорость
+ * обновлений и задержку от временной метки последнего учтенного сообщения до получения обновления. Так сравниваются
+ * встроенный Kafka Streams ({@code profiles=streams statisticsTopic=user_statistics} на встроенном брокере)
+ * и ksqlDB Server ({@code bootstrap=localhost:9092 statisticsTopic=USER_STATISTICS} при запущенном docker-compose
+ * и выполненных запросах ksql/ksqldb-queries.sql): ksqlDB Server во встроенном режиме не запускается.
+ *
+ * Параметры с точкой в имени передаются приложению как настройки Spring, например:
+ * <pre>
+ * ./gradlew pipelineBenchmark -PbenchmarkArgs="rate=100000 measure=30 profiles=throughput"
+ * </pre>
+ */
+public class ProducerEndToEndBenchmark {
+
+    private static final String CONSUMER_GROUP = "producer-benchmark";
+
+    private static final String[] FIELDS = {"user_id", "recipient_id", "message", "timestamp"};
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+
+        // Встроенный брокер, если не задан внешний (например, брокер docker-compose с ksqlDB Server)
+        EmbeddedKafkaKraftBroker broker = null;
+        String bootstrapServers = options.bootstrap;
+        if (bootstrapServers == null) {
+            broker = new EmbeddedKafkaKraftBroker(1, options.partitions);
+            broker.afterPropertiesSet();
+            bootstrapServers = broker.getBrokersAsString();
+        }
+        int status;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(KsqlDbApplication.class)
+                .profiles(options.profiles.toArray(String[]::new))
+                .run(applicationArgs(options, bootstrapServers))) {
+            status = run(context, options, bootstrapServers);
+        } finally {
+            if (broker != null) {
+                broker.destroy();
+            }
+        }
+        System.exit(status);
+    }
+
+    // Замер: отправка в фоновых потоках, прогрев, окно замера; возвращает код выхода
+    private static int run(ConfigurableApplicationContext context, Options options, String bootstrapServers)
+            throws InterruptedException {
+        MessageProducerService producerService = context.getBean(MessageProducerService.class);
+        String messagesTopic = context.getEnvironment().getRequiredProperty("kafka.topic.messages");
+
+        System.out.printf("Продюсер: профили=%s, скорость %d сообщений/с (%d потоков), прогрев %d с, замер %d с%n",
+            String.join(",", options.profiles), options.rate, options.threads, options.warmup, options.measure);
+        options.springProperties.forEach((key, value) -> System.out.printf("  %s=%s%n", key, value));
+
+        AtomicLong sent = new AtomicLong();
+        AtomicLong sendErrors = new AtomicLong();
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(options.warmup + options.measure);
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < options.threads; i++) {
+            double threadRate = (double) options.rate / options.threads;
+            senders.add(Thread.ofPlatform().name("benchmark-sender-" + i).daemon().start(
+                () -> send(producerService, threadRate, startNanos, endNanos, sent, sendErrors)));
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        LatencyHistogram latency = new LatencyHistogram();
+        LatencyHistogram statisticsLatency = new LatencyHistogram();
+        long received = 0;
+        long bytes = 0;
+        long invalid = 0;
+        long sentBefore = 0;
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                ConsumerConfig.GROUP_ID_CONFIG, CONSUMER_GROUP + "-" + UUID.randomUUID(),
+                // Только новые записи: на внешнем брокере в топиках может быть история прошлых запусков
+                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest"),
+                new StringDeserializer(), new StringDeserializer())) {
+            consumer.subscribe(options.statisticsTopic == null
+                ? List.of(messagesTopic)
+                : List.of(messagesTopic, options.statisticsTopic));
+            long warmupEnd = System.currentTimeMillis() + options.warmup * 1000L;
+            long measureEnd = warmupEnd + options.measure * 1000L;
+            boolean measuring = false;
+            long now;
+            while ((now = System.currentTimeMillis()) < measureEnd) {
+                ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
+                now = System.currentTimeMillis();
+                if (now < warmupEnd) {
+                    continue;
+                }
+                if (!measuring) {
+                    measuring = true;
+                    sentBefore = sent.get();
+                }
+                for (ConsumerRecord<String, String> record : records) {
+                    // Обновление агрегата: временная метка — последнего учтенного в нем сообщения
+                    if (!record.topic().equals(messagesTopic)) {
+                        statisticsLatency.record(now - record.timestamp());
+                        continue;
+                    }
+                    latency.record(now - record.timestamp());
+                    received++;
+                    if (record.value() != null) {
+                        bytes += record.value().length();
+                    }
+                    if (options.verify && !isValid(objectMapper, record.value())) {
+                        invalid++;
+                    }
+                }
+            }
+        }
+        long sentInWindow = sent.get() - sentBefore;
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        System.out.printf("Вход: отправлено %d (%.0f сообщений/с), ошибок вызова send %d%n",
+            sentInWindow, (double) sentInWindow / options.measure, sendErrors.get());
+        System.out.printf("Выход: получено %d (%.0f сообщений/с), значение в среднем %.0f символов%n",
+            received, (double) received / options.measure, received == 0 ? 0.0 : (double) bytes / received);
+        printLatency("Сквозная задержка", latency);
+        if (options.statisticsTopic != null) {
+            System.out.printf("Статистика (%s): обновлений %d (%.0f в секунду)%n", options.statisticsTopic,
+                statisticsLatency.count(), (double) statisticsLatency.count() / options.measure);
+            printLatency("Задержка обновления статистики", statisticsLatency);
+        }
+        if (!options.verify) {
+            return 0;
+        }
+        System.out.printf("Проверка: некорректных значений %d%n", invalid);
+        boolean passed = received > 0 && invalid == 0;
+        System.out.println(passed ? "Проверка пройдена" : "Проверка НЕ пройдена");
+        return passed ? 0 : 1;
+    }
+
+    private static void printLatency(String title, LatencyHistogram histogram) {
+        System.out.printf("%s, мс: mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d%n", title,
+            histogram.mean(), histogram.percentile(50), histogram.percentile(90), histogram.percentile(99),
+            histogram.percentile(99.9), histogram.max());
+    }
+
+    // Отправка с постоянной скоростью: раз в миллисекунду отправляется накопившееся с начала отставание
+    private static void send(MessageProducerService producerService, double rate, long startNanos, long endNanos,
+                             AtomicLong sent, AtomicLong sendErrors) {
+        long threadSent = 0;
+        long now;
+        while ((now = System.nanoTime()) < endNanos) {
+            long due = (long) ((now - startNanos) / 1e9 * rate);
+            for (; threadSent < due; threadSent++) {
+                try {
+                    producerService.sendMessage();
+                    sent.incrementAndGet();
+                } catch (RuntimeException e) {
+                    sendErrors.incrementAndGet();
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    // Значение — JSON-объект со всеми полями схемы потока messages_stream
+    private static boolean isValid(ObjectMapper objectMapper, String value) {
+        if (value == null) {
+            return false;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(value);
+            for (String field : FIELDS) {
+                if (!node.hasNonNull(field)) {
+                    return false;
+                }
+            }
+            return node.get("timestamp").isIntegralNumber();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Аргументы командной строки приложения: у них приоритет над application.yml
+    private static String[] applicationArgs(Options options, String bootstrapServers) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.kafka.bootstrap-servers", bootstrapServers);
+        properties.put("server.port", String.valueOf(freePort()));
+        properties.put("kafka.topic.partitions", String.valueOf(options.partitions));
+        // Хранилища встроенного Kafka Streams (профиль streams) — в новом временном каталоге
+        properties.put("statistics.streams.state-dir", Files.createTempDirectory("producer-benchmark").toString());
+        // Плановая отправка не мешает замеру: нагрузку создают потоки бенчмарка
+        properties.put("message.generation.interval", String.valueOf(TimeUnit.HOURS.toMillis(1)));
+        // MessageProducerService пишет каждое сообщение на уровне INFO — в замере это была бы стоимость логирования
+        properties.put("logging.level.root", "WARN");
+        properties.putAll(options.springProperties);
+
+        List<String> args = new ArrayList<>();
+        properties.forEach((key, value) -> args.add("--" + key + "=" + value));
+        return args.toArray(String[]::new);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Параметры бенчмарка (аргументы key=value; ключи с точкой — настройки приложения).
+     */
+    private static final class Options {
+
+        int rate = 20_000;
+        int threads = 2;
+        int warmup = 10;
+        int measure = 30;
+        int partitions = 1;
+        String bootstrap;
+        String statisticsTopic;
+        List<String> profiles = List.of();
+        boolean verify = true;
+        Map<String, String> springProperties = new LinkedHashMap<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Ожидался аргумент вида key=value: " + arg);
+                }
+                String key = arg.substring(0, separator);
+                String value = arg.substring(separator + 1);
+                if (key.indexOf('.') >= 0) {
+                    options.springProperties.put(key, value);
+                    continue;
+                }
+                switch (key) {
+                    case "rate" -> options.rate = Integer.parseInt(value);
+                    case "threads" -> options.threads = Math.max(1, Integer.parseInt(value));
+                    case "warmup" -> options.warmup = Integer.parseInt(value);
+                    case "measure" -> options.measure = Integer.parseInt(value);
+                    case "partitions" -> options.partitions = Integer.parseInt(value);
+                    case "bootstrap" -> options.bootstrap = value;
+                    case "statisticsTopic" -> options.statisticsTopic = value;
+                    case "profiles" -> options.profiles = List.of(value.split(","));
+                    case "verify" -> options.verify = Boolean.parseBoolean(value);
+                    default -> throw new IllegalArgumentException("Неизвестный параметр: " + key);
+                }
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.ksqldb.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.ksqldb.model.Message;
+import com.example.ksqldb.model.WindowStatistics;
+import com.example.ksqldb.serde.MessageJsonSerde;
+import com.example.ksqldb.serde.WindowStatisticsJsonSerde;
+import com.example.ksqldb.sketch.HyperLogLog;
+import com.example.ksqldb.stream.UserStatisticsTopology;
+import com.example.ksqldb.stream.WindowSpec;
+import com.example.ksqldb.stream.WindowedStatisticsTopology;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.kstream.WindowedSerdes;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Бенчмарк оконной статистики {@link WindowedStatisticsTopology} на TopologyTestDriver — без брокера, в одном процессе
+ * (как TopologyThroughputBenchmark модуля kafkastreams).
+ *
+ * Прогоняет синтетические сообщения с временными метками, идущими со скоростью {@code rate} сообщений в секунду,
+ * через окна minute и hour (как в application.yml). Время на часах драйвера сдвигается на {@code interval}
+ * каждые {@code rate * interval} сообщений, поэтому агрегаты партиции передаются во вторую фазу с той же частотой,
+ * что и при такой нагрузке в работе. Выводит пропускную способность, перцентили времени обработки сообщения,
+ * выделение памяти на сообщение и нагрузку на GC.
+ *
+ * Параметры передаются аргументами вида key=value (см. {@link Options}), например:
+ * <pre>
+ * ./gradlew windowBenchmark -PbenchmarkArgs="records=2000000 rate=100000 recipients=1000000"
+ * </pre>
+ */
+public class WindowStatisticsBenchmark {
+
+    private static final String MESSAGES_TOPIC = "messages";
+
+    // Количество заранее сгенерированных сообщений, по которым идет перебор
+    private static final int DISTINCT_MESSAGES = 1 << 16;
+
+    // Как часто вычитывать выходные топики драйвера, чтобы их очередь не росла
+    private static final int DRAIN_EVERY = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        // Логирование на каждую запись исказило бы замеры
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        List<WindowSpec> windows = List.of(
+            new WindowSpec("minute", Duration.ofMinutes(1), null, Duration.ofSeconds(10), Duration.ofHours(2), "statistics_per_minute"),
+            new WindowSpec("hour", Duration.ofHours(1), null, Duration.ofMinutes(1), Duration.ofDays(2), "statistics_per_hour"));
+        int precision = HyperLogLog.precisionFor(options.relativeError);
+        StreamsBuilder builder = new StreamsBuilder();
+        new WindowedStatisticsTopology(windows, precision, options.capacity, 5, options.interval)
+            .build(builder, UserStatisticsTopology.messages(builder, MESSAGES_TOPIC));
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "window-statistics-benchmark");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG, options.cacheMaxBytes);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("window-statistics-benchmark").toString());
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), props)) {
+            TestInputTopic<String, Message> messages = driver.createInputTopic(
+                MESSAGES_TOPIC, new StringSerializer(), new MessageJsonSerde().serializer());
+            List<TestOutputTopic<Windowed<String>, WindowStatistics>> closed = new ArrayList<>();
+            for (WindowSpec window : windows) {
+                closed.add(driver.createOutputTopic(window.topic(),
+                    WindowedSerdes.timeWindowedSerdeFrom(String.class, window.size().toMillis()).deserializer(),
+                    new WindowStatisticsJsonSerde().deserializer()));
+            }
+
+            // Пользователи и получатели — UUID, как у продюсера; сообщения одного пользователя идут с одним ключом
+            Random random = new Random(options.seed);
+            String[] users = new String[options.users];
+            for (int i = 0; i < users.length; i++) {
+                users[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+            }
+            List<Message> records = new ArrayList<>(DISTINCT_MESSAGES);
+            for (int i = 0; i < DISTINCT_MESSAGES; i++) {
+                String recipientId = new UUID(options.seed, random.nextInt(options.recipients)).toString();
+                records.add(new Message(users[random.nextInt(users.length)], recipientId, "text", Instant.EPOCH));
+            }
+
+            System.out.printf("Окна: minute, hour; %d сообщений/с по времени событий, передача агрегатов раз в %d мс, "
+                    + "%d пользователей, %d получателей, p = %d, %d счетчиков пользователей, кэш хранилищ %d байт%n",
+                options.rate, options.interval.toMillis(), options.users, options.recipients, precision, options.capacity,
+                options.cacheMaxBytes);
+
+            Run run = new Run(driver, messages, closed, records, options);
+            // Прогрев JIT без замеров
+            run.pipe(options.warmup, null);
+
+            LatencyHistogram total = new LatencyHistogram();
+            GcSnapshot gcBefore = GcSnapshot.take();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long published = run.pipe(options.records, total);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+            GcSnapshot gc = GcSnapshot.take().minus(gcBefore);
+
+            System.out.printf("Записей: %d за %.2f с -> %.0f записей/с (опубликовано закрытых окон: %d)%n",
+                options.records, elapsed / 1e9, options.records / (elapsed / 1e9), published);
+            System.out.println("Запись целиком: " + total.summary());
+            System.out.printf("GC: сборок %d, время %d мс; выделено %.1f МБ (%.0f байт на запись)%n",
+                gc.count, gc.timeMillis, allocated / (1024.0 * 1024.0), allocated < 0 ? Double.NaN : (double) allocated / options.records);
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * Подача сообщений с растущими временными метками (продолжается между прогревом и замером).
+     */
+    private static final class Run {
+
+        private final TopologyTestDriver driver;
+        private final TestInputTopic<String, Message> messages;
+        private final List<TestOutputTopic<Windowed<String>, WindowStatistics>> closed;
+        private final List<Message> records;
+        private final long rate;
+        private final Duration interval;
+        private final long perInterval;
+        private long sent;
+
+        Run(TopologyTestDriver driver, TestInputTopic<String, Message> messages,
+            List<TestOutputTopic<Windowed<String>, WindowStatistics>> closed, List<Message> records, Options options) {
+            this.driver = driver;
+            this.messages = messages;
+            this.closed = closed;
+            this.records = records;
+            this.rate = options.rate;
+            this.interval = options.interval;
+            this.perInterval = Math.max(1, options.rate * options.interval.toMillis() / 1000);
+        }
+
+        // Подает count сообщений; при заданной гистограмме замеряет время обработки каждого
+        long pipe(long count, LatencyHistogram histogram) {
+            long published = 0;
+            for (long i = 0; i < count; i++, sent++) {
+                Message message = records.get((int) (sent & (DISTINCT_MESSAGES - 1)));
+                long timestamp = sent * 1000 / rate;
+                long start = System.nanoTime();
+                messages.pipeInput(message.getUserId(), message, timestamp);
+                if (histogram != null) {
+                    histogram.record(System.nanoTime() - start);
+                }
+                if ((sent + 1) % perInterval == 0) {
+                    // Передача агрегатов партиции во вторую фазу по таймеру
+                    driver.advanceWallClockTime(interval);
+                }
+                if ((i + 1) % DRAIN_EVERY == 0) {
+                    published += drain();
+                }
+            }
+            return published + drain();
+        }
+
+        private long drain() {
+            long drained = 0;
+            for (TestOutputTopic<Windowed<String>, WindowStatistics> topic : closed) {
+                drained += topic.readRecordsToList().size();
+            }
+            return drained;
+        }
+    }
+
+    /**
+     * Суммарные счетчики всех сборщиков мусора.
+     */
+    private record GcSnapshot(long count, long timeMillis) {
+
+        static GcSnapshot take() {
+            long count = 0;
+            long time = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                time += Math.max(0, gc.getCollectionTime());
+            }
+            return new GcSnapshot(count, time);
+        }
+
+        GcSnapshot minus(GcSnapshot other) {
+            return new GcSnapshot(count - other.count, timeMillis - other.timeMillis);
+        }
+    }
+
+    /**
+     * Параметры бенчмарка (аргументы key=value).
+     */
+    private static final class Options {
+
+        long records = 1_000_000;
+        long warmup = 200_000;
+        long rate = 100_000;
+        Duration interval = Duration.ofSeconds(1);
+        int users = 10_000;
+        int recipients = 1_000_000;
+        double relativeError = 0.02;
+        int capacity = 100;
+        long cacheMaxBytes = 10 * 1024 * 1024;
+        long seed = 42;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Ожидался аргумент вида key=value: " + arg);
+                }
+                String key = arg.substring(0, separator);
+                String value = arg.substring(separator + 1);
+                switch (key) {
+                    case "records" -> options.records = Long.parseLong(value);
+                    case "warmup" -> options.warmup = Long.parseLong(value);
+                    case "rate" -> options.rate = Long.parseLong(value);
+                    case "interval" -> options.interval = Duration.ofMillis(Long.parseLong(value));
+                    case "users" -> options.users = Integer.parseInt(value);
+                    case "recipients" -> options.recipients = Integer.parseInt(value);
+                    case "relativeError" -> options.relativeError = Double.parseDouble(value);
+                    case "capacity" -> options.capacity = Integer.parseInt(value);
+                    case "cacheMaxBytes" -> options.cacheMaxBytes = Long.parseLong(value);
+                    case "seed" -> options.seed = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Неизвестный параметр: " + key);
+                }
+            }
+            return options;
+        }
+    }
+}
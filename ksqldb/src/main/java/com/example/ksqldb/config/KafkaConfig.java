@@ -23,30 +23,37 @@ public class KafkaConfig {
     @Value("${kafka.topic.user-statistics}")
     private String userStatisticsTopic;
 
+    /**
+     * Количество партиций топиков: предел параллельности потоков Kafka Streams (профиль streams).
+     * Значение берётся из файла настроек по ключу kafka.topic.partitions (по умолчанию 1).
+     */
+    @Value("${kafka.topic.partitions:1}")
+    private int partitions;
+
     /**
      * Создаёт и конфигурирует топик для сообщений.
-     * Топик создаётся с 1 партицией и 1 репликой.
+     * Топик создаётся с kafka.topic.partitions партициями и 1 репликой.
      *
      * @return объект NewTopic для топика сообщений
      */
     @Bean
     public NewTopic messagesTopic() {
         return TopicBuilder.name(messagesTopic)
-                .partitions(1)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
 
     /**
      * Создаёт и конфигурирует топик для статистики пользователей.
-     * Топик создаётся с 1 партицией и 1 репликой.
+     * Топик создаётся с kafka.topic.partitions партициями и 1 репликой.
      *
      * @return объект NewTopic для топика статистики
      */
     @Bean
     public NewTopic userStatisticsTopic() {
         return TopicBuilder.name(userStatisticsTopic)
-                .partitions(1)
+                .partitions(partitions)
                 .replicas(1)
                 .build();
     }
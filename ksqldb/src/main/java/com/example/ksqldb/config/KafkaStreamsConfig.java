@@ -0,0 +1,239 @@
+package com.example.ksqldb.config;
+
+import com.example.ksqldb.model.Message;
+import com.example.ksqldb.model.UserStatistics;
+import com.example.ksqldb.sketch.HyperLogLog;
+import com.example.ksqldb.stream.DistinctCountMode;
+import com.example.ksqldb.stream.UserStatisticsTopology;
+import com.example.ksqldb.stream.WindowSpec;
+import com.example.ksqldb.stream.WindowedStatisticsTopology;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.annotation.EnableKafkaStreams;
+import org.springframework.kafka.annotation.KafkaStreamsDefaultConfiguration;
+import org.springframework.kafka.config.KafkaStreamsConfiguration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Встроенный Kafka Streams (профиль {@code streams}): агрегаты из ksql/ksqldb-queries.sql
+ * считаются в самом приложении ({@link UserStatisticsTopology}), без ksqlDB Server,
+ * а их оконные варианты — {@link WindowedStatisticsTopology} (окна statistics.windows.*).
+ * Кэш хранилищ, интервал коммита и число потоков настраиваются параметрами statistics.streams.*.
+ */
+@Configuration
+@EnableKafkaStreams
+@Profile("streams")
+public class KafkaStreamsConfig {
+
+    /**
+     * Адрес Kafka-брокера.
+     */
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    /**
+     * Название топика с сообщениями.
+     */
+    @Value("${kafka.topic.messages}")
+    private String messagesTopic;
+
+    /**
+     * Название топика статистики пользователей.
+     */
+    @Value("${kafka.topic.user-statistics}")
+    private String userStatisticsTopic;
+
+    /**
+     * ID приложения Kafka Streams (группа потребителей и префикс внутренних топиков).
+     */
+    @Value("${statistics.streams.application-id:ksqldb-user-statistics}")
+    private String applicationId;
+
+    /**
+     * Количество потоков обработки в одном экземпляре.
+     */
+    @Value("${statistics.streams.num-stream-threads:1}")
+    private int numStreamThreads;
+
+    /**
+     * Интервал коммита, мс: с ним же сбрасывается кэш и публикуются обновления агрегатов.
+     */
+    @Value("${statistics.streams.commit-interval-ms:1000}")
+    private long commitIntervalMs;
+
+    /**
+     * Размер кэша хранилищ на экземпляр, байт: обновления одного ключа между сбросами объединяются (0 — без кэша).
+     */
+    @Value("${statistics.streams.cache-max-bytes:10485760}")
+    private long cacheMaxBytes;
+
+    /**
+     * Каталог локальных хранилищ состояния (пусто — по умолчанию Kafka Streams).
+     */
+    @Value("${statistics.streams.state-dir:}")
+    private String stateDir;
+
+    /**
+     * Адрес REST этого экземпляра для интерактивных запросов (application.server).
+     */
+    @Value("${statistics.streams.application-server:localhost:${server.port}}")
+    private String applicationServer;
+
+    /**
+     * Количество счетчиков Space-Saving самых активных пользователей на партицию (top_users):
+     * пользователь с долей сообщений партиции больше 1 / capacity отслеживается гарантированно.
+     */
+    @Value("${statistics.top-users.capacity:1000}")
+    private int topUsersCapacity;
+
+    /**
+     * Подсчет уникальных получателей: EXACT — точно (хранилище всех пар), HLL — скетчами HyperLogLog фиксированного размера.
+     */
+    @Value("${statistics.distinct.mode:EXACT}")
+    private DistinctCountMode distinctMode;
+
+    /**
+     * Допустимая относительная ошибка HyperLogLog (режим HLL): по ней выбирается размер скетча.
+     */
+    @Value("${statistics.distinct.relative-error:0.02}")
+    private double distinctRelativeError;
+
+    /**
+     * Размер списка самых активных пользователей окна.
+     */
+    @Value("${statistics.top-users.limit:5}")
+    private int topUsersLimit;
+
+    /**
+     * Количество счетчиков Space-Saving пользователей в агрегате окна (одно значение на окно).
+     */
+    @Value("${statistics.windows.top-users-capacity:100}")
+    private int windowTopUsersCapacity;
+
+    /**
+     * Имена окон статистики; параметры каждого — statistics.windows.<имя>.* (пусто — без оконной статистики).
+     */
+    @Value("${statistics.windows.names:minute,hour}")
+    private List<String> windowNames;
+
+    /**
+     * Параметры окон statistics.windows.*.
+     */
+    @Autowired
+    private Environment environment;
+
+    /**
+     * Конфигурация Kafka Streams.
+     *
+     * @return параметры Kafka Streams
+     */
+    @Bean(name = KafkaStreamsDefaultConfiguration.DEFAULT_STREAMS_CONFIG_BEAN_NAME)
+    public KafkaStreamsConfiguration kStreamsConfigs() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, numStreamThreads);
+        props.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, commitIntervalMs);
+        props.put(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG, cacheMaxBytes);
+        props.put(StreamsConfig.APPLICATION_SERVER_CONFIG, applicationServer);
+        if (!stateDir.isBlank()) {
+            props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir);
+        }
+        // Как и запросы ksqlDB: агрегаты считаются с начала топика
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return new KafkaStreamsConfiguration(props);
+    }
+
+    /**
+     * Поток сообщений — общий источник всех агрегатов.
+     *
+     * @param builder построитель топологии Kafka Streams
+     * @return сообщения с ключом user_id
+     */
+    @Bean
+    public KStream<String, Message> messagesStream(StreamsBuilder builder) {
+        return UserStatisticsTopology.messages(builder, messagesTopic);
+    }
+
+    /**
+     * Топология агрегатов статистики.
+     *
+     * @param builder  построитель топологии Kafka Streams
+     * @param messages поток сообщений
+     * @return таблица статистики пользователей
+     */
+    @Bean
+    public KTable<String, UserStatistics> userStatisticsTable(StreamsBuilder builder, KStream<String, Message> messages) {
+        int precision = HyperLogLog.precisionFor(distinctRelativeError);
+        return new UserStatisticsTopology(userStatisticsTopic, topUsersCapacity,
+            distinctMode, precision, partialInterval()).build(builder, messages);
+    }
+
+    /**
+     * Оконная статистика (минута и час): итог каждого окна публикуется один раз после его закрытия.
+     *
+     * @param builder  построитель топологии Kafka Streams
+     * @param messages поток сообщений
+     * @return оконная топология
+     */
+    @Bean
+    public WindowedStatisticsTopology windowedStatisticsTopology(StreamsBuilder builder, KStream<String, Message> messages) {
+        WindowedStatisticsTopology topology = new WindowedStatisticsTopology(statisticsWindows(),
+            HyperLogLog.precisionFor(distinctRelativeError), windowTopUsersCapacity, topUsersLimit, partialInterval());
+        topology.build(builder, messages);
+        return topology;
+    }
+
+    /**
+     * Топики итогов окон: одна партиция, т. к. у окна один ключ.
+     *
+     * @return топики оконной статистики
+     */
+    @Bean
+    public KafkaAdmin.NewTopics statisticsWindowTopics() {
+        return new KafkaAdmin.NewTopics(statisticsWindows().stream()
+            .map(window -> TopicBuilder.name(window.topic()).partitions(1).replicas(1).build())
+            .toArray(NewTopic[]::new));
+    }
+
+    // Частичные агрегаты партиций (суммы, скетчи, окна) передаются с той же периодичностью, что и остальные обновления агрегатов
+    private Duration partialInterval() {
+        return Duration.ofMillis(Math.max(1, commitIntervalMs));
+    }
+
+    // Окна statistics.windows.<name>: size, advance (по умолчанию = size), grace, retention, topic
+    private List<WindowSpec> statisticsWindows() {
+        return windowNames.stream()
+            .map(String::trim)
+            .filter(name -> !name.isEmpty())
+            .map(name -> {
+                String prefix = "statistics.windows." + name + ".";
+                return new WindowSpec(name,
+                    environment.getRequiredProperty(prefix + "size", Duration.class),
+                    environment.getProperty(prefix + "advance", Duration.class),
+                    environment.getProperty(prefix + "grace", Duration.class, Duration.ZERO),
+                    environment.getProperty(prefix + "retention", Duration.class),
+                    environment.getProperty(prefix + "topic", "statistics_per_" + name));
+            })
+            .toList();
+    }
+}
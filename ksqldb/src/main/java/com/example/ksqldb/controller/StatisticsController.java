@@ -0,0 +1,103 @@
+package com.example.ksqldb.controller;
+
+import com.example.ksqldb.model.GlobalCount;
+import com.example.ksqldb.model.TopUsers;
+import com.example.ksqldb.model.UserStatistics;
+import com.example.ksqldb.model.WindowStatistics;
+import com.example.ksqldb.service.StatisticsQueryService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * REST-доступ к агрегатам встроенного Kafka Streams (профиль {@code streams}) — замена pull-запросов ksqlDB.
+ * Запрос выполняется на экземпляре, которому принадлежит партиция ключа; другой экземпляр перенаправит его туда.
+ * Параметр {@code local=true} — только локальные партиции (используется между экземплярами).
+ */
+@RestController
+@Profile("streams")
+@RequestMapping("/statistics")
+public class StatisticsController {
+
+    /**
+     * Сервис интерактивных запросов к хранилищам агрегатов.
+     */
+    private final StatisticsQueryService statisticsQueryService;
+
+    public StatisticsController(StatisticsQueryService statisticsQueryService) {
+        this.statisticsQueryService = statisticsQueryService;
+    }
+
+    /**
+     * Статистика пользователя (аналог {@code SELECT * FROM user_statistics WHERE user_id = ...}).
+     * Пример запроса: GET /statistics/users/{userId}
+     *
+     * @param userId ID пользователя
+     * @param local  true — только локальные партиции
+     * @return количество отправленных сообщений и уникальных получателей
+     */
+    @GetMapping("/users/{userId}")
+    public ResponseEntity<UserStatistics> getUserStatistics(@PathVariable String userId,
+                                                            @RequestParam(defaultValue = "false") boolean local) {
+        return ResponseEntity.ok(statisticsQueryService.userStatistics(userId, local));
+    }
+
+    /**
+     * Общее количество сообщений (аналог {@code SELECT * FROM total_messages}).
+     *
+     * @param local true — только локальные партиции
+     * @return счетчик total_messages
+     */
+    @GetMapping("/total-messages")
+    public ResponseEntity<GlobalCount> getTotalMessages(@RequestParam(defaultValue = "false") boolean local) {
+        return ResponseEntity.ok(statisticsQueryService.totalMessages(local));
+    }
+
+    /**
+     * Количество уникальных получателей (аналог {@code SELECT * FROM unique_recipients}).
+     *
+     * @param local true — только локальные партиции
+     * @return счетчик unique_recipients
+     */
+    @GetMapping("/unique-recipients")
+    public ResponseEntity<GlobalCount> getUniqueRecipients(@RequestParam(defaultValue = "false") boolean local) {
+        return ResponseEntity.ok(statisticsQueryService.uniqueRecipients(local));
+    }
+
+    /**
+     * Самые активные пользователи (аналог {@code SELECT * FROM top_users}).
+     *
+     * @param local true — только локальные партиции
+     * @return пользователи по убыванию количества сообщений
+     */
+    @GetMapping("/top-users")
+    public ResponseEntity<TopUsers> getTopUsers(@RequestParam(defaultValue = "false") boolean local) {
+        return ResponseEntity.ok(statisticsQueryService.topUsers(local));
+    }
+
+    /**
+     * Оконная статистика (аналог pull-запроса к оконным таблицам ksql/ksqldb-queries-windowed.sql).
+     * Пример запроса: GET /statistics/windows/minute?from=2024-06-01T10:00:00Z
+     *
+     * @param window имя окна (minute, hour)
+     * @param from   начало интервала начал окон (по умолчанию — все хранящиеся окна)
+     * @param to     конец интервала начал окон (по умолчанию — сейчас)
+     * @param local  true — только локальные партиции
+     * @return окна по возрастанию начала, включая еще открытые
+     */
+    @GetMapping("/windows/{window}")
+    public ResponseEntity<List<WindowStatistics>> getWindowStatistics(@PathVariable String window,
+                                                                      @RequestParam(required = false) Instant from,
+                                                                      @RequestParam(required = false) Instant to,
+                                                                      @RequestParam(defaultValue = "false") boolean local) {
+        return ResponseEntity.ok(statisticsQueryService.windowStatistics(window,
+            from == null ? Instant.EPOCH : from, to == null ? Instant.now() : to, local));
+    }
+}
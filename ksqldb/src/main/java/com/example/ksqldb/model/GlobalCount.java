@@ -0,0 +1,24 @@
+package com.example.ksqldb.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Глобальный счетчик — аналог таблиц ksqlDB {@code total_messages} и {@code unique_recipients} (GROUP BY NULL, сумма частичных количеств шардов).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GlobalCount {
+
+    /**
+     * Название агрегата (total_messages, unique_recipients).
+     */
+    private String name;
+
+    /**
+     * Значение счетчика.
+     */
+    private long count;
+}
@@ -0,0 +1,22 @@
+package com.example.ksqldb.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Самые активные пользователи по количеству отправленных сообщений — аналог таблицы ksqlDB {@code top_users}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopUsers {
+
+    /**
+     * Пользователи по убыванию количества сообщений (не больше заданного размера).
+     */
+    private List<UserCount> users = new ArrayList<>();
+}
@@ -0,0 +1,29 @@
+package com.example.ksqldb.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Пользователь и количество отправленных им сообщений (строка таблицы {@code top_users}).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserCount {
+
+    /**
+     * ID пользователя-отправителя.
+     */
+    private String userId;
+
+    /**
+     * Количество отправленных сообщений (оценка сверху).
+     */
+    private long messageCount;
+
+    /**
+     * На сколько оценка может превышать истинное количество: оно не меньше {@code messageCount - maxError}.
+     */
+    private long maxError;
+}
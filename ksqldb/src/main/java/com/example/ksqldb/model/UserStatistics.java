@@ -0,0 +1,29 @@
+package com.example.ksqldb.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Статистика пользователя — аналог таблицы ksqlDB {@code user_statistics}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserStatistics {
+
+    /**
+     * ID пользователя-отправителя.
+     */
+    private String userId;
+
+    /**
+     * Количество отправленных сообщений (COUNT(*)).
+     */
+    private long sentMessages;
+
+    /**
+     * Количество уникальных получателей (COUNT(DISTINCT recipient_id)).
+     */
+    private long uniqueRecipients;
+}
@@ -0,0 +1,43 @@
+package com.example.ksqldb.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Итог окна времени (минута, час): количество сообщений, уникальных получателей и самые активные пользователи —
+ * оконный аналог таблиц {@code total_messages}, {@code unique_recipients} и {@code top_users}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WindowStatistics {
+
+    /**
+     * Начало окна (включительно), миллисекунды с начала эпохи.
+     */
+    private long windowStart;
+
+    /**
+     * Конец окна (не включительно), миллисекунды с начала эпохи.
+     */
+    private long windowEnd;
+
+    /**
+     * Количество сообщений в окне.
+     */
+    private long messages;
+
+    /**
+     * Количество уникальных получателей в окне (оценка HyperLogLog).
+     */
+    private long uniqueRecipients;
+
+    /**
+     * Самые активные пользователи окна по убыванию количества сообщений.
+     */
+    private List<UserCount> topUsers = new ArrayList<>();
+}
@@ -0,0 +1,51 @@
+package com.example.ksqldb.serde;
+
+import com.example.ksqldb.model.Message;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Десериализатор сообщения из JSON в схеме потока ksqlDB {@code messages_stream}
+ * (формат {@link MessageJsonSerializer}). Читает поля потоковым парсером Jackson без дерева JSON
+ * и рефлексии; неизвестные поля пропускаются.
+ */
+public class MessageJsonDeserializer implements Deserializer<Message> {
+
+    // Фабрика парсеров потокобезопасна и переиспользуется
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Override
+    public Message deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        Message message = new Message();
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new SerializationException("Ожидался JSON-объект сообщения");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "user_id" -> message.setUserId(parser.getValueAsString());
+                    case "recipient_id" -> message.setRecipientId(parser.getValueAsString());
+                    case "message" -> message.setMessage(parser.getValueAsString());
+                    // временная метка в миллисекундах
+                    case "timestamp" -> message.setTimestamp(
+                        value == JsonToken.VALUE_NUMBER_INT ? Instant.ofEpochMilli(parser.getLongValue()) : null);
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Не удалось прочитать сообщение из JSON", e);
+        }
+        return message;
+    }
+}
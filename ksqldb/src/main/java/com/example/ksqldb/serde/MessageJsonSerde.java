@@ -0,0 +1,14 @@
+package com.example.ksqldb.serde;
+
+import com.example.ksqldb.model.Message;
+import org.apache.kafka.common.serialization.Serdes;
+
+/**
+ * Serde сообщения в JSON схемы потока ksqlDB {@code messages_stream} для Kafka Streams.
+ */
+public class MessageJsonSerde extends Serdes.WrapperSerde<Message> {
+
+    public MessageJsonSerde() {
+        super(new MessageJsonSerializer(), new MessageJsonDeserializer());
+    }
+}
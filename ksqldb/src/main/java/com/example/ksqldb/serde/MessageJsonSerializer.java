@@ -0,0 +1,49 @@
+package com.example.ksqldb.serde;
+
+import com.example.ksqldb.model.Message;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+
+/**
+ * Сериализатор сообщения в JSON в схеме потока ksqlDB {@code messages_stream}:
+ * {@code {"user_id":"...","recipient_id":"...","message":"...","timestamp":<epoch millis>}}.
+ *
+ * Пишет байты UTF-8 потоковым генератором Jackson сразу в буфер записи — без промежуточной строки
+ * и String.format на каждое сообщение; текст сообщения экранируется по правилам JSON.
+ */
+public class MessageJsonSerializer implements Serializer<Message> {
+
+    // Фабрика генераторов потокобезопасна и переиспользуется
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Начальный размер буфера: типичное сообщение с двумя UUID помещается без расширения
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    @Override
+    public byte[] serialize(String topic, Message message) {
+        if (message == null) {
+            return null;
+        }
+        ByteArrayBuilder buffer = new ByteArrayBuilder(INITIAL_BUFFER_SIZE);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("user_id", message.getUserId());
+            generator.writeStringField("recipient_id", message.getRecipientId());
+            generator.writeStringField("message", message.getMessage());
+            if (message.getTimestamp() != null) {
+                // временная метка в миллисекундах
+                generator.writeNumberField("timestamp", message.getTimestamp().toEpochMilli());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new SerializationException("Не удалось сериализовать сообщение в JSON", e);
+        }
+        return buffer.toByteArray();
+    }
+}
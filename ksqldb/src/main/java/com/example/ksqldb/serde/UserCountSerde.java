@@ -0,0 +1,60 @@
+package com.example.ksqldb.serde;
+
+import com.example.ksqldb.model.UserCount;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Компактный бинарный Serde счетчика сообщений пользователя для хранилища top_users и его changelog-топика:
+ * количество сообщений (8 байт), возможная ошибка оценки (8 байт), ID пользователя в UTF-8.
+ */
+public class UserCountSerde extends Serdes.WrapperSerde<UserCount> {
+
+    // Два счетчика перед ID пользователя
+    private static final int COUNTERS_SIZE = 2 * Long.BYTES;
+
+    public UserCountSerde() {
+        super(new UserCountSerializer(), new UserCountDeserializer());
+    }
+
+    public static class UserCountSerializer implements Serializer<UserCount> {
+
+        @Override
+        public byte[] serialize(String topic, UserCount userCount) {
+            if (userCount == null) {
+                return null;
+            }
+            byte[] userId = userCount.getUserId() == null
+                ? new byte[0]
+                : userCount.getUserId().getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(COUNTERS_SIZE + userId.length)
+                .putLong(userCount.getMessageCount())
+                .putLong(userCount.getMaxError())
+                .put(userId)
+                .array();
+        }
+    }
+
+    public static class UserCountDeserializer implements Deserializer<UserCount> {
+
+        @Override
+        public UserCount deserialize(String topic, byte[] data) {
+            if (data == null) {
+                return null;
+            }
+            if (data.length < COUNTERS_SIZE) {
+                throw new SerializationException("Некорректная длина счетчика пользователя: " + data.length);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long messageCount = buffer.getLong();
+            long maxError = buffer.getLong();
+            String userId = new String(data, COUNTERS_SIZE, data.length - COUNTERS_SIZE, StandardCharsets.UTF_8);
+            return new UserCount(userId, messageCount, maxError);
+        }
+    }
+}
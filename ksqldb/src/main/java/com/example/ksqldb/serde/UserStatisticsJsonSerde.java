@@ -0,0 +1,77 @@
+package com.example.ksqldb.serde;
+
+import com.example.ksqldb.model.UserStatistics;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+
+/**
+ * Serde статистики пользователя в JSON в формате, который пишет ksqlDB для таблицы {@code user_statistics}:
+ * {@code {"SENT_MESSAGES":<n>,"UNIQUE_RECIPIENTS":<n>}}. ID пользователя — ключ записи, в значение не входит.
+ */
+public class UserStatisticsJsonSerde extends Serdes.WrapperSerde<UserStatistics> {
+
+    // Фабрика генераторов и парсеров потокобезопасна и переиспользуется
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public UserStatisticsJsonSerde() {
+        super(new UserStatisticsJsonSerializer(), new UserStatisticsJsonDeserializer());
+    }
+
+    public static class UserStatisticsJsonSerializer implements Serializer<UserStatistics> {
+
+        @Override
+        public byte[] serialize(String topic, UserStatistics statistics) {
+            if (statistics == null) {
+                return null;
+            }
+            ByteArrayBuilder buffer = new ByteArrayBuilder(64);
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8)) {
+                generator.writeStartObject();
+                generator.writeNumberField("SENT_MESSAGES", statistics.getSentMessages());
+                generator.writeNumberField("UNIQUE_RECIPIENTS", statistics.getUniqueRecipients());
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new SerializationException("Не удалось сериализовать статистику пользователя в JSON", e);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    public static class UserStatisticsJsonDeserializer implements Deserializer<UserStatistics> {
+
+        @Override
+        public UserStatistics deserialize(String topic, byte[] data) {
+            if (data == null) {
+                return null;
+            }
+            UserStatistics statistics = new UserStatistics();
+            try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new SerializationException("Ожидался JSON-объект статистики пользователя");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "SENT_MESSAGES" -> statistics.setSentMessages(parser.getValueAsLong());
+                        case "UNIQUE_RECIPIENTS" -> statistics.setUniqueRecipients(parser.getValueAsLong());
+                        default -> parser.skipChildren();
+                    }
+                }
+            } catch (IOException e) {
+                throw new SerializationException("Не удалось прочитать статистику пользователя из JSON", e);
+            }
+            return statistics;
+        }
+    }
+}
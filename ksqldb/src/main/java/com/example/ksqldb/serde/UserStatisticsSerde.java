@@ -0,0 +1,60 @@
+package com.example.ksqldb.serde;
+
+import com.example.ksqldb.model.UserStatistics;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Компактный бинарный Serde статистики пользователя для хранилища состояния и его changelog-топика:
+ * количество сообщений (8 байт), количество уникальных получателей (8 байт), ID пользователя в UTF-8.
+ */
+public class UserStatisticsSerde extends Serdes.WrapperSerde<UserStatistics> {
+
+    // Два счетчика перед ID пользователя
+    private static final int COUNTERS_SIZE = 2 * Long.BYTES;
+
+    public UserStatisticsSerde() {
+        super(new UserStatisticsSerializer(), new UserStatisticsDeserializer());
+    }
+
+    public static class UserStatisticsSerializer implements Serializer<UserStatistics> {
+
+        @Override
+        public byte[] serialize(String topic, UserStatistics statistics) {
+            if (statistics == null) {
+                return null;
+            }
+            byte[] userId = statistics.getUserId() == null
+                ? new byte[0]
+                : statistics.getUserId().getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(COUNTERS_SIZE + userId.length)
+                .putLong(statistics.getSentMessages())
+                .putLong(statistics.getUniqueRecipients())
+                .put(userId)
+                .array();
+        }
+    }
+
+    public static class UserStatisticsDeserializer implements Deserializer<UserStatistics> {
+
+        @Override
+        public UserStatistics deserialize(String topic, byte[] data) {
+            if (data == null) {
+                return null;
+            }
+            if (data.length < COUNTERS_SIZE) {
+                throw new SerializationException("Некорректная длина статистики пользователя: " + data.length);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long sentMessages = buffer.getLong();
+            long uniqueRecipients = buffer.getLong();
+            String userId = new String(data, COUNTERS_SIZE, data.length - COUNTERS_SIZE, StandardCharsets.UTF_8);
+            return new UserStatistics(userId, sentMessages, uniqueRecipients);
+        }
+    }
+}
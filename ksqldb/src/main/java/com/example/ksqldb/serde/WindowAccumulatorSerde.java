@@ -0,0 +1,41 @@
+package com.example.ksqldb.serde;
+
+import com.example.ksqldb.stream.WindowAccumulator;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Бинарный Serde оконного агрегата для оконных хранилищ, их changelog-топиков и топика частичных агрегатов окон
+ * (формат — {@link WindowAccumulator#toBytes()}).
+ */
+public class WindowAccumulatorSerde extends Serdes.WrapperSerde<WindowAccumulator> {
+
+    public WindowAccumulatorSerde() {
+        super(new WindowAccumulatorSerializer(), new WindowAccumulatorDeserializer());
+    }
+
+    public static class WindowAccumulatorSerializer implements Serializer<WindowAccumulator> {
+
+        @Override
+        public byte[] serialize(String topic, WindowAccumulator accumulator) {
+            return accumulator == null ? null : accumulator.toBytes();
+        }
+    }
+
+    public static class WindowAccumulatorDeserializer implements Deserializer<WindowAccumulator> {
+
+        @Override
+        public WindowAccumulator deserialize(String topic, byte[] data) {
+            if (data == null) {
+                return null;
+            }
+            try {
+                return WindowAccumulator.fromBytes(data);
+            } catch (IllegalArgumentException e) {
+                throw new SerializationException("Некорректный оконный агрегат", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.ksqldb.serde;
+
+import com.example.ksqldb.model.UserCount;
+import com.example.ksqldb.model.WindowStatistics;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serde итога окна в JSON с именами полей в стиле ksqlDB:
+ * {@code {"WINDOW_START":<ms>,"WINDOW_END":<ms>,"MESSAGES":<n>,"UNIQUE_RECIPIENTS":<n>,
+ * "TOP_USERS":[{"USER_ID":"...","MESSAGE_COUNT":<n>,"MAX_ERROR":<n>}]}}.
+ */
+public class WindowStatisticsJsonSerde extends Serdes.WrapperSerde<WindowStatistics> {
+
+    // Фабрика генераторов и парсеров потокобезопасна и переиспользуется
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public WindowStatisticsJsonSerde() {
+        super(new WindowStatisticsJsonSerializer(), new WindowStatisticsJsonDeserializer());
+    }
+
+    public static class WindowStatisticsJsonSerializer implements Serializer<WindowStatistics> {
+
+        @Override
+        public byte[] serialize(String topic, WindowStatistics statistics) {
+            if (statistics == null) {
+                return null;
+            }
+            ByteArrayBuilder buffer = new ByteArrayBuilder(256);
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8)) {
+                generator.writeStartObject();
+                generator.writeNumberField("WINDOW_START", statistics.getWindowStart());
+                generator.writeNumberField("WINDOW_END", statistics.getWindowEnd());
+                generator.writeNumberField("MESSAGES", statistics.getMessages());
+                generator.writeNumberField("UNIQUE_RECIPIENTS", statistics.getUniqueRecipients());
+                generator.writeArrayFieldStart("TOP_USERS");
+                for (UserCount user : statistics.getTopUsers()) {
+                    generator.writeStartObject();
+                    generator.writeStringField("USER_ID", user.getUserId());
+                    generator.writeNumberField("MESSAGE_COUNT", user.getMessageCount());
+                    generator.writeNumberField("MAX_ERROR", user.getMaxError());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new SerializationException("Не удалось сериализовать статистику окна в JSON", e);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    public static class WindowStatisticsJsonDeserializer implements Deserializer<WindowStatistics> {
+
+        @Override
+        public WindowStatistics deserialize(String topic, byte[] data) {
+            if (data == null) {
+                return null;
+            }
+            WindowStatistics statistics = new WindowStatistics();
+            try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new SerializationException("Ожидался JSON-объект статистики окна");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "WINDOW_START" -> statistics.setWindowStart(parser.getValueAsLong());
+                        case "WINDOW_END" -> statistics.setWindowEnd(parser.getValueAsLong());
+                        case "MESSAGES" -> statistics.setMessages(parser.getValueAsLong());
+                        case "UNIQUE_RECIPIENTS" -> statistics.setUniqueRecipients(parser.getValueAsLong());
+                        case "TOP_USERS" -> statistics.setTopUsers(readUsers(parser));
+                        default -> parser.skipChildren();
+                    }
+                }
+            } catch (IOException e) {
+                throw new SerializationException("Не удалось прочитать статистику окна из JSON", e);
+            }
+            return statistics;
+        }
+
+        private static List<UserCount> readUsers(JsonParser parser) throws IOException {
+            List<UserCount> users = new ArrayList<>();
+            if (parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                return users;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                UserCount user = new UserCount();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "USER_ID" -> user.setUserId(parser.getValueAsString());
+                        case "MESSAGE_COUNT" -> user.setMessageCount(parser.getValueAsLong());
+                        case "MAX_ERROR" -> user.setMaxError(parser.getValueAsLong());
+                        default -> parser.skipChildren();
+                    }
+                }
+                users.add(user);
+            }
+            return users;
+        }
+    }
+}
@@ -18,9 +18,9 @@ import java.util.UUID;
 public class MessageProducerService {
 
     /**
-     * KafkaTemplate, тип — String для ключа и значения.
+     * KafkaTemplate: ключ — строка, значение — Message (сериализуется MessageJsonSerializer в схему потока ksqlDB).
      */
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, Message> kafkaTemplate;
 
     /**
      * Название топика для отправки сообщений; значение из конфигурации.
@@ -55,17 +55,7 @@ public class MessageProducerService {
         // Логирование отправляемого сообщения
         log.info("Sending message: {}", message);
 
-        // Отправка сообщения в Kafka в виде JSON-строки
-        kafkaTemplate.send(
-            messagesTopic,
-            userId, // ключ — ID пользователя
-            String.format(
-                "{\"user_id\":\"%s\", \"recipient_id\":\"%s\", \"message\":\"%s\", \"timestamp\":%d}",
-                message.getUserId(),
-                message.getRecipientId(),
-                message.getMessage(),
-                message.getTimestamp().toEpochMilli() // временная метка в миллисекундах
-            )
-        );
+        // Отправка сообщения в Kafka: JSON формирует сериализатор значения (MessageJsonSerializer)
+        kafkaTemplate.send(messagesTopic, userId, message); // ключ — ID пользователя
     }   
 }
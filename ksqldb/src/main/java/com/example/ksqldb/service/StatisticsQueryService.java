@@ -0,0 +1,275 @@
+package com.example.ksqldb.service;
+
+import com.example.ksqldb.model.GlobalCount;
+import com.example.ksqldb.model.TopUsers;
+import com.example.ksqldb.model.UserCount;
+import com.example.ksqldb.model.UserStatistics;
+import com.example.ksqldb.model.WindowStatistics;
+import com.example.ksqldb.stream.UserStatisticsTopology;
+import com.example.ksqldb.stream.WindowAccumulator;
+import com.example.ksqldb.stream.WindowedStatisticsTopology;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyQueryMetadata;
+import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.StreamsMetadata;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.state.HostInfo;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Интерактивные запросы к агрегатам {@link UserStatisticsTopology} вместо запросов к таблицам ksqlDB.
+ *
+ * Хранилища партиционированы: статистика пользователя лежит в партиции его ключа, а глобальные агрегаты —
+ * в партиции ключа {@link UserStatisticsTopology#ALL}. Запрос выполняется на экземпляре-владельце партиции
+ * ({@link KafkaStreams#queryMetadataForKey}), остальные экземпляры перенаправляют его туда по HTTP.
+ * Частичные top-K пользователей есть в каждой партиции: они собираются со всех экземпляров и объединяются.
+ */
+@Slf4j
+@Service
+@Profile("streams")
+public class StatisticsQueryService {
+
+    // Порядок top_users: по убыванию количества, при равенстве — по ID пользователя
+    private static final Comparator<UserCount> TOP_USERS_ORDER = Comparator
+        .comparingLong(UserCount::getMessageCount).reversed()
+        .thenComparing(UserCount::getUserId);
+
+    /**
+     * Фабрика Kafka Streams, через нее получаем работающий экземпляр KafkaStreams.
+     */
+    private final StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+
+    /**
+     * HTTP-клиент для перенаправления запросов на экземпляр-владелец ключа.
+     */
+    private final RestClient restClient;
+
+    /**
+     * Адрес этого экземпляра (совпадает с application.server Kafka Streams).
+     */
+    private final HostInfo self;
+
+    /**
+     * Размер списка самых активных пользователей.
+     */
+    private final int topUsersLimit;
+
+    /**
+     * Имена окон оконной статистики.
+     */
+    private final List<String> windowNames;
+
+    public StatisticsQueryService(StreamsBuilderFactoryBean streamsBuilderFactoryBean,
+                                  RestClient.Builder restClientBuilder,
+                                  @Value("${statistics.streams.application-server:localhost:${server.port}}") String applicationServer,
+                                  @Value("${statistics.top-users.limit:5}") int topUsersLimit,
+                                  @Value("${statistics.windows.names:minute,hour}") List<String> windowNames) {
+        this.streamsBuilderFactoryBean = streamsBuilderFactoryBean;
+        this.restClient = restClientBuilder.build();
+        this.self = HostInfo.buildFromEndpoint(applicationServer);
+        this.topUsersLimit = Math.max(1, topUsersLimit);
+        this.windowNames = windowNames.stream().map(String::trim).toList();
+    }
+
+    /**
+     * Статистика пользователя (таблица user_statistics).
+     *
+     * @param userId ID пользователя
+     * @param local  true — только локальные партиции, без перенаправления
+     * @return статистика; для неизвестного пользователя — нулевые счетчики
+     */
+    public UserStatistics userStatistics(String userId, boolean local) {
+        return this.<UserStatistics, UserStatistics>query(UserStatisticsTopology.USER_STATISTICS_STORE, userId, local,
+            statistics -> statistics == null ? new UserStatistics(userId, 0, 0) : statistics,
+            "/statistics/users/" + userId, UserStatistics.class);
+    }
+
+    /**
+     * Общее количество сообщений (таблица total_messages).
+     *
+     * @param local true — только локальные партиции, без перенаправления
+     * @return счетчик
+     */
+    public GlobalCount totalMessages(boolean local) {
+        return globalCount(UserStatisticsTopology.TOTAL_MESSAGES_STORE, "total_messages", "/statistics/total-messages", local);
+    }
+
+    /**
+     * Количество уникальных получателей (таблица unique_recipients).
+     *
+     * @param local true — только локальные партиции, без перенаправления
+     * @return счетчик
+     */
+    public GlobalCount uniqueRecipients(boolean local) {
+        return globalCount(UserStatisticsTopology.UNIQUE_RECIPIENTS_STORE, "unique_recipients", "/statistics/unique-recipients", local);
+    }
+
+    /**
+     * Самые активные пользователи (таблица top_users): лучшие из частичных top-K всех партиций.
+     * Пользователь целиком принадлежит одной партиции, поэтому списки партиций не пересекаются.
+     *
+     * @param local true — только локальные партиции, без запросов к другим экземплярам
+     * @return пользователи по убыванию количества сообщений
+     */
+    public TopUsers topUsers(boolean local) {
+        KafkaStreams streams = kafkaStreams();
+        if (local) {
+            return new TopUsers(localTopUsers(streams));
+        }
+        List<UserCount> candidates = new ArrayList<>();
+        for (StreamsMetadata owner : streams.streamsMetadataForStore(UserStatisticsTopology.TOP_USERS_COUNTERS_STORE)) {
+            candidates.addAll(self.equals(owner.hostInfo())
+                ? localTopUsers(streams)
+                : remote(owner.hostInfo(), UserStatisticsTopology.TOP_USERS_COUNTERS_STORE, "/statistics/top-users", TopUsers.class).getUsers());
+        }
+        return new TopUsers(top(candidates.stream()));
+    }
+
+    /**
+     * Статистика окон (открытых и закрытых в пределах retention), начавшихся в заданном интервале.
+     * Все окна одного имени лежат в партиции ключа {@link UserStatisticsTopology#ALL}.
+     *
+     * @param window имя окна (minute, hour)
+     * @param from   начало интервала начал окон
+     * @param to     конец интервала начал окон
+     * @param local  true — только локальные партиции, без перенаправления
+     * @return окна по возрастанию начала
+     */
+    public List<WindowStatistics> windowStatistics(String window, Instant from, Instant to, boolean local) {
+        if (!windowNames.contains(window)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Неизвестное окно: " + window);
+        }
+        String storeName = WindowedStatisticsTopology.storeName(window);
+        KafkaStreams streams = kafkaStreams();
+        Integer partition = null;
+        if (!local) {
+            KeyQueryMetadata metadata = ownerOf(streams, storeName, UserStatisticsTopology.ALL);
+            if (!self.equals(metadata.activeHost())) {
+                String path = "/statistics/windows/" + window + "?from=" + from + "&to=" + to;
+                return List.of(remote(metadata.activeHost(), storeName, path, WindowStatistics[].class));
+            }
+            partition = metadata.partition();
+        }
+        StoreQueryParameters<ReadOnlyWindowStore<String, WindowAccumulator>> parameters =
+            StoreQueryParameters.fromNameAndType(storeName, QueryableStoreTypes.<String, WindowAccumulator>windowStore());
+        if (partition != null) {
+            parameters = parameters.withPartition(partition);
+        }
+        List<WindowStatistics> windows = new ArrayList<>();
+        try (KeyValueIterator<Windowed<String>, WindowAccumulator> stored = streams.store(parameters)
+                .fetch(UserStatisticsTopology.ALL, UserStatisticsTopology.ALL, from, to)) {
+            stored.forEachRemaining(entry -> windows.add(entry.value.toStatistics(
+                entry.key.window().start(), entry.key.window().end(), topUsersLimit)));
+        } catch (InvalidStateStoreException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Хранилище " + storeName + " недоступно: " + e.getMessage());
+        }
+        return windows;
+    }
+
+    private GlobalCount globalCount(String storeName, String name, String path, boolean local) {
+        return this.<Long, GlobalCount>query(storeName, UserStatisticsTopology.ALL, local,
+            count -> new GlobalCount(name, count == null ? 0 : count), path, GlobalCount.class);
+    }
+
+    // Значение по ключу: локально, если партиция ключа на этом экземпляре, иначе — ответ того же REST-метода
+    // на экземпляре-владельце (path, тип response)
+    private <V, R> R query(String storeName, String key, boolean local, Function<V, R> result, String path, Class<R> response) {
+        KafkaStreams streams = kafkaStreams();
+        if (local) {
+            return result.apply(this.<V>localValue(streams, storeName, key, null));
+        }
+        KeyQueryMetadata metadata = ownerOf(streams, storeName, key);
+        if (self.equals(metadata.activeHost())) {
+            return result.apply(this.<V>localValue(streams, storeName, key, metadata.partition()));
+        }
+        return remote(metadata.activeHost(), storeName, path, response);
+    }
+
+    private KeyQueryMetadata ownerOf(KafkaStreams streams, String storeName, String key) {
+        KeyQueryMetadata metadata = streams.queryMetadataForKey(storeName, key, Serdes.String().serializer());
+        if (metadata == null || KeyQueryMetadata.NOT_AVAILABLE.equals(metadata)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Хранилище " + storeName + " недоступно (перебалансировка)");
+        }
+        return metadata;
+    }
+
+    // Ответ того же REST-метода с local=true на другом экземпляре
+    private <R> R remote(HostInfo owner, String storeName, String path, Class<R> response) {
+        try {
+            return restClient.get()
+                .uri("http://{host}:{port}" + path + (path.contains("?") ? "&" : "?") + "local=true", owner.host(), owner.port())
+                .retrieve()
+                .body(response);
+        } catch (RestClientException e) {
+            log.warn("Экземпляр {} недоступен для запроса к {}: {}", owner, storeName, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Экземпляр-владелец партиции недоступен: " + owner);
+        }
+    }
+
+    private <V> V localValue(KafkaStreams streams, String storeName, String key, Integer partition) {
+        StoreQueryParameters<ReadOnlyKeyValueStore<String, V>> parameters =
+            StoreQueryParameters.fromNameAndType(storeName, QueryableStoreTypes.<String, V>keyValueStore());
+        if (partition != null) {
+            parameters = parameters.withPartition(partition);
+        }
+        try {
+            return streams.store(parameters).get(key);
+        } catch (InvalidStateStoreException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Хранилище " + storeName + " недоступно: " + e.getMessage());
+        }
+    }
+
+    // Лучшие пользователи по счетчикам всех локальных партиций (не больше capacity счетчиков на партицию)
+    private List<UserCount> localTopUsers(KafkaStreams streams) {
+        String storeName = UserStatisticsTopology.TOP_USERS_COUNTERS_STORE;
+        try (KeyValueIterator<String, UserCount> counters = streams.store(
+                StoreQueryParameters.fromNameAndType(storeName, QueryableStoreTypes.<String, UserCount>keyValueStore())).all()) {
+            Stream.Builder<UserCount> users = Stream.builder();
+            counters.forEachRemaining(entry -> users.add(entry.value));
+            return top(users.build());
+        } catch (InvalidStateStoreException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Хранилище " + storeName + " недоступно: " + e.getMessage());
+        }
+    }
+
+    // Во время перебалансировки партиция может попасть в ответы двух экземпляров: пользователь учитывается один раз
+    private List<UserCount> top(Stream<UserCount> users) {
+        Set<String> seen = new HashSet<>();
+        return users
+            .sorted(TOP_USERS_ORDER)
+            .filter(user -> seen.add(user.getUserId()))
+            .limit(topUsersLimit)
+            .toList();
+    }
+
+    private KafkaStreams kafkaStreams() {
+        KafkaStreams streams = streamsBuilderFactoryBean.getKafkaStreams();
+        if (streams == null || !streams.state().isRunningOrRebalancing()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Kafka Streams не запущен");
+        }
+        return streams;
+    }
+}
@@ -0,0 +1,375 @@
+package com.example.ksqldb.sketch;
+
+import java.util.Arrays;
+
+/**
+ * Приблизительный подсчет количества уникальных значений (HyperLogLog) с фиксированным объемом памяти.
+ *
+ * Точность задается параметром p: 2^p регистров, относительная стандартная ошибка ≈ 1.04 / sqrt(2^p)
+ * (p = 12 — 1.6% и не больше 3 КБ в сериализованном виде, p = 14 — 0.8% и 12 КБ).
+ * Пока заполнено мало регистров, хранятся только они (разреженное представление: несколько байт на значение),
+ * поэтому скетч пользователя с десятком получателей занимает десятки байт, а не 2^p.
+ *
+ * Объединение скетчей ({@link #merge}) — максимум по регистрам: оно идемпотентно, поэтому повторное
+ * объединение с тем же или более новым снимком скетча не завышает оценку.
+ *
+ * Экземпляр изменяемый и не потокобезопасен. Класс не зависит от Kafka и используется
+ * и в Kafka Streams, и в UDAF ksqlDB ({@code COUNT_DISTINCT_HLL}).
+ */
+public final class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    // Версия формата сериализации
+    private static final byte VERSION = 1;
+
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+
+    // Заголовок: версия, точность, представление
+    private static final int HEADER_SIZE = 3;
+
+    // Бит на регистр в плотном сериализованном виде (значение регистра не больше 64 - p + 1 < 64)
+    private static final int REGISTER_BITS = 6;
+
+    private final int precision;
+
+    // Количество регистров (2^p)
+    private final int registerCount;
+
+    // Разреженное представление: отсортированные (индекс << 6 | значение) для ненулевых регистров
+    private int[] sparse;
+    private int sparseSize;
+
+    // Плотное представление: значение каждого регистра (null, пока скетч разреженный)
+    private byte[] registers;
+
+    private HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Точность HyperLogLog должна быть от " + MIN_PRECISION + " до " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.sparse = new int[4];
+    }
+
+    /**
+     * Пустой скетч с заданной точностью.
+     *
+     * @param precision p — логарифм количества регистров (4..16)
+     * @return пустой скетч
+     */
+    public static HyperLogLog withPrecision(int precision) {
+        return new HyperLogLog(precision);
+    }
+
+    /**
+     * Минимальная точность p, при которой относительная стандартная ошибка не больше заданной.
+     *
+     * @param relativeError допустимая ошибка, например 0.02 для 2%
+     * @return p в пределах 4..16
+     */
+    public static int precisionFor(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("Допустимая ошибка должна быть в (0, 1): " + relativeError);
+        }
+        double registers = Math.pow(1.04 / relativeError, 2);
+        int precision = (int) Math.ceil(Math.log(registers) / Math.log(2));
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    /**
+     * 64-битный хеш строки: FNV-1a по символам и перемешивание финализатором MurmurHash3
+     * (без кодирования строки в байты).
+     *
+     * @param value строка
+     * @return хеш
+     */
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * Относительная стандартная ошибка оценки при текущей точности.
+     *
+     * @return ошибка, например 0.016 для p = 12
+     */
+    public double relativeError() {
+        return 1.04 / Math.sqrt(registerCount);
+    }
+
+    /**
+     * Добавляет строку.
+     *
+     * @param value строка (null не учитывается)
+     * @return true, если скетч изменился (оценка могла измениться)
+     */
+    public boolean add(String value) {
+        return value != null && addHash(hash(value));
+    }
+
+    /**
+     * Добавляет значение по его 64-битному хешу.
+     *
+     * @param hash хеш значения
+     * @return true, если скетч изменился
+     */
+    public boolean addHash(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - precision));
+        // Позиция первой единицы в оставшихся битах; ограничитель гарантирует значение не больше 64 - p + 1
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        return update(index, rank);
+    }
+
+    /**
+     * Объединяет с другим скетчем той же точности (максимум по регистрам).
+     *
+     * @param other скетч
+     * @return true, если этот скетч изменился
+     */
+    public boolean merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Нельзя объединить скетчи разной точности: " + precision + " и " + other.precision);
+        }
+        boolean changed = false;
+        if (other.registers != null) {
+            for (int i = 0; i < registerCount; i++) {
+                if (other.registers[i] != 0) {
+                    changed |= update(i, other.registers[i]);
+                }
+            }
+        } else {
+            for (int i = 0; i < other.sparseSize; i++) {
+                changed |= update(other.sparse[i] >>> REGISTER_BITS, other.sparse[i] & 0x3f);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Оценка количества уникальных значений.
+     *
+     * @return оценка
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        if (registers != null) {
+            for (byte register : registers) {
+                sum += Math.scalb(1.0, -register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        } else {
+            zeros = registerCount - sparseSize;
+            sum = zeros;
+            for (int i = 0; i < sparseSize; i++) {
+                sum += Math.scalb(1.0, -(sparse[i] & 0x3f));
+            }
+        }
+        double estimate = alpha() * registerCount * registerCount / sum;
+        // Малые значения: линейный подсчет по пустым регистрам точнее
+        if (estimate <= 2.5 * registerCount && zeros > 0) {
+            estimate = registerCount * Math.log((double) registerCount / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Сериализация: версия, точность, представление; разреженное — количество и приращения
+     * отсортированных регистров в varint, плотное — регистры по 6 бит.
+     *
+     * @return байты скетча
+     */
+    public byte[] toBytes() {
+        if (registers == null) {
+            byte[] buffer = new byte[HEADER_SIZE + 5 + sparseSize * 5];
+            int position = header(buffer, SPARSE);
+            position = writeVarint(buffer, position, sparseSize);
+            int previous = 0;
+            for (int i = 0; i < sparseSize; i++) {
+                position = writeVarint(buffer, position, sparse[i] - previous);
+                previous = sparse[i];
+            }
+            return Arrays.copyOf(buffer, position);
+        }
+        byte[] buffer = new byte[HEADER_SIZE + registerCount * REGISTER_BITS / Byte.SIZE];
+        int position = header(buffer, DENSE);
+        // По 4 регистра в 3 байта
+        for (int i = 0; i < registerCount; i += 4) {
+            int packed = registers[i] << 18 | registers[i + 1] << 12 | registers[i + 2] << 6 | registers[i + 3];
+            buffer[position++] = (byte) (packed >>> 16);
+            buffer[position++] = (byte) (packed >>> 8);
+            buffer[position++] = (byte) packed;
+        }
+        return buffer;
+    }
+
+    /**
+     * Восстанавливает скетч из байтов {@link #toBytes()}.
+     *
+     * @param data байты скетча
+     * @return скетч
+     */
+    public static HyperLogLog fromBytes(byte[] data) {
+        if (data.length < HEADER_SIZE || data[0] != VERSION) {
+            throw new IllegalArgumentException("Неизвестный формат скетча HyperLogLog");
+        }
+        HyperLogLog sketch = new HyperLogLog(data[1]);
+        if (data[2] != SPARSE && data[2] != DENSE
+                || data[2] == DENSE && data.length != HEADER_SIZE + sketch.registerCount * REGISTER_BITS / Byte.SIZE) {
+            throw new IllegalArgumentException("Скетч HyperLogLog поврежден: неверное представление или длина");
+        }
+        try {
+            if (data[2] == SPARSE) {
+                int[] position = {HEADER_SIZE};
+                int size = readVarint(data, position);
+                if (size < 0 || size > sketch.registerCount / 4) {
+                    throw new IllegalArgumentException("Скетч HyperLogLog поврежден: " + size + " регистров в разреженном виде");
+                }
+                sketch.sparse = new int[Math.max(4, size)];
+                int value = 0;
+                for (int i = 0; i < size; i++) {
+                    int delta = readVarint(data, position);
+                    // Регистры строго по возрастанию индекса, индекс и значение в допустимых пределах
+                    if (delta <= 0 || (value += delta) >>> REGISTER_BITS >= sketch.registerCount
+                            || (value & 0x3f) == 0 || (value & 0x3f) > Long.SIZE - sketch.precision + 1
+                            || i > 0 && value >>> REGISTER_BITS == sketch.sparse[i - 1] >>> REGISTER_BITS) {
+                        throw new IllegalArgumentException("Скетч HyperLogLog поврежден: некорректный регистр");
+                    }
+                    sketch.sparse[i] = value;
+                }
+                sketch.sparseSize = size;
+            } else {
+                byte[] registers = new byte[sketch.registerCount];
+                int position = HEADER_SIZE;
+                for (int i = 0; i < sketch.registerCount; i += 4) {
+                    int packed = (data[position] & 0xff) << 16 | (data[position + 1] & 0xff) << 8 | (data[position + 2] & 0xff);
+                    position += 3;
+                    registers[i] = (byte) (packed >>> 18);
+                    registers[i + 1] = (byte) (packed >>> 12 & 0x3f);
+                    registers[i + 2] = (byte) (packed >>> 6 & 0x3f);
+                    registers[i + 3] = (byte) (packed & 0x3f);
+                }
+                sketch.registers = registers;
+                sketch.sparse = null;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Скетч HyperLogLog поврежден", e);
+        }
+        return sketch;
+    }
+
+    // Запись максимума в регистр; при переполнении разреженного представления — переход к плотному
+    private boolean update(int index, int rank) {
+        if (registers != null) {
+            if (registers[index] >= rank) {
+                return false;
+            }
+            registers[index] = (byte) rank;
+            return true;
+        }
+        int position = findSparse(index);
+        if (position >= 0) {
+            if ((sparse[position] & 0x3f) >= rank) {
+                return false;
+            }
+            sparse[position] = index << REGISTER_BITS | rank;
+            return true;
+        }
+        // Разреженное представление выгодно, пока занимает меньше плотного (4 байта в памяти против 1 на регистр)
+        if (sparseSize + 1 > registerCount / 4) {
+            toDense();
+            registers[index] = (byte) rank;
+            return true;
+        }
+        int insertAt = -position - 1;
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, registerCount / 4));
+        }
+        System.arraycopy(sparse, insertAt, sparse, insertAt + 1, sparseSize - insertAt);
+        sparse[insertAt] = index << REGISTER_BITS | rank;
+        sparseSize++;
+        return true;
+    }
+
+    // Двоичный поиск регистра в разреженном представлении (как Arrays.binarySearch по индексу)
+    private int findSparse(int index) {
+        int low = 0;
+        int high = sparseSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleIndex = sparse[middle] >>> REGISTER_BITS;
+            if (middleIndex < index) {
+                low = middle + 1;
+            } else if (middleIndex > index) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void toDense() {
+        registers = new byte[registerCount];
+        for (int i = 0; i < sparseSize; i++) {
+            registers[sparse[i] >>> REGISTER_BITS] = (byte) (sparse[i] & 0x3f);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private double alpha() {
+        return switch (registerCount) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / registerCount);
+        };
+    }
+
+    private int header(byte[] buffer, byte encoding) {
+        buffer[0] = VERSION;
+        buffer[1] = (byte) precision;
+        buffer[2] = encoding;
+        return HEADER_SIZE;
+    }
+
+    private static int writeVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static int readVarint(byte[] data, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = data[position[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Скетч HyperLogLog поврежден: некорректный varint");
+    }
+}
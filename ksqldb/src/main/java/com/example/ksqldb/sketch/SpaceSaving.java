@@ -0,0 +1,209 @@
+package com.example.ksqldb.sketch;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Самые частые значения потока (heavy hitters) алгоритмом Space-Saving с ограниченным числом счетчиков.
+ *
+ * Отслеживается не больше {@code capacity} значений. Новое значение при заполненной структуре занимает
+ * счетчик самого редкого: наследует его количество и запоминает его как возможную ошибку. Поэтому
+ * истинная частота значения лежит в пределах [count - error, count], а любое значение с частотой больше
+ * N / capacity (N — сумма всех приращений) гарантированно отслеживается.
+ *
+ * Экземпляр изменяемый и не потокобезопасен.
+ */
+public final class SpaceSaving {
+
+    /**
+     * Счетчик значения.
+     *
+     * @param item  значение
+     * @param count оценка частоты сверху
+     * @param error на сколько оценка может превышать истинную частоту
+     */
+    public record Counter(String item, long count, long error) {
+    }
+
+    // Порядок: по убыванию количества, при равенстве — по значению
+    public static final Comparator<Counter> BY_COUNT_DESCENDING = Comparator
+        .comparingLong(Counter::count).reversed()
+        .thenComparing(Counter::item);
+
+    private final int capacity;
+
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    // Счетчики по возрастанию количества: первый — кандидат на вытеснение
+    private final TreeSet<Counter> ordered = new TreeSet<>(BY_COUNT_DESCENDING.reversed());
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Количество счетчиков должно быть положительным: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * Счетчик значения.
+     *
+     * @param item значение
+     * @return счетчик или null, если значение не отслеживается
+     */
+    public Counter get(String item) {
+        return counters.get(item);
+    }
+
+    /**
+     * Учитывает появление значения.
+     *
+     * @param item      значение
+     * @param increment приращение частоты (положительное)
+     * @return вытесненный счетчик или null
+     */
+    public Counter offer(String item, long increment) {
+        Counter current = counters.get(item);
+        if (current != null) {
+            replace(current, new Counter(item, current.count() + increment, current.error()));
+            return null;
+        }
+        if (counters.size() < capacity) {
+            put(new Counter(item, increment, 0));
+            return null;
+        }
+        Counter evicted = ordered.pollFirst();
+        counters.remove(evicted.item());
+        put(new Counter(item, evicted.count() + increment, evicted.count()));
+        return evicted;
+    }
+
+    /**
+     * Восстанавливает сохраненный счетчик (например, из хранилища после перезапуска).
+     * Если счетчиков становится больше {@code capacity}, вытесняются самые редкие.
+     *
+     * @param counter счетчик
+     * @return вытесненные счетчики
+     */
+    public List<Counter> restore(Counter counter) {
+        Counter current = counters.get(counter.item());
+        if (current != null) {
+            replace(current, counter);
+        } else {
+            put(counter);
+        }
+        List<Counter> evicted = new ArrayList<>();
+        while (counters.size() > capacity) {
+            Counter rarest = ordered.pollFirst();
+            counters.remove(rarest.item());
+            evicted.add(rarest);
+        }
+        return evicted;
+    }
+
+    /**
+     * Добавляет счетчики другой структуры (например, частичного top-K другой партиции). У значения, которое
+     * есть в обеих, складываются количество и ошибка; если счетчиков становится больше {@code capacity},
+     * вытесняются самые редкие. Для структур по непересекающимся значениям (ключ партиции — само значение)
+     * границы [count - error, count] сохраняются.
+     *
+     * @param other структура
+     * @return вытесненные счетчики
+     */
+    public List<Counter> merge(SpaceSaving other) {
+        List<Counter> evicted = new ArrayList<>();
+        for (Counter counter : other.counters.values()) {
+            Counter current = counters.get(counter.item());
+            evicted.addAll(restore(current == null ? counter
+                : new Counter(counter.item(), current.count() + counter.count(), current.error() + counter.error())));
+        }
+        return evicted;
+    }
+
+    /**
+     * Самые частые значения.
+     *
+     * @param limit сколько значений вернуть
+     * @return счетчики по убыванию количества
+     */
+    public List<Counter> top(int limit) {
+        List<Counter> top = new ArrayList<>(Math.min(limit, counters.size()));
+        Iterator<Counter> descending = ordered.descendingIterator();
+        while (top.size() < limit && descending.hasNext()) {
+            top.add(descending.next());
+        }
+        return top;
+    }
+
+    /**
+     * Сериализация: количество счетчиков (capacity), число отслеживаемых, затем для каждого — количество,
+     * ошибка, длина и значение в UTF-8.
+     *
+     * @return байты структуры
+     */
+    public byte[] toBytes() {
+        List<byte[]> items = new ArrayList<>(counters.size());
+        int size = 2 * Integer.BYTES;
+        for (Counter counter : counters.values()) {
+            byte[] item = counter.item().getBytes(StandardCharsets.UTF_8);
+            items.add(item);
+            size += 2 * Long.BYTES + Integer.BYTES + item.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).putInt(capacity).putInt(counters.size());
+        int i = 0;
+        for (Counter counter : counters.values()) {
+            byte[] item = items.get(i++);
+            buffer.putLong(counter.count()).putLong(counter.error()).putInt(item.length).put(item);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Восстанавливает структуру из байтов {@link #toBytes()}.
+     *
+     * @param data байты структуры
+     * @return структура
+     */
+    public static SpaceSaving fromBytes(byte[] data) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            SpaceSaving summary = new SpaceSaving(buffer.getInt());
+            int size = buffer.getInt();
+            for (int i = 0; i < size; i++) {
+                long count = buffer.getLong();
+                long error = buffer.getLong();
+                byte[] item = new byte[buffer.getInt()];
+                buffer.get(item);
+                summary.restore(new Counter(new String(item, StandardCharsets.UTF_8), count, error));
+            }
+            return summary;
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Счетчики Space-Saving повреждены", e);
+        }
+    }
+
+    private void put(Counter counter) {
+        counters.put(counter.item(), counter);
+        ordered.add(counter);
+    }
+
+    private void replace(Counter current, Counter updated) {
+        ordered.remove(current);
+        put(updated);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.ksqldb.stream;
+
+/**
+ * Способ подсчета уникальных получателей (COUNT(DISTINCT recipient_id)) в {@link UserStatisticsTopology}.
+ */
+public enum DistinctCountMode {
+
+    /**
+     * Точно: хранилище всех встреченных значений, растет с количеством получателей.
+     */
+    EXACT,
+
+    /**
+     * Приблизительно: скетч HyperLogLog фиксированного размера на пользователя и на партицию.
+     */
+    HLL
+}
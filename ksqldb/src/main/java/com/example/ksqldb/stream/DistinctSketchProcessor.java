@@ -0,0 +1,109 @@
+package com.example.ksqldb.stream;
+
+import com.example.ksqldb.sketch.HyperLogLog;
+import org.apache.kafka.streams.processor.api.FixedKeyProcessor;
+import org.apache.kafka.streams.processor.api.FixedKeyProcessorContext;
+import org.apache.kafka.streams.processor.api.FixedKeyRecord;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Приблизительный COUNT(DISTINCT ...) по ключу записи: вместо множества встреченных значений
+ * для каждого ключа хранится скетч {@link HyperLogLog} фиксированного размера.
+ *
+ * Передает дальше изменение оценки количества уникальных значений ключа (обычно 0 или 1),
+ * поэтому сумма переданных значений равна текущей оценке — так же, как сумма результатов
+ * {@link FirstSeenProcessor} равна точному количеству.
+ *
+ * Скетчи активных ключей держатся в памяти вместе с последней оценкой (LRU, не больше {@link #HOT_SKETCHES}),
+ * поэтому повторное значение активного ключа не десериализует скетч и не пересчитывает оценку: значение
+ * сначала добавляется, и только если регистр изменился, считается новая оценка и скетч пишется в хранилище.
+ * Хранилище меняет только этот процессор, поэтому копия в памяти с ним совпадает; при инициализации задачи
+ * (в том числе после отката транзакции) копии сбрасываются.
+ *
+ * @param <V> тип значения входной записи
+ */
+class DistinctSketchProcessor<V> implements FixedKeyProcessor<String, V, Integer> {
+
+    // Скетчей в памяти на задачу: плотный скетч занимает 2^p байт (16 КБ при p = 14)
+    static final int HOT_SKETCHES = 1024;
+
+    // Оценка скетча, прочитанного из хранилища, еще не считалась
+    private static final long UNKNOWN = -1;
+
+    private final String storeName;
+
+    private final int precision;
+
+    // Значение, уникальные экземпляры которого считаются; null — запись не учитывается
+    private final Function<V, String> distinctValue;
+
+    private FixedKeyProcessorContext<String, Integer> context;
+
+    private KeyValueStore<String, byte[]> sketches;
+
+    private final Map<String, HotSketch> hot = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HotSketch> eldest) {
+            return size() > HOT_SKETCHES;
+        }
+    };
+
+    DistinctSketchProcessor(String storeName, int precision, Function<V, String> distinctValue) {
+        this.storeName = storeName;
+        this.precision = precision;
+        this.distinctValue = distinctValue;
+    }
+
+    @Override
+    public void init(FixedKeyProcessorContext<String, Integer> context) {
+        this.context = context;
+        this.sketches = context.getStateStore(storeName);
+        hot.clear();
+    }
+
+    @Override
+    public void process(FixedKeyRecord<String, V> record) {
+        String value = distinctValue.apply(record.value());
+        int delta = 0;
+        if (value != null) {
+            HotSketch entry = hot.get(record.key());
+            if (entry == null) {
+                byte[] stored = sketches.get(record.key());
+                entry = stored == null
+                    ? new HotSketch(HyperLogLog.withPrecision(precision), 0)
+                    : new HotSketch(HyperLogLog.fromBytes(stored), UNKNOWN);
+                hot.put(record.key(), entry);
+            }
+            // Большинство повторных значений не меняет регистры: тогда нет ни оценки, ни записи в хранилище
+            if (entry.sketch.add(value)) {
+                // В хранилище еще скетч до изменения: по нему считается прежняя оценка, если она неизвестна
+                long before = entry.estimate != UNKNOWN ? entry.estimate : HyperLogLog.fromBytes(sketches.get(record.key())).estimate();
+                entry.estimate = entry.sketch.estimate();
+                sketches.put(record.key(), entry.sketch.toBytes());
+                delta = (int) (entry.estimate - before);
+            }
+        }
+        context.forward(record.withValue(delta));
+    }
+
+    @Override
+    public void close() {
+        hot.clear();
+    }
+
+    private static final class HotSketch {
+
+        private final HyperLogLog sketch;
+
+        private long estimate;
+
+        private HotSketch(HyperLogLog sketch, long estimate) {
+            this.sketch = sketch;
+            this.estimate = estimate;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.ksqldb.stream;
+
+import org.apache.kafka.streams.processor.api.FixedKeyProcessor;
+import org.apache.kafka.streams.processor.api.FixedKeyProcessorContext;
+import org.apache.kafka.streams.processor.api.FixedKeyRecord;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.function.BiFunction;
+
+/**
+ * Основа COUNT(DISTINCT ...): передает дальше 1, если значение встречается впервые, иначе 0.
+ * Встреченные значения хранятся в локальном хранилище (RocksDB с changelog-топиком), поэтому
+ * после перезапуска или переноса задачи счетчики не завышаются.
+ *
+ * @param <V> тип значения входной записи
+ */
+class FirstSeenProcessor<V> implements FixedKeyProcessor<String, V, Integer> {
+
+    // Значение в хранилище не используется: важно только наличие ключа (пустой массив — не tombstone)
+    private static final byte[] PRESENT = new byte[0];
+
+    private final String storeName;
+
+    // Ключ уникальности по ключу и значению записи; null — запись не учитывается в уникальных
+    private final BiFunction<String, V, String> distinctKey;
+
+    private FixedKeyProcessorContext<String, Integer> context;
+
+    private KeyValueStore<String, byte[]> seen;
+
+    FirstSeenProcessor(String storeName, BiFunction<String, V, String> distinctKey) {
+        this.storeName = storeName;
+        this.distinctKey = distinctKey;
+    }
+
+    @Override
+    public void init(FixedKeyProcessorContext<String, Integer> context) {
+        this.context = context;
+        this.seen = context.getStateStore(storeName);
+    }
+
+    @Override
+    public void process(FixedKeyRecord<String, V> record) {
+        String key = distinctKey.apply(record.key(), record.value());
+        int firstSeen = 0;
+        if (key != null && seen.putIfAbsent(key, PRESENT) == null) {
+            firstSeen = 1;
+        }
+        context.forward(record.withValue(firstSeen));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.ksqldb.stream;
+
+import com.example.ksqldb.model.UserCount;
+import com.example.ksqldb.sketch.SpaceSaving;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Частичный top-K пользователей партиции: счетчики {@link SpaceSaving} по ключу записи (user_id).
+ *
+ * Хранилище задачи содержит ровно отслеживаемые счетчики (не больше {@code capacity}): изменение счетчика пишется
+ * в него сразу (кэш объединяет частые обновления до сброса), вытесненный счетчик удаляется. Поэтому после перезапуска
+ * структура восстанавливается из changelog-топика в том же состоянии, а память не растет с числом пользователей.
+ * Порядок счетчиков держится в памяти и строится заново при инициализации задачи.
+ *
+ * @param <V> тип значения входной записи
+ */
+class HeavyHittersProcessor<V> implements Processor<String, V, Void, Void> {
+
+    private final String storeName;
+
+    private final int capacity;
+
+    private KeyValueStore<String, UserCount> counters;
+
+    private SpaceSaving summary;
+
+    HeavyHittersProcessor(String storeName, int capacity) {
+        this.storeName = storeName;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void init(ProcessorContext<Void, Void> context) {
+        this.counters = context.getStateStore(storeName);
+        this.summary = new SpaceSaving(capacity);
+        // При уменьшенном capacity лишние самые редкие счетчики удаляются после обхода хранилища
+        List<SpaceSaving.Counter> evicted = new ArrayList<>();
+        try (KeyValueIterator<String, UserCount> stored = counters.all()) {
+            while (stored.hasNext()) {
+                UserCount user = stored.next().value;
+                evicted.addAll(summary.restore(new SpaceSaving.Counter(user.getUserId(), user.getMessageCount(), user.getMaxError())));
+            }
+        }
+        evicted.forEach(counter -> counters.delete(counter.item()));
+    }
+
+    @Override
+    public void process(Record<String, V> record) {
+        SpaceSaving.Counter evicted = summary.offer(record.key(), 1);
+        if (evicted != null) {
+            counters.delete(evicted.item());
+        }
+        SpaceSaving.Counter counter = summary.get(record.key());
+        counters.put(counter.item(), new UserCount(counter.item(), counter.count(), counter.error()));
+    }
+}
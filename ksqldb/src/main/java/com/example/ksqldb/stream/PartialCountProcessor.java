@@ -0,0 +1,77 @@
+package com.example.ksqldb.stream;
+
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.time.Duration;
+import java.util.function.ToLongFunction;
+
+/**
+ * Первая фаза глобального счетчика: частичная сумма по партиции входного топика (шарду).
+ *
+ * Сумма задачи держится в памяти и пишется в хранилище (ключ — номер партиции) при каждом изменении: кэш хранилища
+ * объединяет эти записи до сброса, а после перезапуска сумма восстанавливается из changelog-топика.
+ * Раз в {@code interval}, если сумма изменилась, она передается дальше с ключом-номером шарда. Вторая фаза
+ * хранит последнюю сумму каждого шарда и складывает их, поэтому на один ключ приходит не каждое сообщение,
+ * а не больше одной записи на партицию за интервал.
+ *
+ * @param <V> тип значения входной записи
+ */
+class PartialCountProcessor<V> implements Processor<String, V, String, Long> {
+
+    private final String storeName;
+
+    private final Duration interval;
+
+    // Вклад записи в сумму (1 — каждое сообщение, 0 или 1 — впервые встреченное значение)
+    private final ToLongFunction<V> increment;
+
+    private ProcessorContext<String, Long> context;
+
+    private KeyValueStore<String, Long> partials;
+
+    private String shard;
+
+    private long partial;
+
+    // Сумма изменилась после последней переданной
+    private boolean changed;
+
+    PartialCountProcessor(String storeName, Duration interval, ToLongFunction<V> increment) {
+        this.storeName = storeName;
+        this.interval = interval;
+        this.increment = increment;
+    }
+
+    @Override
+    public void init(ProcessorContext<String, Long> context) {
+        this.context = context;
+        this.partials = context.getStateStore(storeName);
+        this.shard = String.valueOf(context.taskId().partition());
+        Long stored = partials.get(shard);
+        this.partial = stored == null ? 0 : stored;
+        // Восстановленная сумма тоже передается: вторая фаза могла ее еще не получить
+        this.changed = stored != null;
+        context.schedule(interval, PunctuationType.WALL_CLOCK_TIME, this::emit);
+    }
+
+    @Override
+    public void process(Record<String, V> record) {
+        long delta = increment.applyAsLong(record.value());
+        if (delta != 0) {
+            partial += delta;
+            partials.put(shard, partial);
+            changed = true;
+        }
+    }
+
+    private void emit(long timestamp) {
+        if (changed) {
+            context.forward(new Record<>(shard, partial, timestamp));
+            changed = false;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.ksqldb.stream;
+
+import com.example.ksqldb.model.Message;
+import com.example.ksqldb.model.UserCount;
+import com.example.ksqldb.sketch.HyperLogLog;
+import com.example.ksqldb.sketch.SpaceSaving;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.kstream.Window;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Первая фаза оконной статистики: агрегаты окон ({@link WindowAccumulator}) по одной партиции входного топика (шарду).
+ *
+ * Агрегаты открытых окон задачи держатся в памяти, а в оконные хранилища (время — начало окна) пишутся по частям,
+ * как в глобальных агрегатах без окон, чтобы сообщение не сериализовало весь агрегат:
+ * <ul>
+ *     <li>количество сообщений — в {@code countsStoreName} по номеру партиции, 8 байт на каждое сообщение;</li>
+ *     <li>скетч получателей — в {@code sketchesStoreName} по номеру партиции, только если изменились его регистры
+ *     (как {@link PartitionSketchProcessor});</li>
+ *     <li>счетчики Space-Saving — в {@code usersStoreName} по user_id: изменившийся счетчик пишется, вытесненный
+ *     удаляется (как {@link HeavyHittersProcessor}).</li>
+ * </ul>
+ * Кэш хранилищ объединяет частые записи до сброса, а после перезапуска агрегаты собираются из changelog-топиков.
+ * Сообщение, опоздавшее больше чем на grace (по времени потока партиции), не учитывается — как в оконной агрегации DSL.
+ *
+ * Раз в {@code interval} агрегаты изменившихся окон передаются дальше с ключом — окном и номером шарда: агрегат
+ * целиком сериализуется только здесь. {@link WindowMergeProcessor} хранит последний агрегат каждого шарда
+ * и объединяет их, поэтому на один ключ приходит не каждое сообщение, а не больше одной записи на окно и партицию
+ * за интервал.
+ */
+class PartialWindowProcessor implements Processor<String, Message, Windowed<String>, WindowAccumulator> {
+
+    private final String countsStoreName;
+
+    private final String sketchesStoreName;
+
+    private final String usersStoreName;
+
+    private final TimeWindows windows;
+
+    private final Duration interval;
+
+    private final int sketchPrecision;
+
+    private final int usersCapacity;
+
+    private ProcessorContext<Windowed<String>, WindowAccumulator> context;
+
+    private WindowStore<String, Long> counts;
+
+    private WindowStore<String, byte[]> sketches;
+
+    private WindowStore<String, UserCount> users;
+
+    private String shard;
+
+    // Агрегаты окон, еще не закрытых по времени потока: начало окна -> агрегат
+    private final Map<Long, OpenWindow> open = new HashMap<>();
+
+    // Начала окон, изменившихся после последней передачи
+    private final TreeSet<Long> changed = new TreeSet<>();
+
+    PartialWindowProcessor(String countsStoreName, String sketchesStoreName, String usersStoreName, TimeWindows windows,
+                           Duration interval, int sketchPrecision, int usersCapacity) {
+        this.countsStoreName = countsStoreName;
+        this.sketchesStoreName = sketchesStoreName;
+        this.usersStoreName = usersStoreName;
+        this.windows = windows;
+        this.interval = interval;
+        this.sketchPrecision = sketchPrecision;
+        this.usersCapacity = usersCapacity;
+    }
+
+    @Override
+    public void init(ProcessorContext<Windowed<String>, WindowAccumulator> context) {
+        this.context = context;
+        this.counts = context.getStateStore(countsStoreName);
+        this.sketches = context.getStateStore(sketchesStoreName);
+        this.users = context.getStateStore(usersStoreName);
+        this.shard = String.valueOf(context.taskId().partition());
+        open.clear();
+        changed.clear();
+        restore();
+        context.schedule(interval, PunctuationType.WALL_CLOCK_TIME, this::emit);
+    }
+
+    @Override
+    public void process(Record<String, Message> record) {
+        long closeTime = context.currentStreamTimeMs() - windows.gracePeriodMs();
+        String userId = record.key();
+        String recipientId = record.value().getRecipientId();
+        for (Window window : windows.windowsFor(record.timestamp()).values()) {
+            if (window.end() <= closeTime) {
+                continue;
+            }
+            long start = window.start();
+            OpenWindow aggregate = openWindow(start);
+            aggregate.messages++;
+            counts.put(shard, aggregate.messages, start);
+            // Большинство сообщений не меняет регистры скетча: тогда он не сериализуется
+            if (aggregate.recipients.add(recipientId)) {
+                sketches.put(shard, aggregate.recipients.toBytes(), start);
+            }
+            if (userId != null) {
+                SpaceSaving.Counter evicted = aggregate.users.offer(userId, 1);
+                if (evicted != null) {
+                    users.put(evicted.item(), null, start);
+                }
+                SpaceSaving.Counter counter = aggregate.users.get(userId);
+                users.put(userId, new UserCount(counter.item(), counter.count(), counter.error()), start);
+            }
+            changed.add(start);
+        }
+    }
+
+    private void emit(long timestamp) {
+        long streamTime = context.currentStreamTimeMs();
+        for (long start : changed) {
+            context.forward(new Record<>(new Windowed<>(shard, WindowedStatisticsTopology.window(windows, start)),
+                open.get(start).toAccumulator(), Math.max(start, streamTime)));
+        }
+        changed.clear();
+        // Закрытое окно больше не меняется: его части остаются только в хранилищах до истечения retention
+        long closeTime = streamTime - windows.gracePeriodMs();
+        for (Iterator<Long> starts = open.keySet().iterator(); starts.hasNext(); ) {
+            if (starts.next() + windows.size() <= closeTime) {
+                starts.remove();
+            }
+        }
+    }
+
+    // Собирает агрегаты окон из хранилищ. Восстановленные агрегаты тоже передаются: вторая фаза могла их еще
+    // не получить (закрытые она отбросит)
+    private void restore() {
+        try (WindowStoreIterator<Long> stored = counts.fetch(shard, 0, Long.MAX_VALUE)) {
+            while (stored.hasNext()) {
+                KeyValue<Long, Long> window = stored.next();
+                openWindow(window.key).messages = window.value;
+                changed.add(window.key);
+            }
+        }
+        try (WindowStoreIterator<byte[]> stored = sketches.fetch(shard, 0, Long.MAX_VALUE)) {
+            while (stored.hasNext()) {
+                KeyValue<Long, byte[]> window = stored.next();
+                openWindow(window.key).recipients = HyperLogLog.fromBytes(window.value);
+                changed.add(window.key);
+            }
+        }
+        // При уменьшенном capacity лишние самые редкие счетчики окна удаляются после обхода хранилища
+        List<KeyValue<Long, String>> evicted = new ArrayList<>();
+        try (KeyValueIterator<Windowed<String>, UserCount> stored = users.fetchAll(0, Long.MAX_VALUE)) {
+            while (stored.hasNext()) {
+                KeyValue<Windowed<String>, UserCount> counter = stored.next();
+                long start = counter.key.window().start();
+                UserCount user = counter.value;
+                openWindow(start).users.restore(new SpaceSaving.Counter(user.getUserId(), user.getMessageCount(), user.getMaxError()))
+                    .forEach(dropped -> evicted.add(KeyValue.pair(start, dropped.item())));
+                changed.add(start);
+            }
+        }
+        evicted.forEach(dropped -> users.put(dropped.value, null, dropped.key));
+    }
+
+    private OpenWindow openWindow(long start) {
+        return open.computeIfAbsent(start, key -> new OpenWindow(HyperLogLog.withPrecision(sketchPrecision), new SpaceSaving(usersCapacity)));
+    }
+
+    // Части агрегата открытого окна, которые меняются по отдельности
+    private static final class OpenWindow {
+
+        private long messages;
+
+        private HyperLogLog recipients;
+
+        private final SpaceSaving users;
+
+        private OpenWindow(HyperLogLog recipients, SpaceSaving users) {
+            this.recipients = recipients;
+            this.users = users;
+        }
+
+        // Агрегат над теми же скетчем и счетчиками, без копирования: передача сразу его сериализует
+        private WindowAccumulator toAccumulator() {
+            return new WindowAccumulator(messages, recipients, users);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.ksqldb.stream;
+
+import com.example.ksqldb.sketch.HyperLogLog;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Частичный скетч {@link HyperLogLog} уникальных значений по всей партиции входного топика.
+ *
+ * Скетч задачи держится в памяти и пишется в хранилище (ключ — номер партиции) только при изменении регистров,
+ * поэтому после перезапуска он восстанавливается из changelog-топика. Раз в {@code interval}, если скетч изменился,
+ * его снимок передается дальше с ключом {@code outputKey}: объединение снимков всех партиций дает глобальный скетч
+ * без перераспределения каждого сообщения по значению. Объединение идемпотентно, поэтому повторная доставка
+ * или более новый снимок той же партиции не завышают оценку.
+ *
+ * @param <V> тип значения входной записи
+ */
+class PartitionSketchProcessor<V> implements Processor<String, V, String, byte[]> {
+
+    private final String storeName;
+
+    private final int precision;
+
+    private final Duration interval;
+
+    private final String outputKey;
+
+    // Значение, уникальные экземпляры которого считаются; null — запись не учитывается
+    private final Function<V, String> distinctValue;
+
+    private ProcessorContext<String, byte[]> context;
+
+    private KeyValueStore<String, byte[]> sketches;
+
+    private String partition;
+
+    private HyperLogLog sketch;
+
+    // Скетч изменился после последнего переданного снимка
+    private boolean changed;
+
+    PartitionSketchProcessor(String storeName, int precision, Duration interval, String outputKey, Function<V, String> distinctValue) {
+        this.storeName = storeName;
+        this.precision = precision;
+        this.interval = interval;
+        this.outputKey = outputKey;
+        this.distinctValue = distinctValue;
+    }
+
+    @Override
+    public void init(ProcessorContext<String, byte[]> context) {
+        this.context = context;
+        this.sketches = context.getStateStore(storeName);
+        this.partition = String.valueOf(context.taskId().partition());
+        byte[] stored = sketches.get(partition);
+        this.sketch = stored == null ? HyperLogLog.withPrecision(precision) : HyperLogLog.fromBytes(stored);
+        // Снимок восстановленного скетча тоже передается: глобальный агрегат мог его еще не получить
+        this.changed = stored != null;
+        context.schedule(interval, PunctuationType.WALL_CLOCK_TIME, this::emit);
+    }
+
+    @Override
+    public void process(Record<String, V> record) {
+        String value = distinctValue.apply(record.value());
+        if (value != null && sketch.add(value)) {
+            sketches.put(partition, sketch.toBytes());
+            changed = true;
+        }
+    }
+
+    private void emit(long timestamp) {
+        if (changed) {
+            context.forward(new Record<>(outputKey, sketch.toBytes(), timestamp));
+            changed = false;
+        }
+    }
+}
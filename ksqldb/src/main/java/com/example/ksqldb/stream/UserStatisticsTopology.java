@@ -0,0 +1,269 @@
+package com.example.ksqldb.stream;
+
+import com.example.ksqldb.model.Message;
+import com.example.ksqldb.model.UserStatistics;
+import com.example.ksqldb.serde.MessageJsonSerde;
+import com.example.ksqldb.serde.UserCountSerde;
+import com.example.ksqldb.serde.UserStatisticsJsonSerde;
+import com.example.ksqldb.serde.UserStatisticsSerde;
+import com.example.ksqldb.sketch.HyperLogLog;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.Repartitioned;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+
+import java.time.Duration;
+
+/**
+ * Агрегаты из {@code ksql/ksqldb-queries.sql}, вычисляемые Kafka Streams внутри приложения, без ksqlDB Server:
+ * <ul>
+ *     <li>{@code user_statistics} — COUNT(*) и COUNT(DISTINCT recipient_id) по user_id, пишется в топик user_statistics;</li>
+ *     <li>{@code total_messages} — COUNT(*) по всем сообщениям;</li>
+ *     <li>{@code unique_recipients} — COUNT(DISTINCT recipient_id) по всем сообщениям;</li>
+ *     <li>{@code top_users} — счетчики Space-Saving самых активных пользователей каждой партиции.</li>
+ * </ul>
+ * Все таблицы материализованы в локальных хранилищах и доступны интерактивными запросами.
+ *
+ * Сообщения уже имеют ключ user_id (его задает продюсер), поэтому статистика пользователей считается
+ * без перераспределения. Уникальность получателей пользователя проверяется по хранилищу пар
+ * (пользователь, получатель), а не множеством в значении агрегата, которое пришлось бы сериализовать целиком
+ * на каждое сообщение.
+ *
+ * Глобальные агрегаты (GROUP BY NULL в SQL) считаются в две фазы, чтобы не сводить каждое сообщение к одному ключу
+ * одной партиции. Первая фаза — частичная сумма каждой партиции (шарда) в {@link PartialCountProcessor}:
+ * total_messages — по всем сообщениям партиции топика сообщений, unique_recipients — по впервые встреченным
+ * получателям партиции после перераспределения по recipient_id (получатель целиком принадлежит одной партиции,
+ * поэтому частичные количества не пересекаются). Раз в интервал шард передает свою сумму, если она изменилась.
+ * Вторая фаза хранит последнюю сумму каждого шарда и складывает их по ключу {@link #ALL}, вычитая предыдущую
+ * сумму того же шарда: на итоговый ключ приходит не больше одной записи на партицию за интервал, поэтому
+ * пропускная способность растет с количеством партиций.
+ *
+ * top_users не сводится к одному ключу: каждая задача держит не больше {@code topUsersCapacity} счетчиков
+ * своей партиции ({@link HeavyHittersProcessor}). Пользователь целиком принадлежит одной партиции, поэтому
+ * глобальный top-K — лучшие из частичных списков всех партиций; их объединяет запрос к REST.
+ *
+ * В режиме {@link DistinctCountMode#HLL} множества встреченных получателей заменены скетчами HyperLogLog:
+ * у пользователя — скетч в хранилище по user_id (несколько КБ при любом количестве получателей),
+ * для unique_recipients — частичный скетч на партицию, снимки которого раз в интервал объединяются по ключу {@link #ALL}
+ * (те же две фазы, но без перераспределения каждого сообщения по recipient_id: объединение скетчей не требует
+ * непересекающихся шардов).
+ *
+ * Не зависит от Spring, поэтому топологию можно запускать и без приложения.
+ */
+public class UserStatisticsTopology {
+
+    // Хранилище встреченных пар пользователь -> получатель (для COUNT(DISTINCT recipient_id) по пользователю)
+    public static final String USER_RECIPIENTS_STORE = "user-recipients-store";
+
+    // Таблица статистики пользователей: user_id -> UserStatistics
+    public static final String USER_STATISTICS_STORE = "user-statistics-store";
+
+    // Хранилище встреченных получателей (для глобального COUNT(DISTINCT recipient_id))
+    public static final String RECIPIENTS_STORE = "recipients-store";
+
+    // Режим HLL: скетчи получателей пользователей (user_id -> HyperLogLog)
+    public static final String USER_RECIPIENTS_SKETCH_STORE = "user-recipients-sketch-store";
+
+    // Режим HLL: частичные скетчи получателей партиций (номер партиции -> HyperLogLog)
+    public static final String PARTITION_RECIPIENTS_SKETCH_STORE = "partition-recipients-sketch-store";
+
+    // Режим HLL: объединенный скетч всех получателей (ALL -> HyperLogLog)
+    public static final String RECIPIENTS_SKETCH_STORE = "recipients-sketch-store";
+
+    // Частичные количества сообщений шардов: номер партиции -> количество
+    public static final String TOTAL_MESSAGES_PARTIALS_STORE = "total-messages-partials-store";
+
+    // Общее количество сообщений: ALL -> количество
+    public static final String TOTAL_MESSAGES_STORE = "total-messages-store";
+
+    // Частичные количества уникальных получателей шардов: номер партиции -> количество
+    public static final String UNIQUE_RECIPIENTS_PARTIALS_STORE = "unique-recipients-partials-store";
+
+    // Количество уникальных получателей: ALL -> количество
+    public static final String UNIQUE_RECIPIENTS_STORE = "unique-recipients-store";
+
+    // Счетчики Space-Saving самых активных пользователей партиции: user_id -> UserCount
+    public static final String TOP_USERS_COUNTERS_STORE = "top-users-counters-store";
+
+    // Ключ глобальных агрегатов (аналог GROUP BY NULL)
+    public static final String ALL = "all";
+
+    // Разделитель пользователя и получателя в ключе пары (не встречается в UUID)
+    private static final char PAIR_SEPARATOR = '\u0000';
+
+    // Название выходного топика статистики пользователей
+    private final String userStatisticsTopic;
+
+    // Количество счетчиков Space-Saving на партицию (top_users)
+    private final int topUsersCapacity;
+
+    // Точный или приблизительный подсчет уникальных получателей
+    private final DistinctCountMode distinctMode;
+
+    // Точность скетчей HyperLogLog (режим HLL)
+    private final int sketchPrecision;
+
+    // Интервал передачи частичных агрегатов шардов (сумм и скетчей) в глобальные агрегаты
+    private final Duration partialInterval;
+
+    public UserStatisticsTopology(String userStatisticsTopic, int topUsersCapacity,
+                                  DistinctCountMode distinctMode, int sketchPrecision, Duration partialInterval) {
+        this.userStatisticsTopic = userStatisticsTopic;
+        this.topUsersCapacity = Math.max(1, topUsersCapacity);
+        this.distinctMode = distinctMode;
+        this.sketchPrecision = sketchPrecision;
+        this.partialInterval = partialInterval;
+    }
+
+    /**
+     * Поток сообщений для агрегатов (топик читается одним источником на всю топологию).
+     *
+     * @param builder       построитель топологии Kafka Streams
+     * @param messagesTopic топик сообщений
+     * @return сообщения с ключом user_id
+     */
+    public static KStream<String, Message> messages(StreamsBuilder builder, String messagesTopic) {
+        // Ключ — user_id; записи без ключа или значения не относятся ни к одному пользователю
+        return builder
+            .stream(messagesTopic, Consumed.with(Serdes.String(), new MessageJsonSerde()))
+            .filter((userId, message) -> userId != null && message != null);
+    }
+
+    /**
+     * Добавляет топологию агрегатов в builder.
+     *
+     * @param builder  построитель топологии Kafka Streams
+     * @param messages поток сообщений ({@link #messages})
+     * @return таблица статистики пользователей
+     */
+    public KTable<String, UserStatistics> build(StreamsBuilder builder, KStream<String, Message> messages) {
+        // user_statistics: 1 за каждое сообщение и прирост количества уникальных получателей пользователя
+        KTable<String, UserStatistics> userStatistics = newRecipients(builder, messages)
+            .groupByKey(Grouped.with(Serdes.String(), Serdes.Integer()))
+            .aggregate(
+                () -> new UserStatistics(null, 0, 0),
+                (userId, newRecipients, statistics) -> new UserStatistics(
+                    userId, statistics.getSentMessages() + 1, statistics.getUniqueRecipients() + newRecipients),
+                Materialized.<String, UserStatistics, KeyValueStore<Bytes, byte[]>>as(USER_STATISTICS_STORE)
+                    .withKeySerde(Serdes.String())
+                    .withValueSerde(new UserStatisticsSerde()));
+        userStatistics.toStream().to(userStatisticsTopic, Produced.with(Serdes.String(), new UserStatisticsJsonSerde()));
+
+        // total_messages: количество сообщений каждой партиции, затем сумма шардов
+        builder.addStateStore(partialsStore(TOTAL_MESSAGES_PARTIALS_STORE));
+        KStream<String, Long> messagePartials = messages.process(
+            () -> new PartialCountProcessor<Message>(TOTAL_MESSAGES_PARTIALS_STORE, partialInterval, message -> 1),
+            TOTAL_MESSAGES_PARTIALS_STORE);
+        sumShards(messagePartials, "total-messages", TOTAL_MESSAGES_STORE);
+
+        // top_users: частичный top-K каждой партиции с ограниченным числом счетчиков, без перераспределения
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(TOP_USERS_COUNTERS_STORE), Serdes.String(), new UserCountSerde())
+            .withCachingEnabled());
+        messages.process(() -> new HeavyHittersProcessor<Message>(TOP_USERS_COUNTERS_STORE, topUsersCapacity),
+            TOP_USERS_COUNTERS_STORE);
+
+        if (distinctMode == DistinctCountMode.HLL) {
+            uniqueRecipientsSketch(builder, messages);
+        } else {
+            uniqueRecipients(builder, messages);
+        }
+
+        return userStatistics;
+    }
+
+    // Прирост количества уникальных получателей пользователя на каждое сообщение: 0 или 1 в точном режиме,
+    // изменение оценки скетча в режиме HLL
+    private KStream<String, Integer> newRecipients(StreamsBuilder builder, KStream<String, Message> messages) {
+        if (distinctMode == DistinctCountMode.HLL) {
+            builder.addStateStore(persistentStore(USER_RECIPIENTS_SKETCH_STORE));
+            return messages.processValues(
+                () -> new DistinctSketchProcessor<Message>(USER_RECIPIENTS_SKETCH_STORE, sketchPrecision, Message::getRecipientId),
+                USER_RECIPIENTS_SKETCH_STORE);
+        }
+        builder.addStateStore(persistentStore(USER_RECIPIENTS_STORE));
+        return messages.processValues(() -> new FirstSeenProcessor<Message>(USER_RECIPIENTS_STORE,
+                (userId, message) -> message.getRecipientId() == null ? null : userId + PAIR_SEPARATOR + message.getRecipientId()),
+            USER_RECIPIENTS_STORE);
+    }
+
+    // unique_recipients: перераспределение по получателю (значение не нужно), затем количество впервые встреченных
+    // каждой партицией и сумма шардов
+    private void uniqueRecipients(StreamsBuilder builder, KStream<String, Message> messages) {
+        builder.addStateStore(persistentStore(RECIPIENTS_STORE));
+        builder.addStateStore(partialsStore(UNIQUE_RECIPIENTS_PARTIALS_STORE));
+        KStream<String, Long> recipientPartials = messages
+            .filter((userId, message) -> message.getRecipientId() != null)
+            .map((userId, message) -> KeyValue.pair(message.getRecipientId(), 1))
+            .repartition(Repartitioned.<String, Integer>as("recipients")
+                .withKeySerde(Serdes.String())
+                .withValueSerde(Serdes.Integer()))
+            .processValues(() -> new FirstSeenProcessor<Integer>(RECIPIENTS_STORE, (recipientId, one) -> recipientId),
+                RECIPIENTS_STORE)
+            .process(() -> new PartialCountProcessor<Integer>(UNIQUE_RECIPIENTS_PARTIALS_STORE, partialInterval,
+                    firstSeen -> firstSeen),
+                UNIQUE_RECIPIENTS_PARTIALS_STORE);
+        sumShards(recipientPartials, "unique-recipients", UNIQUE_RECIPIENTS_STORE);
+    }
+
+    // Вторая фаза глобального счетчика: таблица последних частичных сумм шардов, сумма которых по ключу ALL
+    // материализуется в storeName; новая сумма шарда прибавляется, предыдущая вычитается
+    private static void sumShards(KStream<String, Long> partials, String name, String storeName) {
+        partials
+            .toTable(Named.as(name + "-partials"),
+                Materialized.<String, Long, KeyValueStore<Bytes, byte[]>>with(Serdes.String(), Serdes.Long()))
+            .groupBy((shard, partial) -> KeyValue.pair(ALL, partial), Grouped.with(name + "-total", Serdes.String(), Serdes.Long()))
+            .reduce(Long::sum, (total, previous) -> total - previous,
+                Materialized.<String, Long, KeyValueStore<Bytes, byte[]>>as(storeName)
+                    .withKeySerde(Serdes.String())
+                    .withValueSerde(Serdes.Long()));
+    }
+
+    // unique_recipients в режиме HLL: снимки скетчей партиций объединяются по ключу ALL, оценка материализуется
+    // в том же хранилище, что и точный счетчик, поэтому интерактивные запросы не зависят от режима
+    private void uniqueRecipientsSketch(StreamsBuilder builder, KStream<String, Message> messages) {
+        builder.addStateStore(persistentStore(PARTITION_RECIPIENTS_SKETCH_STORE));
+        messages
+            .process(() -> new PartitionSketchProcessor<Message>(PARTITION_RECIPIENTS_SKETCH_STORE, sketchPrecision,
+                    partialInterval, ALL, Message::getRecipientId),
+                PARTITION_RECIPIENTS_SKETCH_STORE)
+            .groupByKey(Grouped.with("unique-recipients-sketch", Serdes.String(), Serdes.ByteArray()))
+            .reduce(UserStatisticsTopology::mergeSketches,
+                Materialized.<String, byte[], KeyValueStore<Bytes, byte[]>>as(RECIPIENTS_SKETCH_STORE)
+                    .withKeySerde(Serdes.String())
+                    .withValueSerde(Serdes.ByteArray()))
+            .mapValues(sketch -> HyperLogLog.fromBytes(sketch).estimate(),
+                Materialized.<String, Long, KeyValueStore<Bytes, byte[]>>as(UNIQUE_RECIPIENTS_STORE)
+                    .withKeySerde(Serdes.String())
+                    .withValueSerde(Serdes.Long()));
+    }
+
+    private static byte[] mergeSketches(byte[] aggregate, byte[] partial) {
+        HyperLogLog merged = HyperLogLog.fromBytes(aggregate);
+        return merged.merge(HyperLogLog.fromBytes(partial)) ? merged.toBytes() : aggregate;
+    }
+
+    // Хранилище по строковому ключу: RocksDB с changelog-топиком и кэшем записей перед ним
+    // (частые ключи проверяются в памяти, запись в RocksDB и changelog — при сбросе кэша)
+    private static StoreBuilder<KeyValueStore<String, byte[]>> persistentStore(String name) {
+        return Stores.keyValueStoreBuilder(Stores.persistentKeyValueStore(name), Serdes.String(), Serdes.ByteArray())
+            .withCachingEnabled();
+    }
+
+    // Хранилище частичных сумм шардов: одна запись на партицию, кэш объединяет ее обновления до сброса
+    private static StoreBuilder<KeyValueStore<String, Long>> partialsStore(String name) {
+        return Stores.keyValueStoreBuilder(Stores.persistentKeyValueStore(name), Serdes.String(), Serdes.Long())
+            .withCachingEnabled();
+    }
+}
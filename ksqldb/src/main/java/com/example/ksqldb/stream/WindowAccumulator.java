@@ -0,0 +1,102 @@
+package com.example.ksqldb.stream;
+
+import com.example.ksqldb.model.UserCount;
+import com.example.ksqldb.model.WindowStatistics;
+import com.example.ksqldb.sketch.HyperLogLog;
+import com.example.ksqldb.sketch.SpaceSaving;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Промежуточное значение оконного агрегата: счетчик сообщений, скетч получателей {@link HyperLogLog}
+ * и счетчики самых активных пользователей {@link SpaceSaving}. Размер ограничен точностью скетча и
+ * количеством счетчиков, а не числом сообщений, получателей или пользователей окна.
+ *
+ * Экземпляр изменяемый: {@link #merge} обновляет и возвращает его же. Первая фаза ({@link PartialWindowProcessor})
+ * хранит части агрегата по отдельности и собирает его только для передачи во вторую.
+ */
+public final class WindowAccumulator {
+
+    private long messages;
+
+    private final HyperLogLog recipients;
+
+    private final SpaceSaving users;
+
+    public WindowAccumulator(int sketchPrecision, int usersCapacity) {
+        this(0, HyperLogLog.withPrecision(sketchPrecision), new SpaceSaving(usersCapacity));
+    }
+
+    // Агрегат над готовыми частями, без копирования
+    WindowAccumulator(long messages, HyperLogLog recipients, SpaceSaving users) {
+        this.messages = messages;
+        this.recipients = recipients;
+        this.users = users;
+    }
+
+    /**
+     * Добавляет агрегат того же окна по другой партиции: сообщения складываются, скетчи и счетчики объединяются.
+     *
+     * @param other агрегат другой партиции
+     * @return этот же агрегат
+     */
+    public WindowAccumulator merge(WindowAccumulator other) {
+        messages += other.messages;
+        recipients.merge(other.recipients);
+        users.merge(other.users);
+        return this;
+    }
+
+    /**
+     * Итог окна.
+     *
+     * @param windowStart   начало окна
+     * @param windowEnd     конец окна
+     * @param topUsersLimit сколько самых активных пользователей вернуть
+     * @return статистика окна
+     */
+    public WindowStatistics toStatistics(long windowStart, long windowEnd, int topUsersLimit) {
+        List<UserCount> topUsers = users.top(topUsersLimit).stream()
+            .map(counter -> new UserCount(counter.item(), counter.count(), counter.error()))
+            .toList();
+        return new WindowStatistics(windowStart, windowEnd, messages, recipients.estimate(), topUsers);
+    }
+
+    /**
+     * Сериализация: количество сообщений, длина и байты скетча получателей, затем счетчики пользователей.
+     *
+     * @return байты агрегата
+     */
+    public byte[] toBytes() {
+        byte[] sketch = recipients.toBytes();
+        byte[] counters = users.toBytes();
+        return ByteBuffer.allocate(Long.BYTES + Integer.BYTES + sketch.length + counters.length)
+            .putLong(messages)
+            .putInt(sketch.length)
+            .put(sketch)
+            .put(counters)
+            .array();
+    }
+
+    /**
+     * Восстанавливает агрегат из байтов {@link #toBytes()}.
+     *
+     * @param data байты агрегата
+     * @return агрегат
+     */
+    public static WindowAccumulator fromBytes(byte[] data) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long messages = buffer.getLong();
+            byte[] sketch = new byte[buffer.getInt()];
+            buffer.get(sketch);
+            byte[] counters = new byte[buffer.remaining()];
+            buffer.get(counters);
+            return new WindowAccumulator(messages, HyperLogLog.fromBytes(sketch), SpaceSaving.fromBytes(counters));
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Оконный агрегат поврежден", e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.ksqldb.stream;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+
+/**
+ * Вторая фаза оконной статистики: объединяет агрегаты окна всех партиций ({@link PartialWindowProcessor})
+ * и публикует итог окна один раз, после его закрытия.
+ *
+ * Последний агрегат каждого шарда хранится в {@code shardsStoreName} (ключ — номер шарда, время — начало окна)
+ * и заменяет предыдущий, поэтому повторная передача того же или более нового агрегата шарда не завышает итог.
+ * Объединение всех шардов окна пишется в {@code storeName} по ключу {@link UserStatisticsTopology#ALL} —
+ * его читают интерактивные запросы.
+ *
+ * Окно закрывается, когда время потока (максимум времени агрегатов шардов) проходит конец окна и grace —
+ * как suppress до закрытия окна (EMIT FINAL). Начало последнего закрытого окна хранится
+ * в {@code emittedStoreName}, поэтому после перезапуска окна не публикуются повторно, а агрегаты
+ * закрытых окон отбрасываются как опоздавшие. Как и в DSL, время потока общее для всех партиций:
+ * агрегат отстающей партиции, пришедший после закрытия окна, не учитывается, поэтому grace должен
+ * покрывать и интервал передачи агрегатов.
+ */
+class WindowMergeProcessor implements Processor<Windowed<String>, WindowAccumulator, Windowed<String>, WindowAccumulator> {
+
+    // Закрытых окон еще нет
+    private static final long NONE = -1;
+
+    private final String storeName;
+
+    private final String shardsStoreName;
+
+    private final String emittedStoreName;
+
+    private final TimeWindows windows;
+
+    private final int sketchPrecision;
+
+    private final int usersCapacity;
+
+    private ProcessorContext<Windowed<String>, WindowAccumulator> context;
+
+    private WindowStore<String, WindowAccumulator> merged;
+
+    private WindowStore<String, WindowAccumulator> shards;
+
+    private KeyValueStore<String, Long> emitted;
+
+    // Начало последнего закрытого окна: окна до него включительно опубликованы
+    private long closedUpTo;
+
+    WindowMergeProcessor(String storeName, String shardsStoreName, String emittedStoreName, TimeWindows windows,
+                         int sketchPrecision, int usersCapacity) {
+        this.storeName = storeName;
+        this.shardsStoreName = shardsStoreName;
+        this.emittedStoreName = emittedStoreName;
+        this.windows = windows;
+        this.sketchPrecision = sketchPrecision;
+        this.usersCapacity = usersCapacity;
+    }
+
+    @Override
+    public void init(ProcessorContext<Windowed<String>, WindowAccumulator> context) {
+        this.context = context;
+        this.merged = context.getStateStore(storeName);
+        this.shards = context.getStateStore(shardsStoreName);
+        this.emitted = context.getStateStore(emittedStoreName);
+        Long stored = emitted.get(UserStatisticsTopology.ALL);
+        this.closedUpTo = stored == null ? NONE : stored;
+    }
+
+    @Override
+    public void process(Record<Windowed<String>, WindowAccumulator> record) {
+        long start = record.key().window().start();
+        if (start > closedUpTo) {
+            shards.put(record.key().key(), record.value(), start);
+            WindowAccumulator total = new WindowAccumulator(sketchPrecision, usersCapacity);
+            try (KeyValueIterator<Windowed<String>, WindowAccumulator> partials = shards.fetchAll(start, start)) {
+                partials.forEachRemaining(partial -> total.merge(partial.value));
+            }
+            merged.put(UserStatisticsTopology.ALL, total, start);
+        }
+        emitClosed();
+    }
+
+    // Публикует окна, закрытые по времени потока, в порядке начала
+    private void emitClosed() {
+        long streamTime = context.currentStreamTimeMs();
+        long lastClosed = streamTime - windows.gracePeriodMs() - windows.size();
+        if (lastClosed <= closedUpTo) {
+            return;
+        }
+        try (WindowStoreIterator<WindowAccumulator> closed = merged.fetch(UserStatisticsTopology.ALL, closedUpTo + 1, lastClosed)) {
+            while (closed.hasNext()) {
+                KeyValue<Long, WindowAccumulator> window = closed.next();
+                context.forward(new Record<>(
+                    new Windowed<>(UserStatisticsTopology.ALL, WindowedStatisticsTopology.window(windows, window.key)),
+                    window.value, streamTime));
+            }
+        }
+        // Окна без агрегатов тоже закрыты: их опоздавшие агрегаты отбрасываются
+        closedUpTo = lastClosed;
+        emitted.put(UserStatisticsTopology.ALL, closedUpTo);
+    }
+}
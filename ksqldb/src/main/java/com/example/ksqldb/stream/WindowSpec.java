@@ -0,0 +1,37 @@
+package com.example.ksqldb.stream;
+
+import org.apache.kafka.streams.kstream.TimeWindows;
+
+import java.time.Duration;
+
+/**
+ * Параметры окна статистики {@link WindowedStatisticsTopology}.
+ *
+ * @param name      имя окна (minute, hour): префикс хранилищ и внутренних топиков
+ * @param size      размер окна
+ * @param advance   шаг окна: равен размеру — неперекрывающиеся (tumbling), меньше — скользящие (hopping)
+ * @param grace     сколько после конца окна еще принимаются опоздавшие сообщения; итог окна публикуется после него
+ * @param retention сколько хранится окно в локальном хранилище (не меньше size + grace)
+ * @param topic     топик итогов окна
+ */
+public record WindowSpec(String name, Duration size, Duration advance, Duration grace, Duration retention, String topic) {
+
+    public WindowSpec {
+        if (advance == null || advance.isZero() || advance.compareTo(size) > 0) {
+            advance = size;
+        }
+        // Kafka Streams требует хранить окно хотя бы до закрытия
+        if (retention == null || retention.compareTo(size.plus(grace)) < 0) {
+            retention = size.plus(grace);
+        }
+    }
+
+    /**
+     * Окна Kafka Streams с размером, шагом и периодом ожидания опоздавших сообщений.
+     *
+     * @return окна
+     */
+    public TimeWindows windows() {
+        return TimeWindows.ofSizeAndGrace(size, grace).advanceBy(advance);
+    }
+}
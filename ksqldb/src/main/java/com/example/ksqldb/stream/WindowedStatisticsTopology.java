@@ -0,0 +1,144 @@
+package com.example.ksqldb.stream;
+
+import com.example.ksqldb.model.Message;
+import com.example.ksqldb.serde.UserCountSerde;
+import com.example.ksqldb.serde.WindowAccumulatorSerde;
+import com.example.ksqldb.serde.WindowStatisticsJsonSerde;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.Repartitioned;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.kstream.Window;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.kstream.WindowedSerdes;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Оконные варианты глобальных агрегатов: для каждого окна ({@link WindowSpec}, например минута и час) —
+ * количество сообщений, уникальных получателей и самые активные пользователи.
+ *
+ * Вместо бесконечно растущих счетчиков за все время состояние ограничено окнами в пределах retention,
+ * а размер агрегата окна — скетчем HyperLogLog и счетчиками Space-Saving ({@link WindowAccumulator}).
+ * Итог окна публикуется один раз, после окончания окна и периода ожидания опоздавших сообщений
+ * (как EMIT FINAL в ksqlDB), а не изменением на каждое сообщение.
+ *
+ * Как и глобальные счетчики {@link UserStatisticsTopology}, агрегаты считаются в две фазы, без перераспределения
+ * каждого сообщения к одному ключу: {@link PartialWindowProcessor} считает агрегаты окон каждой партиции
+ * и раз в интервал передает изменившиеся, {@link WindowMergeProcessor} объединяет их по окну в одной партиции
+ * и публикует закрытые окна. Пользователь целиком принадлежит одной партиции (ключ — user_id), поэтому
+ * счетчики Space-Saving партиций не пересекаются, а скетчи получателей объединяются без потерь.
+ *
+ * Ключ итога в топике — окно (ключ {@link UserStatisticsTopology#ALL} и начало окна, формат оконного ключа ksqlDB).
+ */
+public class WindowedStatisticsTopology {
+
+    // Окна статистики
+    private final List<WindowSpec> windows;
+
+    // Точность скетча уникальных получателей окна
+    private final int sketchPrecision;
+
+    // Количество счетчиков Space-Saving пользователей в окне
+    private final int topUsersCapacity;
+
+    // Размер списка самых активных пользователей окна
+    private final int topUsersLimit;
+
+    // Интервал передачи агрегатов окон партиций во вторую фазу
+    private final Duration partialInterval;
+
+    public WindowedStatisticsTopology(List<WindowSpec> windows, int sketchPrecision, int topUsersCapacity, int topUsersLimit,
+                                      Duration partialInterval) {
+        this.windows = List.copyOf(windows);
+        this.sketchPrecision = sketchPrecision;
+        this.topUsersCapacity = Math.max(1, topUsersCapacity);
+        this.topUsersLimit = Math.max(1, topUsersLimit);
+        this.partialInterval = partialInterval;
+    }
+
+    /**
+     * Добавляет оконные агрегаты к потоку сообщений.
+     *
+     * @param builder  построитель топологии Kafka Streams
+     * @param messages сообщения с ключом user_id
+     */
+    public void build(StreamsBuilder builder, KStream<String, Message> messages) {
+        for (WindowSpec window : windows) {
+            build(builder, messages, window);
+        }
+    }
+
+    /**
+     * Оконное хранилище итогов окна: ключ {@link UserStatisticsTopology#ALL}, значение {@link WindowAccumulator}.
+     *
+     * @param window имя окна
+     * @return имя хранилища
+     */
+    public static String storeName(String window) {
+        return window + "-statistics-store";
+    }
+
+    /**
+     * Окно с началом {@code start} из {@link TimeWindows#windowsFor}: ключи окон строятся через публичный API,
+     * без конструктора внутреннего класса окна Kafka Streams.
+     *
+     * @param windows окна
+     * @param start   начало окна (кратно шагу)
+     * @return окно
+     */
+    static Window window(TimeWindows windows, long start) {
+        return windows.windowsFor(start).get(start);
+    }
+
+    private void build(StreamsBuilder builder, KStream<String, Message> messages, WindowSpec window) {
+        String countsStore = window.name() + "-statistics-partial-counts-store";
+        String sketchesStore = window.name() + "-statistics-partial-sketches-store";
+        String usersStore = window.name() + "-statistics-partial-users-store";
+        String shardsStore = window.name() + "-statistics-shards-store";
+        String emittedStore = window.name() + "-statistics-emitted-store";
+        builder.addStateStore(windowStore(countsStore, window, Serdes.Long()));
+        builder.addStateStore(windowStore(sketchesStore, window, Serdes.ByteArray()));
+        builder.addStateStore(windowStore(usersStore, window, new UserCountSerde()));
+        builder.addStateStore(windowStore(shardsStore, window, new WindowAccumulatorSerde()));
+        builder.addStateStore(windowStore(storeName(window.name()), window, new WindowAccumulatorSerde()));
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+            Stores.persistentKeyValueStore(emittedStore), Serdes.String(), Serdes.Long()));
+
+        TimeWindows timeWindows = window.windows();
+        messages
+            .process(() -> new PartialWindowProcessor(countsStore, sketchesStore, usersStore, timeWindows, partialInterval,
+                    sketchPrecision, topUsersCapacity),
+                countsStore, sketchesStore, usersStore)
+            // Во вторую фазу приходят только агрегаты окон партиций: одна партиция на все окна
+            .repartition(Repartitioned.<Windowed<String>, WindowAccumulator>as(window.name() + "-statistics-partials")
+                .withKeySerde(windowedSerde(window))
+                .withValueSerde(new WindowAccumulatorSerde())
+                .withNumberOfPartitions(1))
+            .process(() -> new WindowMergeProcessor(storeName(window.name()), shardsStore, emittedStore, timeWindows,
+                    sketchPrecision, topUsersCapacity),
+                storeName(window.name()), shardsStore, emittedStore)
+            .mapValues((closed, accumulator) -> accumulator.toStatistics(
+                closed.window().start(), closed.window().end(), topUsersLimit))
+            .to(window.topic(), Produced.with(windowedSerde(window), new WindowStatisticsJsonSerde()));
+    }
+
+    // Оконное хранилище по строковому ключу: RocksDB с changelog-топиком и кэшем записей перед ним
+    private static <V> StoreBuilder<WindowStore<String, V>> windowStore(String name, WindowSpec window, Serde<V> valueSerde) {
+        return Stores.windowStoreBuilder(
+                Stores.persistentWindowStore(name, window.retention(), window.size(), false),
+                Serdes.String(), valueSerde)
+            .withCachingEnabled();
+    }
+
+    private static Serde<Windowed<String>> windowedSerde(WindowSpec window) {
+        return WindowedSerdes.timeWindowedSerdeFrom(String.class, window.size().toMillis());
+    }
+}
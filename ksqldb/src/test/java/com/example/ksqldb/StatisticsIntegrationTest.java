@@ -0,0 +1,159 @@
+package com.example.ksqldb;
+
+import com.example.ksqldb.model.UserStatistics;
+import com.example.ksqldb.service.MessageProducerService;
+import com.example.ksqldb.service.StatisticsQueryService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.streams.KafkaStreams;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сквозная проверка продюсера и встроенного Kafka Streams (профиль streams) на встроенном брокере:
+ * каждое сообщение в топике messages — JSON схемы потока messages_stream, и каждое учтено в агрегатах ровно один раз.
+ */
+@SpringBootTest(properties = {
+    "kafka.topic.partitions=2",
+    // Плановая отправка не мешает подсчету: сообщения отправляет тест
+    "message.generation.interval=3600000",
+    "statistics.streams.commit-interval-ms=100",
+    "statistics.streams.cache-max-bytes=0",
+    "logging.level.root=WARN"
+})
+@ActiveProfiles("streams")
+@EmbeddedKafka(kraft = true, partitions = 2, bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+@DirtiesContext
+class StatisticsIntegrationTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private static final String[] FIELDS = {"user_id", "recipient_id", "message", "timestamp"};
+
+    private static final int MESSAGES = 200;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+
+    @Autowired
+    private MessageProducerService producerService;
+
+    @Autowired
+    private StatisticsQueryService statisticsQueryService;
+
+    @Value("${kafka.topic.messages}")
+    private String messagesTopic;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Хранилища Kafka Streams — в новом временном каталоге
+    @DynamicPropertySource
+    static void stateDirectory(DynamicPropertyRegistry registry) throws IOException {
+        String stateDir = Files.createTempDirectory("statistics-test").toString();
+        registry.add("statistics.streams.state-dir", () -> stateDir);
+    }
+
+    @Test
+    void countsEveryProducedMessageOnce() throws IOException {
+        await(() -> {
+            KafkaStreams streams = streamsBuilderFactoryBean.getKafkaStreams();
+            return streams != null && streams.state() == KafkaStreams.State.RUNNING;
+        }, "Kafka Streams не запущен");
+
+        for (int i = 0; i < MESSAGES; i++) {
+            producerService.sendMessage();
+        }
+
+        // В топике могут быть и сообщения плановой отправки при старте: считаются все прочитанные
+        List<JsonNode> messages = new ArrayList<>();
+        for (String value : readMessages(MESSAGES)) {
+            JsonNode node = objectMapper.readTree(value);
+            for (String field : FIELDS) {
+                assertTrue(node.hasNonNull(field), "Нет поля " + field + ": " + value);
+            }
+            assertTrue(node.get("timestamp").isIntegralNumber(), value);
+            messages.add(node);
+        }
+        long total = messages.size();
+
+        // ID отправителя и получателя — случайные UUID, поэтому все получатели разные
+        await(() -> statisticsQueryService.totalMessages(true).getCount() == total
+            && statisticsQueryService.uniqueRecipients(true).getCount() == total, "Агрегаты не дошли до " + total);
+        for (JsonNode message : messages.subList(0, 10)) {
+            String userId = message.get("user_id").asText();
+            assertEquals(new UserStatistics(userId, 1, 1), statisticsQueryService.userStatistics(userId, true));
+        }
+    }
+
+    // Читает топик messages с начала, пока не прочитано expected значений, и еще секунду — на случай других
+    private List<String> readMessages(int expected) {
+        List<String> values = new ArrayList<>();
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(
+                KafkaTestUtils.consumerProps("statistics-integration-test", "false", broker),
+                new StringDeserializer(), new StringDeserializer())) {
+            consumer.subscribe(List.of(messagesTopic));
+            long deadline = System.nanoTime() + TIMEOUT.toNanos();
+            long quietUntil = Long.MAX_VALUE;
+            while (System.nanoTime() < Math.min(deadline, quietUntil)) {
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(100))) {
+                    values.add(record.value());
+                }
+                if (values.size() >= expected && quietUntil == Long.MAX_VALUE) {
+                    quietUntil = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+                }
+            }
+        }
+        assertTrue(values.size() >= expected, "Прочитано " + values.size() + " из " + expected);
+        return values;
+    }
+
+    // Пока Kafka Streams восстанавливает хранилища, запросы к ним падают — условие проверяется снова
+    private static void await(BooleanSupplier condition, String message) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!holds(condition)) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError(message + " за " + TIMEOUT);
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static boolean holds(BooleanSupplier condition) {
+        try {
+            return condition.getAsBoolean();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.ksqldb.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    // Байт представления в заголовке: 0 — разреженное, 1 — плотное
+    private static final int ENCODING = 2;
+
+    @Test
+    void estimatesWithinErrorBounds() {
+        for (int precision : new int[] {10, 12, 14}) {
+            for (int count : new int[] {10, 100, 1_000, 10_000, 200_000}) {
+                HyperLogLog sketch = HyperLogLog.withPrecision(precision);
+                for (int i = 0; i < count; i++) {
+                    sketch.add("recipient-" + i);
+                }
+                // Хеш детерминирован, поэтому запас в 4 стандартные ошибки не дает случайных падений
+                double allowed = Math.max(1, 4 * sketch.relativeError() * count);
+                assertEquals(count, sketch.estimate(), allowed, "p = " + precision + ", n = " + count);
+            }
+        }
+    }
+
+    @Test
+    void ignoresRepeatedValues() {
+        HyperLogLog sketch = HyperLogLog.withPrecision(12);
+        for (int i = 0; i < 1_000; i++) {
+            sketch.add("value-" + i);
+        }
+        byte[] before = sketch.toBytes();
+
+        for (int i = 0; i < 1_000; i++) {
+            assertFalse(sketch.add("value-" + i));
+        }
+        assertFalse(sketch.add(null));
+        assertArrayEquals(before, sketch.toBytes());
+    }
+
+    @Test
+    void switchesFromSparseToDense() {
+        HyperLogLog sketch = HyperLogLog.withPrecision(12);
+        for (int i = 0; i < 20; i++) {
+            sketch.add("value-" + i);
+        }
+        // Несколько байт на значение вместо 3 КБ регистров
+        byte[] sparse = sketch.toBytes();
+        assertEquals(0, sparse[ENCODING]);
+        assertTrue(sparse.length < 20 * 4, "Разреженный скетч " + sparse.length + " байт");
+        assertEquals(20, sketch.estimate());
+
+        int count = 20;
+        while (sketch.toBytes()[ENCODING] == 0) {
+            sketch.add("value-" + count++);
+        }
+        // Переход — когда ненулевых регистров больше четверти
+        assertTrue(count > 1024, "Переход после " + count + " значений");
+        byte[] dense = sketch.toBytes();
+        assertEquals(3 + 4096 * 6 / 8, dense.length);
+        assertEquals(count, sketch.estimate(), 4 * sketch.relativeError() * count);
+
+        // Плотный скетч дает ту же оценку, что и разреженный с теми же регистрами
+        HyperLogLog before = HyperLogLog.withPrecision(12);
+        for (int i = 0; i < count - 1; i++) {
+            before.add("value-" + i);
+        }
+        assertEquals(0, before.toBytes()[ENCODING]);
+        HyperLogLog denseBefore = HyperLogLog.fromBytes(dense);
+        HyperLogLog sparseBefore = HyperLogLog.fromBytes(before.toBytes());
+        sparseBefore.add("value-" + (count - 1));
+        assertEquals(denseBefore.estimate(), sparseBefore.estimate());
+    }
+
+    @Test
+    void roundTripsBothEncodings() {
+        for (int count : new int[] {0, 1, 50, 5_000}) {
+            HyperLogLog sketch = HyperLogLog.withPrecision(12);
+            for (int i = 0; i < count; i++) {
+                sketch.add("value-" + i);
+            }
+            byte[] data = sketch.toBytes();
+
+            HyperLogLog restored = HyperLogLog.fromBytes(data);
+
+            assertEquals(sketch.precision(), restored.precision());
+            assertEquals(sketch.estimate(), restored.estimate());
+            assertArrayEquals(data, restored.toBytes());
+            // Восстановленный скетч продолжает считать так же, как исходный
+            for (int i = count; i < count + 100; i++) {
+                assertEquals(sketch.add("value-" + i), restored.add("value-" + i), "n = " + count);
+            }
+            assertArrayEquals(sketch.toBytes(), restored.toBytes());
+        }
+    }
+
+    @Test
+    void mergeIsIdempotent() {
+        HyperLogLog left = HyperLogLog.withPrecision(12);
+        HyperLogLog right = HyperLogLog.withPrecision(12);
+        HyperLogLog union = HyperLogLog.withPrecision(12);
+        for (int i = 0; i < 3_000; i++) {
+            left.add("left-" + i);
+            union.add("left-" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            right.add("right-" + i);
+            union.add("right-" + i);
+        }
+
+        assertTrue(left.merge(right));
+        long merged = left.estimate();
+        assertEquals(union.estimate(), merged);
+
+        // Повторное объединение с тем же снимком и с самим собой ничего не меняет
+        assertFalse(left.merge(right));
+        assertFalse(left.merge(HyperLogLog.fromBytes(left.toBytes())));
+        assertEquals(merged, left.estimate());
+
+        // Объединение в разреженный скетч дает ту же оценку
+        HyperLogLog sparse = HyperLogLog.fromBytes(right.toBytes());
+        sparse.merge(left);
+        assertEquals(merged, sparse.estimate());
+
+        assertThrows(IllegalArgumentException.class, () -> left.merge(HyperLogLog.withPrecision(10)));
+    }
+
+    @Test
+    void rejectsCorruptedInput() {
+        HyperLogLog sketch = HyperLogLog.withPrecision(10);
+        for (int i = 0; i < 30; i++) {
+            sketch.add("value-" + i);
+        }
+        byte[] sparse = sketch.toBytes();
+        for (int i = 30; i < 1_000; i++) {
+            sketch.add("value-" + i);
+        }
+        byte[] dense = sketch.toBytes();
+        assertEquals(0, sparse[ENCODING]);
+        assertEquals(1, dense[ENCODING]);
+
+        // Любое обрезанное значение — ошибка, а не скетч с частью регистров
+        for (byte[] data : new byte[][] {sparse, dense}) {
+            for (int length = 0; length < data.length; length++) {
+                byte[] truncated = Arrays.copyOf(data, length);
+                assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(truncated), "length " + length);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(withByte(sparse, 0, 2)));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(withByte(sparse, 1, 30)));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(withByte(sparse, ENCODING, 7)));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(Arrays.copyOf(dense, dense.length + 1)));
+        // Разреженное: регистров больше, чем бывает до перехода к плотному, и нулевое приращение индекса
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {1, 10, 0, (byte) 0x81, 0x02}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[] {1, 10, 0, 2, 0x41, 0}));
+        // varint длиннее 5 байт
+        assertThrows(IllegalArgumentException.class,
+            () -> HyperLogLog.fromBytes(new byte[] {1, 10, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0}));
+    }
+
+    @Test
+    void choosesPrecisionForRelativeError() {
+        assertEquals(12, HyperLogLog.precisionFor(0.02));
+        assertEquals(14, HyperLogLog.precisionFor(0.01));
+        assertEquals(HyperLogLog.MAX_PRECISION, HyperLogLog.precisionFor(0.0001));
+        assertEquals(HyperLogLog.MIN_PRECISION, HyperLogLog.precisionFor(0.5));
+        assertTrue(HyperLogLog.withPrecision(HyperLogLog.precisionFor(0.02)).relativeError() <= 0.02);
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.precisionFor(0));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.withPrecision(HyperLogLog.MAX_PRECISION + 1));
+    }
+
+    private static byte[] withByte(byte[] data, int index, int value) {
+        byte[] copy = data.clone();
+        copy[index] = (byte) value;
+        return copy;
+    }
+}
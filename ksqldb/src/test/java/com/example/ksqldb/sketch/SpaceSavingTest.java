@@ -0,0 +1,171 @@
+package com.example.ksqldb.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+
+    @Test
+    void countsExactlyWhileWithinCapacity() {
+        SpaceSaving summary = new SpaceSaving(3);
+        summary.offer("a", 1);
+        summary.offer("b", 1);
+        summary.offer("a", 2);
+
+        assertEquals(List.of(new SpaceSaving.Counter("a", 3, 0), new SpaceSaving.Counter("b", 1, 0)), summary.top(10));
+        assertEquals(new SpaceSaving.Counter("a", 3, 0), summary.top(1).get(0));
+        assertNull(summary.get("c"));
+    }
+
+    @Test
+    void evictsRarestAndRemembersItsCountAsError() {
+        SpaceSaving summary = new SpaceSaving(2);
+        summary.offer("a", 5);
+        summary.offer("b", 2);
+
+        SpaceSaving.Counter evicted = summary.offer("c", 1);
+
+        assertEquals(new SpaceSaving.Counter("b", 2, 0), evicted);
+        // Новое значение наследует количество вытесненного: истинная частота в [count - error, count]
+        assertEquals(new SpaceSaving.Counter("c", 3, 2), summary.get("c"));
+        assertEquals(2, summary.size());
+    }
+
+    @Test
+    void keepsErrorBoundsAndFindsHeavyHitters() {
+        int capacity = 20;
+        SpaceSaving summary = new SpaceSaving(capacity);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(7);
+        long total = 100_000;
+        for (int i = 0; i < total; i++) {
+            // Пять частых значений (по ~10%) и длинный хвост редких
+            String item = random.nextInt(2) == 0 ? "heavy-" + random.nextInt(5) : "rare-" + random.nextInt(10_000);
+            summary.offer(item, 1);
+            exact.merge(item, 1L, Long::sum);
+        }
+
+        for (SpaceSaving.Counter counter : summary.top(capacity)) {
+            long frequency = exact.get(counter.item());
+            assertTrue(counter.count() - counter.error() <= frequency && frequency <= counter.count(), counter.toString());
+            // Ошибка не больше N / capacity
+            assertTrue(counter.error() <= total / capacity, counter.toString());
+        }
+        // Любое значение с частотой больше N / capacity отслеживается
+        exact.forEach((item, frequency) -> {
+            if (frequency > total / capacity) {
+                assertNotNull(summary.get(item), item);
+            }
+        });
+        assertEquals(List.of("heavy-0", "heavy-1", "heavy-2", "heavy-3", "heavy-4"),
+            summary.top(5).stream().map(SpaceSaving.Counter::item).sorted().toList());
+    }
+
+    @Test
+    void restoresWithReducedCapacity() {
+        SpaceSaving summary = new SpaceSaving(3);
+        summary.restore(new SpaceSaving.Counter("a", 10, 0));
+        summary.restore(new SpaceSaving.Counter("b", 7, 1));
+        summary.restore(new SpaceSaving.Counter("c", 5, 0));
+
+        List<SpaceSaving.Counter> evicted = summary.restore(new SpaceSaving.Counter("d", 8, 2));
+
+        // Лишний счетчик — самый редкий из восстановленных, а не последний
+        assertEquals(List.of(new SpaceSaving.Counter("c", 5, 0)), evicted);
+        assertEquals(List.of("a", "d", "b"), summary.top(3).stream().map(SpaceSaving.Counter::item).toList());
+
+        // Повторное восстановление значения заменяет счетчик
+        assertEquals(List.of(), summary.restore(new SpaceSaving.Counter("b", 9, 1)));
+        assertEquals(new SpaceSaving.Counter("b", 9, 1), summary.get("b"));
+        assertEquals(3, summary.size());
+
+        // Как HeavyHittersProcessor после уменьшения capacity: сохранено 5 счетчиков, остаются 2 самых частых
+        SpaceSaving larger = new SpaceSaving(5);
+        for (String item : List.of("e", "d", "c", "b", "a")) {
+            larger.offer(item, item.charAt(0));
+        }
+        SpaceSaving smaller = new SpaceSaving(2);
+        List<SpaceSaving.Counter> dropped = new ArrayList<>();
+        // Порядок обхода хранилища произвольный: сначала самые редкие
+        List<SpaceSaving.Counter> stored = larger.top(5);
+        for (int i = stored.size() - 1; i >= 0; i--) {
+            dropped.addAll(smaller.restore(stored.get(i)));
+        }
+        assertEquals(List.of("e", "d"), smaller.top(5).stream().map(SpaceSaving.Counter::item).toList());
+        assertEquals(List.of("a", "b", "c"), dropped.stream().map(SpaceSaving.Counter::item).sorted().toList());
+    }
+
+    @Test
+    void mergesSummariesOfDisjointPartitions() {
+        SpaceSaving first = new SpaceSaving(3);
+        first.offer("a", 10);
+        first.offer("b", 4);
+        SpaceSaving second = new SpaceSaving(3);
+        second.offer("c", 7);
+        second.offer("d", 1);
+        second.offer("e", 2);
+
+        List<SpaceSaving.Counter> evicted = first.merge(second);
+
+        assertEquals(List.of(new SpaceSaving.Counter("a", 10, 0), new SpaceSaving.Counter("c", 7, 0),
+            new SpaceSaving.Counter("b", 4, 0)), first.top(3));
+        assertEquals(List.of("d", "e"), evicted.stream().map(SpaceSaving.Counter::item).sorted().toList());
+
+        // Значение из обеих структур: складываются и количество, и ошибка
+        SpaceSaving overlapping = new SpaceSaving(3);
+        overlapping.restore(new SpaceSaving.Counter("a", 5, 2));
+        first.merge(overlapping);
+        assertEquals(new SpaceSaving.Counter("a", 15, 2), first.get("a"));
+    }
+
+    @Test
+    void roundTripsSerialization() {
+        SpaceSaving summary = new SpaceSaving(4);
+        summary.offer("пользователь", 3);
+        summary.offer("user-😀", 2);
+        summary.offer("", 1);
+        summary.offer("x", 1);
+        summary.offer("y", 1);
+
+        SpaceSaving restored = SpaceSaving.fromBytes(summary.toBytes());
+
+        assertEquals(summary.capacity(), restored.capacity());
+        assertEquals(summary.top(10), restored.top(10));
+        // Восстановленная структура вытесняет так же, как исходная
+        assertEquals(summary.offer("z", 1), restored.offer("z", 1));
+        assertEquals(summary.top(10), restored.top(10));
+
+        SpaceSaving empty = SpaceSaving.fromBytes(new SpaceSaving(2).toBytes());
+        assertEquals(2, empty.capacity());
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    void rejectsCorruptedInput() {
+        SpaceSaving summary = new SpaceSaving(4);
+        summary.offer("a", 1);
+        summary.offer("bb", 2);
+        byte[] data = summary.toBytes();
+
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IllegalArgumentException.class, () -> SpaceSaving.fromBytes(truncated), "length " + length);
+        }
+        byte[] zeroCapacity = data.clone();
+        zeroCapacity[3] = 0;
+        assertThrows(IllegalArgumentException.class, () -> SpaceSaving.fromBytes(zeroCapacity));
+        assertThrows(IllegalArgumentException.class, () -> new SpaceSaving(0));
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.ksqldb.stream;
+
+import com.example.ksqldb.model.Message;
+import com.example.ksqldb.model.UserCount;
+import com.example.ksqldb.model.UserStatistics;
+import com.example.ksqldb.serde.MessageJsonSerde;
+import com.example.ksqldb.serde.UserStatisticsJsonSerde;
+import com.example.ksqldb.sketch.HyperLogLog;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UserStatisticsTopologyTest {
+
+    private static final String MESSAGES_TOPIC = "messages";
+
+    private static final String USER_STATISTICS_TOPIC = "user_statistics";
+
+    private static final Duration PARTIAL_INTERVAL = Duration.ofMillis(100);
+
+    private static final int PRECISION = HyperLogLog.precisionFor(0.02);
+
+    @TempDir
+    Path stateDir;
+
+    private TopologyTestDriver driver;
+
+    private TestInputTopic<String, Message> messages;
+
+    @AfterEach
+    void close() {
+        if (driver != null) {
+            driver.close();
+        }
+    }
+
+    @Test
+    void countsUsersAndRecipientsExactly() {
+        start(DistinctCountMode.EXACT);
+
+        send("alice", "r1");
+        send("alice", "r1");
+        send("alice", "r2");
+        send("bob", "r1");
+        send("bob", "r3");
+        send("bob", null);
+
+        KeyValueStore<String, UserStatistics> users = driver.getKeyValueStore(UserStatisticsTopology.USER_STATISTICS_STORE);
+        assertEquals(new UserStatistics("alice", 3, 2), users.get("alice"));
+        assertEquals(new UserStatistics("bob", 3, 2), users.get("bob"));
+
+        // Топик user_statistics — последнее значение по каждому пользователю
+        TestOutputTopic<String, UserStatistics> output = driver.createOutputTopic(
+            USER_STATISTICS_TOPIC, new StringDeserializer(), new UserStatisticsJsonSerde().deserializer());
+        Map<String, UserStatistics> published = output.readKeyValuesToMap();
+        assertEquals(3, published.get("alice").getSentMessages());
+        assertEquals(2, published.get("alice").getUniqueRecipients());
+        assertEquals(2, published.get("bob").getUniqueRecipients());
+
+        KeyValueStore<String, UserCount> topUsers = driver.getKeyValueStore(UserStatisticsTopology.TOP_USERS_COUNTERS_STORE);
+        assertEquals(new UserCount("alice", 3, 0), topUsers.get("alice"));
+        assertEquals(new UserCount("bob", 3, 0), topUsers.get("bob"));
+    }
+
+    @Test
+    void publishesGlobalTotalsOncePerInterval() {
+        start(DistinctCountMode.EXACT);
+
+        send("alice", "r1");
+        send("bob", "r2");
+        send("carol", "r1");
+
+        // Первая фаза передает частичную сумму партиции только по таймеру
+        assertNull(total(UserStatisticsTopology.TOTAL_MESSAGES_STORE));
+        assertNull(total(UserStatisticsTopology.UNIQUE_RECIPIENTS_STORE));
+
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+        assertEquals(3L, total(UserStatisticsTopology.TOTAL_MESSAGES_STORE));
+        assertEquals(2L, total(UserStatisticsTopology.UNIQUE_RECIPIENTS_STORE));
+
+        send("alice", "r3");
+        send("dave", "r1");
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+
+        // Новая сумма шарда заменяет предыдущую, а не прибавляется к ней
+        assertEquals(5L, total(UserStatisticsTopology.TOTAL_MESSAGES_STORE));
+        assertEquals(3L, total(UserStatisticsTopology.UNIQUE_RECIPIENTS_STORE));
+
+        // Без новых сообщений сумма не передается повторно и не меняется
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+        assertEquals(5L, total(UserStatisticsTopology.TOTAL_MESSAGES_STORE));
+    }
+
+    @Test
+    void estimatesUniqueRecipientsWithSketchesCloseToExact() {
+        Map<String, Set<String>> recipients = new HashMap<>();
+        Set<String> allRecipients = new HashSet<>();
+        Map<String, Integer> sent = new HashMap<>();
+        // Каждому получателю пользователь пишет дважды: повторы не должны увеличивать оценку
+        for (int i = 0; i < 50; i++) {
+            String userId = "user-" + i;
+            for (int j = 0; j <= i % 7; j++) {
+                recipients.computeIfAbsent(userId, id -> new HashSet<>()).add("recipient-" + (i + j));
+                allRecipients.add("recipient-" + (i + j));
+                sent.merge(userId, 2, Integer::sum);
+            }
+        }
+
+        Map<DistinctCountMode, Map<String, UserStatistics>> results = new HashMap<>();
+        Map<DistinctCountMode, Long> uniqueRecipients = new HashMap<>();
+        for (DistinctCountMode mode : DistinctCountMode.values()) {
+            start(mode);
+            for (int round = 0; round < 2; round++) {
+                recipients.forEach((userId, userRecipients) -> userRecipients.forEach(recipientId -> send(userId, recipientId)));
+            }
+            driver.advanceWallClockTime(PARTIAL_INTERVAL);
+
+            KeyValueStore<String, UserStatistics> users = driver.getKeyValueStore(UserStatisticsTopology.USER_STATISTICS_STORE);
+            Map<String, UserStatistics> statistics = new HashMap<>();
+            recipients.keySet().forEach(userId -> statistics.put(userId, users.get(userId)));
+            results.put(mode, statistics);
+            uniqueRecipients.put(mode, total(UserStatisticsTopology.UNIQUE_RECIPIENTS_STORE));
+            assertEquals((long) sent.values().stream().mapToInt(Integer::intValue).sum(), total(UserStatisticsTopology.TOTAL_MESSAGES_STORE));
+            driver.close();
+            driver = null;
+        }
+
+        double relativeError = HyperLogLog.withPrecision(PRECISION).relativeError();
+        recipients.forEach((userId, userRecipients) -> {
+            UserStatistics exact = results.get(DistinctCountMode.EXACT).get(userId);
+            UserStatistics estimated = results.get(DistinctCountMode.HLL).get(userId);
+            assertEquals(new UserStatistics(userId, sent.get(userId), userRecipients.size()), exact);
+            assertEquals(exact.getSentMessages(), estimated.getSentMessages(), userId);
+            assertEquals(exact.getUniqueRecipients(), estimated.getUniqueRecipients(),
+                allowedError(relativeError, exact.getUniqueRecipients()), userId);
+        });
+        assertEquals((long) allRecipients.size(), uniqueRecipients.get(DistinctCountMode.EXACT));
+        assertEquals(allRecipients.size(), uniqueRecipients.get(DistinctCountMode.HLL),
+            allowedError(relativeError, allRecipients.size()));
+    }
+
+    private void start(DistinctCountMode mode) {
+        StreamsBuilder builder = new StreamsBuilder();
+        new UserStatisticsTopology(USER_STATISTICS_TOPIC, 10, mode, PRECISION, PARTIAL_INTERVAL)
+            .build(builder, UserStatisticsTopology.messages(builder, MESSAGES_TOPIC));
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "user-statistics-test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG, 0);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.resolve(mode.name()).toString());
+        driver = new TopologyTestDriver(builder.build(), props);
+        messages = driver.createInputTopic(MESSAGES_TOPIC, new StringSerializer(), new MessageJsonSerde().serializer());
+    }
+
+    private void send(String userId, String recipientId) {
+        messages.pipeInput(userId, new Message(userId, recipientId, "text", Instant.ofEpochMilli(1_700_000_000_000L)));
+    }
+
+    private Long total(String storeName) {
+        KeyValueStore<String, Long> store = driver.getKeyValueStore(storeName);
+        return store.get(UserStatisticsTopology.ALL);
+    }
+
+    // Допустимое отклонение оценки: 4 стандартные ошибки, но не меньше 1 (коллизия двух значений в одном регистре)
+    private static double allowedError(double relativeError, long exact) {
+        return Math.max(1, 4 * relativeError * exact);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.ksqldb.stream;
+
+import com.example.ksqldb.model.Message;
+import com.example.ksqldb.model.UserCount;
+import com.example.ksqldb.model.WindowStatistics;
+import com.example.ksqldb.serde.MessageJsonSerde;
+import com.example.ksqldb.serde.WindowStatisticsJsonSerde;
+import com.example.ksqldb.sketch.HyperLogLog;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.kstream.WindowedSerdes;
+import org.apache.kafka.streams.state.WindowStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WindowedStatisticsTopologyTest {
+
+    private static final String MESSAGES_TOPIC = "messages";
+
+    private static final String WINDOW_TOPIC = "statistics_per_minute";
+
+    private static final Duration PARTIAL_INTERVAL = Duration.ofMillis(100);
+
+    private static final long MINUTE = Duration.ofMinutes(1).toMillis();
+
+    @TempDir
+    Path stateDir;
+
+    private TopologyTestDriver driver;
+
+    private TestInputTopic<String, Message> messages;
+
+    private TestOutputTopic<Windowed<String>, WindowStatistics> closed;
+
+    @AfterEach
+    void close() {
+        if (driver != null) {
+            driver.close();
+        }
+    }
+
+    @Test
+    void publishesEachWindowOnceAfterItCloses() {
+        WindowSpec minute = new WindowSpec("minute", Duration.ofMinutes(1), null, Duration.ofSeconds(10), null, WINDOW_TOPIC);
+        start(minute);
+
+        send("alice", "r1", seconds(0));
+        send("alice", "r2", seconds(20));
+        send("bob", "r1", seconds(50));
+        send("bob", "r3", seconds(65));
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+
+        // Окно [0, 60 с) еще ждет опоздавших до 70 с, но уже доступно интерактивным запросам
+        assertTrue(closed.isEmpty());
+        WindowStore<String, WindowAccumulator> store = driver.getWindowStore(WindowedStatisticsTopology.storeName("minute"));
+        assertEquals(3, store.fetch(UserStatisticsTopology.ALL, 0L).toStatistics(0, MINUTE, 5).getMessages());
+
+        send("carol", "r4", seconds(71));
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+
+        List<KeyValue<Windowed<String>, WindowStatistics>> first = closed.readKeyValuesToList();
+        assertEquals(1, first.size());
+        assertEquals(UserStatisticsTopology.ALL, first.get(0).key.key());
+        assertEquals(0, first.get(0).key.window().start());
+        assertEquals(new WindowStatistics(0, MINUTE, 3, 2,
+            List.of(new UserCount("alice", 2, 0), new UserCount("bob", 1, 0))), first.get(0).value);
+
+        // Опоздавшее больше чем на grace сообщение не учитывается, закрытое окно не публикуется повторно
+        send("dave", "r5", seconds(30));
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+        assertTrue(closed.isEmpty());
+        assertEquals(3, store.fetch(UserStatisticsTopology.ALL, 0L).toStatistics(0, MINUTE, 5).getMessages());
+
+        // Агрегат окна [60, 120 с) передавался дважды (после 65 и 71 с): новый заменяет предыдущий
+        send("erin", "r1", seconds(200));
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+        List<KeyValue<Windowed<String>, WindowStatistics>> second = closed.readKeyValuesToList();
+        assertEquals(1, second.size());
+        assertEquals(new WindowStatistics(MINUTE, 2 * MINUTE, 2, 2,
+            List.of(new UserCount("bob", 1, 0), new UserCount("carol", 1, 0))), second.get(0).value);
+    }
+
+    @Test
+    void countsMessageInEveryOverlappingWindow() {
+        WindowSpec hopping = new WindowSpec("minute", Duration.ofMinutes(2), Duration.ofMinutes(1), Duration.ZERO, null, WINDOW_TOPIC);
+        start(hopping);
+
+        send("alice", "r1", seconds(30));
+        send("bob", "r2", seconds(90));
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+        assertTrue(closed.isEmpty());
+
+        send("carol", "r3", seconds(300));
+        driver.advanceWallClockTime(PARTIAL_INTERVAL);
+
+        // Окна без сообщений не публикуются
+        List<WindowStatistics> windows = closed.readValuesToList();
+        assertEquals(2, windows.size());
+        assertEquals(new WindowStatistics(0, 2 * MINUTE, 2, 2,
+            List.of(new UserCount("alice", 1, 0), new UserCount("bob", 1, 0))), windows.get(0));
+        assertEquals(new WindowStatistics(MINUTE, 3 * MINUTE, 1, 1,
+            List.of(new UserCount("bob", 1, 0))), windows.get(1));
+    }
+
+    @Test
+    void storesPartsOfPartitionWindowSeparately() {
+        WindowSpec minute = new WindowSpec("minute", Duration.ofMinutes(1), null, Duration.ofSeconds(10), null, WINDOW_TOPIC);
+        start(minute);
+
+        send("alice", "r1", seconds(0));
+        send("alice", "r1", seconds(10));
+        send("bob", "r2", seconds(20));
+
+        // Количество и скетч — по номеру партиции, счетчики Space-Saving — по пользователю
+        WindowStore<String, Long> counts = driver.getWindowStore("minute-statistics-partial-counts-store");
+        assertEquals(3L, counts.fetch("0", 0L));
+        WindowStore<String, byte[]> sketches = driver.getWindowStore("minute-statistics-partial-sketches-store");
+        assertEquals(2, HyperLogLog.fromBytes(sketches.fetch("0", 0L)).estimate());
+        WindowStore<String, UserCount> users = driver.getWindowStore("minute-statistics-partial-users-store");
+        assertEquals(new UserCount("alice", 2, 0), users.fetch("alice", 0L));
+        assertEquals(new UserCount("bob", 1, 0), users.fetch("bob", 0L));
+    }
+
+    private void start(WindowSpec window) {
+        StreamsBuilder builder = new StreamsBuilder();
+        new WindowedStatisticsTopology(List.of(window), 12, 10, 5, PARTIAL_INTERVAL)
+            .build(builder, UserStatisticsTopology.messages(builder, MESSAGES_TOPIC));
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "windowed-statistics-test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+        props.put(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG, 0);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+        driver = new TopologyTestDriver(builder.build(), props);
+        messages = driver.createInputTopic(MESSAGES_TOPIC, new StringSerializer(), new MessageJsonSerde().serializer());
+        closed = driver.createOutputTopic(WINDOW_TOPIC,
+            WindowedSerdes.timeWindowedSerdeFrom(String.class, window.size().toMillis()).deserializer(),
+            new WindowStatisticsJsonSerde().deserializer());
+    }
+
+    private void send(String userId, String recipientId, Instant timestamp) {
+        messages.pipeInput(userId, new Message(userId, recipientId, "text", timestamp), timestamp);
+    }
+
+    private static Instant seconds(long seconds) {
+        return Instant.ofEpochSecond(seconds);
+    }
+}